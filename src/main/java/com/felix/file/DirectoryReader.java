@@ -1,55 +1,95 @@
 package com.felix.file;
 
+import java.io.Closeable;
 import java.io.IOException;
 import java.nio.file.*;
 import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.EnumSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Queue;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 public class DirectoryReader {
 
     /**
-     * 使用Files.walk遍历目录（Java 8+）
+     * 文件类型的识别方式
+     */
+    public enum TypeDetection {
+        /** 遍历时识别，每个文件打开一次读取文件头 */
+        EAGER,
+        /** 第一次调用{@link FileInfo#getType()}时识别，未调用时不打开文件 */
+        LAZY,
+        /** 不识别，只列出名称、大小等元数据 */
+        NONE
+    }
+
+    /**
+     * 使用Files.walk遍历目录（Java 8+），不识别文件类型
      */
     public static List<FileInfo> readDirectoryWithWalk(String path) throws IOException {
+        return readDirectoryWithWalk(path, TypeDetection.NONE);
+    }
+
+    /**
+     * 使用Files.walk遍历目录（Java 8+）
+     *
+     * @param detection 文件类型的识别方式
+     */
+    public static List<FileInfo> readDirectoryWithWalk(String path, TypeDetection detection) throws IOException {
         List<FileInfo> fileList = new ArrayList<>();
 
-        Files.walk(Paths.get(path))
-                .forEach(filePath -> {
-                    try {
-                        BasicFileAttributes attrs = Files.readAttributes(filePath, BasicFileAttributes.class);
-                        FileInfo fileInfo = new FileInfo();
-                        fileInfo.setName(filePath.getFileName().toString());
-                        fileInfo.setPath(filePath.toString());
-                        fileInfo.setDirectory(attrs.isDirectory());
-                        fileInfo.setSize(attrs.size());
-                        fileInfo.setLastModified(attrs.lastModifiedTime().toMillis());
-                        fileList.add(fileInfo);
-                    } catch (IOException e) {
-                        System.err.println("无法读取文件属性: " + filePath);
-                    }
-                });
+        // Files.find把遍历时已读到的属性交给过滤条件，在这里直接生成FileInfo，不再对每个路径readAttributes
+        try (Stream<Path> paths = Files.find(Paths.get(path), Integer.MAX_VALUE, (filePath, attrs) -> {
+            fileList.add(createFileInfo(filePath, attrs, detection));
+            return false;
+        })) {
+            paths.forEach(filePath -> { });
+        }
 
         return fileList;
     }
 
     /**
-     * 使用FileVisitor进行更灵活的文件遍历
+     * 使用FileVisitor进行更灵活的文件遍历，遍历时识别文件类型
      */
     public static List<FileInfo> readDirectoryWithVisitor(String path) throws IOException {
+        return readDirectoryWithVisitor(path, TypeDetection.EAGER);
+    }
+
+    /**
+     * 使用FileVisitor进行更灵活的文件遍历
+     *
+     * @param detection 文件类型的识别方式，只需要路径和大小时用NONE，不打开任何文件
+     */
+    public static List<FileInfo> readDirectoryWithVisitor(String path, TypeDetection detection) throws IOException {
         List<FileInfo> fileList = new ArrayList<>();
 
         Files.walkFileTree(Paths.get(path), new SimpleFileVisitor<Path>() {
             @Override
             public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
-                FileInfo fileInfo = createFileInfo(file, attrs);
+                FileInfo fileInfo = createFileInfo(file, attrs, detection);
                 fileList.add(fileInfo);
                 return FileVisitResult.CONTINUE;
             }
 
             @Override
             public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
-//                FileInfo fileInfo = createFileInfo(dir, attrs);
+//                FileInfo fileInfo = createFileInfo(dir, attrs, detection);
 //                fileList.add(fileInfo);
                 return FileVisitResult.CONTINUE;
             }
@@ -64,23 +104,410 @@ public class DirectoryReader {
         return fileList;
     }
 
-    private static FileInfo createFileInfo(Path path, BasicFileAttributes attrs) {
+    /**
+     * 以流的方式遍历目录，只列出文件（不含目录），按深度优先的顺序逐个产生FileInfo
+     * 只保存从根目录到当前目录路径上每层打开的DirectoryStream，内存占用与目录树的文件总数无关，
+     * 适合千万级文件的存储卷。过滤条件与{@link #readDirectoryParallel}相同，parallelism不起作用。
+     * 默认按文件系统返回的顺序遍历；指定{@link WalkOptions#sorted}后顺序确定，可用{@link WalkOptions#startAfter}从上次的位置继续。
+     * 返回的流持有打开的目录句柄，须用try-with-resources关闭；提前结束（limit、findFirst、break）后关闭流即释放全部句柄。
+     * 无法访问的目录和文件输出到标准错误后跳过，不中断遍历。
+     *
+     * @param path 根目录，也可以是单个文件
+     * @param options 深度、过滤条件、类型识别方式等遍历选项
+     * @throws IOException 无法读取根目录的属性
+     */
+    public static Stream<FileInfo> streamDirectory(String path, WalkOptions options) throws IOException {
+        FileInfoIterator iterator = new FileInfoIterator(Paths.get(path), options);
+        Spliterator<FileInfo> spliterator = Spliterators.spliteratorUnknownSize(iterator,
+                Spliterator.DISTINCT | Spliterator.NONNULL);
+        return StreamSupport.stream(spliterator, false).onClose(iterator::close);
+    }
+
+    /**
+     * 深度优先遍历的迭代器，栈中每层保存一个打开的DirectoryStream
+     */
+    private static final class FileInfoIterator implements Iterator<FileInfo>, Closeable {
+
+        private static final class Level {
+            final Path directory;
+            /** 排序遍历时条目已全部读出，为null */
+            final DirectoryStream<Path> stream;
+            final Iterator<Path> entries;
+            final int depth;
+
+            Level(Path directory, DirectoryStream<Path> stream, int depth) {
+                this.directory = directory;
+                this.stream = stream;
+                this.entries = stream.iterator();
+                this.depth = depth;
+            }
+
+            Level(Path directory, List<Path> entries, int depth) {
+                this.directory = directory;
+                this.stream = null;
+                this.entries = entries.iterator();
+                this.depth = depth;
+            }
+        }
+
+        private final WalkOptions options;
+        private final Deque<Level> stack = new ArrayDeque<>();
+        private FileInfo next;
+
+        FileInfoIterator(Path root, WalkOptions options) throws IOException {
+            this.options = options;
+            BasicFileAttributes attrs = Files.readAttributes(root, BasicFileAttributes.class);
+            if (!attrs.isDirectory()) {
+                if (options.accepts(root)) {
+                    next = createFileInfo(root, attrs, options.detection);
+                }
+            } else if (options.maxDepth > 0) {
+                push(root, 0);
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (next == null) {
+                next = advance();
+            }
+            return next != null;
+        }
+
+        @Override
+        public FileInfo next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            FileInfo fileInfo = next;
+            next = null;
+            return fileInfo;
+        }
+
+        private FileInfo advance() {
+            while (!stack.isEmpty()) {
+                Level level = stack.peek();
+                Path entry;
+                try {
+                    if (!level.entries.hasNext()) {
+                        closeQuietly(stack.pop());
+                        continue;
+                    }
+                    entry = level.entries.next();
+                } catch (DirectoryIteratorException e) {
+                    System.err.println("无法访问目录: " + level.directory + ", 错误: " + e.getMessage());
+                    closeQuietly(stack.pop());
+                    continue;
+                }
+                if (options.startAfter != null && precedesStart(entry)) {
+                    continue;
+                }
+                boolean descend = level.depth + 1 < options.maxDepth;
+                boolean accepted = options.accepts(entry);
+                if (!accepted && !descend) {
+                    // 既不输出也不会进入，不读属性
+                    continue;
+                }
+                BasicFileAttributes attrs;
+                try {
+                    attrs = Files.readAttributes(entry, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+                } catch (IOException e) {
+                    System.err.println("无法读取文件属性: " + entry);
+                    continue;
+                }
+                if (attrs.isDirectory()) {
+                    if (descend) {
+                        push(entry, level.depth + 1);
+                    }
+                } else if (accepted) {
+                    return createFileInfo(entry, attrs, options.detection);
+                }
+            }
+            return null;
+        }
+
+        private void push(Path directory, int depth) {
+            if (options.sorted) {
+                // 整个目录读出后立即关闭，按文件名排序
+                List<Path> entries = new ArrayList<>();
+                try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+                    for (Path entry : stream) {
+                        entries.add(entry);
+                    }
+                } catch (IOException | DirectoryIteratorException e) {
+                    System.err.println("无法访问目录: " + directory + ", 错误: " + e.getMessage());
+                    return;
+                }
+                entries.sort((a, b) -> a.getFileName().toString().compareTo(b.getFileName().toString()));
+                stack.push(new Level(directory, entries, depth));
+                return;
+            }
+            try {
+                stack.push(new Level(directory, Files.newDirectoryStream(directory), depth));
+            } catch (IOException e) {
+                System.err.println("无法访问目录: " + directory + ", 错误: " + e.getMessage());
+            }
+        }
+
+        /**
+         * 排序遍历中entry是否不晚于startAfter：逐级比较文件名，startAfter所在路径上的目录仍要进入
+         */
+        private boolean precedesStart(Path entry) {
+            Path start = options.startAfter;
+            int names = Math.min(entry.getNameCount(), start.getNameCount());
+            for (int i = 0; i < names; i++) {
+                int order = entry.getName(i).toString().compareTo(start.getName(i).toString());
+                if (order != 0) {
+                    return order < 0;
+                }
+            }
+            // 一个是另一个的上级：entry是startAfter所在的目录时要进入，相同时跳过
+            return entry.getNameCount() >= start.getNameCount();
+        }
+
+        /**
+         * 关闭栈中所有打开的目录，之后迭代器不再产生结果
+         */
+        @Override
+        public void close() {
+            while (!stack.isEmpty()) {
+                closeQuietly(stack.pop());
+            }
+            next = null;
+        }
+
+        private static void closeQuietly(Level level) {
+            if (level.stream == null) {
+                return;
+            }
+            try {
+                level.stream.close();
+            } catch (IOException e) {
+                System.err.println("关闭目录失败: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * 并行遍历目录，只列出文件（不含目录）
+     * 每个子目录是ForkJoinPool上的一个任务，用DirectoryStream列出后把子目录再分给空闲线程（工作窃取），
+     * 适合目录很多的大卷；单个目录内的文件仍由一个线程顺序列出。
+     * 文件名过滤（glob、扩展名类型）在读取属性之前进行，超出深度限制且不符合过滤条件的条目不读属性；
+     * 每个条目最多读一次属性（不跟随符号链接），同一份属性用于判断是否为目录和生成FileInfo。
+     * 返回的列表顺序不固定。
+     *
+     * @param path 根目录
+     * @param options 深度、过滤条件、并行度等遍历选项
+     */
+    public static List<FileInfo> readDirectoryParallel(String path, WalkOptions options) throws IOException {
+        Queue<FileInfo> files = new ConcurrentLinkedQueue<>();
+        walkParallel(path, options, files::add);
+        return new ArrayList<>(files);
+    }
+
+    /**
+     * 并行遍历目录，每找到一个文件就交给visitor，不在内存中保存结果
+     * visitor在多个线程中并发调用，须线程安全；返回false时停止遍历，已在处理中的目录列完当前条目后结束。
+     * 内存占用只与尚未列出的目录数有关，与文件总数无关。
+     *
+     * @param visitor 处理文件，返回false时停止遍历
+     */
+    public static void walkParallel(String path, WalkOptions options, Predicate<FileInfo> visitor) throws IOException {
+        Path root = Paths.get(path);
+        BasicFileAttributes attrs = Files.readAttributes(root, BasicFileAttributes.class);
+        if (!attrs.isDirectory()) {
+            if (options.accepts(root)) {
+                visitor.test(createFileInfo(root, attrs, options.detection));
+            }
+            return;
+        }
+        if (options.maxDepth <= 0) {
+            return;
+        }
+        ForkJoinPool pool = new ForkJoinPool(options.parallelism);
+        try {
+            pool.invoke(new ListTask(root, 0, options, visitor, new AtomicBoolean()));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * 列出一个目录：文件交给visitor，子目录作为新任务并行列出
+     */
+    private static final class ListTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final Path directory;
+        private final int depth;
+        private final WalkOptions options;
+        private final Predicate<FileInfo> visitor;
+        /** visitor返回false后所有任务共同停止 */
+        private final AtomicBoolean stopped;
+
+        ListTask(Path directory, int depth, WalkOptions options, Predicate<FileInfo> visitor, AtomicBoolean stopped) {
+            this.directory = directory;
+            this.depth = depth;
+            this.options = options;
+            this.visitor = visitor;
+            this.stopped = stopped;
+        }
+
+        @Override
+        protected void compute() {
+            List<ListTask> subdirectories = new ArrayList<>();
+            boolean descend = depth + 1 < options.maxDepth;
+            try (DirectoryStream<Path> entries = Files.newDirectoryStream(directory)) {
+                for (Path entry : entries) {
+                    if (stopped.get()) {
+                        return;
+                    }
+                    boolean accepted = options.accepts(entry);
+                    if (!accepted && !descend) {
+                        // 既不输出也不会进入，不读属性
+                        continue;
+                    }
+                    BasicFileAttributes attrs;
+                    try {
+                        attrs = Files.readAttributes(entry, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+                    } catch (IOException e) {
+                        System.err.println("无法读取文件属性: " + entry);
+                        continue;
+                    }
+                    if (attrs.isDirectory()) {
+                        if (descend) {
+                            subdirectories.add(new ListTask(entry, depth + 1, options, visitor, stopped));
+                        }
+                    } else if (accepted && !visitor.test(createFileInfo(entry, attrs, options.detection))) {
+                        stopped.set(true);
+                        return;
+                    }
+                }
+            } catch (IOException | DirectoryIteratorException e) {
+                System.err.println("无法访问目录: " + directory + ", 错误: " + e.getMessage());
+            }
+            invokeAll(subdirectories);
+        }
+    }
+
+    /**
+     * {@link #streamDirectory}、{@link #readDirectoryParallel}、{@link #walkParallel}的遍历选项
+     */
+    public static class WalkOptions {
+        private int maxDepth = Integer.MAX_VALUE;
+        private PathMatcher glob;
+        private Set<FileTypeChecker.FileType> types;
+        private int parallelism = Runtime.getRuntime().availableProcessors();
+        private TypeDetection detection = TypeDetection.NONE;
+        private boolean sorted;
+        private Path startAfter;
+
+        /**
+         * 最大深度，与Files.walk相同：根目录为0，1表示只列出根目录下的文件
+         */
+        public WalkOptions maxDepth(int maxDepth) {
+            if (maxDepth < 0) {
+                throw new IllegalArgumentException("最大深度不能小于0: " + maxDepth);
+            }
+            this.maxDepth = maxDepth;
+            return this;
+        }
+
+        /**
+         * 按文件名过滤，如"*.{jpg,png}"，只作用于文件，不影响进入哪些子目录
+         */
+        public WalkOptions glob(String pattern) {
+            this.glob = FileSystems.getDefault().getPathMatcher("glob:" + pattern);
+            return this;
+        }
+
+        /**
+         * 按扩展名对应的文件类型过滤，不打开文件；只作用于文件，不影响进入哪些子目录
+         */
+        public WalkOptions types(FileTypeChecker.FileType... types) {
+            Set<FileTypeChecker.FileType> set = EnumSet.noneOf(FileTypeChecker.FileType.class);
+            Collections.addAll(set, types);
+            this.types = set;
+            return this;
+        }
+
+        public WalkOptions parallelism(int parallelism) {
+            if (parallelism <= 0) {
+                throw new IllegalArgumentException("并行度必须大于0: " + parallelism);
+            }
+            this.parallelism = parallelism;
+            return this;
+        }
+
+        /**
+         * 文件类型的识别方式，默认不识别
+         */
+        public WalkOptions detection(TypeDetection detection) {
+            this.detection = detection;
+            return this;
+        }
+
+        /**
+         * 每个目录的条目按文件名排序后再遍历，使{@link #streamDirectory}的顺序确定（逐级按文件名的字典序）；
+         * 每个目录要先全部读出，内存占用与单个目录的条目数成正比。只作用于streamDirectory
+         */
+        public WalkOptions sorted(boolean sorted) {
+            this.sorted = sorted;
+            return this;
+        }
+
+        /**
+         * 排序遍历时从path之后的文件开始（不含path本身），用于断点续扫，隐含{@link #sorted}
+         * 排在path之前的子目录整个跳过，不读属性也不进入；path与根目录的写法须与产生它的那次遍历一致
+         */
+        public WalkOptions startAfter(String path) {
+            this.startAfter = Paths.get(path);
+            this.sorted = true;
+            return this;
+        }
+
+        /**
+         * 只根据文件名判断是否符合过滤条件
+         */
+        boolean accepts(Path path) {
+            Path name = path.getFileName();
+            if (name == null) {
+                return glob == null && types == null;
+            }
+            if (glob != null && !glob.matches(name)) {
+                return false;
+            }
+            return types == null || types.contains(FileTypeChecker.getFileTypeByExtension(name.toString()));
+        }
+    }
+
+    private static FileInfo createFileInfo(Path path, BasicFileAttributes attrs, TypeDetection detection) {
         FileInfo fileInfo = new FileInfo();
-        fileInfo.setName(path.getFileName().toString());
+        Path name = path.getFileName();
+        fileInfo.setName(name != null ? name.toString() : path.toString());
         fileInfo.setPath(path.toString());
         fileInfo.setDirectory(attrs.isDirectory());
         fileInfo.setSize(attrs.size());
         fileInfo.setLastModified(attrs.lastModifiedTime().toMillis());
-        if(FileTypeChecker.isPngFile(path.toFile()))
-        {
-            fileInfo.setType("PNG");
-        }else if(FileTypeChecker.isMp4File(path.toFile()))
-        {
-            fileInfo.setType("MP4");
+        // 只有普通文件需要识别，目录和特殊文件不打开
+        if (attrs.isRegularFile()) {
+            if (detection == TypeDetection.EAGER) {
+                fileInfo.setType(detectType(path));
+            } else if (detection == TypeDetection.LAZY) {
+                fileInfo.typePending = true;
+            }
         }
         return fileInfo;
     }
 
+    /**
+     * 打开一次文件识别类型，识别不出时返回null
+     */
+    private static String detectType(Path path) {
+        FileTypeChecker.FileType fileType = FileTypeChecker.getFileType(path);
+        return fileType != FileTypeChecker.FileType.UNKNOWN ? fileType.name() : null;
+    }
+
     /**
      * 文件信息类
      */
@@ -92,6 +519,8 @@ public class DirectoryReader {
         private long lastModified;
 
         private String type;
+        /** LAZY方式下type尚未识别 */
+        private boolean typePending;
 
         // getters and setters
         public String getName() { return name; }
@@ -109,12 +538,21 @@ public class DirectoryReader {
         public long getLastModified() { return lastModified; }
         public void setLastModified(long lastModified) { this.lastModified = lastModified; }
 
+        /**
+         * 文件类型，与{@link FileTypeChecker.FileType}同名，识别不出或未识别时为null
+         * LAZY方式下第一次调用时才打开文件识别，之后返回缓存的结果
+         */
         public String getType() {
+            if (typePending) {
+                type = detectType(Paths.get(path));
+                typePending = false;
+            }
             return type;
         }
 
         public void setType(String type) {
             this.type = type;
+            this.typePending = false;
         }
 
         @Override
@@ -1,13 +1,28 @@
 package com.felix.file;
 
 import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.io.IOException;
-import java.io.FileInputStream;
+import java.nio.file.StandardOpenOption;
 
 public class FileTypeChecker {
 
+    /** 默认签名表资源，格式见{@link SignatureRegistry#load} */
+    private static final String SIGNATURE_RESOURCE = "file_signatures.txt";
+
+    private static final SignatureRegistry REGISTRY = loadRegistry();
+
+    private static SignatureRegistry loadRegistry() {
+        try {
+            return SignatureRegistry.fromResource(SIGNATURE_RESOURCE);
+        } catch (IOException e) {
+            throw new IllegalStateException("加载文件签名表失败: " + e.getMessage(), e);
+        }
+    }
+
     /**
      * 通过文件扩展名判断文件类型
      */
@@ -16,7 +31,14 @@ public class FileTypeChecker {
             return FileType.UNKNOWN;
         }
 
-        String fileName = file.getName().toLowerCase();
+        return getFileTypeByExtension(file.getName());
+    }
+
+    /**
+     * 只根据文件名的扩展名判断文件类型，不访问文件系统
+     */
+    public static FileType getFileTypeByExtension(String name) {
+        String fileName = name.toLowerCase();
         if (fileName.endsWith(".png")) {
             return FileType.PNG;
         } else if (fileName.endsWith(".mp4")) {
@@ -25,10 +47,20 @@ public class FileTypeChecker {
             return FileType.JPEG;
         } else if (fileName.endsWith(".gif")) {
             return FileType.GIF;
+        } else if (fileName.endsWith(".webp")) {
+            return FileType.WEBP;
+        } else if (fileName.endsWith(".heic") || fileName.endsWith(".heif")) {
+            return FileType.HEIF;
+        } else if (fileName.endsWith(".avif")) {
+            return FileType.AVIF;
         } else if (fileName.endsWith(".avi")) {
             return FileType.AVI;
         } else if (fileName.endsWith(".mov")) {
             return FileType.MOV;
+        } else if (fileName.endsWith(".mkv")) {
+            return FileType.MKV;
+        } else if (fileName.endsWith(".tif") || fileName.endsWith(".tiff")) {
+            return FileType.TIFF;
         } else {
             return FileType.UNKNOWN;
         }
@@ -42,33 +74,65 @@ public class FileTypeChecker {
             return FileType.UNKNOWN;
         }
 
-        try (FileInputStream fis = new FileInputStream(file)) {
-            byte[] header = new byte[8];
-            int bytesRead = fis.read(header, 0, 8);
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            return getFileTypeByHeader(readHeader(channel));
+        } catch (IOException e) {
+            System.err.println("读取文件头失败: " + file.getAbsolutePath() + ", 错误: " + e.getMessage());
+        }
 
-            if (bytesRead < 8) {
-                return FileType.UNKNOWN;
-            }
+        return FileType.UNKNOWN;
+    }
 
-            // PNG文件头: 89 50 4E 47 0D 0A 1A 0A
-            if (header[0] == (byte) 0x89 && header[1] == 0x50 && header[2] == 0x4E &&
-                    header[3] == 0x47 && header[4] == 0x0D && header[5] == 0x0A &&
-                    header[6] == 0x1A && header[7] == 0x0A) {
-                return FileType.PNG;
+    /**
+     * 从已打开的通道开头读取签名表需要的文件头字节，不改变通道的位置
+     * 调用方用同一个通道继续读取文件内容，整个过程只打开一次文件
+     *
+     * @return 文件头，position为0、limit为实际读取的字节数
+     */
+    public static ByteBuffer readHeader(FileChannel channel) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(REGISTRY.getMaxLength());
+        while (header.hasRemaining()) {
+            if (channel.read(header, header.position()) < 0) {
+                break;
             }
+        }
+        header.flip();
+        return header;
+    }
 
-            // MP4文件头: 00 00 00 18 66 74 79 70 (可能有变化，这是常见的一种)
-            if (header[4] == 0x66 && header[5] == 0x74 && header[6] == 0x79 && header[7] == 0x70) {
-                return FileType.MP4;
-            }
+    /**
+     * 根据已读取的文件头字节判断文件类型，供已经读过文件头的调用方复用，避免再次打开文件
+     *
+     * @param header 文件开头的字节
+     * @param length header中的有效字节数
+     */
+    public static FileType getFileTypeByHeader(byte[] header, int length) {
+        return getFileTypeByHeader(ByteBuffer.wrap(header, 0, length));
+    }
 
-            // 其他文件类型的魔数检查可以在这里添加
+    /**
+     * 根据文件头判断文件类型：在签名trie中匹配position到limit之间的字节
+     * 签名表中的格式不在{@link FileType}中时返回UNKNOWN，需要具体格式时使用{@link #getSignatureByHeader}
+     */
+    public static FileType getFileTypeByHeader(ByteBuffer header) {
+        SignatureRegistry.Signature signature = REGISTRY.match(header);
+        return signature != null ? FileType.of(signature.getFormat()) : FileType.UNKNOWN;
+    }
 
-        } catch (IOException e) {
-            System.err.println("读取文件头失败: " + file.getAbsolutePath() + ", 错误: " + e.getMessage());
-        }
+    /**
+     * 根据文件头匹配签名表，可得到FileType之外的格式名和MIME类型
+     *
+     * @return 命中的签名，没有时返回null
+     */
+    public static SignatureRegistry.Signature getSignatureByHeader(ByteBuffer header) {
+        return REGISTRY.match(header);
+    }
 
-        return FileType.UNKNOWN;
+    /**
+     * 默认签名注册表，可在运行时注册新的签名
+     */
+    public static SignatureRegistry getRegistry() {
+        return REGISTRY;
     }
 
     /**
@@ -93,10 +157,21 @@ public class FileTypeChecker {
                         return FileType.JPEG;
                     case "image/gif":
                         return FileType.GIF;
+                    case "image/webp":
+                        return FileType.WEBP;
+                    case "image/heic":
+                    case "image/heif":
+                        return FileType.HEIF;
+                    case "image/avif":
+                        return FileType.AVIF;
                     case "video/x-msvideo":
                         return FileType.AVI;
                     case "video/quicktime":
                         return FileType.MOV;
+                    case "video/x-matroska":
+                        return FileType.MKV;
+                    case "image/tiff":
+                        return FileType.TIFF;
                     default:
                         return FileType.UNKNOWN;
                 }
@@ -119,6 +194,23 @@ public class FileTypeChecker {
         return getFileTypeByExtension(file);
     }
 
+    /**
+     * 综合判断已知为普通文件的文件类型，只打开一次文件读取文件头，识别不出时按扩展名判断
+     * 供遍历目录等已从属性中得知是普通文件的调用方使用，省去exists、isDirectory检查
+     */
+    public static FileType getFileType(Path file) {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            FileType typeByMagic = getFileTypeByHeader(readHeader(channel));
+            if (typeByMagic != FileType.UNKNOWN) {
+                return typeByMagic;
+            }
+        } catch (IOException e) {
+            System.err.println("读取文件头失败: " + file + ", 错误: " + e.getMessage());
+        }
+        Path name = file.getFileName();
+        return name != null ? getFileTypeByExtension(name.toString()) : FileType.UNKNOWN;
+    }
+
     /**
      * 专门判断是否是PNG文件
      */
@@ -138,7 +230,8 @@ public class FileTypeChecker {
      */
     public static boolean isImageFile(File file) {
         FileType type = getFileType(file);
-        return type == FileType.PNG || type == FileType.JPEG || type == FileType.GIF;
+        return type == FileType.PNG || type == FileType.JPEG || type == FileType.GIF
+                || type == FileType.WEBP || type == FileType.HEIF || type == FileType.AVIF || type == FileType.TIFF;
     }
 
     /**
@@ -146,14 +239,26 @@ public class FileTypeChecker {
      */
     public static boolean isVideoFile(File file) {
         FileType type = getFileType(file);
-        return type == FileType.MP4 || type == FileType.AVI || type == FileType.MOV;
+        return type == FileType.MP4 || type == FileType.AVI || type == FileType.MOV || type == FileType.MKV;
     }
 
     /**
      * 文件类型枚举
      */
     public enum FileType {
-        PNG, MP4, JPEG, GIF, AVI, MOV, UNKNOWN;
+        PNG, MP4, JPEG, GIF, AVI, MOV, WEBP, HEIF, AVIF, MKV, TIFF, UNKNOWN;
+
+        /**
+         * 按签名表中的格式名取得类型，不是已知类型时返回UNKNOWN
+         */
+        public static FileType of(String format) {
+            for (FileType type : values()) {
+                if (type.name().equals(format)) {
+                    return type;
+                }
+            }
+            return UNKNOWN;
+        }
 
         public String getDescription() {
             switch (this) {
@@ -163,6 +268,11 @@ public class FileTypeChecker {
                 case GIF: return "GIF图像文件";
                 case AVI: return "AVI视频文件";
                 case MOV: return "QuickTime视频文件";
+                case WEBP: return "WebP图像文件";
+                case HEIF: return "HEIF图像文件";
+                case AVIF: return "AVIF图像文件";
+                case MKV: return "Matroska视频文件";
+                case TIFF: return "TIFF图像文件";
                 default: return "未知文件类型";
             }
         }
@@ -175,6 +285,11 @@ public class FileTypeChecker {
                 case GIF: return "image/gif";
                 case AVI: return "video/x-msvideo";
                 case MOV: return "video/quicktime";
+                case WEBP: return "image/webp";
+                case HEIF: return "image/heif";
+                case AVIF: return "image/avif";
+                case MKV: return "video/x-matroska";
+                case TIFF: return "image/tiff";
                 default: return "application/octet-stream";
             }
         }
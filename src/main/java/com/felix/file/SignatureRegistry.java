@@ -0,0 +1,503 @@
+package com.felix.file;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 文件头签名注册表
+ * 每个签名为（偏移、字节、掩码）加上格式名和MIME类型，可以从资源文件加载，也可以在运行时注册。
+ * 匹配前所有签名被编译为一个确定性的字节trie：每个节点对应“已读字节数 + 仍可能命中的签名集合”，
+ * 按256个字节值直接索引子节点，因此匹配只需从文件头开头逐字节走一遍，耗时与签名数量无关。
+ * 多个签名同时命中时取结束位置最靠后（最具体）的一个，结束位置相同时取先注册的一个。
+ * 节点数通常与签名总字节数相当；起始偏移不同、又互相重叠的签名很多时，节点数会按组合成倍增加。
+ *
+ * 注册和加载是线程安全的；编译好的trie只读，可被多个线程同时用于匹配，注册新签名后在下次匹配时重新编译。
+ */
+public class SignatureRegistry {
+
+    /**
+     * 一个文件头签名
+     */
+    public static final class Signature {
+        private final String format;
+        private final String mimeType;
+        private final int offset;
+        private final String pattern;
+        private final byte[] bytes;
+        private final byte[] mask;
+
+        Signature(String format, String mimeType, int offset, String pattern, byte[] bytes, byte[] mask) {
+            this.format = format;
+            this.mimeType = mimeType;
+            this.offset = offset;
+            this.pattern = pattern;
+            this.bytes = bytes;
+            this.mask = mask;
+        }
+
+        public String getFormat() {
+            return format;
+        }
+
+        public String getMimeType() {
+            return mimeType;
+        }
+
+        public int getOffset() {
+            return offset;
+        }
+
+        /**
+         * @return 注册时的字节写法
+         */
+        public String getPattern() {
+            return pattern;
+        }
+
+        /**
+         * @return 签名结束位置，即匹配所需的最少文件头字节数
+         */
+        public int end() {
+            return offset + bytes.length;
+        }
+
+        /**
+         * 逐字节比较position开始的文件头，不经过trie，用于校验和对比测试
+         */
+        public boolean matches(ByteBuffer header) {
+            int base = header.position() + offset;
+            if (header.limit() - header.position() < end()) {
+                return false;
+            }
+            for (int i = 0; i < bytes.length; i++) {
+                if (((header.get(base + i) ^ bytes[i]) & mask[i]) != 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * 第position个文件头字节需要满足的条件，偏移之前的字节不限
+         */
+        boolean accepts(int position, int value) {
+            int i = position - offset;
+            return i < 0 || (value & mask[i]) == (bytes[i] & 0xFF);
+        }
+
+        @Override
+        public String toString() {
+            return format + "@" + offset + ": " + pattern;
+        }
+    }
+
+    /**
+     * 编译后的trie，节点按编号存放在数组中，0号为根节点，子节点按双数组（base/check）压缩存放：
+     * 节点node读到字节b时，若check[base[node] + b] == node，子节点为child[base[node] + b]，否则为fallback[node]；
+     * 编号-1表示不会再有签名命中。多数节点只有少数几个字节值需要单独区分，其余字节值都走fallback，
+     * 压缩后占用的内存与签名总字节数成正比，而不是每个节点256项。
+     * skip[node]大于0时之后连续skip个字节不限取值，直接跳到fallback[node]；为-1时没有子节点。
+     * match[node]为在此结束的最优签名。
+     */
+    private static final class Trie {
+        final int[] base;
+        final int[] check;
+        final int[] child;
+        final int[] fallback;
+        final int[] skip;
+        final Signature[] match;
+
+        Trie(int[] base, int[] check, int[] child, int[] fallback, int[] skip, Signature[] match) {
+            this.base = base;
+            this.check = check;
+            this.child = child;
+            this.fallback = fallback;
+            this.skip = skip;
+            this.match = match;
+        }
+    }
+
+    /** 压缩trie时为一个节点寻找空位的最多尝试次数 */
+    private static final int MAX_PACK_ATTEMPTS = 256;
+
+    private final List<Signature> signatures = new ArrayList<>();
+    private volatile Trie trie;
+    private volatile int maxLength;
+
+    /**
+     * 从类路径资源加载签名表
+     *
+     * @throws IOException 资源不存在或格式错误
+     */
+    public static SignatureRegistry fromResource(String name) throws IOException {
+        try (InputStream is = SignatureRegistry.class.getClassLoader().getResourceAsStream(name)) {
+            if (is == null) {
+                throw new IOException("签名资源文件不存在: " + name);
+            }
+            SignatureRegistry registry = new SignatureRegistry();
+            registry.load(is);
+            return registry;
+        }
+    }
+
+    /**
+     * 加载签名表：每行"格式名 MIME类型 偏移 字节..."，#开头的行为注释
+     * 字节按十六进制书写，"??"匹配任意字节，"VV&MM"只比较掩码MM中为1的位
+     *
+     * @throws IOException 读取失败或格式错误，错误信息中带行号
+     */
+    public void load(InputStream in) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        String line;
+        int lineNumber = 0;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) continue;
+            String[] parts = line.split("\\s+", 4);
+            if (parts.length < 4) {
+                throw new IOException("签名格式错误（第" + lineNumber + "行）: " + line);
+            }
+            try {
+                register(parts[0], parts[1], Integer.parseInt(parts[2]), parts[3]);
+            } catch (IllegalArgumentException e) {
+                throw new IOException("签名格式错误（第" + lineNumber + "行）: " + e.getMessage(), e);
+            }
+        }
+    }
+
+    /**
+     * 注册一个签名
+     *
+     * @param format 格式名
+     * @param mimeType MIME类型
+     * @param offset 签名在文件头中的偏移
+     * @param pattern 空格分隔的十六进制字节，"??"匹配任意字节，"VV&MM"只比较掩码MM中为1的位
+     * @throws IllegalArgumentException pattern格式错误
+     */
+    public synchronized void register(String format, String mimeType, int offset, String pattern) {
+        if (offset < 0) {
+            throw new IllegalArgumentException("偏移不能为负数: " + offset);
+        }
+        pattern = pattern.trim();
+        String[] tokens = pattern.split("\\s+");
+        byte[] bytes = new byte[tokens.length];
+        byte[] mask = new byte[tokens.length];
+        for (int i = 0; i < tokens.length; i++) {
+            String token = tokens[i];
+            if (token.equals("??")) {
+                continue;
+            }
+            int separator = token.indexOf('&');
+            try {
+                int value = Integer.parseInt(separator < 0 ? token : token.substring(0, separator), 16);
+                int bits = separator < 0 ? 0xFF : Integer.parseInt(token.substring(separator + 1), 16);
+                if (value > 0xFF || bits > 0xFF) {
+                    throw new NumberFormatException();
+                }
+                bytes[i] = (byte) (value & bits);
+                mask[i] = (byte) bits;
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("无效的签名字节: " + token);
+            }
+        }
+        signatures.add(new Signature(format, mimeType, offset, pattern, bytes, mask));
+        maxLength = Math.max(maxLength, offset + bytes.length);
+        trie = null;
+    }
+
+    /**
+     * @return 已注册的签名，按注册顺序
+     */
+    public synchronized List<Signature> getSignatures() {
+        return Collections.unmodifiableList(new ArrayList<>(signatures));
+    }
+
+    /**
+     * @return 匹配所有签名需要读取的文件头字节数
+     */
+    public int getMaxLength() {
+        return maxLength;
+    }
+
+    /**
+     * 匹配文件头，header的position到limit之间为文件开头的字节，不改变header的position
+     *
+     * @return 命中的签名，没有时返回null
+     */
+    public Signature match(ByteBuffer header) {
+        if (header.hasArray()) {
+            return match(header.array(), header.arrayOffset() + header.position(), header.arrayOffset() + header.limit());
+        }
+        byte[] bytes = new byte[Math.min(header.remaining(), maxLength)];
+        header.duplicate().get(bytes);
+        return match(bytes, 0, bytes.length);
+    }
+
+    /**
+     * 匹配字节数组中的文件头
+     *
+     * @param length header中的有效字节数
+     */
+    public Signature match(byte[] header, int length) {
+        return match(header, 0, length);
+    }
+
+    private Signature match(byte[] header, int position, int limit) {
+        Trie trie = this.trie;
+        if (trie == null) {
+            trie = compile();
+        }
+        int[] base = trie.base;
+        int[] check = trie.check;
+        int[] child = trie.child;
+        int[] fallback = trie.fallback;
+        int[] skip = trie.skip;
+        Signature[] matches = trie.match;
+        int node = 0;
+        Signature match = matches[0];
+        while (true) {
+            int wildcards = skip[node];
+            if (wildcards < 0) {
+                break;
+            }
+            if (wildcards > 0) {
+                position += wildcards;
+                if (position > limit) {
+                    break;
+                }
+                node = fallback[node];
+            } else {
+                if (position >= limit) {
+                    break;
+                }
+                int index = base[node] + (header[position++] & 0xFF);
+                node = check[index] == node ? child[index] : fallback[node];
+                if (node < 0) {
+                    break;
+                }
+            }
+            if (matches[node] != null) {
+                match = matches[node];
+            }
+        }
+        return match;
+    }
+
+    /**
+     * 把签名编译为trie：节点以（深度、仍可能命中的签名集合）区分，相同的节点只生成一次，
+     * 因此任意字节（如ftyp前的box长度、RIFF长度）不会按256个取值展开成多条路径。
+     * 所有字节值都指向同一子节点的连续节点合并为一次跳转，偏移较大的签名（如tar的"ustar"）不必逐字节走过前面的字节。
+     */
+    private synchronized Trie compile() {
+        if (trie != null) {
+            return trie;
+        }
+        Signature[] all = signatures.toArray(new Signature[0]);
+        List<BitSet> sets = new ArrayList<>();
+        List<Integer> depths = new ArrayList<>();
+        List<Map<BitSet, Integer>> ids = new ArrayList<>();
+        BitSet start = new BitSet(all.length);
+        start.set(0, all.length);
+        node(start, 0, sets, depths, ids);
+
+        // 每个节点：不限取值的签名走向fallback，需要特定字节值的签名单独记为(字节值, 子节点)
+        List<int[]> keys = new ArrayList<>();
+        List<int[]> children = new ArrayList<>();
+        List<Integer> fallbacks = new ArrayList<>();
+        List<Signature> matches = new ArrayList<>();
+        for (int node = 0; node < sets.size(); node++) {
+            BitSet alive = sets.get(node);
+            int depth = depths.get(node);
+            Signature match = null;
+            BitSet any = new BitSet(all.length);
+            BitSet[] specific = new BitSet[256];
+            boolean pending = false;
+            for (int i = alive.nextSetBit(0); i >= 0; i = alive.nextSetBit(i + 1)) {
+                Signature signature = all[i];
+                if (signature.end() == depth) {
+                    if (match == null) {
+                        match = signature; // 按注册顺序遍历，第一个即为结束位置相同时先注册的签名
+                    }
+                    continue;
+                }
+                pending = true;
+                int index = depth - signature.offset;
+                int mask = index < 0 ? 0 : signature.mask[index] & 0xFF;
+                int value = index < 0 ? 0 : signature.bytes[index] & 0xFF;
+                if (mask == 0) {
+                    any.set(i);
+                } else if (mask == 0xFF) {
+                    specific(specific, value, all.length).set(i);
+                } else {
+                    for (int b = 0; b < 256; b++) {
+                        if ((b & mask) == value) {
+                            specific(specific, b, all.length).set(i);
+                        }
+                    }
+                }
+            }
+            matches.add(match);
+            int fallback = pending && !any.isEmpty() ? node(any, depth + 1, sets, depths, ids) : -1;
+            int count = 0;
+            for (BitSet set : specific) {
+                if (set != null) {
+                    count++;
+                }
+            }
+            int[] nodeKeys = new int[count];
+            int[] nodeChildren = new int[count];
+            count = 0;
+            for (int b = 0; b < 256; b++) {
+                if (specific[b] != null) {
+                    specific[b].or(any);
+                    nodeKeys[count] = b;
+                    nodeChildren[count++] = node(specific[b], depth + 1, sets, depths, ids);
+                }
+            }
+            keys.add(pending ? nodeKeys : null);
+            children.add(nodeChildren);
+            fallbacks.add(fallback);
+        }
+        return trie = pack(keys, children, fallbacks, matches);
+    }
+
+    private static BitSet specific(BitSet[] specific, int value, int size) {
+        if (specific[value] == null) {
+            specific[value] = new BitSet(size);
+        }
+        return specific[value];
+    }
+
+    /**
+     * 取得（深度、签名集合）对应的节点编号，没有时新建
+     */
+    private static int node(BitSet alive, int depth, List<BitSet> sets, List<Integer> depths,
+                            List<Map<BitSet, Integer>> ids) {
+        while (ids.size() <= depth) {
+            ids.add(new HashMap<>());
+        }
+        Integer id = ids.get(depth).get(alive);
+        if (id == null) {
+            id = sets.size();
+            sets.add(alive);
+            depths.add(depth);
+            ids.get(depth).put(alive, id);
+        }
+        return id;
+    }
+
+    /**
+     * 按首次适配把各节点的(字节值, 子节点)放入双数组，并把只通向fallback的连续节点合并为一次跳转
+     * （跳转终点为第一个有签名结束或需要区分字节值的节点）
+     */
+    private static Trie pack(List<int[]> keys, List<int[]> children, List<Integer> fallbacks, List<Signature> matches) {
+        int count = keys.size();
+        int[] base = new int[count];
+        int[] fallback = new int[count];
+        int[] skip = new int[count];
+        int[] check = new int[512];
+        int[] child = new int[512];
+        Arrays.fill(check, -1);
+        BitSet used = new BitSet();
+        for (int node = 0; node < count; node++) {
+            fallback[node] = fallbacks.get(node);
+            if (keys.get(node) == null) {
+                skip[node] = -1;
+            }
+        }
+        // 字节值多的节点先放，只有一两个字节值的节点再填补剩下的空位
+        Integer[] order = new Integer[count];
+        for (int node = 0; node < count; node++) {
+            order[node] = node;
+        }
+        Arrays.sort(order, (a, b) -> length(keys.get(b)) - length(keys.get(a)));
+        int firstFree = 0;
+        for (int node : order) {
+            int[] nodeKeys = keys.get(node);
+            if (length(nodeKeys) == 0) {
+                break;
+            }
+            int position = Math.max(0, firstFree - nodeKeys[0]);
+            for (int attempt = 0; ; attempt++) {
+                if (attempt == MAX_PACK_ATTEMPTS) {
+                    position = used.length(); // 找不到空位时放在末尾，避免字节值多的节点逐个位置尝试
+                    break;
+                }
+                position = used.nextClearBit(position + nodeKeys[0]) - nodeKeys[0];
+                if (fits(used, position, nodeKeys)) {
+                    break;
+                }
+                position++;
+            }
+            base[node] = position;
+            if (position + 256 > check.length) {
+                int length = check.length;
+                check = Arrays.copyOf(check, Math.max(length * 2, position + 256));
+                child = Arrays.copyOf(child, check.length);
+                Arrays.fill(check, length, check.length, -1);
+            }
+            for (int i = 0; i < nodeKeys.length; i++) {
+                int index = position + nodeKeys[i];
+                used.set(index);
+                check[index] = node;
+                child[index] = children.get(node)[i];
+            }
+            firstFree = used.nextClearBit(firstFree);
+        }
+        // 每个base之后都要留出256项，截掉多分配的部分
+        int end = 256;
+        for (int node = 0; node < count; node++) {
+            end = Math.max(end, base[node] + 256);
+        }
+        check = Arrays.copyOf(check, end);
+        child = Arrays.copyOf(child, end);
+
+        int[] jump = fallback.clone();
+        for (int node = 0; node < count; node++) {
+            int target = node;
+            int wildcards = 0;
+            while (isWildcard(keys.get(target), fallback[target]) && (wildcards == 0 || matches.get(target) == null)) {
+                target = fallback[target];
+                wildcards++;
+            }
+            if (wildcards > 0) {
+                skip[node] = wildcards;
+                jump[node] = target;
+            }
+        }
+        fallback = jump;
+        return new Trie(base, check, child, fallback, skip, matches.toArray(new Signature[0]));
+    }
+
+    private static int length(int[] keys) {
+        return keys == null ? 0 : keys.length;
+    }
+
+    private static boolean fits(BitSet used, int position, int[] keys) {
+        for (int key : keys) {
+            if (used.get(position + key)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 没有需要区分的字节值、所有字节都通向同一个子节点
+     */
+    private static boolean isWildcard(int[] keys, int fallback) {
+        return keys != null && keys.length == 0 && fallback >= 0;
+    }
+}
@@ -0,0 +1,21 @@
+package com.felix.watermark.digital.images;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * 可以把已写入内容直接包装为ByteBuffer的输出流，避免toByteArray()的整体拷贝
+ */
+final class ByteBufferOutputStream extends ByteArrayOutputStream {
+
+    ByteBufferOutputStream(int initialSize) {
+        super(Math.max(32, initialSize));
+    }
+
+    /**
+     * 包装当前已写入的内容，之后不应再写入本流
+     */
+    ByteBuffer toByteBuffer() {
+        return ByteBuffer.wrap(buf, 0, count);
+    }
+}
@@ -7,12 +7,63 @@ import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
 
 /**
  * 基于DCT（离散余弦变换）的数字水印
  * @author 刘飞
  */
-public class DCTWatermark {
+public class DCTWatermark implements Watermarker {
+
+    private static final int BLOCK_SIZE = 8;
+
+    private static final double[] COS_TABLE = createCosTable();
+
+    /** 固定嵌入强度，自适应模式下作为基础强度 */
+    private static final double EMBED_STRENGTH = 25.0;
+
+    /** 自适应模式下缩放系数为1的块内交流系数均方根（正交DCT下约等于像素标准差） */
+    private static final double TEXTURE_REFERENCE = 8.0;
+
+    private final WatermarkWorkspace workspace = new WatermarkWorkspace();
+
+    private final PerceptualMask mask;
+
+    /**
+     * 使用固定嵌入强度
+     */
+    public DCTWatermark() {
+        this(null);
+    }
+
+    /**
+     * 使用按块自适应的嵌入强度
+     *
+     * @param mask 感知掩蔽模型，为null时使用固定强度
+     */
+    public DCTWatermark(PerceptualMask mask) {
+        this.mask = mask;
+    }
+
+    @Override
+    public int capacity(int width, int height) {
+        return (width / BLOCK_SIZE) * (height / BLOCK_SIZE) / 8;
+    }
+
+    @Override
+    public BufferedImage embed(BufferedImage image, byte[] payload) {
+        embedBinary(image, WatermarkBits.view(payload), workspace, mask);
+        return image;
+    }
+
+    @Override
+    public byte[] extract(BufferedImage image, int payloadLength) {
+        byte[] payload = new byte[payloadLength];
+        int bits = extractBits(image, payloadLength * 8, payload, workspace);
+        return bits == payloadLength * 8 ? payload : Arrays.copyOf(payload, bits / 8);
+    }
 
     /**
      * 将水印嵌入图像中
@@ -25,72 +76,91 @@ public class DCTWatermark {
     public static void embed(File imageFile, File outputFile, String watermark) throws IOException {
         // 读取原始图像
         BufferedImage image = ImageIO.read(imageFile);
+        embedBinary(image, toBinaryString(watermark));
+
+        // 保存嵌入水印后的图像
+        ImageIO.write(image, "png", outputFile);
+    }
+
+    /**
+     * 将二进制位串原地嵌入图像（内存版本，不涉及编解码）
+     * 每个8x8块的中频系数(3,3)承载1位，使用当前线程的工作区
+     *
+     * @param image 原始图像，直接修改
+     * @param watermarkBinary 由'0'/'1'组成的水印位串
+     */
+    public static void embedBinary(BufferedImage image, CharSequence watermarkBinary) {
+        embedBinary(image, watermarkBinary, WatermarkWorkspace.current());
+    }
+
+    /**
+     * 将二进制位串原地嵌入图像，使用调用方提供的工作区
+     *
+     * @param image 原始图像，直接修改
+     * @param watermarkBinary 由'0'/'1'组成的水印位串
+     * @param workspace 可复用工作区
+     */
+    public static void embedBinary(BufferedImage image, CharSequence watermarkBinary, WatermarkWorkspace workspace) {
+        embedBinary(image, watermarkBinary, workspace, null);
+    }
+
+    /**
+     * 将二进制位串原地嵌入图像，按感知掩蔽模型逐块调整嵌入强度
+     * 掩蔽所需的平均亮度和纹理活动度直接取自同一次DCT的直流和交流系数，不需要额外遍历图像
+     *
+     * @param image 原始图像，直接修改
+     * @param watermarkBinary 由'0'/'1'组成的水印位串
+     * @param workspace 可复用工作区
+     * @param mask 感知掩蔽模型，为null时使用固定强度
+     */
+    public static void embedBinary(BufferedImage image, CharSequence watermarkBinary, WatermarkWorkspace workspace,
+                                   PerceptualMask mask) {
         int width = image.getWidth();
         int height = image.getHeight();
-
-        // 将水印转换为二进制
-        String watermarkBinary = toBinaryString(watermark);
         int watermarkLength = watermarkBinary.length();
 
         // 检查容量
-        int blockSize = 8;
-        int blocksPerRow = width / blockSize;
-        int blocksPerCol = height / blockSize;
+        int blocksPerRow = width / BLOCK_SIZE;
+        int blocksPerCol = height / BLOCK_SIZE;
         if (watermarkLength > blocksPerRow * blocksPerCol) {
             throw new IllegalArgumentException("水印信息过长");
         }
 
+        // 一次读取一整条8行像素带
+        int[] strip = workspace.pixels(width * BLOCK_SIZE);
+        double[] block = workspace.block;
+        double[] dctBlock = workspace.coefficients;
+
         int bitIndex = 0;
-        for (int by = 0; by < blocksPerCol; by++) {
-            for (int bx = 0; bx < blocksPerRow; bx++) {
-                if (bitIndex >= watermarkLength) break;
-
-                // 获取8x8像素块
-                int[][] block = new int[blockSize][blockSize];
-                for (int y = 0; y < blockSize; y++) {
-                    for (int x = 0; x < blockSize; x++) {
-                        int px = bx * blockSize + x;
-                        int py = by * blockSize + y;
-                        block[y][x] = image.getRGB(px, py) & 0xFF; // 取亮度值
-                    }
-                }
+        for (int by = 0; by < blocksPerCol && bitIndex < watermarkLength; by++) {
+            int blocksInStrip = Math.min(blocksPerRow, watermarkLength - bitIndex);
+            int stripWidth = blocksInStrip * BLOCK_SIZE;
+            image.getRGB(0, by * BLOCK_SIZE, stripWidth, BLOCK_SIZE, strip, 0, width);
+
+            for (int bx = 0; bx < blocksInStrip; bx++) {
+                // 获取8x8像素块的亮度值
+                loadBlock(strip, width, bx * BLOCK_SIZE, block);
 
-                // 应用DCT变换（简化实现）
-                double[][] dctBlock = applyDCT(block);
+                // 应用DCT变换
+                applyDCT(block, dctBlock, workspace.temp);
 
                 // 在中频系数中嵌入水印（位置(3,3)）
                 char bit = watermarkBinary.charAt(bitIndex++);
-                double delta = 25.0; // 嵌入强度
+                double delta = mask == null ? EMBED_STRENGTH : EMBED_STRENGTH * blockFactor(dctBlock, mask); // 嵌入强度
                 if (bit == '1') {
-                    dctBlock[3][3] += delta;
+                    dctBlock[3 * BLOCK_SIZE + 3] += delta;
                 } else {
-                    dctBlock[3][3] -= delta;
+                    dctBlock[3 * BLOCK_SIZE + 3] -= delta;
                 }
 
                 // 应用逆DCT变换
-                int[][] idctBlock = applyIDCT(dctBlock);
-
-                // 更新图像块
-                for (int y = 0; y < blockSize; y++) {
-                    for (int x = 0; x < blockSize; x++) {
-                        int px = bx * blockSize + x;
-                        int py = by * blockSize + y;
-                        int rgb = image.getRGB(px, py);
-                        int r = (rgb >> 16) & 0xFF;
-                        int g = (rgb >> 8) & 0xFF;
-                        int bVal = (rgb) & 0xFF;
-
-                        // 只更新亮度分量（简化处理）
-                        int newLum = clamp(idctBlock[y][x]);
-                        int newRgb = (r << 16) | (g << 8) | newLum;
-                        image.setRGB(px, py, newRgb);
-                    }
-                }
+                applyIDCT(dctBlock, block, workspace.temp);
+
+                // 只更新亮度分量（简化处理）
+                storeBlock(block, strip, width, bx * BLOCK_SIZE);
             }
+            image.setRGB(0, by * BLOCK_SIZE, stripWidth, BLOCK_SIZE, strip, 0, width);
         }
-
-        // 保存嵌入水印后的图像
-        ImageIO.write(image, "png", outputFile);
     }
 
     /**
@@ -102,79 +172,44 @@ public class DCTWatermark {
      * @throws IOException 如果流处理发生错误
      */
     public static OutputStream embed(InputStream imageStream, String watermark) throws IOException {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        embed(imageStream, outputStream, watermark);
+        return outputStream;
+    }
+
+    /**
+     * 将水印嵌入图像并以PNG格式直接写入调用方的输出流，不经过中间字节数组
+     *
+     * @param imageStream 原始图像输入流
+     * @param output 目标输出流，写入完成后保持打开
+     * @param watermark 水印文本
+     * @throws IOException 如果流处理发生错误
+     */
+    public static void embed(InputStream imageStream, OutputStream output, String watermark) throws IOException {
         // 读取原始图像
         BufferedImage image = ImageIO.read(imageStream);
-        int width = image.getWidth();
-        int height = image.getHeight();
 
         // 将水印转换为二进制
         String watermarkBinary = toBinaryString(watermark);
-        int watermarkLength = watermarkBinary.length();
-        
-        System.out.println("水印二进制长度: " + watermarkLength);
+        System.out.println("水印二进制长度: " + watermarkBinary.length());
         System.out.println("水印二进制内容: " + watermarkBinary);
 
-        // 检查容量
-        int blockSize = 8;
-        int blocksPerRow = width / blockSize;
-        int blocksPerCol = height / blockSize;
-        if (watermarkLength > blocksPerRow * blocksPerCol) {
-            throw new IllegalArgumentException("水印信息过长");
-        }
-
-        int bitIndex = 0;
-        for (int by = 0; by < blocksPerCol; by++) {
-            for (int bx = 0; bx < blocksPerRow; bx++) {
-                if (bitIndex >= watermarkLength) break;
-
-                // 获取8x8像素块
-                int[][] block = new int[blockSize][blockSize];
-                for (int y = 0; y < blockSize; y++) {
-                    for (int x = 0; x < blockSize; x++) {
-                        int px = bx * blockSize + x;
-                        int py = by * blockSize + y;
-                        block[y][x] = image.getRGB(px, py) & 0xFF; // 取亮度值
-                    }
-                }
-
-                // 应用DCT变换（简化实现）
-                double[][] dctBlock = applyDCT(block);
-
-                // 在中频系数中嵌入水印（位置(3,3)）
-                char bit = watermarkBinary.charAt(bitIndex++);
-                double delta = 25.0; // 嵌入强度
-                if (bit == '1') {
-                    dctBlock[3][3] += delta;
-                } else {
-                    dctBlock[3][3] -= delta;
-                }
-
-                // 应用逆DCT变换
-                int[][] idctBlock = applyIDCT(dctBlock);
-
-                // 更新图像块
-                for (int y = 0; y < blockSize; y++) {
-                    for (int x = 0; x < blockSize; x++) {
-                        int px = bx * blockSize + x;
-                        int py = by * blockSize + y;
-                        int rgb = image.getRGB(px, py);
-                        int r = (rgb >> 16) & 0xFF;
-                        int g = (rgb >> 8) & 0xFF;
-                        int bVal = (rgb) & 0xFF;
-
-                        // 只更新亮度分量（简化处理）
-                        int newLum = clamp(idctBlock[y][x]);
-                        int newRgb = (r << 16) | (g << 8) | newLum;
-                        image.setRGB(px, py, newRgb);
-                    }
-                }
-            }
-        }
+        embedBinary(image, watermarkBinary);
 
         // 将处理后的图像写入输出流
-        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
-        ImageIO.write(image, "png", outputStream);
-        return outputStream;
+        WatermarkImageIO.writePng(image, output);
+    }
+
+    /**
+     * 将水印嵌入图像并以PNG格式直接写入通道（例如Socket或文件通道）
+     *
+     * @param imageStream 原始图像输入流
+     * @param output 目标通道，写入完成后保持打开
+     * @param watermark 水印文本
+     * @throws IOException 如果流处理发生错误
+     */
+    public static void embed(InputStream imageStream, WritableByteChannel output, String watermark) throws IOException {
+        embed(imageStream, Channels.newOutputStream(output), watermark);
     }
 
     /**
@@ -187,45 +222,11 @@ public class DCTWatermark {
      */
     public static String extract(InputStream watermarkedImageStream, int length) throws IOException {
         BufferedImage image = ImageIO.read(watermarkedImageStream);
-        int width = image.getWidth();
-        int height = image.getHeight();
 
-        int blockSize = 8;
-        int blocksPerRow = width / blockSize;
-        int blocksPerCol = height / blockSize;
-        
         // 估计每个字符平均需要的二进制位数（UTF-8中文约3字节，即24位）
-        int estimatedBinaryLength = length * 24;
-        
-        StringBuilder extracted = new StringBuilder(estimatedBinaryLength);
-        int bitIndex = 0;
-
-        for (int by = 0; by < blocksPerCol; by++) {
-            for (int bx = 0; bx < blocksPerRow; bx++) {
-                if (bitIndex >= estimatedBinaryLength) break;
-
-                // 获取8x8像素块
-                int[][] block = new int[blockSize][blockSize];
-                for (int y = 0; y < blockSize; y++) {
-                    for (int x = 0; x < blockSize; x++) {
-                        int px = bx * blockSize + x;
-                        int py = by * blockSize + y;
-                        block[y][x] = image.getRGB(px, py) & 0xFF; // 取亮度值
-                    }
-                }
-
-                // 应用DCT变换
-                double[][] dctBlock = applyDCT(block);
-
-                // 提取中频系数(3,3)的值
-                double coeff = dctBlock[3][3];
-                extracted.append(coeff > 0 ? '1' : '0');
-                bitIndex++;
-            }
-        }
+        String extractedBinary = extractBinary(image, length * 24);
 
         // 将二进制水印信息转换为文本
-        String extractedBinary = extracted.toString();
         System.out.println("提取的二进制长度: " + extractedBinary.length());
         System.out.println("提取的二进制内容: " + extractedBinary);
         
@@ -254,98 +255,185 @@ public class DCTWatermark {
      */
     public static String extract(File watermarkedImage, int length) throws IOException {
         BufferedImage image = ImageIO.read(watermarkedImage);
+
+        // 将二进制水印信息转换为文本
+        return binaryToString(extractBinary(image, length * 8));
+    }
+
+    /**
+     * 从图像中提取指定位数的二进制位串（内存版本，不涉及编解码），使用当前线程的工作区
+     *
+     * @param image 嵌入水印的图像
+     * @param binaryLength 需要提取的位数
+     * @return 由'0'/'1'组成的位串，图像容量不足时返回全部可提取位
+     */
+    public static String extractBinary(BufferedImage image, int binaryLength) {
+        return extractBinary(image, binaryLength, WatermarkWorkspace.current());
+    }
+
+    /**
+     * 从图像中提取指定位数的二进制位串，使用调用方提供的工作区
+     *
+     * @param image 嵌入水印的图像
+     * @param binaryLength 需要提取的位数
+     * @param workspace 可复用工作区
+     * @return 由'0'/'1'组成的位串，图像容量不足时返回全部可提取位
+     */
+    public static String extractBinary(BufferedImage image, int binaryLength, WatermarkWorkspace workspace) {
+        byte[] bits = new byte[(binaryLength + 7) / 8];
+        int extractedBits = extractBits(image, binaryLength, bits, workspace);
+        return WatermarkBits.toBinaryString(bits, extractedBits);
+    }
+
+    /**
+     * 提取指定位数，按高位在前写入out
+     *
+     * @return 实际提取的位数
+     */
+    static int extractBits(BufferedImage image, int binaryLength, byte[] out, WatermarkWorkspace workspace) {
         int width = image.getWidth();
         int height = image.getHeight();
 
-        int blockSize = 8;
-        int blocksPerRow = width / blockSize;
-        int blocksPerCol = height / blockSize;
+        int blocksPerRow = width / BLOCK_SIZE;
+        int blocksPerCol = height / BLOCK_SIZE;
+
+        int[] strip = workspace.pixels(width * BLOCK_SIZE);
+        double[] block = workspace.block;
+        double[] dctBlock = workspace.coefficients;
 
-        StringBuilder extracted = new StringBuilder(length * 8);
         int bitIndex = 0;
+        for (int by = 0; by < blocksPerCol && bitIndex < binaryLength; by++) {
+            int blocksInStrip = Math.min(blocksPerRow, binaryLength - bitIndex);
+            image.getRGB(0, by * BLOCK_SIZE, blocksInStrip * BLOCK_SIZE, BLOCK_SIZE, strip, 0, width);
 
-        for (int by = 0; by < blocksPerCol; by++) {
-            for (int bx = 0; bx < blocksPerRow; bx++) {
-                if (bitIndex >= length * 8) break;
-
-                // 获取8x8像素块
-                int[][] block = new int[blockSize][blockSize];
-                for (int y = 0; y < blockSize; y++) {
-                    for (int x = 0; x < blockSize; x++) {
-                        int px = bx * blockSize + x;
-                        int py = by * blockSize + y;
-                        block[y][x] = image.getRGB(px, py) & 0xFF; // 取亮度值
-                    }
-                }
+            for (int bx = 0; bx < blocksInStrip; bx++) {
+                loadBlock(strip, width, bx * BLOCK_SIZE, block);
 
                 // 应用DCT变换
-                double[][] dctBlock = applyDCT(block);
+                applyDCT(block, dctBlock, workspace.temp);
 
                 // 提取中频系数(3,3)的值
-                double coeff = dctBlock[3][3];
-                extracted.append(coeff > 0 ? '1' : '0');
+                if (dctBlock[3 * BLOCK_SIZE + 3] > 0) {
+                    WatermarkBits.setBit(out, bitIndex);
+                }
                 bitIndex++;
             }
         }
+        return bitIndex;
+    }
+
+    /**
+     * 根据块的DCT系数计算强度缩放系数
+     * 直流系数为8倍平均亮度，交流系数均方根反映块内纹理（不计承载水印的(3,3)系数）
+     */
+    private static double blockFactor(double[] dctBlock, PerceptualMask mask) {
+        double energy = 0.0;
+        for (int i = 1; i < BLOCK_SIZE * BLOCK_SIZE; i++) {
+            energy += dctBlock[i] * dctBlock[i];
+        }
+        energy -= dctBlock[3 * BLOCK_SIZE + 3] * dctBlock[3 * BLOCK_SIZE + 3];
+        double activity = Math.sqrt(energy / (BLOCK_SIZE * BLOCK_SIZE - 2));
+        return mask.factor(dctBlock[0] / BLOCK_SIZE, activity, TEXTURE_REFERENCE);
+    }
+
+    /**
+     * 从像素带中取出一个8x8块的亮度值（蓝色通道）
+     */
+    private static void loadBlock(int[] strip, int stride, int x0, double[] block) {
+        for (int y = 0; y < BLOCK_SIZE; y++) {
+            int row = y * stride + x0;
+            for (int x = 0; x < BLOCK_SIZE; x++) {
+                block[y * BLOCK_SIZE + x] = strip[row + x] & 0xFF; // 取亮度值
+            }
+        }
+    }
 
-        // 将二进制水印信息转换为文本
-        return binaryToString(extracted.toString());
+    /**
+     * 将8x8块的亮度值写回像素带，其余通道保持不变
+     */
+    private static void storeBlock(double[] block, int[] strip, int stride, int x0) {
+        for (int y = 0; y < BLOCK_SIZE; y++) {
+            int row = y * stride + x0;
+            for (int x = 0; x < BLOCK_SIZE; x++) {
+                int newLum = clamp((int) (block[y * BLOCK_SIZE + x] + 0.5));
+                strip[row + x] = (strip[row + x] & 0xFFFFFF00) | newLum;
+            }
+        }
     }
 
     /**
      * 应用离散余弦变换（DCT）
+     * 利用可分离性先按行后按列做一维变换，余弦系数查表
      *
-     * @param block 图像块
-     * @return DCT变换后的系数矩阵
+     * @param block 8x8图像块（行优先）
+     * @param dct 输出的DCT系数（行优先）
+     * @param temp 中间结果缓冲区
      */
-    private static double[][] applyDCT(int[][] block) {
-        int size = block.length;
-        double[][] dct = new double[size][size];
-
-        for (int u = 0; u < size; u++) {
-            for (int v = 0; v < size; v++) {
+    private static void applyDCT(double[] block, double[] dct, double[] temp) {
+        // 行变换：temp[x][v] = Σy C[v][y] * block[x][y]
+        for (int x = 0; x < BLOCK_SIZE; x++) {
+            for (int v = 0; v < BLOCK_SIZE; v++) {
                 double sum = 0.0;
-                for (int x = 0; x < size; x++) {
-                    for (int y = 0; y < size; y++) {
-                        double cu = (u == 0) ? 1.0 / Math.sqrt(2) : 1.0;
-                        double cv = (v == 0) ? 1.0 / Math.sqrt(2) : 1.0;
-                        double cos1 = Math.cos((2*x+1)*u*Math.PI/(2.0*size));
-                        double cos2 = Math.cos((2*y+1)*v*Math.PI/(2.0*size));
-                        sum += cu * cv * block[x][y] * cos1 * cos2;
-                    }
+                for (int y = 0; y < BLOCK_SIZE; y++) {
+                    sum += COS_TABLE[v * BLOCK_SIZE + y] * block[x * BLOCK_SIZE + y];
                 }
-                dct[u][v] = 0.25 * sum;
+                temp[x * BLOCK_SIZE + v] = sum;
+            }
+        }
+        // 列变换：dct[u][v] = 0.25 * Σx C[u][x] * temp[x][v]
+        for (int u = 0; u < BLOCK_SIZE; u++) {
+            for (int v = 0; v < BLOCK_SIZE; v++) {
+                double sum = 0.0;
+                for (int x = 0; x < BLOCK_SIZE; x++) {
+                    sum += COS_TABLE[u * BLOCK_SIZE + x] * temp[x * BLOCK_SIZE + v];
+                }
+                dct[u * BLOCK_SIZE + v] = 0.25 * sum;
             }
         }
-        return dct;
     }
 
     /**
      * 应用逆离散余弦变换（IDCT）
      *
-     * @param dct DCT系数矩阵
-     * @return IDCT变换后的图像块
+     * @param dct DCT系数（行优先）
+     * @param block 输出的8x8图像块（行优先，未取整）
+     * @param temp 中间结果缓冲区
      */
-    private static int[][] applyIDCT(double[][] dct) {
-        int size = dct.length;
-        int[][] block = new int[size][size];
-
-        for (int x = 0; x < size; x++) {
-            for (int y = 0; y < size; y++) {
+    private static void applyIDCT(double[] dct, double[] block, double[] temp) {
+        // temp[x][v] = Σu C[u][x] * dct[u][v]
+        for (int x = 0; x < BLOCK_SIZE; x++) {
+            for (int v = 0; v < BLOCK_SIZE; v++) {
                 double sum = 0.0;
-                for (int u = 0; u < size; u++) {
-                    for (int v = 0; v < size; v++) {
-                        double cu = (u == 0) ? 1.0 / Math.sqrt(2) : 1.0;
-                        double cv = (v == 0) ? 1.0 / Math.sqrt(2) : 1.0;
-                        double cos1 = Math.cos((2*x+1)*u*Math.PI/(2.0*size));
-                        double cos2 = Math.cos((2*y+1)*v*Math.PI/(2.0*size));
-                        sum += cu * cv * dct[u][v] * cos1 * cos2;
-                    }
+                for (int u = 0; u < BLOCK_SIZE; u++) {
+                    sum += COS_TABLE[u * BLOCK_SIZE + x] * dct[u * BLOCK_SIZE + v];
                 }
-                block[x][y] = clamp((int) (0.25 * sum + 0.5));
+                temp[x * BLOCK_SIZE + v] = sum;
+            }
+        }
+        // block[x][y] = 0.25 * Σv C[v][y] * temp[x][v]
+        for (int x = 0; x < BLOCK_SIZE; x++) {
+            for (int y = 0; y < BLOCK_SIZE; y++) {
+                double sum = 0.0;
+                for (int v = 0; v < BLOCK_SIZE; v++) {
+                    sum += COS_TABLE[v * BLOCK_SIZE + y] * temp[x * BLOCK_SIZE + v];
+                }
+                block[x * BLOCK_SIZE + y] = 0.25 * sum;
             }
         }
-        return block;
+    }
+
+    /**
+     * 预计算DCT余弦系数表：C[u][x] = c(u) * cos((2x+1)uπ/16)
+     */
+    private static double[] createCosTable() {
+        double[] table = new double[BLOCK_SIZE * BLOCK_SIZE];
+        for (int u = 0; u < BLOCK_SIZE; u++) {
+            double cu = (u == 0) ? 1.0 / Math.sqrt(2) : 1.0;
+            for (int x = 0; x < BLOCK_SIZE; x++) {
+                table[u * BLOCK_SIZE + x] = cu * Math.cos((2 * x + 1) * u * Math.PI / (2.0 * BLOCK_SIZE));
+            }
+        }
+        return table;
     }
 
     /**
@@ -355,17 +443,7 @@ public class DCTWatermark {
      * @return 二进制字符串
      */
     public static String toBinaryString(String text) {
-        try {
-            StringBuilder binary = new StringBuilder();
-            byte[] bytes = text.getBytes("UTF-8");
-            for (byte b : bytes) {
-                binary.append(String.format("%8s", Integer.toBinaryString(b & 0xFF)).replace(' ', '0'));
-            }
-            return binary.toString();
-        } catch (Exception e) {
-            e.printStackTrace();
-            return "";
-        }
+        return WatermarkBits.toBinaryString(text);
     }
 
     /**
@@ -375,21 +453,7 @@ public class DCTWatermark {
      * @return 文本
      */
     public static String binaryToString(String binary) {
-        try {
-            // 确保二进制字符串长度是8的倍数
-            int validLength = (binary.length() / 8) * 8;
-            if (validLength == 0) return "";
-            
-            byte[] bytes = new byte[validLength / 8];
-            for (int i = 0; i < validLength; i += 8) {
-                String byteStr = binary.substring(i, i + 8);
-                bytes[i / 8] = (byte) Integer.parseInt(byteStr, 2);
-            }
-            return new String(bytes, "UTF-8");
-        } catch (Exception e) {
-            e.printStackTrace();
-            return "";
-        }
+        return WatermarkBits.binaryToString(binary);
     }
 
     private static int clamp(int value) {
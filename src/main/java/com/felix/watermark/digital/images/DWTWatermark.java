@@ -1,13 +1,18 @@
 package com.felix.watermark.digital.images;
 
 import javax.imageio.ImageIO;
+import java.awt.AlphaComposite;
+import java.awt.Graphics2D;
 import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.ByteArrayOutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
 import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 import java.util.Base64;
 
 /**
@@ -16,7 +21,55 @@ import java.util.Base64;
  * 实现了在图像中嵌入和提取文本水印的功能
  * 支持文件和流两种操作方式
  */
-public class DWTWatermark {
+public class DWTWatermark implements Watermarker {
+
+    private static final double SQRT2 = Math.sqrt(2);
+
+    /** 固定嵌入强度，自适应模式下作为基础强度 */
+    private static final double EMBED_STRENGTH = 12.0;
+
+    /** 自适应模式下缩放系数为1的邻域平均亮度差 */
+    private static final double TEXTURE_REFERENCE = 8.0;
+
+    private final WatermarkWorkspace workspace = new WatermarkWorkspace();
+
+    private final PerceptualMask mask;
+
+    /**
+     * 使用固定嵌入强度
+     */
+    public DWTWatermark() {
+        this(null);
+    }
+
+    /**
+     * 使用按系数自适应的嵌入强度
+     *
+     * @param mask 感知掩蔽模型，为null时使用固定强度
+     */
+    public DWTWatermark(PerceptualMask mask) {
+        this.mask = mask;
+    }
+
+    @Override
+    public int capacity(int width, int height) {
+        return (width / 2) * (height / 2) / 8;
+    }
+
+    /**
+     * 将载荷直接按位嵌入HL子带（不经过Base64编码，与基于文本的静态方法不同）
+     */
+    @Override
+    public BufferedImage embed(BufferedImage image, byte[] payload) {
+        return embedBinary(image, WatermarkBits.view(payload), workspace, mask);
+    }
+
+    @Override
+    public byte[] extract(BufferedImage image, int payloadLength) {
+        byte[] payload = new byte[payloadLength];
+        int bits = extractBits(image, payloadLength * 8, payload, workspace);
+        return bits == payloadLength * 8 ? payload : Arrays.copyOf(payload, bits / 8);
+    }
 
     /**
      * 在图像文件中嵌入水印
@@ -28,68 +81,187 @@ public class DWTWatermark {
      */
     public static void embed(File imageFile, File outputFile, String watermark) throws IOException {
         BufferedImage image = ImageIO.read(imageFile);
-        int width = image.getWidth();
-        int height = image.getHeight();
 
         // 使用Base64编码水印文本
         String encodedWatermark = Base64.getEncoder().encodeToString(
                 watermark.getBytes(StandardCharsets.UTF_8));
         String watermarkBinary = toBinaryString(encodedWatermark);
+        System.out.println("Base64编码后水印: " + encodedWatermark);
+        System.out.println("水印二进制长度: " + watermarkBinary.length() + " 位");
+
+        BufferedImage watermarkedImage = embedBinary(image, watermarkBinary);
 
+        // 保存结果
+        ImageIO.write(watermarkedImage, "png", outputFile);
+    }
+
+    /**
+     * 将二进制位串嵌入图像的Y通道HL子带（内存版本，不涉及编解码），使用当前线程的工作区
+     *
+     * @param image 原始图像，TYPE_INT_RGB/ARGB时直接修改
+     * @param watermarkBinary 由'0'/'1'组成的水印位串
+     * @return 嵌入水印后的图像：TYPE_INT_RGB/ARGB时为传入的image，否则为新分配的TYPE_INT_RGB图像
+     */
+    public static BufferedImage embedBinary(BufferedImage image, CharSequence watermarkBinary) {
+        return embedBinary(image, watermarkBinary, WatermarkWorkspace.current());
+    }
+
+    /**
+     * 将二进制位串嵌入图像的Y通道HL子带，使用调用方提供的工作区
+     *
+     * @param image 原始图像，TYPE_INT_RGB/ARGB时直接修改
+     * @param watermarkBinary 由'0'/'1'组成的水印位串
+     * @param workspace 可复用工作区
+     * @return 嵌入水印后的图像：TYPE_INT_RGB/ARGB时为传入的image，否则为新分配的TYPE_INT_RGB图像
+     */
+    public static BufferedImage embedBinary(BufferedImage image, CharSequence watermarkBinary, WatermarkWorkspace workspace) {
+        return embedBinary(image, watermarkBinary, workspace, null);
+    }
+
+    /**
+     * 将二进制位串嵌入图像的Y通道HL子带，按感知掩蔽模型逐系数调整嵌入强度
+     * 掩蔽所需的邻域亮度和活动度取自计算系数时已读入的像素对及其下一行，不需要额外遍历图像
+     *
+     * @param image 原始图像，TYPE_INT_RGB/ARGB时直接修改
+     * @param watermarkBinary 由'0'/'1'组成的水印位串
+     * @param workspace 可复用工作区
+     * @param mask 感知掩蔽模型，为null时使用固定强度
+     * @return 嵌入水印后的图像：TYPE_INT_RGB/ARGB时为传入的image，否则为新分配的TYPE_INT_RGB图像
+     */
+    public static BufferedImage embedBinary(BufferedImage image, CharSequence watermarkBinary, WatermarkWorkspace workspace,
+                                            PerceptualMask mask) {
+        int width = image.getWidth();
+        int height = image.getHeight();
         int watermarkLength = watermarkBinary.length();
-        System.out.println("Base64编码后水印: " + encodedWatermark);
-        System.out.println("水印二进制长度: " + watermarkLength + " 位");
 
         // 计算最大容量
         int subbandWidth = width / 2;
         int subbandHeight = height / 2;
         int capacity = subbandWidth * subbandHeight;
-        System.out.println("图像容量: " + capacity + " 位");
-
         if (watermarkLength > capacity) {
             throw new IllegalArgumentException("水印信息过长，最大容量: " + capacity + " 位");
         }
 
-        // 将图像转换为YUV颜色空间
-        double[][][] yuvImage = convertRGBtoYUV(image);
-        double[][] yChannel = yuvImage[0];
-
-        // 应用DWT到Y通道
-        double[][][] subbands = applyDWT(yChannel);
-
-        // 在HL子带嵌入水印
-        double[][] hl = subbands[1];
-        int bitIndex = 0;
-        for (int y = 0; y < hl.length; y++) {
-            for (int x = 0; x < hl[0].length; x++) {
-                if (bitIndex >= watermarkLength) break;
-
-                char bit = watermarkBinary.charAt(bitIndex);
-                double delta = 12.0; // 增加嵌入强度
-
-                // 使用绝对值+符号法确保提取可靠性
-                double absValue = Math.abs(hl[y][x]);
-                if (bit == '1') {
-                    hl[y][x] = absValue + delta; // 正数表示1
-                } else {
-                    hl[y][x] = -(absValue + delta); // 负数表示0
+        if (watermarkLength == 0) {
+            return image;
+        }
+
+        // 只读取承载水印的HL系数所在的行，一次批量读取；自适应模式多读一行用于计算垂直方向活动度
+        int rows = (watermarkLength + subbandWidth - 1) / subbandWidth;
+        int readRows = mask == null ? rows : Math.min(rows + 1, height);
+        int[] pixels = workspace.pixels(readRows * width);
+        image.getRGB(0, 0, width, readRows, pixels, 0, width);
+
+        for (int bitIndex = 0; bitIndex < watermarkLength; bitIndex++) {
+            char bit = watermarkBinary.charAt(bitIndex);
+
+            int row = bitIndex / subbandWidth;
+            int left = row * width + 2 * (bitIndex % subbandWidth);
+            double leftLuma = luma(pixels[left]);
+            double rightLuma = luma(pixels[left + 1]);
+            double coefficient = (leftLuma - rightLuma) / SQRT2;
+
+            double delta = EMBED_STRENGTH;
+            if (mask != null) {
+                // 下一行在处理到它之前保持原值，因此邻域活动度始终基于原图
+                double activity = Math.abs(leftLuma - rightLuma);
+                if (row + 1 < readRows) {
+                    activity = (activity
+                            + Math.abs(leftLuma - luma(pixels[left + width]))
+                            + Math.abs(rightLuma - luma(pixels[left + width + 1]))) / 3;
                 }
-                bitIndex++;
+                delta *= mask.factor((leftLuma + rightLuma) / 2, activity, TEXTURE_REFERENCE);
             }
+
+            // 使用绝对值+符号法确保提取可靠性
+            double absValue = Math.abs(coefficient);
+            double target = bit == '1' ? absValue + delta : -(absValue + delta); // 正数表示1，负数表示0
+
+            // 逆变换只影响这一对像素的亮度：左像素Y增加、右像素Y减少(target - coefficient)/√2
+            double lumaDelta = (target - coefficient) / SQRT2;
+            pixels[left] = shiftLuma(pixels[left], lumaDelta);
+            pixels[left + 1] = shiftLuma(pixels[left + 1], -lumaDelta);
         }
-        System.out.println("实际嵌入位数: " + bitIndex);
 
-        // 应用逆DWT
-        double[][] reconstructedY = applyIDWT(subbands);
+        BufferedImage target = writableTarget(image);
+        target.setRGB(0, 0, width, rows, pixels, 0, width);
+        return target;
+    }
 
-        // 更新Y通道
-        yuvImage[0] = reconstructedY;
+    /**
+     * 嵌入结果写入的图像：TYPE_INT_RGB/ARGB直接写回原图；
+     * 调色板、灰度等图像写回时会把微小的亮度变化重新量化掉，改为复制到新的TYPE_INT_RGB图像中。
+     * 结果交给调用方持有，不能放在工作区中复用，否则同一线程的下一次嵌入会覆盖它
+     */
+    private static BufferedImage writableTarget(BufferedImage image) {
+        int type = image.getType();
+        if (type == BufferedImage.TYPE_INT_RGB || type == BufferedImage.TYPE_INT_ARGB) {
+            return image;
+        }
+        BufferedImage target = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = target.createGraphics();
+        try {
+            // Src按像素原样复制，与逐像素setRGB的结果相同
+            graphics.setComposite(AlphaComposite.Src);
+            graphics.drawImage(image, 0, 0, null);
+        } finally {
+            graphics.dispose();
+        }
+        return target;
+    }
 
-        // 转换回RGB
-        BufferedImage watermarkedImage = convertYUVtoRGB(yuvImage, width, height);
+    /**
+     * 从图像的Y通道HL子带中提取指定位数的二进制位串（内存版本，不涉及编解码），使用当前线程的工作区
+     *
+     * @param image 嵌入水印的图像
+     * @param binaryLength 需要提取的位数
+     * @return 由'0'/'1'组成的位串，图像容量不足时返回全部可提取位
+     */
+    public static String extractBinary(BufferedImage image, int binaryLength) {
+        return extractBinary(image, binaryLength, WatermarkWorkspace.current());
+    }
 
-        // 保存结果
-        ImageIO.write(watermarkedImage, "png", outputFile);
+    /**
+     * 从图像的Y通道HL子带中提取指定位数的二进制位串，使用调用方提供的工作区
+     *
+     * @param image 嵌入水印的图像
+     * @param binaryLength 需要提取的位数
+     * @param workspace 可复用工作区
+     * @return 由'0'/'1'组成的位串，图像容量不足时返回全部可提取位
+     */
+    public static String extractBinary(BufferedImage image, int binaryLength, WatermarkWorkspace workspace) {
+        byte[] bits = new byte[(binaryLength + 7) / 8];
+        int extractedBits = extractBits(image, binaryLength, bits, workspace);
+        return WatermarkBits.toBinaryString(bits, extractedBits);
+    }
+
+    /**
+     * 提取指定位数，按高位在前写入out
+     *
+     * @return 实际提取的位数
+     */
+    static int extractBits(BufferedImage image, int binaryLength, byte[] out, WatermarkWorkspace workspace) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        int available = Math.min(binaryLength, (width / 2) * (height / 2));
+
+        if (available == 0) {
+            return 0;
+        }
+
+        int subbandWidth = width / 2;
+        int rows = (available + subbandWidth - 1) / subbandWidth;
+        int[] pixels = workspace.pixels(rows * width);
+        image.getRGB(0, 0, width, rows, pixels, 0, width);
+
+        // 从HL子带提取水印，使用符号检测水印位（正数=1，负数=0）
+        for (int i = 0; i < available; i++) {
+            int left = (i / subbandWidth) * width + 2 * (i % subbandWidth);
+            if (hlCoefficient(pixels[left], pixels[left + 1]) > 0) {
+                WatermarkBits.setBit(out, i);
+            }
+        }
+        return available;
     }
 
     /**
@@ -102,32 +274,9 @@ public class DWTWatermark {
      */
     public static String extract(File watermarkedImage, int binaryLength) throws IOException {
         BufferedImage image = ImageIO.read(watermarkedImage);
-        int width = image.getWidth();
-        int height = image.getHeight();
-
-        // 将图像转换为YUV
-        double[][][] yuvImage = convertRGBtoYUV(image);
-
-        // 应用DWT到Y通道
-        double[][][] subbands = applyDWT(yuvImage[0]);
-
-        // 从HL子带提取水印
-        double[][] hl = subbands[1];
-        StringBuilder extractedBinary = new StringBuilder();
-
-        // 提取水印位
-        for (int y = 0; y < hl.length; y++) {
-            for (int x = 0; x < hl[0].length; x++) {
-                // 使用符号检测水印位（正数=1，负数=0）
-                char bit = hl[y][x] > 0 ? '1' : '0';
-                extractedBinary.append(bit);
-            }
-        }
-
-        System.out.println("提取的总位数: " + extractedBinary.length());
 
         // 截取有效长度
-        String validBinary = extractedBinary.substring(0, Math.min(binaryLength, extractedBinary.length()));
+        String validBinary = extractBinary(image, binaryLength);
         System.out.println("截取的有效位数: " + validBinary.length());
 
         // 转换为Base64字符串
@@ -167,157 +316,51 @@ public class DWTWatermark {
     }
 
     /**
-     * 应用一级离散小波变换(Haar小波)
-     * 
-     * @param data 输入数据矩阵
-     * @return 四个子带系数数组[LL, HL, LH, HH]
+     * 计算一级Haar小波HL子带中的一个系数
+     * HL子带第i个系数对应第i/(width/2)行、第2*(i%(width/2))列起的一对水平相邻像素，
+     * 只需这两个像素的亮度，不必对整幅Y平面做变换
+     *
+     * @param left 左像素ARGB
+     * @param right 右像素ARGB
+     * @return (Y左 - Y右) / √2
      */
-    private static double[][][] applyDWT(double[][] data) {
-        int width = data[0].length;
-        int height = data.length;
-        int newWidth = width / 2;
-        int newHeight = height / 2;
-
-        double[][] ll = new double[newHeight][newWidth];
-        double[][] hl = new double[newHeight][newWidth];
-        double[][] lh = new double[newHeight][newWidth];
-        double[][] hh = new double[newHeight][newWidth];
-
-        // 水平变换
-        for (int y = 0; y < height; y++) {
-            for (int x = 0; x < newWidth; x++) {
-                double left = data[y][2*x];
-                double right = data[y][2*x+1];
-                double avg = (left + right) / Math.sqrt(2);
-                double diff = (left - right) / Math.sqrt(2);
-
-                if (y < newHeight) {
-                    ll[y][x] = avg;
-                    hl[y][x] = diff;
-                } else {
-                    lh[y - newHeight][x] = avg;
-                    hh[y - newHeight][x] = diff;
-                }
-            }
-        }
-
-        return new double[][][]{ll, hl, lh, hh};
+    private static double hlCoefficient(int left, int right) {
+        return (luma(left) - luma(right)) / SQRT2;
     }
 
     /**
-     * 应用一级逆离散小波变换
-     * 
-     * @param subbands 四个子带系数数组[LL, HL, LH, HH]
-     * @return 重构后的数据矩阵
+     * 计算像素的亮度Y
      */
-    private static double[][] applyIDWT(double[][][] subbands) {
-        double[][] ll = subbands[0];
-        double[][] hl = subbands[1];
-        double[][] lh = subbands[2];
-        double[][] hh = subbands[3];
-
-        int width = ll[0].length * 2;
-        int height = ll.length * 2;
-        double[][] data = new double[height][width];
-
-        // 水平反变换
-        for (int y = 0; y < height; y++) {
-            for (int x = 0; x < width/2; x++) {
-                if (y < height/2) {
-                    double avg = ll[y][x];
-                    double diff = hl[y][x];
-                    data[y][2*x] = (avg + diff) / Math.sqrt(2);
-                    data[y][2*x+1] = (avg - diff) / Math.sqrt(2);
-                } else {
-                    int yy = y - height/2;
-                    double avg = lh[yy][x];
-                    double diff = hh[yy][x];
-                    data[y][2*x] = (avg + diff) / Math.sqrt(2);
-                    data[y][2*x+1] = (avg - diff) / Math.sqrt(2);
-                }
-            }
-        }
-
-        return data;
+    private static double luma(int rgb) {
+        int r = (rgb >> 16) & 0xFF;
+        int g = (rgb >> 8) & 0xFF;
+        int b = rgb & 0xFF;
+        return 0.299 * r + 0.587 * g + 0.114 * b;
     }
 
     /**
-     * 将RGB图像转换为YUV颜色空间
-     * 
-     * @param image 输入的RGB图像
-     * @return YUV三个通道的数据数组[Y, U, V]
+     * 将像素亮度平移delta，色度U/V保持不变
+     * R、G、B同时加delta时，Y的权重和为1因此Y恰好增加delta，U/V的权重和为0因此不变
+     *
+     * @param rgb 像素ARGB
+     * @param delta 亮度变化量
+     * @return 新的像素值，保留原alpha
      */
-    private static double[][][] convertRGBtoYUV(BufferedImage image) {
-        int width = image.getWidth();
-        int height = image.getHeight();
-        double[][] y = new double[height][width];
-        double[][] u = new double[height][width];
-        double[][] v = new double[height][width];
-
-        for (int row = 0; row < height; row++) {
-            for (int col = 0; col < width; col++) {
-                int rgb = image.getRGB(col, row);
-                int r = (rgb >> 16) & 0xFF;
-                int g = (rgb >> 8) & 0xFF;
-                int b = rgb & 0xFF;
-
-                // 转换公式
-                y[row][col] = 0.299 * r + 0.587 * g + 0.114 * b;
-                u[row][col] = -0.147 * r - 0.289 * g + 0.436 * b;
-                v[row][col] = 0.615 * r - 0.515 * g - 0.100 * b;
-            }
-        }
-
-        return new double[][][]{y, u, v};
+    private static int shiftLuma(int rgb, double delta) {
+        int r = clamp((int) Math.round(((rgb >> 16) & 0xFF) + delta));
+        int g = clamp((int) Math.round(((rgb >> 8) & 0xFF) + delta));
+        int b = clamp((int) Math.round((rgb & 0xFF) + delta));
+        return (rgb & 0xFF000000) | (r << 16) | (g << 8) | b;
     }
 
     /**
-     * 将YUV颜色空间转换为RGB图像
-     * 
-     * @param yuv YUV三个通道的数据数组[Y, U, V]
-     * @param width 图像宽度
-     * @param height 图像高度
-     * @return 转换后的RGB图像
-     */
-    private static BufferedImage convertYUVtoRGB(double[][][] yuv, int width, int height) {
-        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
-        double[][] y = yuv[0];
-        double[][] u = yuv[1];
-        double[][] v = yuv[2];
-
-        for (int row = 0; row < height; row++) {
-            for (int col = 0; col < width; col++) {
-                double yVal = y[row][col];
-                double uVal = u[row][col];
-                double vVal = v[row][col];
-
-                // 转换公式
-                int r = clamp((int)(yVal + 1.140 * vVal));
-                int g = clamp((int)(yVal - 0.395 * uVal - 0.581 * vVal));
-                int b = clamp((int)(yVal + 2.032 * uVal));
-
-                int rgb = (r << 16) | (g << 8) | b;
-                image.setRGB(col, row, rgb);
-            }
-        }
-
-        return image;
-    }
-
-    /**
-     * 将文本转换为二进制字符串
+     * 将文本转换为二进制字符串（UTF-8编码，每字节8位）
      * 
      * @param text 输入文本
      * @return 二进制字符串表示
      */
     public static String toBinaryString(String text) {
-        StringBuilder binary = new StringBuilder();
-        for (char c : text.toCharArray()) {
-            // 确保每个字符转换为8位二进制
-            String bin = String.format("%8s", Integer.toBinaryString(c)).replace(' ', '0');
-            binary.append(bin);
-        }
-        return binary.toString();
+        return WatermarkBits.toBinaryString(text);
     }
 
     /**
@@ -327,18 +370,7 @@ public class DWTWatermark {
      * @return 转换后的文本
      */
     private static String binaryToString(String binary) {
-        StringBuilder text = new StringBuilder();
-        // 每8位一组转换为字符
-        for (int i = 0; i < binary.length(); i += 8) {
-            if (i + 8 > binary.length()) break;
-            String byteStr = binary.substring(i, i + 8);
-            try {
-                text.append((char) Integer.parseInt(byteStr, 2));
-            } catch (NumberFormatException e) {
-                // 忽略无效字节
-            }
-        }
-        return text.toString();
+        return WatermarkBits.binaryToString(binary);
     }
 
     /**
@@ -360,71 +392,45 @@ public class DWTWatermark {
      * @throws IOException 如果图像流处理发生错误
      */
     public static OutputStream embed(InputStream imageInputStream, String watermark) throws IOException {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        embed(imageInputStream, outputStream, watermark);
+        return outputStream;
+    }
+
+    /**
+     * 嵌入水印并以PNG格式直接写入调用方的输出流，不经过中间字节数组
+     * 
+     * @param imageInputStream 原始图像输入流
+     * @param output 目标输出流，写入完成后保持打开
+     * @param watermark 水印文本
+     * @throws IOException 如果图像流处理发生错误
+     */
+    public static void embed(InputStream imageInputStream, OutputStream output, String watermark) throws IOException {
         BufferedImage image = ImageIO.read(imageInputStream);
-        int width = image.getWidth();
-        int height = image.getHeight();
 
         // 使用Base64编码水印文本
         String encodedWatermark = Base64.getEncoder().encodeToString(
                 watermark.getBytes(StandardCharsets.UTF_8));
         String watermarkBinary = toBinaryString(encodedWatermark);
-
-        int watermarkLength = watermarkBinary.length();
         System.out.println("Base64编码后水印: " + encodedWatermark);
-        System.out.println("水印二进制长度: " + watermarkLength + " 位");
-
-        // 计算最大容量
-        int subbandWidth = width / 2;
-        int subbandHeight = height / 2;
-        int capacity = subbandWidth * subbandHeight;
-        System.out.println("图像容量: " + capacity + " 位");
-
-        if (watermarkLength > capacity) {
-            throw new IllegalArgumentException("水印信息过长，最大容量: " + capacity + " 位");
-        }
-
-        // 将图像转换为YUV颜色空间
-        double[][][] yuvImage = convertRGBtoYUV(image);
-        double[][] yChannel = yuvImage[0];
-
-        // 应用DWT到Y通道
-        double[][][] subbands = applyDWT(yChannel);
-
-        // 在HL子带嵌入水印
-        double[][] hl = subbands[1];
-        int bitIndex = 0;
-        for (int y = 0; y < hl.length; y++) {
-            for (int x = 0; x < hl[0].length; x++) {
-                if (bitIndex >= watermarkLength) break;
-
-                char bit = watermarkBinary.charAt(bitIndex);
-                double delta = 12.0; // 增加嵌入强度
-
-                // 使用绝对值+符号法确保提取可靠性
-                double absValue = Math.abs(hl[y][x]);
-                if (bit == '1') {
-                    hl[y][x] = absValue + delta; // 正数表示1
-                } else {
-                    hl[y][x] = -(absValue + delta); // 负数表示0
-                }
-                bitIndex++;
-            }
-        }
-        System.out.println("实际嵌入位数: " + bitIndex);
-
-        // 应用逆DWT
-        double[][] reconstructedY = applyIDWT(subbands);
+        System.out.println("水印二进制长度: " + watermarkBinary.length() + " 位");
 
-        // 更新Y通道
-        yuvImage[0] = reconstructedY;
-
-        // 转换回RGB
-        BufferedImage watermarkedImage = convertYUVtoRGB(yuvImage, width, height);
+        BufferedImage watermarkedImage = embedBinary(image, watermarkBinary);
 
         // 将结果写入输出流
-        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
-        ImageIO.write(watermarkedImage, "png", outputStream);
-        return outputStream;
+        WatermarkImageIO.writePng(watermarkedImage, output);
+    }
+
+    /**
+     * 将水印嵌入图像并以PNG格式直接写入通道（例如Socket或文件通道）
+     *
+     * @param imageInputStream 原始图像输入流
+     * @param output 目标通道，写入完成后保持打开
+     * @param watermark 水印文本
+     * @throws IOException 如果图像流处理发生错误
+     */
+    public static void embed(InputStream imageInputStream, WritableByteChannel output, String watermark) throws IOException {
+        embed(imageInputStream, Channels.newOutputStream(output), watermark);
     }
     
     /**
@@ -437,32 +443,9 @@ public class DWTWatermark {
      */
     public static String extract(InputStream watermarkedImageStream, int binaryLength) throws IOException {
         BufferedImage image = ImageIO.read(watermarkedImageStream);
-        int width = image.getWidth();
-        int height = image.getHeight();
-
-        // 将图像转换为YUV
-        double[][][] yuvImage = convertRGBtoYUV(image);
-
-        // 应用DWT到Y通道
-        double[][][] subbands = applyDWT(yuvImage[0]);
-
-        // 从HL子带提取水印
-        double[][] hl = subbands[1];
-        StringBuilder extractedBinary = new StringBuilder();
-
-        // 提取水印位
-        for (int y = 0; y < hl.length; y++) {
-            for (int x = 0; x < hl[0].length; x++) {
-                // 使用符号检测水印位（正数=1，负数=0）
-                char bit = hl[y][x] > 0 ? '1' : '0';
-                extractedBinary.append(bit);
-            }
-        }
-
-        System.out.println("提取的总位数: " + extractedBinary.length());
 
         // 截取有效长度
-        String validBinary = extractedBinary.substring(0, Math.min(binaryLength, extractedBinary.length()));
+        String validBinary = extractBinary(image, binaryLength);
         System.out.println("截取的有效位数: " + validBinary.length());
 
         // 转换为Base64字符串
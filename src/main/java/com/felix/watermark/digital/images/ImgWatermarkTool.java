@@ -5,15 +5,26 @@ import net.coobird.thumbnailator.geometry.Position;
 import net.coobird.thumbnailator.geometry.Positions;
 import javax.imageio.ImageIO;
 import java.awt.*;
+import java.awt.geom.AffineTransform;
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.awt.image.WritableRaster;
 import java.io.File;
 import java.io.IOException;
+import java.util.stream.IntStream;
 
 /**
  * 图片水印工具类，支持添加文本水印和图片水印
+ * 单个定位水印基于Thumbnailator，平铺水印直接在像素数组上做预乘Alpha混合
  */
 public class ImgWatermarkTool {
 
+    /**
+     * 平铺水印按行带并行处理时，每个行带的最小行数
+     */
+    private static final int TILE_BAND_MIN_ROWS = 64;
+
     /**
      * 添加文本水印
      * @param inputImagePath 输入图片路径
@@ -97,6 +108,206 @@ public class ImgWatermarkTool {
         addImageWatermark(inputImagePath, outputImagePath, watermarkImagePath, Positions.BOTTOM_RIGHT, 0.5f);
     }
 
+    /**
+     * 添加斜向平铺文本水印（防泄露预览图常用）
+     * @param inputImagePath 输入图片路径
+     * @param outputImagePath 输出图片路径
+     * @param watermarkText 水印文本
+     * @param font 字体
+     * @param color 颜色
+     * @param angle 旋转角度（度，负数为逆时针）
+     * @param spacing 相邻水印之间的间距（像素）
+     * @param alpha 透明度(0.0-1.0)
+     * @throws IOException 图片处理异常
+     */
+    public static void addTiledTextWatermark(String inputImagePath, String outputImagePath, String watermarkText,
+                                            Font font, Color color, double angle, int spacing, float alpha) throws IOException {
+        BufferedImage image = ImageIO.read(new File(inputImagePath));
+        if (image == null) {
+            throw new IOException("无法读取图片文件: " + inputImagePath);
+        }
+        BufferedImage result = applyTiledWatermark(image, createTextImage(watermarkText, font, color), angle, spacing, alpha);
+        Thumbnails.of(result)
+                .scale(1.0)
+                .outputQuality(0.95)
+                .toFile(new File(outputImagePath));
+    }
+
+    /**
+     * 添加斜向平铺图片水印
+     * @param inputImagePath 输入图片路径
+     * @param outputImagePath 输出图片路径
+     * @param watermarkImagePath 水印图片路径
+     * @param angle 旋转角度（度，负数为逆时针）
+     * @param spacing 相邻水印之间的间距（像素）
+     * @param alpha 透明度(0.0-1.0)
+     * @throws IOException 图片处理异常
+     */
+    public static void addTiledImageWatermark(String inputImagePath, String outputImagePath, String watermarkImagePath,
+                                             double angle, int spacing, float alpha) throws IOException {
+        BufferedImage image = ImageIO.read(new File(inputImagePath));
+        BufferedImage watermarkImage = ImageIO.read(new File(watermarkImagePath));
+        if (image == null || watermarkImage == null) {
+            throw new IOException("无法读取图片文件");
+        }
+        BufferedImage result = applyTiledWatermark(image, watermarkImage, angle, spacing, alpha);
+        Thumbnails.of(result)
+                .scale(1.0)
+                .outputQuality(0.95)
+                .toFile(new File(outputImagePath));
+    }
+
+    /**
+     * 默认平铺文本水印（-30度灰色Arial字体，30%透明度）
+     */
+    public static void addDefaultTiledTextWatermark(String inputImagePath, String outputImagePath, String watermarkText) throws IOException {
+        addTiledTextWatermark(inputImagePath, outputImagePath, watermarkText,
+                new Font("Arial", Font.BOLD, 36), Color.GRAY, -30, 80, 0.3f);
+    }
+
+    /**
+     * 在图片上铺满斜向水印
+     * 水印先旋转绘制成一个预乘ARGB平铺单元（仅一次Graphics2D操作），
+     * 之后直接在目标图片的int[]像素数组上按行带并行做整数SRC_OVER混合，不再逐个调用drawImage。
+     * 奇数行的平铺单元错开半个单元宽度，形成交错的斜向排列。
+     *
+     * @param image 原始图片，若已是INT_RGB/INT_ARGB_PRE类型则原地修改
+     * @param watermark 水印图片
+     * @param angle 旋转角度（度）
+     * @param spacing 相邻水印之间的间距（像素）
+     * @param alpha 透明度(0.0-1.0)
+     * @return 添加水印后的图片
+     */
+    public static BufferedImage applyTiledWatermark(BufferedImage image, BufferedImage watermark,
+                                                    double angle, int spacing, float alpha) {
+        if (alpha <= 0f) {
+            return image;
+        }
+        BufferedImage target = toIntRaster(image);
+        BufferedImage tile = createRotatedTile(watermark, angle, Math.max(0, spacing));
+
+        int[] tilePixels = ((DataBufferInt) tile.getRaster().getDataBuffer()).getData();
+        int tileWidth = tile.getWidth();
+        int tileHeight = tile.getHeight();
+
+        // 将透明度折算进预乘后的平铺单元，混合时只需一次整数乘法
+        int alpha256 = Math.round(Math.min(1f, alpha) * 256);
+        int[] scaledTile = new int[tilePixels.length];
+        for (int i = 0; i < tilePixels.length; i++) {
+            scaledTile[i] = scalePremultiplied(tilePixels[i], alpha256);
+        }
+
+        WritableRaster raster = target.getRaster();
+        int[] pixels = ((DataBufferInt) raster.getDataBuffer()).getData();
+        SinglePixelPackedSampleModel sampleModel = (SinglePixelPackedSampleModel) raster.getSampleModel();
+        int stride = sampleModel.getScanlineStride();
+        // getSubimage得到的图片与原图共享数组，(0, 0)像素的位置要算上采样模型的平移量
+        int offset = raster.getDataBuffer().getOffset()
+                + sampleModel.getOffset(-raster.getSampleModelTranslateX(), -raster.getSampleModelTranslateY());
+        int width = target.getWidth();
+        int height = target.getHeight();
+
+        int bands = Math.max(1, Math.min(Runtime.getRuntime().availableProcessors() * 4, height / TILE_BAND_MIN_ROWS));
+        int rowsPerBand = (height + bands - 1) / bands;
+        IntStream.range(0, bands).parallel().forEach(band -> {
+            int startRow = band * rowsPerBand;
+            int endRow = Math.min(height, startRow + rowsPerBand);
+            blendTileRows(pixels, offset, stride, width, startRow, endRow, scaledTile, tileWidth, tileHeight);
+        });
+        return target;
+    }
+
+    /**
+     * 对[startRow, endRow)行做预乘SRC_OVER混合：dst = src + dst * (255 - srcAlpha) / 255
+     */
+    private static void blendTileRows(int[] pixels, int offset, int stride, int width, int startRow, int endRow,
+                                      int[] tile, int tileWidth, int tileHeight) {
+        int halfTile = tileWidth / 2;
+        for (int y = startRow; y < endRow; y++) {
+            int tileRow = (y % tileHeight) * tileWidth;
+            int tx = ((y / tileHeight) & 1) == 1 ? halfTile : 0;
+            int index = offset + y * stride;
+            for (int x = 0; x < width; x++, index++) {
+                int src = tile[tileRow + tx];
+                if (++tx == tileWidth) {
+                    tx = 0;
+                }
+                int sa = src >>> 24;
+                if (sa == 0) {
+                    continue;
+                }
+                int inv = 255 - sa;
+                int dst = pixels[index];
+                int a = sa + div255(((dst >>> 24)) * inv);
+                int r = ((src >> 16) & 0xFF) + div255(((dst >> 16) & 0xFF) * inv);
+                int g = ((src >> 8) & 0xFF) + div255(((dst >> 8) & 0xFF) * inv);
+                int b = (src & 0xFF) + div255((dst & 0xFF) * inv);
+                pixels[index] = (a << 24) | (r << 16) | (g << 8) | b;
+            }
+        }
+    }
+
+    /**
+     * 整数近似除以255（对0-65025范围精确）
+     */
+    private static int div255(int value) {
+        value += 128;
+        return (value + (value >> 8)) >> 8;
+    }
+
+    /**
+     * 按alpha(0-256)缩放一个预乘ARGB像素的全部分量
+     */
+    private static int scalePremultiplied(int argb, int alpha256) {
+        int a = ((argb >>> 24) * alpha256) >> 8;
+        int r = (((argb >> 16) & 0xFF) * alpha256) >> 8;
+        int g = (((argb >> 8) & 0xFF) * alpha256) >> 8;
+        int b = ((argb & 0xFF) * alpha256) >> 8;
+        return (a << 24) | (r << 16) | (g << 8) | b;
+    }
+
+    /**
+     * 保证图片的像素存储为int[]：不透明图片使用TYPE_INT_RGB，带透明通道的使用TYPE_INT_ARGB_PRE，
+     * 以便两种情况都可以直接套用预乘混合公式
+     */
+    private static BufferedImage toIntRaster(BufferedImage image) {
+        int type = image.getColorModel().hasAlpha() ? BufferedImage.TYPE_INT_ARGB_PRE : BufferedImage.TYPE_INT_RGB;
+        if (image.getType() == type) {
+            return image;
+        }
+        BufferedImage converted = new BufferedImage(image.getWidth(), image.getHeight(), type);
+        Graphics2D g2d = converted.createGraphics();
+        g2d.drawImage(image, 0, 0, null);
+        g2d.dispose();
+        return converted;
+    }
+
+    /**
+     * 创建旋转后的预乘ARGB平铺单元，水印居中，四周留出spacing/2的间距
+     */
+    private static BufferedImage createRotatedTile(BufferedImage watermark, double angle, int spacing) {
+        double radians = Math.toRadians(angle);
+        double sin = Math.abs(Math.sin(radians));
+        double cos = Math.abs(Math.cos(radians));
+        int wmWidth = watermark.getWidth();
+        int wmHeight = watermark.getHeight();
+        int rotatedWidth = (int) Math.ceil(wmWidth * cos + wmHeight * sin);
+        int rotatedHeight = (int) Math.ceil(wmWidth * sin + wmHeight * cos);
+
+        BufferedImage tile = new BufferedImage(Math.max(1, rotatedWidth + spacing), Math.max(1, rotatedHeight + spacing),
+                BufferedImage.TYPE_INT_ARGB_PRE);
+        Graphics2D g2d = tile.createGraphics();
+        g2d.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        AffineTransform transform = new AffineTransform();
+        transform.translate(tile.getWidth() / 2.0, tile.getHeight() / 2.0);
+        transform.rotate(radians);
+        transform.translate(-wmWidth / 2.0, -wmHeight / 2.0);
+        g2d.drawImage(watermark, transform, null);
+        g2d.dispose();
+        return tile;
+    }
+
     public static void main(String[] args) {
         try {
             // 测试文本水印
@@ -113,6 +324,11 @@ public class ImgWatermarkTool {
             // 使用居中位置和0.4透明度
             addImageWatermark(inputImage, imageOutputImage, watermarkImage, Positions.CENTER, 0.4f);
             System.out.println("图片水印添加成功: " + imageOutputImage);
+
+            // 测试平铺文本水印
+            String tiledOutputImage = "D:\\data\\watermark\\tiled_watermark_output.jpg";
+            addDefaultTiledTextWatermark(inputImage, tiledOutputImage, "Felix Tool 2023");
+            System.out.println("平铺水印添加成功: " + tiledOutputImage);
         } catch (IOException e) {
             System.err.println("水印添加失败: " + e.getMessage());
             e.printStackTrace();
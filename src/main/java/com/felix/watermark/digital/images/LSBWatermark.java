@@ -8,6 +8,10 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 
 /**
  * 基于LSB（最低有效位）的隐写术
@@ -17,7 +21,30 @@ import java.io.ByteArrayOutputStream;
  * 对图像质量影响极小
  * 抗攻击能力弱（压缩、滤波会破坏水印）
  */
-public class LSBWatermark {
+public class LSBWatermark implements Watermarker {
+
+    /**
+     * 每个像素可承载的位数（R、G、B各1位）
+     */
+    private static final int BITS_PER_PIXEL = 3;
+
+    @Override
+    public int capacity(int width, int height) {
+        return (int) Math.min(Integer.MAX_VALUE, (long) width * height * BITS_PER_PIXEL / 8);
+    }
+
+    @Override
+    public BufferedImage embed(BufferedImage image, byte[] payload) {
+        embedBinary(image, WatermarkBits.view(payload));
+        return image;
+    }
+
+    @Override
+    public byte[] extract(BufferedImage image, int payloadLength) {
+        byte[] payload = new byte[payloadLength];
+        int bits = extractBits(image, payloadLength * 8, payload);
+        return bits == payloadLength * 8 ? payload : Arrays.copyOf(payload, bits / 8);
+    }
 
     // 嵌入水印
     /**
@@ -31,11 +58,19 @@ public class LSBWatermark {
      */
     public static void embedWatermark(File imageFile, File outputFile, String watermark) throws IOException {
         BufferedImage image = ImageIO.read(imageFile);
+        embedBinary(image, WatermarkBits.toBinaryString(watermark));
+        ImageIO.write(image, "png", outputFile); // PNG格式保留无损数据
+    }
+
+    /**
+     * 将二进制位串原地嵌入图像（内存版本，不涉及编解码）
+     *
+     * @param image 原始图像，直接修改
+     * @param watermarkBinary 由'0'/'1'组成的水印位串
+     */
+    public static void embedBinary(BufferedImage image, CharSequence watermarkBinary) {
         int width = image.getWidth();
         int height = image.getHeight();
-
-        // 将水印文本转换为二进制字符串
-        String watermarkBinary = toBinaryString(watermark);
         int watermarkLength = watermarkBinary.length();
 
         // 检查图像容量是否足够
@@ -69,8 +104,6 @@ public class LSBWatermark {
             }
             if (bitIndex >= watermarkLength) break;
         }
-
-        ImageIO.write(image, "png", outputFile); // PNG格式保留无损数据
     }
 
     /**
@@ -83,39 +116,61 @@ public class LSBWatermark {
      */
     public static String extractWatermark(File watermarkedImage, int length) throws IOException {
         BufferedImage image = ImageIO.read(watermarkedImage);
-        int width = image.getWidth();
-        int height = image.getHeight();
-        
         // 估计UTF-8编码的字符平均需要3个字节
-        int estimatedBytes = length * 3;
-        int totalBits = estimatedBytes * 8;
+        String result = decodeText(image, length * 3);
+        // 截取到指定长度，避免多余字符
+        return result.length() > length ? result.substring(0, length) : result;
+    }
 
-        StringBuilder binaryBuilder = new StringBuilder(totalBits);
+    /**
+     * 从图像中提取指定位数的二进制位串（内存版本，不涉及编解码）
+     *
+     * @param image 嵌入水印的图像
+     * @param binaryLength 需要提取的位数
+     * @return 由'0'/'1'组成的位串，图像容量不足时返回全部可提取位
+     */
+    public static String extractBinary(BufferedImage image, int binaryLength) {
+        byte[] bits = new byte[(binaryLength + 7) / 8];
+        int extractedBits = extractBits(image, binaryLength, bits);
+        return WatermarkBits.toBinaryString(bits, extractedBits);
+    }
+
+    /**
+     * 提取指定位数，按高位在前写入out
+     *
+     * @return 实际提取的位数
+     */
+    static int extractBits(BufferedImage image, int binaryLength, byte[] out) {
+        int width = image.getWidth();
+        int height = image.getHeight();
         int extractedBits = 0;
 
         outerLoop:
         for (int y = 0; y < height; y++) {
             for (int x = 0; x < width; x++) {
+                if (extractedBits >= binaryLength) break outerLoop;
+
                 int rgb = image.getRGB(x, y);
-                int r = (rgb >> 16) & 0xFF;
-                int g = (rgb >> 8) & 0xFF;
-                int b = rgb & 0xFF;
 
                 // 提取RGB通道的最低位
-                binaryBuilder.append(getLSB(r));
-                if (++extractedBits >= totalBits) break outerLoop;
-
-                binaryBuilder.append(getLSB(g));
-                if (++extractedBits >= totalBits) break outerLoop;
-
-                binaryBuilder.append(getLSB(b));
-                if (++extractedBits >= totalBits) break outerLoop;
+                for (int shift = 16; shift >= 0 && extractedBits < binaryLength; shift -= 8) {
+                    if (((rgb >> shift) & 1) == 1) {
+                        WatermarkBits.setBit(out, extractedBits);
+                    }
+                    extractedBits++;
+                }
             }
         }
+        return extractedBits;
+    }
 
-        String result = binaryToString(binaryBuilder.toString());
-        // 截取到指定长度，避免多余字符
-        return result.length() > length ? result.substring(0, length) : result;
+    /**
+     * 提取maxBytes个字节并按UTF-8解码
+     */
+    private static String decodeText(BufferedImage image, int maxBytes) {
+        byte[] bytes = new byte[maxBytes];
+        int bits = extractBits(image, maxBytes * 8, bytes);
+        return new String(bytes, 0, bits / 8, StandardCharsets.UTF_8);
     }
 
     /**
@@ -132,109 +187,44 @@ public class LSBWatermark {
     }
 
     /**
-     * 获取颜色通道的最低有效位(LSB)
+     * 在图像中嵌入水印（基于流的版本）
+     * 该方法通过修改图像的RGB值来隐藏水印信息，每个颜色通道的最低位用于存储水印的二进制数据
      *
-     * @param color 颜色值
-     * @return 最低位的值，'1' 或 '0'
+     * @param imageInputStream 原始图像输入流
+     * @param watermark 水印文本
+     * @return 嵌入水印后的图像输出流
+     * @throws IOException 如果图像流处理发生错误
      */
-    private static char getLSB(int color) {
-        return (color & 1) == 1 ? '1' : '0';
+    public static OutputStream embedWatermark(InputStream imageInputStream, String watermark) throws IOException {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        embedWatermark(imageInputStream, outputStream, watermark);
+        return outputStream;
     }
 
     /**
-     * 将字符串转换为二进制表示
-     * 使用UTF-8编码确保正确处理中文和其他Unicode字符
+     * 在图像中嵌入水印并以PNG格式直接写入调用方的输出流，不经过中间字节数组
      *
-     * @param text 输入字符串
-     * @return 字符串的二进制表示
+     * @param imageInputStream 原始图像输入流
+     * @param output 目标输出流，写入完成后保持打开
+     * @param watermark 水印文本
+     * @throws IOException 如果图像流处理发生错误
      */
-    private static String toBinaryString(String text) {
-        StringBuilder binary = new StringBuilder();
-        try {
-            byte[] bytes = text.getBytes("UTF-8");
-            for (byte b : bytes) {
-                binary.append(String.format("%8s", Integer.toBinaryString(b & 0xFF)).replace(' ', '0'));
-            }
-        } catch (Exception e) {
-            e.printStackTrace();
-        }
-        return binary.toString();
+    public static void embedWatermark(InputStream imageInputStream, OutputStream output, String watermark) throws IOException {
+        BufferedImage image = ImageIO.read(imageInputStream);
+        embedBinary(image, WatermarkBits.toBinaryString(watermark));
+        WatermarkImageIO.writePng(image, output); // PNG格式保留无损数据
     }
 
     /**
-     * 将二进制字符串转换回文本字符串
-     * 使用UTF-8编码确保正确处理中文和其他Unicode字符
-     *
-     * @param binary 二进制字符串
-     * @return 转换后的文本字符串
-     */
-    private static String binaryToString(String binary) {
-        StringBuilder text = new StringBuilder();
-        try {
-            byte[] bytes = new byte[binary.length() / 8];
-            for (int i = 0; i < bytes.length; i++) {
-                String byteStr = binary.substring(i * 8, (i + 1) * 8);
-                bytes[i] = (byte) Integer.parseInt(byteStr, 2);
-            }
-            text.append(new String(bytes, "UTF-8"));
-        } catch (Exception e) {
-            e.printStackTrace();
-        }
-        return text.toString();
-    }
-    /**
-     * 在图像中嵌入水印（基于流的版本）
-     * 该方法通过修改图像的RGB值来隐藏水印信息，每个颜色通道的最低位用于存储水印的二进制数据
+     * 将水印嵌入图像并以PNG格式直接写入通道（例如Socket或文件通道）
      *
      * @param imageInputStream 原始图像输入流
+     * @param output 目标通道，写入完成后保持打开
      * @param watermark 水印文本
-     * @return 嵌入水印后的图像输出流
      * @throws IOException 如果图像流处理发生错误
      */
-    public static OutputStream embedWatermark(InputStream imageInputStream, String watermark) throws IOException {
-        BufferedImage image = ImageIO.read(imageInputStream);
-        int width = image.getWidth();
-        int height = image.getHeight();
-
-        // 将水印文本转换为二进制字符串
-        String watermarkBinary = toBinaryString(watermark);
-        int watermarkLength = watermarkBinary.length();
-
-        // 检查图像容量是否足够
-        if (watermarkLength > width * height * 3) {
-            throw new IllegalArgumentException("水印信息过长，超出图像承载能力");
-        }
-
-        int bitIndex = 0;
-        for (int y = 0; y < height; y++) {
-            for (int x = 0; x < width; x++) {
-                if (bitIndex >= watermarkLength) break;
-
-                int rgb = image.getRGB(x, y);
-                int r = (rgb >> 16) & 0xFF;
-                int g = (rgb >> 8) & 0xFF;
-                int b = rgb & 0xFF;
-
-                // 修改RGB通道的最低位
-                if (bitIndex < watermarkLength) {
-                    r = setLSB(r, watermarkBinary.charAt(bitIndex++));
-                }
-                if (bitIndex < watermarkLength) {
-                    g = setLSB(g, watermarkBinary.charAt(bitIndex++));
-                }
-                if (bitIndex < watermarkLength) {
-                    b = setLSB(b, watermarkBinary.charAt(bitIndex++));
-                }
-
-                int newRgb = (r << 16) | (g << 8) | b;
-                image.setRGB(x, y, newRgb);
-            }
-            if (bitIndex >= watermarkLength) break;
-        }
-
-        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
-        ImageIO.write(image, "png", outputStream); // PNG格式保留无损数据
-        return outputStream;
+    public static void embedWatermark(InputStream imageInputStream, WritableByteChannel output, String watermark) throws IOException {
+        embedWatermark(imageInputStream, Channels.newOutputStream(output), watermark);
     }
     
     /**
@@ -247,37 +237,8 @@ public class LSBWatermark {
      */
     public static String extractWatermark(InputStream watermarkedImageStream, int length) throws IOException {
         BufferedImage image = ImageIO.read(watermarkedImageStream);
-        int width = image.getWidth();
-        int height = image.getHeight();
-        
         // 估计UTF-8编码的字符平均需要3个字节
-        int estimatedBytes = length * 3;
-        int totalBits = estimatedBytes * 8;
-
-        StringBuilder binaryBuilder = new StringBuilder(totalBits);
-        int extractedBits = 0;
-
-        outerLoop:
-        for (int y = 0; y < height; y++) {
-            for (int x = 0; x < width; x++) {
-                int rgb = image.getRGB(x, y);
-                int r = (rgb >> 16) & 0xFF;
-                int g = (rgb >> 8) & 0xFF;
-                int b = rgb & 0xFF;
-
-                // 提取RGB通道的最低位
-                binaryBuilder.append(getLSB(r));
-                if (++extractedBits >= totalBits) break outerLoop;
-
-                binaryBuilder.append(getLSB(g));
-                if (++extractedBits >= totalBits) break outerLoop;
-
-                binaryBuilder.append(getLSB(b));
-                if (++extractedBits >= totalBits) break outerLoop;
-            }
-        }
-
-        String result = binaryToString(binaryBuilder.toString());
+        String result = decodeText(image, length * 3);
         // 截取到指定长度，避免多余字符
         return result.length() > length ? result.substring(0, length) : result;
     }
@@ -0,0 +1,59 @@
+package com.felix.watermark.digital.images;
+
+/**
+ * 感知掩蔽模型，用于自适应调整水印嵌入强度
+ * 人眼对纹理丰富区域和高亮区域的改动不敏感，对平坦区域和暗部的改动敏感，
+ * 因此按局部纹理活动度和平均亮度对基础强度做缩放：纹理区域加强以提高鲁棒性，平坦区域减弱以避免可见伪影。
+ *
+ * 缩放系数 = (平均亮度/128)^亮度指数 × (活动度/参考活动度)^纹理指数，并限制在[最小系数, 最大系数]内。
+ * 活动度和参考活动度由各水印算法按自身的变换域给出（DCT为块内交流系数均方根，DWT为像素邻域亮度差）。
+ * 实例不可变，可在多线程间共享。
+ */
+public final class PerceptualMask {
+
+    /** 默认模型：亮度指数取Watson模型的0.649，纹理指数0.5，缩放范围[0.5, 2.0] */
+    public static final PerceptualMask DEFAULT = new PerceptualMask(0.5, 2.0, 0.649, 0.5);
+
+    /** 参与亮度掩蔽计算的最小平均亮度，避免纯黑区域的系数趋于0 */
+    private static final double MIN_LUMINANCE = 16.0;
+
+    private final double minFactor;
+    private final double maxFactor;
+    private final double luminanceExponent;
+    private final double textureExponent;
+
+    /**
+     * @param minFactor 缩放系数下限（平坦、暗部区域）
+     * @param maxFactor 缩放系数上限（纹理、高亮区域）
+     * @param luminanceExponent 亮度掩蔽指数，0表示不考虑亮度
+     * @param textureExponent 纹理掩蔽指数，0表示不考虑纹理
+     */
+    public PerceptualMask(double minFactor, double maxFactor, double luminanceExponent, double textureExponent) {
+        if (minFactor <= 0 || maxFactor < minFactor) {
+            throw new IllegalArgumentException("缩放系数范围无效: [" + minFactor + ", " + maxFactor + "]");
+        }
+        this.minFactor = minFactor;
+        this.maxFactor = maxFactor;
+        this.luminanceExponent = luminanceExponent;
+        this.textureExponent = textureExponent;
+    }
+
+    /**
+     * 计算局部强度缩放系数
+     *
+     * @param meanLuminance 局部平均亮度（0-255）
+     * @param activity 局部纹理活动度
+     * @param referenceActivity 缩放系数为1时对应的活动度
+     * @return 限制在[最小系数, 最大系数]内的缩放系数
+     */
+    double factor(double meanLuminance, double activity, double referenceActivity) {
+        double factor = 1.0;
+        if (luminanceExponent != 0) {
+            factor *= Math.pow(Math.max(meanLuminance, MIN_LUMINANCE) / 128.0, luminanceExponent);
+        }
+        if (textureExponent != 0) {
+            factor *= Math.pow(Math.max(activity, 1e-3) / referenceActivity, textureExponent);
+        }
+        return Math.max(minFactor, Math.min(maxFactor, factor));
+    }
+}
@@ -0,0 +1,143 @@
+package com.felix.watermark.digital.images;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 水印位串与字节之间的转换工具
+ * 位串由'0'/'1'字符组成，字节按高位在前（MSB first）排列，与各水印算法原有的位序一致
+ */
+public final class WatermarkBits {
+
+    private WatermarkBits() {
+    }
+
+    /**
+     * 将文本按UTF-8编码转换为二进制位串
+     *
+     * @param text 文本
+     * @return 二进制位串
+     */
+    public static String toBinaryString(String text) {
+        return toBinaryString(text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * 将字节数组转换为二进制位串
+     *
+     * @param bytes 字节数组
+     * @return 二进制位串
+     */
+    public static String toBinaryString(byte[] bytes) {
+        return toBinaryString(bytes, bytes.length * 8);
+    }
+
+    /**
+     * 将字节数组的前bitCount位转换为二进制位串
+     *
+     * @param bytes 按高位在前排列的位
+     * @param bitCount 位数
+     * @return 二进制位串
+     */
+    public static String toBinaryString(byte[] bytes, int bitCount) {
+        char[] chars = new char[bitCount];
+        for (int i = 0; i < bitCount; i++) {
+            chars[i] = bit(bytes, i) == 1 ? '1' : '0';
+        }
+        return new String(chars);
+    }
+
+    /**
+     * 将二进制位串转换为UTF-8文本，末尾不足8位的部分被忽略
+     *
+     * @param binary 二进制位串
+     * @return 文本
+     */
+    public static String binaryToString(CharSequence binary) {
+        return new String(toBytes(binary), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 将二进制位串转换为字节数组，末尾不足8位的部分被忽略
+     *
+     * @param binary 二进制位串
+     * @return 字节数组
+     */
+    public static byte[] toBytes(CharSequence binary) {
+        byte[] bytes = new byte[binary.length() / 8];
+        for (int i = 0; i < bytes.length * 8; i++) {
+            if (binary.charAt(i) == '1') {
+                bytes[i >> 3] |= (byte) (0x80 >>> (i & 7));
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * 以'0'/'1'字符序列的形式查看字节数组，不复制数据
+     *
+     * @param bytes 字节数组
+     * @return 长度为bytes.length * 8的只读位串视图
+     */
+    public static CharSequence view(byte[] bytes) {
+        return new BitView(bytes, 0, bytes.length * 8);
+    }
+
+    /**
+     * 读取第index位（高位在前）
+     */
+    static int bit(byte[] bytes, int index) {
+        return (bytes[index >> 3] >>> (7 - (index & 7))) & 1;
+    }
+
+    /**
+     * 设置第index位（高位在前），调用前该位应为0
+     */
+    static void setBit(byte[] bytes, int index) {
+        bytes[index >> 3] |= (byte) (0x80 >>> (index & 7));
+    }
+
+    /**
+     * 字节数组上的位串视图
+     */
+    private static final class BitView implements CharSequence {
+        private final byte[] bytes;
+        private final int start;
+        private final int length;
+
+        BitView(byte[] bytes, int start, int length) {
+            this.bytes = bytes;
+            this.start = start;
+            this.length = length;
+        }
+
+        @Override
+        public int length() {
+            return length;
+        }
+
+        @Override
+        public char charAt(int index) {
+            if (index < 0 || index >= length) {
+                throw new IndexOutOfBoundsException("index: " + index + ", length: " + length);
+            }
+            return bit(bytes, start + index) == 1 ? '1' : '0';
+        }
+
+        @Override
+        public CharSequence subSequence(int startIndex, int endIndex) {
+            if (startIndex < 0 || endIndex > length || startIndex > endIndex) {
+                throw new IndexOutOfBoundsException("start: " + startIndex + ", end: " + endIndex + ", length: " + length);
+            }
+            return new BitView(bytes, start + startIndex, endIndex - startIndex);
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder(length);
+            for (int i = 0; i < length; i++) {
+                sb.append(charAt(i));
+            }
+            return sb.toString();
+        }
+    }
+}
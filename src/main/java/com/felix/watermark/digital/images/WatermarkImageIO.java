@@ -0,0 +1,43 @@
+package com.felix.watermark.digital.images;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+import javax.imageio.stream.MemoryCacheImageOutputStream;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Iterator;
+
+/**
+ * 数字水印结果的编码输出
+ */
+final class WatermarkImageIO {
+
+    private WatermarkImageIO() {
+    }
+
+    /**
+     * 将图像以PNG格式直接写入调用方的输出流
+     * 使用内存缓存的ImageOutputStream：PNG编码器每写完一个数据块就会把已完成部分刷出，
+     * 不会像ImageIO.write(image, format, OutputStream)默认那样落地临时文件，也不会关闭调用方的流。
+     *
+     * @param image 图像
+     * @param output 目标输出流，写入完成后保持打开
+     * @throws IOException 编码或写入失败
+     */
+    static void writePng(BufferedImage image, OutputStream output) throws IOException {
+        Iterator<ImageWriter> writers = ImageIO.getImageWritersByFormatName("png");
+        if (!writers.hasNext()) {
+            throw new IOException("没有可用的PNG编码器");
+        }
+        ImageWriter writer = writers.next();
+        try (ImageOutputStream stream = new MemoryCacheImageOutputStream(output)) {
+            writer.setOutput(stream);
+            writer.write(image);
+        } finally {
+            writer.dispose();
+        }
+        output.flush();
+    }
+}
@@ -0,0 +1,45 @@
+package com.felix.watermark.digital.images;
+
+/**
+ * 数字水印变换的可复用工作区
+ * 持有按图像尺寸增长的像素缓冲区和8x8 DCT块缓冲区，
+ * 稳定状态下嵌入/提取不再产生临时数组。
+ *
+ * 工作区不是线程安全的：可以通过{@link #current()}取得当前线程专属的实例，
+ * 也可以自行创建后显式传给各水印类的重载方法（例如放在对象池中复用）。
+ */
+public final class WatermarkWorkspace {
+
+    private static final ThreadLocal<WatermarkWorkspace> CURRENT = ThreadLocal.withInitial(WatermarkWorkspace::new);
+
+    // 8x8块缓冲区（按行优先展开）
+    final double[] block = new double[64];
+    final double[] coefficients = new double[64];
+    final double[] temp = new double[64];
+
+    private int[] pixels = new int[0];
+
+    /**
+     * 获取当前线程的工作区
+     */
+    public static WatermarkWorkspace current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * 获取至少能容纳size个像素的ARGB缓冲区
+     */
+    int[] pixels(int size) {
+        if (pixels.length < size) {
+            pixels = new int[size];
+        }
+        return pixels;
+    }
+
+    /**
+     * 释放按图像尺寸分配的大缓冲区，处理完超大图片后可调用以归还内存
+     */
+    public void release() {
+        pixels = new int[0];
+    }
+}
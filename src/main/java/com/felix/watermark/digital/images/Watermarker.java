@@ -0,0 +1,78 @@
+package com.felix.watermark.digital.images;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * 数字水印算法统一接口
+ * 载荷按字节处理，按高位在前的顺序逐位嵌入。实现类的实例各自持有可复用的工作区，
+ * 因此单个实例不是线程安全的，多线程场景下应每个线程一个实例或放入对象池复用。
+ */
+public interface Watermarker {
+
+    /**
+     * 计算指定尺寸的图像最多可嵌入的载荷字节数
+     *
+     * @param width 图像宽度
+     * @param height 图像高度
+     * @return 最大载荷字节数
+     */
+    int capacity(int width, int height);
+
+    /**
+     * 将载荷嵌入图像
+     *
+     * @param image 原始图像，实现类可以直接修改它
+     * @param payload 载荷
+     * @return 嵌入水印后的图像
+     * @throws IllegalArgumentException 载荷超出图像容量
+     */
+    BufferedImage embed(BufferedImage image, byte[] payload);
+
+    /**
+     * 从图像中提取载荷
+     *
+     * @param image 嵌入水印的图像
+     * @param payloadLength 载荷字节数
+     * @return 提取的载荷，图像容量不足时长度可能小于payloadLength
+     */
+    byte[] extract(BufferedImage image, int payloadLength);
+
+    /**
+     * 将载荷嵌入编码后的图像数据，输出PNG编码结果
+     * 输入直接从缓冲区解码，输出直接包装编码缓冲区，不产生额外的字节数组拷贝
+     *
+     * @param encodedImage 编码后的图像数据（从position到limit）
+     * @param payload 载荷
+     * @return PNG编码的结果，position为0，limit为数据长度
+     * @throws IOException 图像解码或编码失败
+     */
+    default ByteBuffer embed(ByteBuffer encodedImage, byte[] payload) throws IOException {
+        BufferedImage image = ImageIO.read(new ByteBufferInputStream(encodedImage.duplicate()));
+        if (image == null) {
+            throw new IOException("无法解码图像数据");
+        }
+        BufferedImage watermarked = embed(image, payload);
+        ByteBufferOutputStream output = new ByteBufferOutputStream(encodedImage.remaining());
+        WatermarkImageIO.writePng(watermarked, output);
+        return output.toByteBuffer();
+    }
+
+    /**
+     * 从编码后的图像数据中提取载荷
+     *
+     * @param encodedImage 编码后的图像数据（从position到limit）
+     * @param payloadLength 载荷字节数
+     * @return 提取的载荷
+     * @throws IOException 图像解码失败
+     */
+    default byte[] extract(ByteBuffer encodedImage, int payloadLength) throws IOException {
+        BufferedImage image = ImageIO.read(new ByteBufferInputStream(encodedImage.duplicate()));
+        if (image == null) {
+            throw new IOException("无法解码图像数据");
+        }
+        return extract(image, payloadLength);
+    }
+}
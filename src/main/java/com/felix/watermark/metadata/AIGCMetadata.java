@@ -1,151 +1,186 @@
 package com.felix.watermark.metadata;
 
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Objects;
+
 /**
  * AIGC元数据信息实体类
- * 符合GB 45438-2025附录E规范
+ * 符合GB 45438-2025附录E规范，图片（PNG文本块、EXIF、XMP）和视频共用这一个模型。
+ *
+ * 实例不可变，可在线程间共享；修改字段通过with方法得到新实例。值为null的字段按空字符串处理。
+ * Label、ContentProducer、ContentPropagator和两个保留字段取值种类很少（通常是平台编码），构造时做字符串驻留，
+ * 大量实例共用同一份字符串；ProduceID、PropagateID每个内容各不相同，不做驻留。
+ * 序列化结果在首次使用时生成并缓存，同一份元数据写入成千上万个文件时只序列化一次。
  */
-public class AIGCMetadata {
-    private String label;           // value1
-    private String contentProducer; // value2
-    private String produceID;       // value3
-    private String reservedCode1;   // value4
-    private String contentPropagator; // value5
-    private String propagateID;     // value6
-    private String reservedCode2;   // value7
+public final class AIGCMetadata {
+    private final String label;           // value1
+    private final String contentProducer; // value2
+    private final String produceID;       // value3
+    private final String reservedCode1;   // value4
+    private final String contentPropagator; // value5
+    private final String propagateID;     // value6
+    private final String reservedCode2;   // value7
+
+    // 序列化缓存，实例不可变，并发初始化时各线程算出的结果相同；数组经volatile发布，保证其他线程看到完整内容
+    private String json;
+    private String plainJson;
+    private volatile byte[] jsonBytes;
 
     // 构造器
     public AIGCMetadata(String label, String contentProducer, String produceID,
                         String reservedCode1, String contentPropagator,
                         String propagateID, String reservedCode2) {
-        this.label = label;
-        this.contentProducer = contentProducer;
-        this.produceID = produceID;
-        this.reservedCode1 = reservedCode1;
-        this.contentPropagator = contentPropagator;
-        this.propagateID = propagateID;
-        this.reservedCode2 = reservedCode2;
-    }
-
-    public AIGCMetadata() {
-
+        this.label = intern(label);
+        this.contentProducer = intern(contentProducer);
+        this.produceID = produceID != null ? produceID : "";
+        this.reservedCode1 = intern(reservedCode1);
+        this.contentPropagator = intern(contentPropagator);
+        this.propagateID = propagateID != null ? propagateID : "";
+        this.reservedCode2 = intern(reservedCode2);
     }
 
     public AIGCMetadata(String label, String contentProducer, String produceID) {
-        this.label = label;
-        this.contentProducer = contentProducer;
-        this.produceID = produceID;
+        this(label, contentProducer, produceID, "", "", "", "");
     }
 
-    // Getters and Setters
+    // Getters
     public String getLabel() { return label; }
-    public void setLabel(String label) { this.label = label; }
 
     public String getContentProducer() { return contentProducer; }
-    public void setContentProducer(String contentProducer) { this.contentProducer = contentProducer; }
 
     public String getProduceID() { return produceID; }
-    public void setProduceID(String produceID) { this.produceID = produceID; }
 
     public String getReservedCode1() { return reservedCode1; }
-    public void setReservedCode1(String reservedCode1) { this.reservedCode1 = reservedCode1; }
 
     public String getContentPropagator() { return contentPropagator; }
-    public void setContentPropagator(String contentPropagator) { this.contentPropagator = contentPropagator; }
 
     public String getPropagateID() { return propagateID; }
-    public void setPropagateID(String propagateID) { this.propagateID = propagateID; }
 
     public String getReservedCode2() { return reservedCode2; }
-    public void setReservedCode2(String reservedCode2) { this.reservedCode2 = reservedCode2; }
+
+    // 复制并修改单个字段
+    public AIGCMetadata withLabel(String label) {
+        return new AIGCMetadata(label, contentProducer, produceID, reservedCode1, contentPropagator, propagateID, reservedCode2);
+    }
+
+    public AIGCMetadata withContentProducer(String contentProducer) {
+        return new AIGCMetadata(label, contentProducer, produceID, reservedCode1, contentPropagator, propagateID, reservedCode2);
+    }
+
+    public AIGCMetadata withProduceID(String produceID) {
+        return new AIGCMetadata(label, contentProducer, produceID, reservedCode1, contentPropagator, propagateID, reservedCode2);
+    }
+
+    public AIGCMetadata withReservedCode1(String reservedCode1) {
+        return new AIGCMetadata(label, contentProducer, produceID, reservedCode1, contentPropagator, propagateID, reservedCode2);
+    }
+
+    public AIGCMetadata withContentPropagator(String contentPropagator) {
+        return new AIGCMetadata(label, contentProducer, produceID, reservedCode1, contentPropagator, propagateID, reservedCode2);
+    }
+
+    public AIGCMetadata withPropagateID(String propagateID) {
+        return new AIGCMetadata(label, contentProducer, produceID, reservedCode1, contentPropagator, propagateID, reservedCode2);
+    }
+
+    public AIGCMetadata withReservedCode2(String reservedCode2) {
+        return new AIGCMetadata(label, contentProducer, produceID, reservedCode1, contentPropagator, propagateID, reservedCode2);
+    }
+
+    /**
+     * 设置传播信息，传播链路中每经过一个平台更新一次
+     */
+    public AIGCMetadata withPropagation(String contentPropagator, String propagateID) {
+        return new AIGCMetadata(label, contentProducer, produceID, reservedCode1, contentPropagator, propagateID, reservedCode2);
+    }
+
+    /**
+     * 检查是否包含有效的AIGC标识
+     */
+    public boolean hasValidAIGCContent() {
+        return !label.isEmpty() && !contentProducer.isEmpty();
+    }
 
     /**
-     * 生成符合GB 45438-2025附录E规定的JSON字符串
+     * 生成符合GB 45438-2025附录E规定的JSON字符串，用于PNG文本块和EXIF
      */
     public String toJsonString() {
-        return String.format(
-                "{\"AIGC\":{\"Label\":\"%s\",\"ContentProducer\":\"%s\",\"ProduceID\":\"%s\"," +
-                        "\"ReservedCode1\":\"%s\",\"ContentPropagator\":\"%s\",\"PropagateID\":\"%s\"," +
-                        "\"ReservedCode2\":\"%s\"}}",
-                escapeJson(label), escapeJson(contentProducer), escapeJson(produceID),
-                escapeJson(reservedCode1), escapeJson(contentPropagator), escapeJson(propagateID),
-                escapeJson(reservedCode2)
-        );
+        String result = json;
+        if (result == null) {
+            json = result = AIGCMetadataCodec.toJson(this, true);
+        }
+        return result;
     }
 
+    /**
+     * 生成视频元数据使用的JSON字符串（不含外层AIGC包装）
+     */
     public String toVideoJsonString() {
-        return String.format(
-                "{\"Label\":\"%s\",\"ContentProducer\":\"%s\",\"ProduceID\":\"%s\"," +
-                        "\"ReservedCode1\":\"%s\",\"ContentPropagator\":\"%s\",\"PropagateID\":\"%s\"," +
-                        "\"ReservedCode2\":\"%s\"}",
-                escapeJson(label), escapeJson(contentProducer), escapeJson(produceID),
-                escapeJson(reservedCode1), escapeJson(contentPropagator), escapeJson(propagateID),
-                escapeJson(reservedCode2)
-        );
+        return plainJson();
+    }
+
+    /**
+     * 生成XMP中TC260:AIGC属性使用的JSON字符串（不含外层AIGC包装）
+     */
+    public String toXMPJsonString() {
+        return plainJson();
     }
 
     /**
-     * JSON字符串转义处理
+     * {@link #toJsonString()}的UTF-8字节，只读视图，不复制
      */
-    private String escapeJson(String str) {
-        if (str == null) return "";
-        return str.replace("\\", "\\\\")
-                .replace("\"", "\\\"")
-                .replace("\b", "\\b")
-                .replace("\f", "\\f")
-                .replace("\n", "\\n")
-                .replace("\r", "\\r")
-                .replace("\t", "\\t");
+    public ByteBuffer toJsonBytes() {
+        byte[] result = jsonBytes;
+        if (result == null) {
+            jsonBytes = result = toJsonString().getBytes(StandardCharsets.UTF_8);
+        }
+        return ByteBuffer.wrap(result).asReadOnlyBuffer();
+    }
+
+    private String plainJson() {
+        String result = plainJson;
+        if (result == null) {
+            plainJson = result = AIGCMetadataCodec.toJson(this, false);
+        }
+        return result;
     }
 
     /**
-     * 从JSON字符串解析AIGC元数据
+     * 从JSON字符串解析AIGC元数据，支持带外层AIGC包装和不带包装两种格式
+     *
+     * @return 解析结果，JSON无效时返回null
      */
     public static AIGCMetadata fromJsonString(String jsonStr) {
+        if (jsonStr == null) {
+            return null;
+        }
         try {
-            AIGCMetadata metadata = new AIGCMetadata();
-
-            if (jsonStr != null) {
-                // 提取各个字段的值
-                String[] pairs = jsonStr.split("\"");
-                for (int i = 0; i < pairs.length - 1; i++) {
-                    if (pairs[i].trim().equals("Label") && i + 2 < pairs.length) {
-                        metadata.setLabel(unescapeJson(pairs[i + 2]));
-                    } else if (pairs[i].trim().equals("ContentProducer") && i + 2 < pairs.length) {
-                        metadata.setContentProducer(unescapeJson(pairs[i + 2]));
-                    } else if (pairs[i].trim().equals("ProduceID") && i + 2 < pairs.length) {
-                        metadata.setProduceID(unescapeJson(pairs[i + 2]));
-                    } else if (pairs[i].trim().equals("ReservedCode1") && i + 2 < pairs.length) {
-                        metadata.setReservedCode1(unescapeJson(pairs[i + 2]));
-                    } else if (pairs[i].trim().equals("ContentPropagator") && i + 2 < pairs.length) {
-                        metadata.setContentPropagator(unescapeJson(pairs[i + 2]));
-                    } else if (pairs[i].trim().equals("PropagateID") && i + 2 < pairs.length) {
-                        metadata.setPropagateID(unescapeJson(pairs[i + 2]));
-                    } else if (pairs[i].trim().equals("ReservedCode2") && i + 2 < pairs.length) {
-                        metadata.setReservedCode2(unescapeJson(pairs[i + 2]));
-                    }
-                }
-            }
-
-            return metadata;
-
+            return AIGCMetadataCodec.parse(jsonStr);
         } catch (Exception e) {
             System.err.println("解析AIGC JSON失败: " + e.getMessage());
             return null;
         }
     }
 
-    /**
-     * JSON字符串反转义处理
-     */
-    private static String unescapeJson(String str) {
-        if (str == null) return "";
-        return str.replace("\\\"", "\"")
-                .replace("\\\\", "\\")
-                .replace("\\b", "\b")
-                .replace("\\f", "\f")
-                .replace("\\n", "\n")
-                .replace("\\r", "\r")
-                .replace("\\t", "\t");
+    private static String intern(String value) {
+        return value != null ? value.intern() : "";
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof AIGCMetadata)) return false;
+        AIGCMetadata that = (AIGCMetadata) o;
+        return label.equals(that.label) && contentProducer.equals(that.contentProducer)
+                && produceID.equals(that.produceID) && reservedCode1.equals(that.reservedCode1)
+                && contentPropagator.equals(that.contentPropagator) && propagateID.equals(that.propagateID)
+                && reservedCode2.equals(that.reservedCode2);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(label, contentProducer, produceID, reservedCode1, contentPropagator, propagateID, reservedCode2);
     }
 
     @Override
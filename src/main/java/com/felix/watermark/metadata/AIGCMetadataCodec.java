@@ -0,0 +1,171 @@
+package com.felix.watermark.metadata;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.CharArrayWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+
+/**
+ * AIGC元数据JSON编解码，基于Jackson流式API
+ * 写出时由JsonGenerator逐字段转义，直接写入调用方的Writer/OutputStream或线程内复用的字符缓冲区；
+ * 解析时由JsonParser单次扫描，正确处理转义的引号、反斜杠和\\uXXXX，字段顺序任意，未知字段跳过。
+ * JsonFactory线程安全，生成器和解析器的内部缓冲区由Jackson按线程回收复用。
+ *
+ * 图片格式为附录E规定的{"AIGC":{...}}，视频元数据不含外层AIGC包装；解析时两种格式都接受。
+ */
+public final class AIGCMetadataCodec {
+
+    private static final JsonFactory FACTORY = new JsonFactory()
+            .disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET)
+            .disable(JsonParser.Feature.AUTO_CLOSE_SOURCE);
+
+    private static final ThreadLocal<CharArrayWriter> BUFFER = ThreadLocal.withInitial(() -> new CharArrayWriter(256));
+
+    private static final String ROOT = "AIGC";
+    private static final String LABEL = "Label";
+    private static final String CONTENT_PRODUCER = "ContentProducer";
+    private static final String PRODUCE_ID = "ProduceID";
+    private static final String RESERVED_CODE1 = "ReservedCode1";
+    private static final String CONTENT_PROPAGATOR = "ContentPropagator";
+    private static final String PROPAGATE_ID = "PropagateID";
+    private static final String RESERVED_CODE2 = "ReservedCode2";
+    private static final int FIELD_COUNT = 7;
+
+    private AIGCMetadataCodec() {
+    }
+
+    /**
+     * 生成JSON字符串
+     *
+     * @param metadata AIGC元数据
+     * @param wrapped 是否包含外层{"AIGC":...}
+     */
+    public static String toJson(AIGCMetadata metadata, boolean wrapped) {
+        CharArrayWriter buffer = BUFFER.get();
+        buffer.reset();
+        try {
+            write(metadata, wrapped, buffer);
+        } catch (IOException e) {
+            // 写入内存缓冲区不会失败
+            throw new IllegalStateException(e);
+        }
+        return buffer.toString();
+    }
+
+    /**
+     * 将JSON写入字符流，写入完成后保持打开
+     */
+    public static void write(AIGCMetadata metadata, boolean wrapped, Writer out) throws IOException {
+        try (JsonGenerator generator = FACTORY.createGenerator(out)) {
+            write(metadata, wrapped, generator);
+        }
+    }
+
+    /**
+     * 将JSON以UTF-8写入字节流，写入完成后保持打开
+     */
+    public static void write(AIGCMetadata metadata, boolean wrapped, OutputStream out) throws IOException {
+        try (JsonGenerator generator = FACTORY.createGenerator(out)) {
+            write(metadata, wrapped, generator);
+        }
+    }
+
+    private static void write(AIGCMetadata metadata, boolean wrapped, JsonGenerator generator) throws IOException {
+        generator.writeStartObject();
+        if (wrapped) {
+            generator.writeFieldName(ROOT);
+            generator.writeStartObject();
+        }
+        writeField(generator, LABEL, metadata.getLabel());
+        writeField(generator, CONTENT_PRODUCER, metadata.getContentProducer());
+        writeField(generator, PRODUCE_ID, metadata.getProduceID());
+        writeField(generator, RESERVED_CODE1, metadata.getReservedCode1());
+        writeField(generator, CONTENT_PROPAGATOR, metadata.getContentPropagator());
+        writeField(generator, PROPAGATE_ID, metadata.getPropagateID());
+        writeField(generator, RESERVED_CODE2, metadata.getReservedCode2());
+        if (wrapped) {
+            generator.writeEndObject();
+        }
+        generator.writeEndObject();
+    }
+
+    private static void writeField(JsonGenerator generator, String name, String value) throws IOException {
+        generator.writeStringField(name, value);
+    }
+
+    /**
+     * 解析JSON字符串，缺少的字段为空字符串
+     *
+     * @throws IOException 不是合法的JSON对象
+     */
+    public static AIGCMetadata parse(String json) throws IOException {
+        try (JsonParser parser = FACTORY.createParser(json)) {
+            return read(parser);
+        }
+    }
+
+    /**
+     * 解析UTF-8编码的JSON字节，缺少的字段为空字符串
+     *
+     * @throws IOException 不是合法的JSON对象
+     */
+    public static AIGCMetadata parse(byte[] json, int offset, int length) throws IOException {
+        try (JsonParser parser = FACTORY.createParser(json, offset, length)) {
+            return read(parser);
+        }
+    }
+
+    private static AIGCMetadata read(JsonParser parser) throws IOException {
+        if (parser.nextToken() != JsonToken.START_OBJECT) {
+            throw new JsonParseException(parser, "AIGC元数据必须是JSON对象");
+        }
+        String[] values = new String[FIELD_COUNT];
+        readFields(parser, values);
+        return new AIGCMetadata(values[0], values[1], values[2], values[3], values[4], values[5], values[6]);
+    }
+
+    /**
+     * 读取当前对象的字段直到对象结束，遇到外层AIGC对象时进入其中继续读取
+     */
+    private static void readFields(JsonParser parser, String[] values) throws IOException {
+        String name;
+        while ((name = parser.nextFieldName()) != null) {
+            JsonToken token = parser.nextToken();
+            if (token == JsonToken.START_OBJECT && ROOT.equals(name)) {
+                readFields(parser, values);
+                continue;
+            }
+            if (!token.isScalarValue()) {
+                parser.skipChildren();
+                continue;
+            }
+
+            int index = fieldIndex(name);
+            if (index >= 0) {
+                values[index] = parser.getValueAsString("");
+            }
+        }
+    }
+
+    /**
+     * 字段在附录E中的顺序（与AIGCMetadata构造参数顺序一致），未知字段返回-1
+     */
+    private static int fieldIndex(String name) {
+        switch (name) {
+            case LABEL: return 0;
+            case CONTENT_PRODUCER: return 1;
+            case PRODUCE_ID: return 2;
+            case RESERVED_CODE1: return 3;
+            case CONTENT_PROPAGATOR: return 4;
+            case PROPAGATE_ID: return 5;
+            case RESERVED_CODE2: return 6;
+            default: return -1;
+        }
+    }
+}
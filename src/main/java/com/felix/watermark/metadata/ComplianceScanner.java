@@ -0,0 +1,620 @@
+package com.felix.watermark.metadata;
+
+import com.felix.file.DirectoryReader;
+import com.felix.file.FileTypeChecker;
+import com.felix.file.FileTypeChecker.FileType;
+import com.felix.watermark.metadata.images.AIGCMetadataUtils;
+import com.felix.watermark.metadata.images.ImageSegmentScanner;
+import com.felix.watermark.metadata.images.JPEGMetadataHandler;
+import com.felix.watermark.metadata.images.PNGMetadataHandler;
+import com.felix.watermark.metadata.images.XMP.AIGCMetadataReader;
+import com.felix.watermark.metadata.video.VideoMetadataHandler;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.stream.Stream;
+
+/**
+ * AIGC隐式标识合规扫描器，用于按GB 45438-2025核查整个存储卷
+ * 使用{@link DirectoryReader#streamDirectory}边遍历边扫描，内存占用与文件总数无关；每个文件只打开一次，先做一次定位读取取得文件头，据此识别类型并匹配AIGC特征；
+ * JPEG/PNG在命中特征时交给PNG文本块/XMP/EXIF读取器解析标识内容，文件头已覆盖整个元数据区（JPEG到SOS、PNG到IEND）
+ * 而没有特征时直接判为不带标识，否则同样交给读取器，命中特征但解析不出时来源记为SIGNATURE；WebP、HEIF/AVIF、GIF的XMP常位于文件头之外，
+ * 直接按容器结构读取；视频交给{@link VideoMetadataHandler}。
+ * 文件在有界的ForkJoinPool（工作窃取）上并行处理，同时在途的任务数有上限，结果逐行写入JSONL或CSV报告。
+ *
+ * 断点续扫：指定检查点文件时按文件名排序遍历（{@link DirectoryReader.WalkOptions#sorted}），顺序确定；
+ * 检查点只记录一个位置，即遍历顺序中此前文件都已处理完的最后一个路径，与报告一起定期刷盘，
+ * 再次扫描时从该位置之后继续（{@link DirectoryReader.WalkOptions#startAfter}）并向报告追加，内存占用与已完成的文件数无关。
+ * 续扫须使用与上次相同写法的根目录；个别文件迟迟处理不完时，其后已完成的文件要等它完成才能计入检查点。
+ * 进程异常退出时检查点之后已处理的文件会被重新扫描，报告中可能出现重复行。
+ */
+public class ComplianceScanner {
+
+    /** 每个文件读取的文件头字节数，与{@link AIGCMetadataUtils#DEFAULT_HEADER_BYTES}一致 */
+    private static final int HEADER_BYTES = AIGCMetadataUtils.DEFAULT_HEADER_BYTES;
+
+    /** 报告和检查点的刷盘间隔（文件数） */
+    private static final int FLUSH_INTERVAL = 1000;
+
+    private static final ThreadLocal<byte[]> HEADER = ThreadLocal.withInitial(() -> new byte[HEADER_BYTES]);
+
+    public enum ReportFormat {
+        JSONL, CSV
+    }
+
+    public enum Status {
+        /** 带有AIGC标识 */
+        LABELED,
+        /** 不带AIGC标识 */
+        UNLABELED,
+        /** 不支持的文件类型，或未启用视频扫描 */
+        SKIPPED,
+        /** 读取失败 */
+        ERROR
+    }
+
+    private final int parallelism;
+    private final ReportFormat format;
+    private final boolean includeVideo;
+
+    /**
+     * @param parallelism 并行度，NVMe上通常取CPU核数即可跑满带宽
+     * @param format 报告格式
+     * @param includeVideo 是否扫描视频（每个视频启动一次ffprobe，远慢于图片）
+     */
+    public ComplianceScanner(int parallelism, ReportFormat format, boolean includeVideo) {
+        if (parallelism <= 0) {
+            throw new IllegalArgumentException("并行度必须大于0: " + parallelism);
+        }
+        this.parallelism = parallelism;
+        this.format = format;
+        this.includeVideo = includeVideo;
+    }
+
+    /**
+     * 扫描目录并写出报告
+     *
+     * @param root 扫描的根目录
+     * @param report 报告文件
+     * @param checkpoint 检查点文件，为null时不支持续扫；文件已存在时从检查点续扫并向报告追加
+     * @return 扫描统计
+     * @throws IOException 遍历目录或写入报告失败
+     */
+    public Summary scan(Path root, Path report, Path checkpoint) throws IOException {
+        String position = checkpoint != null ? loadCheckpoint(checkpoint) : null;
+        boolean resume = position != null;
+        Summary summary = new Summary();
+
+        DirectoryReader.WalkOptions options = new DirectoryReader.WalkOptions()
+                .detection(DirectoryReader.TypeDetection.NONE)
+                .sorted(checkpoint != null);
+        if (resume) {
+            System.out.println("从检查点位置之后继续: " + position);
+            options.startAfter(position);
+        }
+        long found = 0;
+
+        // 边遍历边提交，不在内存中保存整个文件列表；类型由scanFile读取文件头识别，遍历时不打开文件
+        try (ReportWriter writer = new ReportWriter(report, checkpoint, format, resume);
+             Stream<DirectoryReader.FileInfo> files = DirectoryReader.streamDirectory(root.toString(), options)) {
+            ForkJoinPool pool = new ForkJoinPool(parallelism, ForkJoinPool.defaultForkJoinWorkerThreadFactory, null, true);
+            // 限制在途任务数，遍历速度快于扫描时不会在队列中堆积
+            Semaphore inFlight = new Semaphore(parallelism * 4);
+            try {
+                for (Iterator<DirectoryReader.FileInfo> iterator = files.iterator(); iterator.hasNext(); ) {
+                    DirectoryReader.FileInfo file = iterator.next();
+                    found++;
+                    inFlight.acquireUninterruptibly();
+                    Progress.Slot slot = writer.submit(file.getPath());
+                    pool.execute(() -> {
+                        try {
+                            ScanResult result = scanFile(Paths.get(file.getPath()), file.getSize());
+                            summary.record(result);
+                            writer.write(result, slot);
+                        } catch (IOException e) {
+                            System.err.println("写入报告失败: " + file.getPath() + ", 错误: " + e.getMessage());
+                        } finally {
+                            inFlight.release();
+                        }
+                    });
+                }
+                inFlight.acquireUninterruptibly(parallelism * 4);
+                System.out.println("共发现 " + found + " 个文件");
+            } finally {
+                pool.shutdown();
+                try {
+                    pool.awaitTermination(1, TimeUnit.MINUTES);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+        summary.finish();
+        return summary;
+    }
+
+    /**
+     * 扫描单个文件：读取文件头识别类型，命中AIGC特征时再交给对应读取器解析
+     */
+    private ScanResult scanFile(Path path, long size) {
+        long start = System.nanoTime();
+        ScanResult result = new ScanResult(path.toString(), size);
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            byte[] header = HEADER.get();
+            int length = readHeader(channel, header);
+            result.type = FileTypeChecker.getFileTypeByHeader(header, length);
+
+            switch (result.type) {
+                case JPEG:
+                case PNG:
+                    boolean signature = AIGCMetadataUtils.containsAIGCSignature(header, length);
+                    // 文件头没有覆盖整个元数据区时，没有特征不能说明不带标识，仍交给读取器解析
+                    if ((signature || !coversMetadata(header, length)) && readImage(channel, result)) {
+                        break;
+                    }
+                    if (signature) {
+                        result.labeled("SIGNATURE", null);
+                    } else {
+                        result.status = Status.UNLABELED;
+                    }
+                    break;
+                case WEBP:
+                case HEIF:
+                case AVIF:
+                case GIF:
+                    // XMP通常位于图像数据之后或文件头之外，直接按容器结构读取
+                    AIGCMetadata xmp = AIGCMetadataUtils.readAIGCMetadata(channel, result.type);
+                    if (xmp != null) {
+                        result.labeled("XMP", xmp);
+                    } else {
+                        result.status = Status.UNLABELED;
+                    }
+                    break;
+                case MP4:
+                case MOV:
+                case AVI:
+                case MKV:
+                    if (includeVideo) {
+                        AIGCMetadata metadata = VideoMetadataHandler.readStealthMetadata(path.toString());
+                        if (metadata != null) {
+                            result.labeled("VIDEO", metadata);
+                        } else {
+                            result.status = Status.UNLABELED;
+                        }
+                    } else {
+                        result.status = Status.SKIPPED;
+                    }
+                    break;
+                default:
+                    result.status = Status.SKIPPED;
+            }
+        } catch (Exception e) {
+            result.status = Status.ERROR;
+            result.error = e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName();
+        }
+        result.latencyNanos = System.nanoTime() - start;
+        return result;
+    }
+
+    /**
+     * 文件头是否覆盖了整个元数据区：JPEG读到SOS段，PNG读到IEND（AIGC文本块可能位于IDAT之后），或已读完整个文件
+     */
+    private static boolean coversMetadata(byte[] header, int length) {
+        if (length < header.length) {
+            return true;
+        }
+        ImageSegmentScanner segments = ImageSegmentScanner.wrap(ByteBuffer.wrap(header, 0, length));
+        int last = segments.format() == ImageSegmentScanner.Format.JPEG
+                ? ImageSegmentScanner.JPEG_SOS : ImageSegmentScanner.PNG_IEND;
+        while (segments.hasNext()) {
+            if (segments.next().type() == last) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 按标识常见程度依次尝试：PNG为AIGC文本块、XMP；JPEG为XMP、EXIF UserComment。各读取器共用扫描时打开的通道。
+     *
+     * @return 是否解析出标识
+     */
+    private static boolean readImage(FileChannel channel, ScanResult result) throws IOException {
+        if (result.type == FileType.PNG) {
+            AIGCMetadata metadata = PNGMetadataHandler.readAIGCMetadata(channel);
+            if (metadata != null) {
+                result.labeled("PNG_TEXT", metadata);
+                return true;
+            }
+        }
+
+        AIGCMetadata xmp = AIGCMetadataReader.readAIGCMetadata(channel);
+        if (xmp != null) {
+            result.labeled("XMP", xmp);
+            return true;
+        }
+
+        if (result.type == FileType.JPEG) {
+            AIGCMetadata metadata = JPEGMetadataHandler.readAIGCMetadata(channel);
+            if (metadata != null) {
+                result.labeled("EXIF", metadata);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static int readHeader(FileChannel channel, byte[] header) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(header);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, buffer.position()) < 0) {
+                break;
+            }
+        }
+        return buffer.position();
+    }
+
+    /**
+     * 读取检查点中记录的位置，检查点不存在或为空时返回null
+     */
+    private static String loadCheckpoint(Path checkpoint) throws IOException {
+        if (!Files.exists(checkpoint)) {
+            return null;
+        }
+        try (BufferedReader reader = Files.newBufferedReader(checkpoint, StandardCharsets.UTF_8)) {
+            String line = reader.readLine();
+            return line == null || line.isEmpty() ? null : line;
+        }
+    }
+
+    /**
+     * 按遍历顺序跟踪已提交的文件，求出此前文件都已处理完的最后一个路径
+     * 只保存最早未完成的文件及其后已提交的文件，通常不超过在途任务数
+     */
+    private static final class Progress {
+        private final ArrayDeque<Slot> slots = new ArrayDeque<>();
+        private String completed;
+
+        static final class Slot {
+            final String path;
+            boolean done;
+
+            Slot(String path) {
+                this.path = path;
+            }
+        }
+
+        Slot submit(String path) {
+            Slot slot = new Slot(path);
+            slots.addLast(slot);
+            return slot;
+        }
+
+        void complete(Slot slot) {
+            slot.done = true;
+            while (!slots.isEmpty() && slots.peekFirst().done) {
+                completed = slots.pollFirst().path;
+            }
+        }
+    }
+
+    /**
+     * 单个文件的扫描结果
+     */
+    static final class ScanResult {
+        final String path;
+        final long size;
+        FileType type = FileType.UNKNOWN;
+        Status status;
+        String source;
+        /** 解析出的元数据，只命中特征未能解析时为null */
+        AIGCMetadata metadata;
+        String error;
+        long latencyNanos;
+
+        ScanResult(String path, long size) {
+            this.path = path;
+            this.size = size;
+        }
+
+        void labeled(String source, AIGCMetadata metadata) {
+            this.status = Status.LABELED;
+            this.source = source;
+            this.metadata = metadata;
+        }
+    }
+
+    /**
+     * 报告和检查点写入，多个工作线程共用，按行加锁写入；检查点每次刷盘时整体替换为当前位置
+     */
+    private static final class ReportWriter implements AutoCloseable {
+        private static final String[] COLUMNS = {"path", "type", "size", "status", "source", "label",
+                "contentProducer", "produceID", "contentPropagator", "propagateID", "latencyMicros", "error"};
+
+        private final BufferedWriter report;
+        private final Path checkpoint;
+        private final ReportFormat format;
+        /** 未指定检查点时为null */
+        private final Progress progress;
+        /** 上次写入检查点的位置 */
+        private String saved;
+        private int pending;
+
+        ReportWriter(Path reportPath, Path checkpointPath, ReportFormat format, boolean append) throws IOException {
+            StandardOpenOption mode = append ? StandardOpenOption.APPEND : StandardOpenOption.TRUNCATE_EXISTING;
+            boolean header = format == ReportFormat.CSV && (!append || !Files.exists(reportPath) || Files.size(reportPath) == 0);
+            this.report = Files.newBufferedWriter(reportPath, StandardCharsets.UTF_8, StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, mode);
+            this.checkpoint = checkpointPath;
+            this.progress = checkpointPath == null ? null : new Progress();
+            this.format = format;
+            if (header) {
+                report.write(String.join(",", COLUMNS));
+                report.newLine();
+            }
+        }
+
+        /**
+         * 按遍历顺序登记即将提交的文件，未指定检查点时返回null
+         */
+        synchronized Progress.Slot submit(String path) {
+            return progress == null ? null : progress.submit(path);
+        }
+
+        synchronized void write(ScanResult result, Progress.Slot slot) throws IOException {
+            AIGCMetadata m = result.metadata;
+            Object[] values = {result.path, result.type, result.size, result.status, result.source,
+                    m != null ? m.getLabel() : null, m != null ? m.getContentProducer() : null,
+                    m != null ? m.getProduceID() : null, m != null ? m.getContentPropagator() : null,
+                    m != null ? m.getPropagateID() : null, result.latencyNanos / 1000, result.error};
+            if (format == ReportFormat.JSONL) {
+                writeJson(report, values);
+            } else {
+                writeCsv(report, values);
+            }
+            report.newLine();
+
+            if (slot != null) {
+                progress.complete(slot);
+            }
+            if (++pending >= FLUSH_INTERVAL) {
+                flush();
+            }
+        }
+
+        /**
+         * 先刷报告再写检查点，检查点位置之前的文件在报告中一定有对应行
+         * 检查点先写入临时文件再替换，异常退出时不会留下写了一半的位置
+         */
+        private void flush() throws IOException {
+            report.flush();
+            if (progress != null && progress.completed != null && !progress.completed.equals(saved)) {
+                Path temp = checkpoint.resolveSibling(checkpoint.getFileName() + ".tmp");
+                Files.write(temp, (progress.completed + System.lineSeparator()).getBytes(StandardCharsets.UTF_8));
+                Files.move(temp, checkpoint, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                saved = progress.completed;
+            }
+            pending = 0;
+        }
+
+        private static void writeJson(Writer out, Object[] values) throws IOException {
+            out.write('{');
+            boolean first = true;
+            for (int i = 0; i < COLUMNS.length; i++) {
+                if (values[i] == null) {
+                    continue;
+                }
+                if (!first) {
+                    out.write(',');
+                }
+                first = false;
+                out.write('"');
+                out.write(COLUMNS[i]);
+                out.write("\":");
+                if (values[i] instanceof Number) {
+                    out.write(values[i].toString());
+                } else {
+                    writeJsonString(out, values[i].toString());
+                }
+            }
+            out.write('}');
+        }
+
+        private static void writeJsonString(Writer out, String value) throws IOException {
+            out.write('"');
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                if (c == '"' || c == '\\') {
+                    out.write('\\');
+                    out.write(c);
+                } else if (c < 0x20) {
+                    out.write(String.format("\\u%04x", (int) c));
+                } else {
+                    out.write(c);
+                }
+            }
+            out.write('"');
+        }
+
+        private static void writeCsv(Writer out, Object[] values) throws IOException {
+            for (int i = 0; i < values.length; i++) {
+                if (i > 0) {
+                    out.write(',');
+                }
+                if (values[i] == null) {
+                    continue;
+                }
+                String value = values[i].toString();
+                if (value.indexOf(',') >= 0 || value.indexOf('"') >= 0 || value.indexOf('\n') >= 0 || value.indexOf('\r') >= 0) {
+                    out.write('"');
+                    out.write(value.replace("\"", "\"\""));
+                    out.write('"');
+                } else {
+                    out.write(value);
+                }
+            }
+        }
+
+        @Override
+        public synchronized void close() throws IOException {
+            try {
+                flush();
+            } finally {
+                report.close();
+            }
+        }
+    }
+
+    /**
+     * 以2的幂为桶边界的延迟直方图（微秒），线程安全
+     */
+    public static final class LatencyHistogram {
+        private static final int BUCKETS = 40;
+
+        private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+        private final AtomicLong count = new AtomicLong();
+        private final AtomicLong totalNanos = new AtomicLong();
+
+        void record(long nanos) {
+            long micros = Math.max(nanos / 1000, 0);
+            buckets.incrementAndGet(Math.min(64 - Long.numberOfLeadingZeros(micros), BUCKETS - 1));
+            count.incrementAndGet();
+            totalNanos.addAndGet(nanos);
+        }
+
+        public long count() {
+            return count.get();
+        }
+
+        public double meanMicros() {
+            long n = count.get();
+            return n == 0 ? 0 : totalNanos.get() / 1000.0 / n;
+        }
+
+        /**
+         * 分位数所在桶的上界（微秒）
+         *
+         * @param quantile 0-1之间的分位
+         */
+        public long percentileMicros(double quantile) {
+            long target = (long) Math.ceil(count.get() * quantile);
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += buckets.get(i);
+                if (seen >= target && seen > 0) {
+                    return 1L << i;
+                }
+            }
+            return 0;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d 个, 平均 %.0f us, p50 <%d us, p90 <%d us, p99 <%d us",
+                    count(), meanMicros(), percentileMicros(0.5), percentileMicros(0.9), percentileMicros(0.99));
+        }
+    }
+
+    /**
+     * 扫描统计：各状态的文件数、吞吐量和按文件类型的延迟直方图
+     */
+    public static final class Summary {
+        private final long startNanos = System.nanoTime();
+        private final Map<Status, AtomicLong> statusCounts = new EnumMap<>(Status.class);
+        private final Map<FileType, LatencyHistogram> latencies = new EnumMap<>(FileType.class);
+        private final AtomicLong bytes = new AtomicLong();
+        private long elapsedNanos;
+
+        Summary() {
+            for (Status status : Status.values()) {
+                statusCounts.put(status, new AtomicLong());
+            }
+            for (FileType type : FileType.values()) {
+                latencies.put(type, new LatencyHistogram());
+            }
+        }
+
+        void record(ScanResult result) {
+            statusCounts.get(result.status).incrementAndGet();
+            latencies.get(result.type).record(result.latencyNanos);
+            bytes.addAndGet(result.size);
+        }
+
+        void finish() {
+            elapsedNanos = System.nanoTime() - startNanos;
+        }
+
+        public long count(Status status) {
+            return statusCounts.get(status).get();
+        }
+
+        public long totalFiles() {
+            long total = 0;
+            for (AtomicLong count : statusCounts.values()) {
+                total += count.get();
+            }
+            return total;
+        }
+
+        public double filesPerSecond() {
+            return elapsedNanos == 0 ? 0 : totalFiles() * 1e9 / elapsedNanos;
+        }
+
+        public LatencyHistogram latency(FileType type) {
+            return latencies.get(type);
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder();
+            sb.append(String.format("扫描 %d 个文件, 耗时 %.1f s, %.0f 文件/秒, 文件总量 %.1f MB%n",
+                    totalFiles(), elapsedNanos / 1e9, filesPerSecond(), bytes.get() / 1024.0 / 1024.0));
+            for (Status status : Status.values()) {
+                sb.append(String.format("  %-9s %d%n", status, count(status)));
+            }
+            for (FileType type : FileType.values()) {
+                LatencyHistogram histogram = latencies.get(type);
+                if (histogram.count() > 0) {
+                    sb.append(String.format("  %-7s %s%n", type, histogram));
+                }
+            }
+            return sb.toString();
+        }
+    }
+
+    /**
+     * 测试方法
+     */
+    public static void main(String[] args) {
+        try {
+            Path root = Paths.get(args.length > 0 ? args[0] : "D:\\data\\watermark");
+            Path report = Paths.get(args.length > 1 ? args[1] : "aigc-report.jsonl");
+            Path checkpoint = Paths.get(report + ".checkpoint");
+            ReportFormat format = report.toString().endsWith(".csv") ? ReportFormat.CSV : ReportFormat.JSONL;
+
+            ComplianceScanner scanner = new ComplianceScanner(Runtime.getRuntime().availableProcessors(), format, false);
+            System.out.print(scanner.scan(root, report, checkpoint));
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+}
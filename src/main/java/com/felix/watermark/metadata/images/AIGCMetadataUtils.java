@@ -1,8 +1,15 @@
 package com.felix.watermark.metadata.images;
 
+import com.felix.file.FileTypeChecker;
+import com.felix.file.FileTypeChecker.FileType;
 import com.felix.watermark.metadata.AIGCMetadata;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 
 /**
  * AIGC隐式标识统一工具类
@@ -10,38 +17,137 @@ import java.io.File;
 public class AIGCMetadataUtils {
 
     /**
-     * 根据文件类型自动选择处理器并添加AIGC元数据
+     * 快速检查默认读取的文件头字节数
+     * 覆盖一个最大的JPEG APP段（64KB，如带缩略图的EXIF）及其后的XMP段，PNG的AIGC数据块紧随IHDR
+     */
+    public static final int DEFAULT_HEADER_BYTES = 128 * 1024;
+
+    /**
+     * 根据文件头的魔数自动选择处理器并添加AIGC元数据，不依赖文件扩展名
+     * JPEG写入EXIF UserComment，PNG写入AIGC文本块，WebP、HEIF/AVIF、GIF写入XMP。
+     * 输入文件只打开一次：识别类型用的文件头和之后的处理都在同一个通道上进行。
      */
     public static boolean addAIGCMetadata(File inputFile, File outputFile, AIGCMetadata metadata) {
-        String fileName = inputFile.getName().toLowerCase();
-
-        if (fileName.endsWith(".jpg") || fileName.endsWith(".jpeg")) {
-            return JPEGMetadataHandler.addAIGCMetadata(inputFile, outputFile, metadata);
-        } else if (fileName.endsWith(".png")) {
-            return PNGMetadataHandler.addAIGCMetadata(inputFile, outputFile, metadata);
-        } else {
-            System.err.println("不支持的图片格式: " + fileName);
+        try (FileChannel in = FileChannel.open(inputFile.toPath(), StandardOpenOption.READ)) {
+            FileType type = FileTypeChecker.getFileTypeByHeader(FileTypeChecker.readHeader(in));
+            switch (type) {
+                case JPEG:
+                    return JPEGMetadataHandler.addAIGCMetadata(in, inputFile, outputFile, metadata);
+                case PNG:
+                    return PNGMetadataHandler.addAIGCMetadata(in, inputFile, outputFile, metadata);
+                case WEBP:
+                    return WebPMetadataHandler.addAIGCMetadata(in, inputFile, outputFile, metadata);
+                case HEIF:
+                case AVIF:
+                    return HEIFMetadataHandler.addAIGCMetadata(in, inputFile, outputFile, metadata);
+                case GIF:
+                    return GIFMetadataHandler.addAIGCMetadata(in, inputFile, outputFile, metadata);
+                default:
+                    System.err.println("不支持的图片格式: " + inputFile.getName());
+                    return false;
+            }
+        } catch (IOException e) {
+            System.err.println("读取图片文件失败: " + inputFile.getAbsolutePath() + ", 错误: " + e.getMessage());
             return false;
         }
     }
 
     /**
-     * 根据文件类型读取AIGC元数据
+     * 根据文件头的魔数选择处理器读取AIGC元数据，文件只打开一次
      */
     public static AIGCMetadata readAIGCMetadata(File imageFile) {
-        String fileName = imageFile.getName().toLowerCase();
-        try {
-            if (fileName.endsWith(".jpg") || fileName.endsWith(".jpeg")) {
-                return JPEGMetadataHandler.readAIGCMetadata(imageFile);
-            } else if (fileName.endsWith(".png")) {
-                return PNGMetadataHandler.readAIGCMetadata(imageFile);
-            } else {
-                System.err.println("不支持的图片格式: " + fileName);
+        try (FileChannel channel = FileChannel.open(imageFile.toPath(), StandardOpenOption.READ)) {
+            FileType type = FileTypeChecker.getFileTypeByHeader(FileTypeChecker.readHeader(channel));
+            if (!isSupported(type)) {
+                System.err.println("不支持的图片格式: " + imageFile.getName());
                 return null;
             }
+            return readAIGCMetadata(channel, type);
         }catch (Exception e){
             e.printStackTrace();
             return null;
         }
     }
+
+    /**
+     * 从已打开、已识别类型的图片读取AIGC元数据，供已读过文件头的调用方（如合规扫描）复用通道
+     *
+     * @param channel 可读的文件通道，由调用方关闭
+     * @param type 根据文件头识别的类型
+     * @return AIGC元数据，不支持的类型或没有标识时返回null
+     */
+    public static AIGCMetadata readAIGCMetadata(FileChannel channel, FileType type) throws IOException {
+        switch (type) {
+            case JPEG:
+                return JPEGMetadataHandler.readAIGCMetadata(channel);
+            case PNG:
+                return PNGMetadataHandler.readAIGCMetadata(channel);
+            case WEBP:
+                return WebPMetadataHandler.readAIGCMetadata(channel);
+            case HEIF:
+            case AVIF:
+                return HEIFMetadataHandler.readAIGCMetadata(channel);
+            case GIF:
+                return GIFMetadataHandler.readAIGCMetadata(channel);
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * 是否支持读写该类型图片的AIGC元数据
+     */
+    private static boolean isSupported(FileType type) {
+        switch (type) {
+            case JPEG:
+            case PNG:
+            case WEBP:
+            case HEIF:
+            case AVIF:
+            case GIF:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * 快速检查图片是否带有AIGC隐式标识，读取最多{@link #DEFAULT_HEADER_BYTES}字节
+     */
+    public static boolean hasAIGC(Path imageFile) throws IOException {
+        return hasAIGC(imageFile, DEFAULT_HEADER_BYTES);
+    }
+
+    /**
+     * 快速检查图片是否带有AIGC隐式标识，适用于海量文件的合规扫描
+     * 只做一次定位读取取得文件头部，按字节特征匹配PNG的AIGC文本块、XMP的TC260命名空间和EXIF UserComment中的AIGC JSON，
+     * 不识别文件格式、不解析元数据结构。位于maxBytes之后的标识（如PNG中IDAT之后的文本块）不会被发现，
+     * 需要确切结果时使用{@link #readAIGCMetadata}。
+     *
+     * @param imageFile 图片文件
+     * @param maxBytes 最多读取的字节数
+     * @return 文件头部是否包含AIGC标识特征
+     * @throws IOException 读取文件失败
+     */
+    public static boolean hasAIGC(Path imageFile, int maxBytes) throws IOException {
+        try (FileChannel channel = FileChannel.open(imageFile, StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(maxBytes, channel.size()));
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, buffer.position()) < 0) {
+                    break;
+                }
+            }
+            return containsAIGCSignature(buffer.array(), buffer.position());
+        }
+    }
+
+    /**
+     * 在已读取的文件头字节中匹配AIGC标识特征，供已经读过文件头的调用方复用
+     *
+     * @param header 文件开头的字节
+     * @param length header中的有效字节数
+     */
+    public static boolean containsAIGCSignature(byte[] header, int length) {
+        return AIGCSignatureMatcher.matches(header, length);
+    }
 }
@@ -0,0 +1,63 @@
+package com.felix.watermark.metadata.images;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * AIGC隐式标识的字节特征匹配
+ * 在文件头部的原始字节中查找以下任一特征，不解析文件结构：
+ * PNG关键字为AIGC的tEXt数据块（类型码+关键字）、XMP中的TC260命名空间、
+ * EXIF UserComment或其他文本字段中以{"AIGC":开头的JSON（UTF-8及UTF-16两种字节序）。
+ *
+ * 按特征首字节建立查找表，逐字节扫描时只在首字节命中的位置比较完整特征。
+ */
+final class AIGCSignatureMatcher {
+
+    private static final byte[][] SIGNATURES = {
+            "tEXtAIGC\0".getBytes(StandardCharsets.US_ASCII),
+            "http://www.tc260.org.cn/ns/AIGC/1.0/".getBytes(StandardCharsets.US_ASCII),
+            "{\"AIGC\":".getBytes(StandardCharsets.US_ASCII),
+            "{\"AIGC\":".getBytes(StandardCharsets.UTF_16BE),
+            "{\"AIGC\":".getBytes(StandardCharsets.UTF_16LE)
+    };
+
+    /** 首字节 -> 以该字节开头的特征下标位图 */
+    private static final int[] FIRST_BYTE = new int[256];
+
+    static {
+        for (int i = 0; i < SIGNATURES.length; i++) {
+            FIRST_BYTE[SIGNATURES[i][0] & 0xFF] |= 1 << i;
+        }
+    }
+
+    private AIGCSignatureMatcher() {
+    }
+
+    /**
+     * 判断data[0, length)中是否包含任一AIGC特征
+     */
+    static boolean matches(byte[] data, int length) {
+        for (int i = 0; i < length; i++) {
+            int candidates = FIRST_BYTE[data[i] & 0xFF];
+            while (candidates != 0) {
+                int index = Integer.numberOfTrailingZeros(candidates);
+                if (startsWith(data, i, length, SIGNATURES[index])) {
+                    return true;
+                }
+                candidates &= candidates - 1;
+            }
+        }
+        return false;
+    }
+
+    private static boolean startsWith(byte[] data, int offset, int length, byte[] signature) {
+        if (offset + signature.length > length) {
+            return false;
+        }
+        for (int i = 1; i < signature.length; i++) {
+            if (data[offset + i] != signature[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
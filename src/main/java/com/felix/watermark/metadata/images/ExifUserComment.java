@@ -0,0 +1,367 @@
+package com.felix.watermark.metadata.images;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * EXIF UserComment（0x9286，位于0x8769指向的Exif IFD中）的轻量读写
+ * 直接按TIFF结构定位IFD条目，不解析其他标签，也不重新序列化整个EXIF：
+ * 新值不超过原值占用的空间时原位覆盖；否则追加到TIFF末尾并修改条目的偏移；
+ * 需要新增条目时把所在IFD整体复制到末尾并插入条目，再修改指向它的指针。
+ * 原有数据一律不移动，MakerNote、缩略图等使用绝对偏移的内容保持有效。
+ *
+ * UserComment前8字节为字符编码标识。写入时一律使用"ASCII"，非ASCII字符在JSON中转义为\\uXXXX：
+ * "UNICODE"的字节序各读取器理解不一（metadata-extractor固定按小端解码，大端EXIF中的中文会读成乱码）。
+ * 读取时兼容"UNICODE"（按TIFF字节序或BOM）和未写编码标识的旧文件。
+ */
+final class ExifUserComment {
+
+    /** EXIF所在APP1段数据开头的标识 */
+    static final byte[] EXIF_HEADER = {'E', 'x', 'i', 'f', 0, 0};
+
+    /** 新建TIFF使用的字节序 */
+    private static final ByteOrder NEW_TIFF_ORDER = ByteOrder.LITTLE_ENDIAN;
+
+    private static final int TAG_EXIF_IFD_POINTER = 0x8769;
+    private static final int TAG_USER_COMMENT = 0x9286;
+
+    private static final int TYPE_LONG = 4;
+    private static final int TYPE_UNDEFINED = 7;
+
+    private static final byte[] ASCII_PREFIX = {'A', 'S', 'C', 'I', 'I', 0, 0, 0};
+    private static final byte[] UNICODE_PREFIX = {'U', 'N', 'I', 'C', 'O', 'D', 'E', 0};
+    private static final int PREFIX_LENGTH = 8;
+
+    private ExifUserComment() {
+    }
+
+    /**
+     * 生成带"ASCII"编码标识的UserComment值
+     *
+     * @param json AIGC元数据JSON
+     * @param utf8 JSON的UTF-8编码，全为ASCII时直接使用
+     */
+    static byte[] encode(String json, ByteBuffer utf8) {
+        boolean ascii = true;
+        for (int i = utf8.position(); i < utf8.limit(); i++) {
+            if (utf8.get(i) < 0) {
+                ascii = false;
+                break;
+            }
+        }
+        byte[] text;
+        if (ascii) {
+            text = new byte[utf8.remaining()];
+            utf8.duplicate().get(text);
+        } else {
+            text = toAsciiJson(json).getBytes(StandardCharsets.US_ASCII);
+        }
+        byte[] value = new byte[PREFIX_LENGTH + text.length];
+        System.arraycopy(ASCII_PREFIX, 0, value, 0, PREFIX_LENGTH);
+        System.arraycopy(text, 0, value, PREFIX_LENGTH, text.length);
+        return value;
+    }
+
+    /**
+     * 将ASCII可打印范围外的字符转义为\\uXXXX
+     */
+    private static String toAsciiJson(String json) {
+        StringBuilder builder = null;
+        for (int i = 0; i < json.length(); i++) {
+            char c = json.charAt(i);
+            boolean escape = c > 0x7E || c < 0x20;
+            if (escape && builder == null) {
+                builder = new StringBuilder(json.length() + 32).append(json, 0, i);
+            }
+            if (escape) {
+                builder.append(String.format("\\u%04x", (int) c));
+            } else if (builder != null) {
+                builder.append(c);
+            }
+        }
+        return builder == null ? json : builder.toString();
+    }
+
+    /**
+     * 读取TIFF的字节序
+     *
+     * @throws IOException 不是有效的TIFF头
+     */
+    private static ByteOrder byteOrder(ByteBuffer tiff) throws IOException {
+        if (tiff.remaining() < 8) {
+            throw new IOException("EXIF数据过短");
+        }
+        int mark = tiff.getShort(tiff.position());
+        if (mark == 0x4949) {
+            return ByteOrder.LITTLE_ENDIAN;
+        }
+        if (mark == 0x4D4D) {
+            return ByteOrder.BIG_ENDIAN;
+        }
+        throw new IOException("无效的TIFF字节序标识");
+    }
+
+    /**
+     * 读取UserComment并按编码标识解码
+     *
+     * @param tiff TIFF数据（EXIF段中"Exif\0\0"之后的部分），从position开始
+     * @return UserComment文本，没有该标签时返回null
+     * @throws IOException EXIF结构无效
+     */
+    static String read(ByteBuffer tiff) throws IOException {
+        ByteBuffer buffer = tiff.slice().order(byteOrder(tiff));
+        int exifEntry = findEntry(buffer, buffer.getInt(4), TAG_EXIF_IFD_POINTER);
+        if (exifEntry < 0) {
+            return null;
+        }
+        int entry = findEntry(buffer, buffer.getInt(exifEntry + 8), TAG_USER_COMMENT);
+        if (entry < 0) {
+            return null;
+        }
+        int count = buffer.getInt(entry + 4);
+        int offset = count <= 4 ? entry + 8 : buffer.getInt(entry + 8);
+        checkRange(buffer, offset, count);
+        return decode(buffer, offset, count);
+    }
+
+    /**
+     * 写入UserComment，返回新的TIFF数据
+     *
+     * @param tiff 原TIFF数据，为null时新建只含Exif IFD的TIFF
+     * @param value 带编码标识的UserComment值（见{@link #encode}）
+     * @throws IOException 原EXIF结构无效
+     */
+    static byte[] patch(byte[] tiff, byte[] value) throws IOException {
+        if (tiff == null) {
+            return create(value);
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(tiff).order(byteOrder(ByteBuffer.wrap(tiff)));
+        int ifd0 = buffer.getInt(4);
+        int exifEntry = findEntry(buffer, ifd0, TAG_EXIF_IFD_POINTER);
+
+        if (exifEntry < 0) {
+            // 没有Exif IFD：在末尾新建只含UserComment的Exif IFD，IFD0复制到末尾并加入指针条目
+            Appender out = new Appender(buffer, tiff.length + value.length + 64 + ifdLength(buffer, ifd0));
+            int exifIfd = out.ifd(new int[][]{{TAG_USER_COMMENT, TYPE_UNDEFINED, value.length, 0}});
+            out.putInt(exifIfd + 2 + 8, out.value(value));
+            int newIfd0 = out.copyIfd(ifd0, TAG_EXIF_IFD_POINTER, TYPE_LONG, 1, exifIfd);
+            out.putInt(4, newIfd0);
+            return out.toByteArray();
+        }
+
+        int exifIfd = buffer.getInt(exifEntry + 8);
+        int entry = findEntry(buffer, exifIfd, TAG_USER_COMMENT);
+        if (entry >= 0) {
+            int count = buffer.getInt(entry + 4);
+            int offset = buffer.getInt(entry + 8);
+            if (count > 4 && count >= value.length && checkRange(buffer, offset, count)) {
+                // 原位覆盖，多出的旧数据清零
+                byte[] patched = tiff.clone();
+                System.arraycopy(value, 0, patched, offset, value.length);
+                Arrays.fill(patched, offset + value.length, offset + count, (byte) 0);
+                ByteBuffer.wrap(patched).order(buffer.order())
+                        .putShort(entry + 2, (short) TYPE_UNDEFINED)
+                        .putInt(entry + 4, value.length);
+                return patched;
+            }
+            Appender out = new Appender(buffer, tiff.length + value.length + 2);
+            int valueOffset = out.value(value);
+            out.putShort(entry + 2, TYPE_UNDEFINED);
+            out.putInt(entry + 4, value.length);
+            out.putInt(entry + 8, valueOffset);
+            return out.toByteArray();
+        }
+
+        // Exif IFD中没有UserComment：复制Exif IFD到末尾并插入条目
+        Appender out = new Appender(buffer, tiff.length + value.length + 16 + ifdLength(buffer, exifIfd));
+        int valueOffset = out.value(value);
+        int newExifIfd = out.copyIfd(exifIfd, TAG_USER_COMMENT, TYPE_UNDEFINED, value.length, valueOffset);
+        out.putInt(exifEntry + 8, newExifIfd);
+        return out.toByteArray();
+    }
+
+    /**
+     * 新建TIFF：小端字节序，IFD0只含Exif IFD指针，Exif IFD只含UserComment
+     */
+    private static byte[] create(byte[] value) {
+        ByteBuffer header = ByteBuffer.allocate(8).order(NEW_TIFF_ORDER);
+        header.putShort((short) 0x4949).putShort((short) 42).putInt(8);
+        Appender out = new Appender(header, 8 + 2 * 18 + value.length + 2);
+        int ifd0 = out.ifd(new int[][]{{TAG_EXIF_IFD_POINTER, TYPE_LONG, 1, 0}});
+        int exifIfd = out.ifd(new int[][]{{TAG_USER_COMMENT, TYPE_UNDEFINED, value.length, 0}});
+        out.putInt(ifd0 + 2 + 8, exifIfd);
+        out.putInt(exifIfd + 2 + 8, out.value(value));
+        return out.toByteArray();
+    }
+
+    /**
+     * 在IFD中查找标签
+     *
+     * @return 条目位置，没有时返回-1
+     * @throws IOException IFD超出数据范围
+     */
+    private static int findEntry(ByteBuffer tiff, int ifd, int tag) throws IOException {
+        int count = entryCount(tiff, ifd);
+        for (int i = 0; i < count; i++) {
+            int entry = ifd + 2 + i * 12;
+            if ((tiff.getShort(entry) & 0xFFFF) == tag) {
+                return entry;
+            }
+        }
+        return -1;
+    }
+
+    private static int entryCount(ByteBuffer tiff, int ifd) throws IOException {
+        if (ifd < 8 || ifd + 2 > tiff.limit()) {
+            throw new IOException("EXIF结构无效：IFD偏移越界");
+        }
+        int count = tiff.getShort(ifd) & 0xFFFF;
+        checkRange(tiff, ifd, ifdLength(count));
+        return count;
+    }
+
+    private static int ifdLength(ByteBuffer tiff, int ifd) throws IOException {
+        return ifdLength(entryCount(tiff, ifd));
+    }
+
+    private static int ifdLength(int entries) {
+        return 2 + entries * 12 + 4;
+    }
+
+    private static boolean checkRange(ByteBuffer tiff, int offset, int length) throws IOException {
+        if (offset < 0 || length < 0 || (long) offset + length > tiff.limit()) {
+            throw new IOException("EXIF结构无效：数据偏移越界");
+        }
+        return true;
+    }
+
+    /**
+     * 按前8字节的编码标识解码；兼容早期版本未写编码标识、直接以UTF-8写入JSON的文件
+     */
+    private static String decode(ByteBuffer tiff, int offset, int count) {
+        byte[] bytes = new byte[count];
+        ByteBuffer source = tiff.duplicate();
+        source.position(offset);
+        source.get(bytes);
+
+        if (count > 0 && bytes[0] == '{') {
+            return new String(bytes, StandardCharsets.UTF_8).trim();
+        }
+        if (count < PREFIX_LENGTH) {
+            return null;
+        }
+        Charset charset;
+        if (startsWith(bytes, UNICODE_PREFIX)) {
+            charset = tiff.order() == ByteOrder.BIG_ENDIAN ? StandardCharsets.UTF_16BE : StandardCharsets.UTF_16LE;
+            // 带BOM时以BOM为准
+            if (count >= PREFIX_LENGTH + 2) {
+                int bom = ((bytes[PREFIX_LENGTH] & 0xFF) << 8) | (bytes[PREFIX_LENGTH + 1] & 0xFF);
+                if (bom == 0xFEFF || bom == 0xFFFE) {
+                    charset = StandardCharsets.UTF_16;
+                }
+            }
+        } else if (startsWith(bytes, ASCII_PREFIX)) {
+            charset = StandardCharsets.US_ASCII;
+        } else {
+            // 未定义编码（8个0）或其他编码，按UTF-8尝试
+            charset = StandardCharsets.UTF_8;
+        }
+        String text = new String(bytes, PREFIX_LENGTH, count - PREFIX_LENGTH, charset);
+        // 去掉填充的0和空白
+        int end = text.length();
+        while (end > 0 && (text.charAt(end - 1) == 0 || Character.isWhitespace(text.charAt(end - 1)))) {
+            end--;
+        }
+        return text.substring(0, end).trim();
+    }
+
+    private static boolean startsWith(byte[] bytes, byte[] prefix) {
+        for (int i = 0; i < prefix.length; i++) {
+            if (bytes[i] != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 在原TIFF数据末尾追加内容，追加的内容按TIFF要求从偶数偏移开始
+     */
+    private static final class Appender {
+        private final ByteBuffer out;
+
+        Appender(ByteBuffer tiff, int capacity) {
+            out = ByteBuffer.allocate(Math.max(capacity, tiff.limit()) + 16).order(tiff.order());
+            ByteBuffer source = tiff.duplicate();
+            source.position(0);
+            out.put(source);
+        }
+
+        private int align() {
+            if ((out.position() & 1) != 0) {
+                out.put((byte) 0);
+            }
+            return out.position();
+        }
+
+        int value(byte[] value) {
+            int offset = align();
+            out.put(value);
+            return offset;
+        }
+
+        /**
+         * 追加IFD，条目为{标签, 类型, 数量, 值或偏移}，下一IFD为0
+         */
+        int ifd(int[][] entries) {
+            int offset = align();
+            out.putShort((short) entries.length);
+            for (int[] entry : entries) {
+                out.putShort((short) entry[0]).putShort((short) entry[1]).putInt(entry[2]).putInt(entry[3]);
+            }
+            out.putInt(0);
+            return offset;
+        }
+
+        /**
+         * 复制已有IFD并按标签顺序插入新条目，保留原有的下一IFD指针
+         */
+        int copyIfd(int ifd, int tag, int type, int count, int valueOrOffset) {
+            int entries = out.getShort(ifd) & 0xFFFF;
+            int offset = align();
+            out.putShort((short) (entries + 1));
+            boolean inserted = false;
+            for (int i = 0; i < entries; i++) {
+                int entry = ifd + 2 + i * 12;
+                if (!inserted && (out.getShort(entry) & 0xFFFF) > tag) {
+                    out.putShort((short) tag).putShort((short) type).putInt(count).putInt(valueOrOffset);
+                    inserted = true;
+                }
+                for (int b = 0; b < 12; b++) {
+                    out.put(out.get(entry + b));
+                }
+            }
+            if (!inserted) {
+                out.putShort((short) tag).putShort((short) type).putInt(count).putInt(valueOrOffset);
+            }
+            out.putInt(out.getInt(ifd + 2 + entries * 12));
+            return offset;
+        }
+
+        void putShort(int offset, int value) {
+            out.putShort(offset, (short) value);
+        }
+
+        void putInt(int offset, int value) {
+            out.putInt(offset, value);
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(out.array(), out.position());
+        }
+    }
+}
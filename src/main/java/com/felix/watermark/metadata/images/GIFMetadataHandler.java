@@ -0,0 +1,332 @@
+package com.felix.watermark.metadata.images;
+
+import com.felix.watermark.metadata.AIGCMetadata;
+import com.felix.watermark.metadata.images.XMP.AIGCMetadataReader;
+import com.felix.watermark.metadata.images.XMP.AIGCMetadataWriter;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * GIF格式AIGC标识添加器
+ * AIGC标识写入XMP应用扩展（XMP规范第3部分1.1.2节）中XMP包的TC260:AIGC属性：扩展块以21 FF 0B和
+ * 应用标识"XMP DataXMP"开头，之后是原样的XMP包，再接258字节的"magic trailer"（01 FF FE ... 01 00 00），
+ * 使按子块解析的解码器能正确跳过XMP包。
+ * 文件被只读映射到内存（替换输入文件时改为以定位读取逐段读入固定大小的窗口），只按子块长度跳过图像数据，
+ * 不解码LZW；新的扩展块插在全局颜色表之后。
+ */
+public class GIFMetadataHandler {
+
+    private static final int EXTENSION = 0x21;
+    private static final int IMAGE_DESCRIPTOR = 0x2C;
+    private static final int TRAILER = 0x3B;
+    private static final int APPLICATION_EXTENSION = 0xFF;
+
+    /** 应用扩展的块大小、应用标识和认证码 */
+    private static final byte[] XMP_APPLICATION = {0x0B, 'X', 'M', 'P', ' ', 'D', 'a', 't', 'a', 'X', 'M', 'P'};
+
+    private static final byte[] MAGIC_TRAILER = createMagicTrailer();
+
+    /** 扩展功能需要GIF89a */
+    private static final byte[] GIF89A = "GIF89a".getBytes(StandardCharsets.US_ASCII);
+
+    /**
+     * 扫描结果：已有XMP扩展块的位置，或者新扩展块应插入的位置
+     */
+    private static final class Location {
+        /** XMP扩展块的起始位置，-1表示没有 */
+        int blockOffset = -1;
+        int blockEnd;
+        int payloadOffset;
+        int payloadLength;
+        /** 全局颜色表之后的位置 */
+        int insertOffset;
+
+        boolean found() {
+            return blockOffset >= 0;
+        }
+    }
+
+    /**
+     * 按位置读取GIF内容：整个文件的只读映射，或以定位读取逐段读入的窗口（不映射文件，堆内存只占一个窗口）
+     * 扫描基本是顺序向前的，窗口只在访问到范围之外时重新读取。
+     */
+    private static final class Source {
+        private static final int WINDOW = 64 * 1024;
+
+        /** 为null时buffer为整个文件的映射 */
+        private final FileChannel channel;
+        private final ByteBuffer buffer;
+        private final int limit;
+        /** buffer[0]在文件中的位置 */
+        private int base;
+
+        private Source(FileChannel channel, ByteBuffer buffer, int limit) {
+            this.channel = channel;
+            this.buffer = buffer;
+            this.limit = limit;
+        }
+
+        static Source map(FileChannel channel) throws IOException {
+            checkSize(channel);
+            ByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return new Source(null, mapped, mapped.limit());
+        }
+
+        static Source read(FileChannel channel) throws IOException {
+            checkSize(channel);
+            ByteBuffer window = ByteBuffer.allocate(WINDOW);
+            window.limit(0);
+            return new Source(channel, window, (int) channel.size());
+        }
+
+        private static void checkSize(FileChannel channel) throws IOException {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("GIF文件过大: " + channel.size());
+            }
+        }
+
+        int limit() {
+            return limit;
+        }
+
+        byte get(int position) throws IOException {
+            int index = position - base;
+            if (channel != null && (index < 0 || index >= buffer.limit())) {
+                if (position < 0 || position >= limit) {
+                    throw new IndexOutOfBoundsException("GIF读取位置越界: " + position);
+                }
+                buffer.clear();
+                buffer.limit(Math.min(WINDOW, limit - position));
+                if (!ImageFileRewriter.readFully(channel, buffer, position)) {
+                    throw new EOFException("读取GIF文件时文件意外结束");
+                }
+                buffer.flip();
+                base = position;
+                index = 0;
+            }
+            return buffer.get(index);
+        }
+
+        byte[] bytes(int offset, int length) throws IOException {
+            byte[] bytes = new byte[length];
+            if (channel == null) {
+                ByteBuffer source = buffer.duplicate();
+                source.position(offset);
+                source.get(bytes);
+            } else if (!ImageFileRewriter.readFully(channel, ByteBuffer.wrap(bytes), offset)) {
+                throw new EOFException("读取GIF文件时文件意外结束");
+            }
+            return bytes;
+        }
+    }
+
+    /**
+     * 在GIF图片中添加AIGC隐式标识，已有XMP时按属性合并
+     * 输入和输出可以是同一个文件。
+     *
+     * @param inputFile 输入图片文件
+     * @param outputFile 输出图片文件
+     * @param metadata AIGC元数据
+     * @return 是否成功
+     */
+    public static boolean addAIGCMetadata(File inputFile, File outputFile, AIGCMetadata metadata) {
+        try (FileChannel in = FileChannel.open(inputFile.toPath(), StandardOpenOption.READ)) {
+            return addAIGCMetadata(in, inputFile, outputFile, metadata);
+        } catch (IOException e) {
+            System.err.println("添加AIGC元数据失败: " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * 为已打开的GIF图片添加AIGC隐式标识
+     *
+     * @param in 输入图片的只读通道，输出为同一个文件时会在替换前关闭（见{@link ImageFileRewriter#rewrite}）
+     * @param inputFile 输入图片文件
+     */
+    static boolean addAIGCMetadata(FileChannel in, File inputFile, File outputFile, AIGCMetadata metadata) {
+        try {
+            ImageFileRewriter.rewrite(in, inputFile.toPath(), outputFile.toPath(), (target, sameFile) -> {
+                try (FileChannel out = FileChannel.open(target, StandardOpenOption.WRITE,
+                        StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                    rewriteXMPExtension(in, sameFile ? Source.read(in) : Source.map(in), out, metadata);
+                }
+                return null;
+            });
+
+            System.out.println("成功添加AIGC元数据到GIF文件");
+            return true;
+
+        } catch (Exception e) {
+            System.err.println("添加AIGC元数据失败: " + e.getMessage());
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    /**
+     * 从GIF图片读取AIGC元数据
+     */
+    public static AIGCMetadata readAIGCMetadata(File gifFile) {
+        try (FileChannel channel = FileChannel.open(gifFile.toPath(), StandardOpenOption.READ)) {
+            return readAIGCMetadata(channel);
+        } catch (IOException e) {
+            System.err.println("读取GIF元数据失败: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * 从已打开的GIF图片读取AIGC元数据
+     *
+     * @param channel 可读的文件通道，由调用方关闭
+     */
+    public static AIGCMetadata readAIGCMetadata(FileChannel channel) {
+        try {
+            Source gif = Source.map(channel);
+            Location location = scan(gif);
+            if (location.found()) {
+                return AIGCMetadataReader.parseXMPPacket(gif.bytes(location.payloadOffset, location.payloadLength));
+            }
+        } catch (Exception e) {
+            System.err.println("读取GIF元数据失败: " + e.getMessage());
+            e.printStackTrace();
+        }
+        return null;
+    }
+
+    /**
+     * 已有XMP扩展块时替换为合并后的XMP，否则插在全局颜色表之后；GIF87a的文件头改为GIF89a，其余字节原样复制
+     */
+    private static void rewriteXMPExtension(FileChannel in, Source gif, FileChannel out, AIGCMetadata metadata)
+            throws IOException {
+        Location location = scan(gif);
+        byte[] packet = AIGCMetadataWriter.createXMPPacket(
+                location.found() ? gif.bytes(location.payloadOffset, location.payloadLength) : null, metadata);
+        ByteBuffer block = ByteBuffer.allocate(2 + XMP_APPLICATION.length + packet.length + MAGIC_TRAILER.length);
+        block.put((byte) EXTENSION).put((byte) APPLICATION_EXTENSION).put(XMP_APPLICATION)
+                .put(packet).put(MAGIC_TRAILER).flip();
+
+        long replaceFrom = location.found() ? location.blockOffset : location.insertOffset;
+        long replaceTo = location.found() ? location.blockEnd : location.insertOffset;
+        ImageFileRewriter.writeFully(out, ByteBuffer.wrap(GIF89A));
+        ImageFileRewriter.transfer(in, out, GIF89A.length, replaceFrom);
+        ImageFileRewriter.writeFully(out, block);
+        ImageFileRewriter.transfer(in, out, replaceTo, in.size());
+    }
+
+    /**
+     * 按块结构遍历到第一个XMP扩展块或文件结束符为止
+     *
+     * @throws IOException 不是GIF文件或块长度越界
+     */
+    private static Location scan(Source gif) throws IOException {
+        int limit = gif.limit();
+        if (limit < 13 || gif.get(0) != 'G' || gif.get(1) != 'I' || gif.get(2) != 'F' || gif.get(3) != '8') {
+            throw new IOException("不是有效的GIF文件");
+        }
+        Location location = new Location();
+        int packed = gif.get(10) & 0xFF;
+        int position = 13 + colorTableLength(packed);
+        if (position > limit) {
+            throw new IOException("GIF全局颜色表越界");
+        }
+        location.insertOffset = position;
+
+        while (position < limit) {
+            int introducer = gif.get(position) & 0xFF;
+            if (introducer == TRAILER) {
+                break;
+            } else if (introducer == EXTENSION) {
+                if (isXMPExtension(gif, position)) {
+                    int payloadOffset = position + 2 + XMP_APPLICATION.length;
+                    int trailer = indexOfMagicTrailer(gif, payloadOffset);
+                    if (trailer >= 0) {
+                        location.blockOffset = position;
+                        location.blockEnd = trailer + MAGIC_TRAILER.length;
+                        location.payloadOffset = payloadOffset;
+                        location.payloadLength = trailer - payloadOffset;
+                        return location;
+                    }
+                }
+                position = skipSubBlocks(gif, position + 2);
+            } else if (introducer == IMAGE_DESCRIPTOR) {
+                if (position + 10 > limit) {
+                    throw new IOException("GIF图像描述符越界");
+                }
+                // 图像描述符10字节、局部颜色表、LZW最小码长1字节，之后为图像数据子块
+                position += 10 + colorTableLength(gif.get(position + 9) & 0xFF) + 1;
+                position = skipSubBlocks(gif, position);
+            } else {
+                throw new IOException("GIF块类型无效: 0x" + Integer.toHexString(introducer));
+            }
+        }
+        return location;
+    }
+
+    private static boolean isXMPExtension(Source gif, int position) throws IOException {
+        if (position + 2 + XMP_APPLICATION.length > gif.limit()
+                || (gif.get(position + 1) & 0xFF) != APPLICATION_EXTENSION) {
+            return false;
+        }
+        for (int i = 0; i < XMP_APPLICATION.length; i++) {
+            if (gif.get(position + 2 + i) != XMP_APPLICATION[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 查找XMP包之后的magic trailer，XMP包为UTF-8文本，不会出现0xFF、0xFE字节
+     */
+    private static int indexOfMagicTrailer(Source gif, int from) throws IOException {
+        int last = gif.limit() - MAGIC_TRAILER.length;
+        for (int i = from; i <= last; i++) {
+            if (gif.get(i) == 0x01 && gif.get(i + 1) == (byte) 0xFF && gif.get(i + 2) == (byte) 0xFE) {
+                return gif.get(i + MAGIC_TRAILER.length - 1) == 0 ? i : -1;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * 跳过以0长度子块结束的数据子块序列
+     *
+     * @return 序列之后的位置
+     */
+    private static int skipSubBlocks(Source gif, int position) throws IOException {
+        int limit = gif.limit();
+        while (position < limit) {
+            int length = gif.get(position) & 0xFF;
+            position += 1 + length;
+            if (length == 0) {
+                return position;
+            }
+        }
+        throw new IOException("GIF数据子块越界");
+    }
+
+    private static int colorTableLength(int packed) {
+        return (packed & 0x80) != 0 ? 3 << ((packed & 0x07) + 1) : 0;
+    }
+
+    /**
+     * 01、FF到00（256字节）、00块结束符，共258字节
+     */
+    private static byte[] createMagicTrailer() {
+        byte[] trailer = new byte[258];
+        trailer[0] = 0x01;
+        for (int i = 0; i < 256; i++) {
+            trailer[1 + i] = (byte) (0xFF - i);
+        }
+        trailer[257] = 0x00;
+        return trailer;
+    }
+}
@@ -0,0 +1,782 @@
+package com.felix.watermark.metadata.images;
+
+import com.felix.watermark.metadata.AIGCMetadata;
+import com.felix.watermark.metadata.images.XMP.AIGCMetadataReader;
+import com.felix.watermark.metadata.images.XMP.AIGCMetadataWriter;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * HEIF/AVIF格式AIGC标识添加器
+ * HEIF和AVIF都基于ISOBMFF（ISO/IEC 23008-12），XMP作为item_type为"mime"、content_type为"application/rdf+xml"的
+ * 数据项存放，AIGC标识写入该XMP包的TC260:AIGC属性。
+ * 只读取顶层box头和meta box：写入时重建meta中的iinf、iloc（必要时加上iref中指向主图像的cdsc引用），
+ * XMP包放在文件末尾新增的mdat box中（文件末尾已是上次写入的XMP mdat时直接替换）；meta变长后，iloc中位于其后的数据项偏移随之调整，
+ * 图像序列（顶层moov，如avis、msf1品牌）各轨道stco/co64中位于其后的chunk偏移同样调整，
+ * 其余box（包括mdat中的图像数据）通过FileChannel.transferTo原样复制，不解码像素。
+ */
+public class HEIFMetadataHandler {
+
+    private static final int FTYP = fourCC("ftyp");
+    private static final int META = fourCC("meta");
+    private static final int MDAT = fourCC("mdat");
+    private static final int PITM = fourCC("pitm");
+    private static final int ILOC = fourCC("iloc");
+    private static final int IINF = fourCC("iinf");
+    private static final int INFE = fourCC("infe");
+    private static final int IREF = fourCC("iref");
+    private static final int IDAT = fourCC("idat");
+    private static final int MIME = fourCC("mime");
+    private static final int CDSC = fourCC("cdsc");
+    private static final int MOOV = fourCC("moov");
+    private static final int TRAK = fourCC("trak");
+    private static final int MDIA = fourCC("mdia");
+    private static final int MINF = fourCC("minf");
+    private static final int STBL = fourCC("stbl");
+    private static final int STCO = fourCC("stco");
+    private static final int CO64 = fourCC("co64");
+
+    private static final String XMP_CONTENT_TYPE = "application/rdf+xml";
+
+    /**
+     * box的位置：offset为box起始位置，headerLength含size、type（和largesize）
+     */
+    private static final class Box {
+        final int type;
+        final long offset;
+        final long length;
+        final int headerLength;
+
+        Box(int type, long offset, long length, int headerLength) {
+            this.type = type;
+            this.offset = offset;
+            this.length = length;
+            this.headerLength = headerLength;
+        }
+
+        long payloadOffset() {
+            return offset + headerLength;
+        }
+
+        long end() {
+            return offset + length;
+        }
+    }
+
+    /**
+     * iloc中一个数据项的位置
+     */
+    private static final class ItemLocation {
+        long itemId;
+        int constructionMethod;
+        int dataReferenceIndex;
+        long baseOffset;
+        final List<long[]> extents = new ArrayList<>(); // {extent_index, extent_offset, extent_length}
+    }
+
+    /**
+     * 解析后的meta box
+     */
+    private static final class Meta {
+        final Box box;
+        /** meta box全部内容（含box头） */
+        final ByteBuffer data;
+        final List<Box> children = new ArrayList<>();
+        long primaryItemId = -1;
+        /** XMP数据项编号，-1表示没有 */
+        long xmpItemId = -1;
+        long maxItemId;
+        int ilocVersion;
+        int offsetSize;
+        int lengthSize;
+        int baseOffsetSize;
+        int indexSize;
+        final List<ItemLocation> locations = new ArrayList<>();
+
+        Meta(Box box, ByteBuffer data) {
+            this.box = box;
+            this.data = data;
+        }
+
+        Box child(int type) {
+            for (Box child : children) {
+                if (child.type == type) {
+                    return child;
+                }
+            }
+            return null;
+        }
+
+        ItemLocation location(long itemId) {
+            for (ItemLocation location : locations) {
+                if (location.itemId == itemId) {
+                    return location;
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * 在HEIF/AVIF图片中添加AIGC隐式标识，已有XMP数据项时按属性合并
+     * 输入和输出可以是同一个文件。
+     *
+     * @param inputFile 输入图片文件
+     * @param outputFile 输出图片文件
+     * @param metadata AIGC元数据
+     * @return 是否成功
+     */
+    public static boolean addAIGCMetadata(File inputFile, File outputFile, AIGCMetadata metadata) {
+        try (FileChannel in = FileChannel.open(inputFile.toPath(), StandardOpenOption.READ)) {
+            return addAIGCMetadata(in, inputFile, outputFile, metadata);
+        } catch (IOException e) {
+            System.err.println("添加AIGC元数据失败: " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * 为已打开的HEIF图片添加AIGC隐式标识
+     *
+     * @param in 输入图片的只读通道，输出为同一个文件时会在替换前关闭（见{@link ImageFileRewriter#rewrite}）
+     * @param inputFile 输入图片文件
+     */
+    static boolean addAIGCMetadata(FileChannel in, File inputFile, File outputFile, AIGCMetadata metadata) {
+        try {
+            ImageFileRewriter.rewrite(in, inputFile.toPath(), outputFile.toPath(), (target, sameFile) -> {
+                try (FileChannel out = FileChannel.open(target, StandardOpenOption.WRITE,
+                        StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                    rewriteXMPItem(in, out, metadata);
+                }
+                return null;
+            });
+
+            System.out.println("成功添加AIGC元数据到HEIF文件");
+            return true;
+
+        } catch (Exception e) {
+            System.err.println("添加AIGC元数据失败: " + e.getMessage());
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    /**
+     * 从HEIF/AVIF图片读取AIGC元数据
+     */
+    public static AIGCMetadata readAIGCMetadata(File heifFile) {
+        try (FileChannel channel = FileChannel.open(heifFile.toPath(), StandardOpenOption.READ)) {
+            return readAIGCMetadata(channel);
+        } catch (IOException e) {
+            System.err.println("读取HEIF元数据失败: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * 从已打开的HEIF图片读取AIGC元数据
+     *
+     * @param channel 可读的文件通道，由调用方关闭
+     */
+    public static AIGCMetadata readAIGCMetadata(FileChannel channel) {
+        try {
+            Meta meta = readMeta(channel, scan(channel));
+            if (meta.xmpItemId >= 0) {
+                return AIGCMetadataReader.parseXMPPacket(readItem(channel, meta, meta.location(meta.xmpItemId)));
+            }
+        } catch (Exception e) {
+            System.err.println("读取HEIF元数据失败: " + e.getMessage());
+            e.printStackTrace();
+        }
+        return null;
+    }
+
+    /**
+     * 重建meta box并在文件末尾追加存放XMP包的mdat box，meta之前和之后的box原样复制
+     */
+    private static void rewriteXMPItem(FileChannel in, FileChannel out, AIGCMetadata metadata) throws IOException {
+        List<Box> boxes = scan(in);
+        Meta meta = readMeta(in, boxes);
+        ItemLocation existing = meta.xmpItemId >= 0 ? meta.location(meta.xmpItemId) : null;
+        byte[] packet = AIGCMetadataWriter.createXMPPacket(
+                existing != null ? readItem(in, meta, existing) : null, metadata);
+
+        long itemId = meta.xmpItemId >= 0 ? meta.xmpItemId : meta.maxItemId + 1;
+        ItemLocation xmp = new ItemLocation();
+        xmp.itemId = itemId;
+        meta.locations.remove(existing);
+        meta.locations.add(xmp);
+
+        // iloc中偏移字段的宽度与meta的长度互相依赖，按追加XMP后文件可能的最大长度选定
+        long maxOffset = in.size() + 2L * packet.length + meta.box.length + 0x10000;
+        if (maxOffset > 0xFFFFFFFFL) {
+            meta.offsetSize = 8;
+            meta.baseOffsetSize = meta.baseOffsetSize == 0 ? 0 : 8;
+        } else {
+            meta.offsetSize = Math.max(meta.offsetSize, 4);
+        }
+        meta.lengthSize = Math.max(meta.lengthSize, 4);
+        if (itemId > 0xFFFF && meta.ilocVersion < 2) {
+            meta.ilocVersion = 2;
+        }
+
+        // 先以占位偏移生成一次，得到新meta的长度，再填入实际偏移
+        long metaEnd = meta.box.end();
+        xmp.extents.add(new long[]{0, 0, packet.length});
+        long delta = buildMeta(meta, itemId, meta.xmpItemId < 0).length - meta.box.length;
+        for (ItemLocation location : meta.locations) {
+            if (location != xmp) {
+                shift(location, metaEnd, delta);
+            }
+        }
+        // 上次写入时追加的、只存放XMP包的mdat直接替换，反复更新时文件不会持续变长
+        Box last = boxes.get(boxes.size() - 1);
+        long copyEnd = isXMPMdat(last, existing, metaEnd) ? last.offset : in.size();
+        long fileEnd = copyEnd + delta;
+        xmp.extents.get(0)[1] = fileEnd + 8;
+        byte[] newMeta = buildMeta(meta, itemId, meta.xmpItemId < 0);
+
+        long position = 0;
+        for (Box box : boxes) {
+            if (box == meta.box) {
+                ImageFileRewriter.transfer(in, out, position, box.offset);
+                ImageFileRewriter.writeFully(out, ByteBuffer.wrap(newMeta));
+                position = metaEnd;
+            } else if (box.type == MOOV && delta != 0 && box.end() <= copyEnd) {
+                ImageFileRewriter.transfer(in, out, position, box.offset);
+                ImageFileRewriter.writeFully(out, ByteBuffer.wrap(shiftChunkOffsets(in, box, metaEnd, delta)));
+                position = box.end();
+            } else if (box.offset >= metaEnd && box.end() == copyEnd && box.headerLength == 8 && isOpenEnded(in, box)) {
+                // 长度为0（延伸到文件末尾）的box在末尾追加数据后必须改为明确的长度
+                if (box.length > 0xFFFFFFFFL) {
+                    throw new IOException("无法在长度不定且超过4GB的box之后追加数据");
+                }
+                ImageFileRewriter.transfer(in, out, position, box.offset);
+                ByteBuffer header = ByteBuffer.allocate(4).putInt((int) box.length);
+                header.flip();
+                ImageFileRewriter.writeFully(out, header);
+                position = box.offset + 4;
+            }
+        }
+        ImageFileRewriter.transfer(in, out, position, copyEnd);
+
+        ByteBuffer mdat = ByteBuffer.allocate(8);
+        mdat.putInt(8 + packet.length).putInt(MDAT).flip();
+        ImageFileRewriter.writeFully(out, mdat);
+        ImageFileRewriter.writeFully(out, ByteBuffer.wrap(packet));
+    }
+
+    /**
+     * 判断文件末尾的box是否为只存放已有XMP数据项的mdat
+     */
+    private static boolean isXMPMdat(Box box, ItemLocation xmp, long metaEnd) {
+        if (xmp == null || box.type != MDAT || box.headerLength != 8 || box.offset < metaEnd
+                || xmp.constructionMethod != 0 || xmp.dataReferenceIndex != 0 || xmp.extents.size() != 1) {
+            return false;
+        }
+        long[] extent = xmp.extents.get(0);
+        return xmp.baseOffset + extent[1] == box.payloadOffset() && extent[2] == box.length - 8;
+    }
+
+    /**
+     * 位于meta之后、按文件偏移存放的数据项随meta长度的变化移动
+     */
+    private static void shift(ItemLocation location, long metaEnd, long delta) throws IOException {
+        if (location.constructionMethod != 0 || location.dataReferenceIndex != 0 || delta == 0) {
+            return;
+        }
+        if (location.baseOffset != 0) {
+            if (location.baseOffset >= metaEnd) {
+                location.baseOffset += delta;
+            }
+            return;
+        }
+        for (long[] extent : location.extents) {
+            if (extent[1] >= metaEnd) {
+                extent[1] += delta;
+            }
+        }
+    }
+
+    /**
+     * 读取顶层moov box，把各轨道stco/co64中位于meta之后的chunk偏移移动delta
+     *
+     * @return 修改后的moov box
+     */
+    private static byte[] shiftChunkOffsets(FileChannel in, Box moov, long metaEnd, long delta) throws IOException {
+        if (moov.length > Integer.MAX_VALUE - 8) {
+            throw new IOException("HEIF moov box过大: " + moov.length);
+        }
+        ByteBuffer data = ByteBuffer.allocate((int) moov.length);
+        if (!ImageFileRewriter.readFully(in, data, moov.offset)) {
+            throw new EOFException("读取moov box时文件意外结束");
+        }
+        if (moov.headerLength == 8 && data.getInt(0) == 0) {
+            // 延伸到文件末尾的moov之后还要追加数据，改为明确的长度
+            data.putInt(0, (int) moov.length);
+        }
+        shiftChunkOffsets(data, moov.headerLength, (int) moov.length, metaEnd, delta);
+        return data.array();
+    }
+
+    /**
+     * 逐层进入trak、mdia、minf、stbl，修改其中的stco（32位）和co64（64位）
+     */
+    private static void shiftChunkOffsets(ByteBuffer data, int position, int end, long metaEnd, long delta)
+            throws IOException {
+        while (position + 8 <= end) {
+            Box child = parseBoxHeader(data, position, end);
+            int payload = (int) (child.offset + child.headerLength);
+            if (child.type == TRAK || child.type == MDIA || child.type == MINF || child.type == STBL) {
+                shiftChunkOffsets(data, payload, (int) child.end(), metaEnd, delta);
+            } else if (child.type == STCO || child.type == CO64) {
+                // FullBox：version和flags之后是entry_count
+                int size = child.type == CO64 ? 8 : 4;
+                long count = readUInt(data, payload + 4, 4);
+                if (payload + 8 + count * size > child.end()) {
+                    throw new IOException("HEIF chunk偏移表越界");
+                }
+                for (int entry = payload + 8; entry < payload + 8 + count * size; entry += size) {
+                    long offset = readUInt(data, entry, size);
+                    if (offset < metaEnd) {
+                        continue;
+                    }
+                    offset += delta;
+                    if (size == 4 && offset > 0xFFFFFFFFL) {
+                        throw new IOException("chunk偏移超出stco的范围");
+                    }
+                    if (size == 4) {
+                        data.putInt(entry, (int) offset);
+                    } else {
+                        data.putLong(entry, offset);
+                    }
+                }
+            }
+            position = (int) child.end();
+        }
+    }
+
+    /**
+     * 按原有子box的顺序生成新的meta box：iinf和iloc重新生成，需要时在iinf之后加上或扩充iref
+     */
+    private static byte[] buildMeta(Meta meta, long itemId, boolean newItem) throws IOException {
+        ByteArrayOutputStream children = new ByteArrayOutputStream((int) meta.box.length + 512);
+        boolean hasIref = meta.child(IREF) != null;
+        for (Box child : meta.children) {
+            if (child.type == ILOC) {
+                children.write(buildIloc(meta));
+            } else if (child.type == IINF && newItem) {
+                children.write(buildIinf(meta, child, itemId));
+                if (!hasIref && meta.primaryItemId >= 0) {
+                    children.write(buildIref(meta, null, itemId));
+                }
+            } else if (child.type == IREF && newItem && meta.primaryItemId >= 0) {
+                children.write(buildIref(meta, child, itemId));
+            } else {
+                children.write(slice(meta, child.offset, child.length));
+            }
+        }
+
+        int headerLength = meta.box.headerLength;
+        long length = headerLength + 4 + children.size();
+        ByteBuffer box = ByteBuffer.allocate((int) length);
+        if (headerLength == 16) {
+            box.putInt(1).putInt(META).putLong(length);
+        } else {
+            box.putInt((int) length).putInt(META);
+        }
+        box.put(slice(meta, meta.box.offset + headerLength, 4)); // version和flags
+        box.put(children.toByteArray());
+        return box.array();
+    }
+
+    private static byte[] buildIloc(Meta meta) {
+        int version = meta.ilocVersion;
+        int idSize = version < 2 ? 2 : 4;
+        int length = 8 + 4 + 2 + (version < 2 ? 2 : 4);
+        for (ItemLocation location : meta.locations) {
+            length += idSize + (version > 0 ? 2 : 0) + 2 + meta.baseOffsetSize + 2
+                    + location.extents.size() * ((version > 0 ? meta.indexSize : 0) + meta.offsetSize + meta.lengthSize);
+        }
+        ByteBuffer box = ByteBuffer.allocate(length);
+        box.putInt(length).putInt(ILOC).putInt(version << 24);
+        box.put((byte) ((meta.offsetSize << 4) | meta.lengthSize));
+        box.put((byte) ((meta.baseOffsetSize << 4) | (version > 0 ? meta.indexSize : 0)));
+        putUInt(box, version < 2 ? 2 : 4, meta.locations.size());
+        for (ItemLocation location : meta.locations) {
+            putUInt(box, idSize, location.itemId);
+            if (version > 0) {
+                box.putShort((short) location.constructionMethod);
+            }
+            box.putShort((short) location.dataReferenceIndex);
+            putUInt(box, meta.baseOffsetSize, location.baseOffset);
+            box.putShort((short) location.extents.size());
+            for (long[] extent : location.extents) {
+                if (version > 0) {
+                    putUInt(box, meta.indexSize, extent[0]);
+                }
+                putUInt(box, meta.offsetSize, extent[1]);
+                putUInt(box, meta.lengthSize, extent[2]);
+            }
+        }
+        return box.array();
+    }
+
+    /**
+     * 在原有条目之后追加XMP数据项的infe（版本2，编号超过16位时为版本3）
+     */
+    private static byte[] buildIinf(Meta meta, Box iinf, long itemId) throws IOException {
+        ByteBuffer data = meta.data;
+        int start = (int) (iinf.offset - meta.box.offset);
+        int version = data.get(start + iinf.headerLength) & 0xFF;
+        int countSize = version == 0 ? 2 : 4;
+        long count = readUInt(data, start + iinf.headerLength + 4, countSize) + 1;
+        if (count > 0xFFFF) {
+            version = 1;
+        }
+        int entriesOffset = iinf.headerLength + 4 + countSize;
+        byte[] entries = slice(meta, iinf.offset + entriesOffset, iinf.length - entriesOffset);
+
+        byte[] name = "XMP\0".getBytes(StandardCharsets.US_ASCII);
+        byte[] contentType = (XMP_CONTENT_TYPE + "\0").getBytes(StandardCharsets.US_ASCII);
+        int idSize = itemId > 0xFFFF ? 4 : 2;
+        int infeLength = 12 + idSize + 2 + 4 + name.length + contentType.length;
+        ByteBuffer infe = ByteBuffer.allocate(infeLength);
+        infe.putInt(infeLength).putInt(INFE).putInt((idSize == 4 ? 3 : 2) << 24);
+        putUInt(infe, idSize, itemId);
+        infe.putShort((short) 0).putInt(MIME).put(name).put(contentType);
+
+        int newCountSize = version == 0 ? 2 : 4;
+        int length = 12 + newCountSize + entries.length + infeLength;
+        ByteBuffer box = ByteBuffer.allocate(length);
+        box.putInt(length).putInt(IINF).putInt(version << 24);
+        putUInt(box, newCountSize, count);
+        box.put(entries).put(infe.array());
+        return box.array();
+    }
+
+    /**
+     * 加上XMP数据项指向主图像的cdsc（内容描述）引用，没有iref时新建
+     */
+    private static byte[] buildIref(Meta meta, Box iref, long itemId) throws IOException {
+        int version = 0;
+        byte[] references = new byte[0];
+        if (iref != null) {
+            int start = (int) (iref.offset - meta.box.offset);
+            version = meta.data.get(start + iref.headerLength) & 0xFF;
+            int referencesOffset = iref.headerLength + 4;
+            references = slice(meta, iref.offset + referencesOffset, iref.length - referencesOffset);
+        } else if (itemId > 0xFFFF || meta.primaryItemId > 0xFFFF) {
+            version = 1;
+        }
+        int idSize = version == 0 ? 2 : 4;
+        if (idSize == 2 && (itemId > 0xFFFF || meta.primaryItemId > 0xFFFF)) {
+            throw new IOException("数据项编号超出iref版本0的范围");
+        }
+
+        int referenceLength = 8 + idSize + 2 + idSize;
+        int length = 12 + references.length + referenceLength;
+        ByteBuffer box = ByteBuffer.allocate(length);
+        box.putInt(length).putInt(IREF).putInt(version << 24).put(references);
+        box.putInt(referenceLength).putInt(CDSC);
+        putUInt(box, idSize, itemId);
+        box.putShort((short) 1);
+        putUInt(box, idSize, meta.primaryItemId);
+        return box.array();
+    }
+
+    /**
+     * 读取并解析顶层meta box
+     */
+    private static Meta readMeta(FileChannel channel, List<Box> boxes) throws IOException {
+        Box box = null;
+        for (Box candidate : boxes) {
+            if (candidate.type == META) {
+                box = candidate;
+                break;
+            }
+        }
+        if (box == null) {
+            throw new IOException("HEIF文件缺少meta box");
+        }
+        if (box.length > Integer.MAX_VALUE - 8) {
+            throw new IOException("HEIF meta box过大: " + box.length);
+        }
+        ByteBuffer data = ByteBuffer.allocate((int) box.length);
+        if (!ImageFileRewriter.readFully(channel, data, box.offset)) {
+            throw new EOFException("读取meta box时文件意外结束");
+        }
+        Meta meta = new Meta(box, data);
+
+        // meta为FullBox：box头之后是4字节的version和flags
+        long position = box.headerLength + 4;
+        while (position + 8 <= box.length) {
+            Box child = parseBoxHeader(data, (int) position, box.length);
+            meta.children.add(new Box(child.type, box.offset + child.offset, child.length, child.headerLength));
+            int payload = (int) (child.offset + child.headerLength);
+            if (child.type == PITM) {
+                meta.primaryItemId = readUInt(data, payload + 4, (data.get(payload) & 0xFF) == 0 ? 2 : 4);
+            } else if (child.type == IINF) {
+                parseIinf(meta, data, payload, (int) child.offset + (int) child.length);
+            } else if (child.type == ILOC) {
+                parseIloc(meta, data, payload);
+            }
+            position = child.offset + child.length;
+        }
+        if (meta.child(IINF) == null || meta.child(ILOC) == null) {
+            throw new IOException("HEIF meta box缺少iinf或iloc");
+        }
+        for (ItemLocation location : meta.locations) {
+            meta.maxItemId = Math.max(meta.maxItemId, location.itemId);
+        }
+        return meta;
+    }
+
+    private static void parseIinf(Meta meta, ByteBuffer data, int payload, int end) throws IOException {
+        int version = data.get(payload) & 0xFF;
+        int position = payload + 4 + (version == 0 ? 2 : 4);
+        while (position + 8 <= end) {
+            Box infe = parseBoxHeader(data, position, end);
+            if (infe.type == INFE) {
+                parseInfe(meta, data, (int) (infe.offset + infe.headerLength), (int) infe.end());
+            }
+            position = (int) infe.end();
+        }
+    }
+
+    /**
+     * 解析infe：版本2/3带item_type，"mime"类型之后是名称和content_type；版本0/1没有item_type，名称之后即content_type
+     */
+    private static void parseInfe(Meta meta, ByteBuffer data, int payload, int end) {
+        int version = data.get(payload) & 0xFF;
+        int position = payload + 4;
+        int idSize = version == 3 ? 4 : 2;
+        if (position + idSize + 2 > end) {
+            return;
+        }
+        long itemId = readUInt(data, position, idSize);
+        meta.maxItemId = Math.max(meta.maxItemId, itemId);
+        position += idSize + 2;
+        if (version >= 2) {
+            if (position + 4 > end || data.getInt(position) != MIME) {
+                return;
+            }
+            position += 4;
+        }
+        int nameEnd = indexOfZero(data, position, end);
+        if (nameEnd < 0) {
+            return;
+        }
+        int typeEnd = indexOfZero(data, nameEnd + 1, end);
+        String contentType = new String(bytes(data, nameEnd + 1, (typeEnd < 0 ? end : typeEnd) - nameEnd - 1),
+                StandardCharsets.US_ASCII);
+        if (XMP_CONTENT_TYPE.equals(contentType) && meta.xmpItemId < 0) {
+            meta.xmpItemId = itemId;
+        }
+    }
+
+    private static void parseIloc(Meta meta, ByteBuffer data, int payload) {
+        int version = data.get(payload) & 0xFF;
+        int position = payload + 4;
+        meta.ilocVersion = version;
+        meta.offsetSize = (data.get(position) & 0xFF) >> 4;
+        meta.lengthSize = data.get(position) & 0x0F;
+        meta.baseOffsetSize = (data.get(position + 1) & 0xFF) >> 4;
+        meta.indexSize = version > 0 ? data.get(position + 1) & 0x0F : 0;
+        position += 2;
+        int countSize = version < 2 ? 2 : 4;
+        long count = readUInt(data, position, countSize);
+        position += countSize;
+        for (long i = 0; i < count; i++) {
+            ItemLocation location = new ItemLocation();
+            location.itemId = readUInt(data, position, countSize);
+            position += countSize;
+            if (version > 0) {
+                location.constructionMethod = data.getShort(position) & 0x0F;
+                position += 2;
+            }
+            location.dataReferenceIndex = data.getShort(position) & 0xFFFF;
+            position += 2;
+            location.baseOffset = readUInt(data, position, meta.baseOffsetSize);
+            position += meta.baseOffsetSize;
+            int extents = data.getShort(position) & 0xFFFF;
+            position += 2;
+            for (int e = 0; e < extents; e++) {
+                long index = readUInt(data, position, meta.indexSize);
+                position += meta.indexSize;
+                long offset = readUInt(data, position, meta.offsetSize);
+                position += meta.offsetSize;
+                long length = readUInt(data, position, meta.lengthSize);
+                position += meta.lengthSize;
+                location.extents.add(new long[]{index, offset, length});
+            }
+            meta.locations.add(location);
+        }
+    }
+
+    /**
+     * 按iloc读取数据项内容：构造方式0为文件偏移，1为meta中idat的偏移
+     */
+    private static byte[] readItem(FileChannel channel, Meta meta, ItemLocation location) throws IOException {
+        if (location == null || location.dataReferenceIndex != 0) {
+            return null;
+        }
+        long idatOffset = 0;
+        if (location.constructionMethod == 1) {
+            Box idat = meta.child(IDAT);
+            if (idat == null) {
+                return null;
+            }
+            idatOffset = idat.payloadOffset();
+        } else if (location.constructionMethod != 0) {
+            return null;
+        }
+
+        ByteArrayOutputStream item = new ByteArrayOutputStream();
+        for (long[] extent : location.extents) {
+            long length = extent[2];
+            if (length <= 0 || length > Integer.MAX_VALUE - 8) {
+                throw new IOException("XMP数据项长度无效: " + length);
+            }
+            ByteBuffer buffer = ByteBuffer.allocate((int) length);
+            if (!ImageFileRewriter.readFully(channel, buffer, idatOffset + location.baseOffset + extent[1])) {
+                throw new EOFException("读取XMP数据项时文件意外结束");
+            }
+            item.write(buffer.array());
+        }
+        return item.toByteArray();
+    }
+
+    /**
+     * 逐个读取顶层box头，第一个box必须是ftyp
+     *
+     * @throws IOException 不是ISOBMFF文件或box长度越界
+     */
+    private static List<Box> scan(FileChannel channel) throws IOException {
+        long size = channel.size();
+        ByteBuffer header = ByteBuffer.allocate(16);
+        List<Box> boxes = new ArrayList<>();
+        long position = 0;
+        while (position + 8 <= size) {
+            header.clear();
+            header.limit((int) Math.min(16, size - position));
+            ImageFileRewriter.readFully(channel, header, position);
+            long length = header.getInt(0) & 0xFFFFFFFFL;
+            int headerLength = 8;
+            if (length == 1) {
+                if (header.limit() < 16) {
+                    throw new IOException("HEIF box长度越界");
+                }
+                length = header.getLong(8);
+                headerLength = 16;
+            } else if (length == 0) {
+                length = size - position;
+            }
+            if (length < headerLength || position + length > size) {
+                throw new IOException("HEIF box长度越界");
+            }
+            Box box = new Box(header.getInt(4), position, length, headerLength);
+            if (boxes.isEmpty() && box.type != FTYP) {
+                throw new IOException("不是有效的HEIF/AVIF文件");
+            }
+            boxes.add(box);
+            position += length;
+        }
+        if (boxes.isEmpty()) {
+            throw new IOException("不是有效的HEIF/AVIF文件");
+        }
+        return boxes;
+    }
+
+    /**
+     * 判断顶层box的size字段是否为0（延伸到文件末尾）
+     */
+    private static boolean isOpenEnded(FileChannel channel, Box box) throws IOException {
+        ByteBuffer size = ByteBuffer.allocate(4);
+        return ImageFileRewriter.readFully(channel, size, box.offset) && size.getInt(0) == 0;
+    }
+
+    /**
+     * 解析data中position处的box头，返回的offset为data中的下标
+     */
+    private static Box parseBoxHeader(ByteBuffer data, int position, long end) throws IOException {
+        long length = data.getInt(position) & 0xFFFFFFFFL;
+        int headerLength = 8;
+        if (length == 1) {
+            length = data.getLong(position + 8);
+            headerLength = 16;
+        } else if (length == 0) {
+            length = end - position;
+        }
+        if (length < headerLength || position + length > end) {
+            throw new IOException("HEIF box长度越界");
+        }
+        return new Box(data.getInt(position + 4), position, length, headerLength);
+    }
+
+    private static long readUInt(ByteBuffer data, int position, int size) {
+        switch (size) {
+            case 2:
+                return data.getShort(position) & 0xFFFFL;
+            case 4:
+                return data.getInt(position) & 0xFFFFFFFFL;
+            case 8:
+                return data.getLong(position);
+            default:
+                return 0;
+        }
+    }
+
+    private static void putUInt(ByteBuffer buffer, int size, long value) {
+        switch (size) {
+            case 2:
+                buffer.putShort((short) value);
+                break;
+            case 4:
+                buffer.putInt((int) value);
+                break;
+            case 8:
+                buffer.putLong(value);
+                break;
+            default:
+                break;
+        }
+    }
+
+    private static int indexOfZero(ByteBuffer data, int from, int end) {
+        for (int i = from; i < end; i++) {
+            if (data.get(i) == 0) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * meta box中按文件偏移指定的一段内容
+     */
+    private static byte[] slice(Meta meta, long offset, long length) {
+        return bytes(meta.data, (int) (offset - meta.box.offset), (int) length);
+    }
+
+    private static byte[] bytes(ByteBuffer data, int offset, int length) {
+        byte[] bytes = new byte[length];
+        ByteBuffer source = data.duplicate();
+        source.position(offset);
+        source.get(bytes);
+        return bytes;
+    }
+
+    private static int fourCC(String code) {
+        return (code.charAt(0) << 24) | (code.charAt(1) << 16) | (code.charAt(2) << 8) | code.charAt(3);
+    }
+}
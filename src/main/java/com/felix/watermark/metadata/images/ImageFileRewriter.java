@@ -0,0 +1,103 @@
+package com.felix.watermark.metadata.images;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * 各元数据处理类共用的文件改写：输出到另一个文件或替换输入文件，以及通道之间的复制
+ *
+ * 输入和输出为同一个文件时先写入同目录的临时文件，关闭输入通道后再替换原文件。
+ * Windows上仍被打开或映射的文件无法被替换，而内存映射在通道关闭后仍然有效，直到被回收，
+ * 因此这种情况下输入不能映射，只以定位读取把元数据区域读入堆内存（见{@link #segments}），
+ * 像素数据照常通过transferTo复制，写出的临时文件也不能映射。
+ */
+public final class ImageFileRewriter {
+
+    /**
+     * 写出改写结果
+     */
+    @FunctionalInterface
+    public interface Rewrite<T> {
+        /**
+         * @param target 输出文件，替换输入文件时为临时文件
+         * @param sameFile 是否将替换输入文件，为true时不能映射输入和target
+         * @return 写入结果，原样由{@link #rewrite}返回
+         */
+        T write(Path target, boolean sameFile) throws IOException;
+    }
+
+    private ImageFileRewriter() {
+    }
+
+    /**
+     * 改写输入文件并写到输出文件，输入和输出可以是同一个文件
+     *
+     * @param in 输入的只读通道，输出为同一个文件时在替换前关闭
+     * @param input 输入文件，用于判断是否与输出为同一个文件
+     * @param output 输出文件
+     * @param rewrite 写出改写结果
+     * @return rewrite的返回值
+     */
+    public static <T> T rewrite(FileChannel in, Path input, Path output, Rewrite<T> rewrite) throws IOException {
+        if (!Files.exists(output) || !Files.isSameFile(input, output)) {
+            return rewrite.write(output, false);
+        }
+        Path temp = Files.createTempFile(output.toAbsolutePath().getParent(), output.getFileName().toString(), ".tmp");
+        try {
+            T result = rewrite.write(temp, true);
+            in.close();
+            Files.move(temp, output, StandardCopyOption.REPLACE_EXISTING);
+            return result;
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * 扫描JPEG/PNG的段：sameFile为false时只读映射整个文件（见{@link ImageSegmentScanner#map}）；
+     * 为true时不映射，只把元数据区域读入堆内存（见{@link ImageSegmentScanner#read}），堆内存占用与图片大小无关
+     */
+    public static ImageSegmentScanner segments(FileChannel channel, boolean sameFile) throws IOException {
+        return sameFile ? ImageSegmentScanner.read(channel) : ImageSegmentScanner.map(channel);
+    }
+
+    /**
+     * 从position开始读满buffer，不改变通道的位置
+     *
+     * @return 文件提前结束时返回false
+     */
+    public static boolean readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                return false;
+            }
+            position += read;
+        }
+        return true;
+    }
+
+    public static void writeFully(FileChannel out, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            out.write(buffer);
+        }
+    }
+
+    /**
+     * 把输入中[from, to)的字节原样追加到输出
+     */
+    public static void transfer(FileChannel in, FileChannel out, long from, long to) throws IOException {
+        while (from < to) {
+            long transferred = in.transferTo(from, to - from, out);
+            if (transferred <= 0) {
+                throw new EOFException("复制文件内容时文件意外结束");
+            }
+            from += transferred;
+        }
+    }
+}
@@ -0,0 +1,336 @@
+package com.felix.watermark.metadata.images;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * JPEG段/PNG数据块扫描器，供各元数据处理类共用
+ * 扫描对象是一个ByteBuffer，通常是整个文件的只读内存映射（{@link #map}），或读入堆内存的元数据区域（{@link #read}）：
+ * 段描述按需逐个产生，只会访问段头所在的页，段内容在调用{@link Segment#payload()}之前不会被读取或复制。
+ *
+ * JPEG遍历到SOS（其后为熵编码数据）或EOI为止，SOS段本身会被产生；PNG遍历到IEND为止。
+ * 遇到长度越界的段或数据块时停止，不抛出异常，调用方可按需把剩余字节原样复制。
+ * 实例不是线程安全的，每次扫描使用一个新实例。
+ */
+public final class ImageSegmentScanner implements Iterator<ImageSegmentScanner.Segment> {
+
+    public static final int JPEG_SOS = 0xDA;
+    public static final int JPEG_EOI = 0xD9;
+    public static final int JPEG_APP0 = 0xE0;
+    public static final int JPEG_APP1 = 0xE1;
+    public static final int JPEG_APP15 = 0xEF;
+
+    public static final int PNG_IHDR = 0x49484452;
+    public static final int PNG_IDAT = 0x49444154;
+    public static final int PNG_IEND = 0x49454E44;
+    public static final int PNG_TEXT = 0x74455874;
+    public static final int PNG_ITXT = 0x69545874;
+
+    /** PNG文件签名 */
+    public static final byte[] PNG_SIGNATURE = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'};
+
+    public enum Format {
+        JPEG, PNG
+    }
+
+    /**
+     * 段描述：类型及其在缓冲区中的位置
+     * JPEG的段从0xFF标记开始，类型为标记字节（如0xE1），内容位于长度字段之后；
+     * PNG的数据块从长度字段开始，类型为4字节类型码（如0x49484452即IHDR），内容为数据部分，不含CRC。
+     */
+    public static final class Segment {
+        private final ByteBuffer buffer;
+        private final int type;
+        private final int offset;
+        private final int length;
+        private final int payloadOffset;
+        private final int payloadLength;
+
+        private Segment(ByteBuffer buffer, int type, int offset, int length, int payloadOffset, int payloadLength) {
+            this.buffer = buffer;
+            this.type = type;
+            this.offset = offset;
+            this.length = length;
+            this.payloadOffset = payloadOffset;
+            this.payloadLength = payloadLength;
+        }
+
+        public int type() { return type; }
+
+        /** 段的起始位置 */
+        public int offset() { return offset; }
+
+        /** 段的总长度（JPEG含标记和长度字段，PNG含长度、类型和CRC） */
+        public int length() { return length; }
+
+        /** 段结束（下一个段开始）的位置 */
+        public int end() { return offset + length; }
+
+        public int payloadOffset() { return payloadOffset; }
+
+        public int payloadLength() { return payloadLength; }
+
+        /**
+         * 段内容的只读视图，与扫描的缓冲区共享数据，不复制
+         */
+        public ByteBuffer payload() {
+            return slice(buffer, payloadOffset, payloadLength);
+        }
+
+        /**
+         * 段内容是否以指定字节开头（用于匹配APP1标识符、文本块关键字等）
+         */
+        public boolean payloadStartsWith(byte[] prefix) {
+            return prefix.length <= payloadLength && matches(buffer, payloadOffset, prefix);
+        }
+    }
+
+    private final ByteBuffer buffer;
+    private final Format format;
+    private final int limit;
+    private int position;
+    private Segment next;
+    private boolean finished;
+
+    private ImageSegmentScanner(ByteBuffer buffer) {
+        this.buffer = buffer;
+        this.limit = buffer.limit();
+        if (limit >= 2 && u8(buffer, 0) == 0xFF && u8(buffer, 1) == 0xD8) {
+            this.format = Format.JPEG;
+            this.position = 2; // 跳过SOI
+        } else if (matches(buffer, 0, PNG_SIGNATURE)) {
+            this.format = Format.PNG;
+            this.position = PNG_SIGNATURE.length;
+        } else {
+            this.format = null;
+            this.finished = true;
+        }
+    }
+
+    /**
+     * 扫描ByteBuffer中的图片，从下标0开始，到limit为止
+     */
+    public static ImageSegmentScanner wrap(ByteBuffer buffer) {
+        return new ImageSegmentScanner(buffer.duplicate());
+    }
+
+    /**
+     * 将文件只读映射到内存后扫描，映射在通道关闭后仍然有效，直到被回收
+     * 超过2GB的文件只映射前2GB，其中的段头照常产生
+     */
+    public static ImageSegmentScanner map(FileChannel channel) throws IOException {
+        long size = Math.min(channel.size(), Integer.MAX_VALUE);
+        return new ImageSegmentScanner(channel.map(FileChannel.MapMode.READ_ONLY, 0, size));
+    }
+
+    /**
+     * 以定位读取把元数据区域读入堆内存后扫描，不映射文件，供之后要替换该文件的场合使用
+     * 区域范围通过逐个读取段头/数据块头确定：JPEG到SOS段（含）或EOI为止，PNG到第一个IDAT之前（没有IDAT时到IEND为止），
+     * 熵编码数据和像素数据不会被读取。区域内产生的段与{@link #map}相同，之后的内容由调用方按需读取。
+     */
+    public static ImageSegmentScanner read(FileChannel channel) throws IOException {
+        long end = metadataEnd(channel);
+        if (end > Integer.MAX_VALUE) {
+            throw new IOException("图片元数据区域过大: " + end);
+        }
+        ByteBuffer buffer = ByteBuffer.allocate((int) end);
+        if (!ImageFileRewriter.readFully(channel, buffer, 0)) {
+            throw new EOFException("读取图片元数据时文件意外结束");
+        }
+        buffer.flip();
+        return new ImageSegmentScanner(buffer);
+    }
+
+    /**
+     * 逐个读取段头/数据块头，确定元数据区域的结束位置；不是JPEG/PNG时为识别格式所需的文件头长度
+     */
+    private static long metadataEnd(FileChannel channel) throws IOException {
+        long size = channel.size();
+        ByteBuffer header = ByteBuffer.allocate(PNG_SIGNATURE.length);
+        header.limit((int) Math.min(header.capacity(), size));
+        ImageFileRewriter.readFully(channel, header, 0);
+        header.flip();
+
+        if (header.limit() >= 2 && u8(header, 0) == 0xFF && u8(header, 1) == 0xD8) {
+            long position = 2;
+            while (position + 4 <= size) {
+                header.clear().limit(4);
+                ImageFileRewriter.readFully(channel, header, position);
+                if (u8(header, 0) != 0xFF) {
+                    position = nextMarker(channel, position + 1, size);
+                    continue;
+                }
+                int marker = u8(header, 1);
+                if (marker == 0xFF) { // 填充字节
+                    position++;
+                    continue;
+                }
+                if (marker == JPEG_EOI) {
+                    return position + 2;
+                }
+                if (marker == 0x01 || (marker >= 0xD0 && marker <= 0xD7)) { // 无长度字段的标记
+                    position += 2;
+                    continue;
+                }
+                long end = position + 2 + ((u8(header, 2) << 8) | u8(header, 3));
+                if (marker == JPEG_SOS || end > size) {
+                    return Math.min(end, size);
+                }
+                position = end;
+            }
+            return size;
+        }
+
+        if (matches(header, 0, PNG_SIGNATURE)) {
+            long position = PNG_SIGNATURE.length;
+            while (position + 12 <= size) {
+                header.clear();
+                ImageFileRewriter.readFully(channel, header, position);
+                int type = header.getInt(4);
+                if (type == PNG_IDAT) {
+                    return position;
+                }
+                long end = position + 12 + (header.getInt(0) & 0xFFFFFFFFL);
+                if (type == PNG_IEND || end > size) {
+                    return Math.min(end, size);
+                }
+                position = end;
+            }
+            return size;
+        }
+        return header.limit();
+    }
+
+    /**
+     * 从position开始查找下一个0xFF，段之间的无效字节按块读取，不逐字节读取
+     */
+    private static long nextMarker(FileChannel channel, long position, long size) throws IOException {
+        ByteBuffer block = ByteBuffer.allocate(4096);
+        while (position < size) {
+            block.clear().limit((int) Math.min(block.capacity(), size - position));
+            ImageFileRewriter.readFully(channel, block, position);
+            for (int i = 0; i < block.limit(); i++) {
+                if (u8(block, i) == 0xFF) {
+                    return position + i;
+                }
+            }
+            position += block.limit();
+        }
+        return size;
+    }
+
+    /**
+     * @return 图片格式，不是JPEG/PNG时返回null（此时不会产生任何段）
+     */
+    public Format format() {
+        return format;
+    }
+
+    /**
+     * 缓冲区中指定范围的只读视图，不复制
+     */
+    public ByteBuffer slice(int offset, int length) {
+        return slice(buffer, offset, length);
+    }
+
+    /**
+     * 复制缓冲区中指定范围的字节
+     */
+    public byte[] bytes(int offset, int length) {
+        byte[] bytes = new byte[length];
+        slice(buffer, offset, length).get(bytes);
+        return bytes;
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (next == null && !finished) {
+            next = format == Format.JPEG ? nextJPEG() : nextPNG();
+            finished = next == null;
+        }
+        return next != null;
+    }
+
+    @Override
+    public Segment next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        Segment segment = next;
+        next = null;
+        return segment;
+    }
+
+    private Segment nextJPEG() {
+        while (position + 4 <= limit) {
+            if (u8(buffer, position) != 0xFF) {
+                position++;
+                continue;
+            }
+            int marker = u8(buffer, position + 1);
+            if (marker == 0xFF) { // 填充字节
+                position++;
+                continue;
+            }
+            if (marker == JPEG_EOI) {
+                return null;
+            }
+            if (marker == 0x01 || (marker >= 0xD0 && marker <= 0xD7)) { // 无长度字段的标记
+                position += 2;
+                continue;
+            }
+
+            int length = (u8(buffer, position + 2) << 8) | u8(buffer, position + 3);
+            int end = position + 2 + length;
+            if (length < 2 || end > limit) {
+                return null;
+            }
+            Segment segment = new Segment(buffer, marker, position, end - position, position + 4, length - 2);
+            // SOS之后是熵编码数据，不再继续
+            position = marker == JPEG_SOS ? limit : end;
+            return segment;
+        }
+        return null;
+    }
+
+    private Segment nextPNG() {
+        if (position + 12 > limit) {
+            return null;
+        }
+        long length = buffer.getInt(position) & 0xFFFFFFFFL;
+        long end = position + 12 + length;
+        if (end > limit) {
+            return null;
+        }
+        int type = buffer.getInt(position + 4);
+        Segment segment = new Segment(buffer, type, position, (int) (end - position), position + 8, (int) length);
+        position = type == PNG_IEND ? limit : (int) end;
+        return segment;
+    }
+
+    private static ByteBuffer slice(ByteBuffer buffer, int offset, int length) {
+        ByteBuffer view = buffer.asReadOnlyBuffer();
+        view.limit(offset + length).position(offset);
+        return view.slice();
+    }
+
+    private static boolean matches(ByteBuffer buffer, int offset, byte[] expected) {
+        if (offset + expected.length > buffer.limit()) {
+            return false;
+        }
+        for (int i = 0; i < expected.length; i++) {
+            if (buffer.get(offset + i) != expected[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int u8(ByteBuffer buffer, int offset) {
+        return buffer.get(offset) & 0xFF;
+    }
+}
@@ -3,182 +3,185 @@ package com.felix.watermark.metadata.images;
 import com.drew.imaging.ImageMetadataReader;
 import com.drew.metadata.Directory;
 import com.drew.metadata.Metadata;
-import com.drew.metadata.exif.ExifDirectoryBase;
 import com.felix.watermark.metadata.AIGCMetadata;
-import org.apache.commons.imaging.Imaging;
-import org.apache.commons.imaging.common.ImageMetadata;
-import org.apache.commons.imaging.formats.jpeg.JpegImageMetadata;
-import org.apache.commons.imaging.formats.jpeg.exif.ExifRewriter;
-import org.apache.commons.imaging.formats.tiff.TiffImageMetadata;
-import org.apache.commons.imaging.formats.tiff.constants.ExifTagConstants;
-import org.apache.commons.imaging.formats.tiff.write.TiffOutputDirectory;
-import org.apache.commons.imaging.formats.tiff.write.TiffOutputSet;
-import org.apache.commons.imaging.formats.tiff.write.TiffOutputField;
-import org.apache.commons.imaging.formats.tiff.fieldtypes.FieldType;
 
 import java.io.File;
-import java.io.FileOutputStream;
-import java.nio.charset.StandardCharsets;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 
 /**
  * JPEG格式AIGC标识添加器
+ * AIGC标识写入EXIF的UserComment字段。写入时只定位并重写EXIF所在的APP1段，
+ * 其余字节通过FileChannel.transferTo原样复制，不解码其他EXIF标签，也不经过整个文件的元数据解析。
  */
 public class JPEGMetadataHandler {
 
+    /** APP1段长度字段的上限（含长度字段本身） */
+    private static final int MAX_SEGMENT_LENGTH = 0xFFFF;
+
     /**
      * 为JPEG图片添加AIGC隐式标识
      */
     public static boolean addAIGCMetadata(File inputFile, File outputFile, AIGCMetadata metadata) {
-        try {
-            // 生成符合GB 45438-2025标准的JSON字符串
-            String aigcJson = metadata.toJsonString();
-            System.out.println("准备写入的AIGC JSON: " + aigcJson);
-
-            // 使用Apache Commons Imaging处理JPEG元数据
-            return addAIGCToJPEGUsingCommonsImaging(inputFile, outputFile, aigcJson);
-
-        } catch (Exception e) {
+        try (FileChannel in = FileChannel.open(inputFile.toPath(), StandardOpenOption.READ)) {
+            return addAIGCMetadata(in, inputFile, outputFile, metadata);
+        } catch (IOException e) {
             System.err.println("处理JPEG文件时出错: " + e.getMessage());
-            e.printStackTrace();
             return false;
         }
     }
 
-    private static boolean addAIGCToJPEGUsingCommonsImaging(File inputFile, File outputFile, String aigcJson) {
+    /**
+     * 为已打开的JPEG图片添加AIGC隐式标识
+     *
+     * @param in 输入图片的只读通道，输出为同一个文件时会在替换前关闭（见{@link ImageFileRewriter#rewrite}）
+     * @param inputFile 输入图片文件
+     */
+    static boolean addAIGCMetadata(FileChannel in, File inputFile, File outputFile, AIGCMetadata metadata) {
         try {
-            // 1. 创建符合EXIF规范的UserComment字节数组
-            byte[] userCommentBytes = createEXIFUserComment(aigcJson);
-            System.out.println("UserComment字节长度: " + userCommentBytes.length);
-
-            // 2. 读取原始图片元数据
-            ImageMetadata metadata = Imaging.getMetadata(inputFile);
-            TiffOutputSet outputSet = getOrCreateOutputSet(metadata);
-            TiffOutputDirectory exifDirectory = outputSet.getOrCreateExifDirectory();
-
-            // 3. 写入UserComment字段
-            exifDirectory.removeField(ExifTagConstants.EXIF_TAG_USER_COMMENT);
-
-            TiffOutputField userCommentField = new TiffOutputField(
-                    ExifTagConstants.EXIF_TAG_USER_COMMENT,
-                    FieldType.UNDEFINED, // UserComment使用UNDEFINED类型
-                    userCommentBytes.length,
-                    userCommentBytes
-            );
-
-            exifDirectory.add(userCommentField);
-
-            // 4. 写入文件
-            try (FileOutputStream fos = new FileOutputStream(outputFile)) {
-                new ExifRewriter().updateExifMetadataLossless(inputFile, fos, outputSet);
+            boolean verified = ImageFileRewriter.rewrite(in, inputFile.toPath(), outputFile.toPath(),
+                    (target, sameFile) -> rewriteExif(in, ImageFileRewriter.segments(in, sameFile), target, metadata));
+            if (verified) {
                 System.out.println("成功写入AIGC元数据到: " + outputFile.getAbsolutePath());
-
-                // 验证写入是否成功
-                return verifyAIGCMetadata(outputFile);
+            } else {
+                System.err.println("写入后校验AIGC元数据失败: " + outputFile.getAbsolutePath());
             }
+            return verified;
         } catch (Exception e) {
-            System.err.println("使用Commons Imaging处理失败: " + e.getMessage());
+            System.err.println("处理JPEG文件时出错: " + e.getMessage());
             e.printStackTrace();
             return false;
         }
     }
 
     /**
-     * 创建符合EXIF规范的UserComment字节数组
-     * EXIF规范：前8字节为编码标识，后面为实际数据
+     * 重写EXIF所在的APP1段：已有EXIF时在原TIFF数据上修改UserComment，没有时在SOI（或JFIF的APP0段）之后新建
+     * 写入后用定位读取读回新的APP1段验证UserComment，不映射也不再打开输出文件
+     *
+     * @param segments 输入文件的段，至少覆盖SOS之前的部分
+     * @return 能否从写入的文件读回AIGC元数据
      */
-    private static byte[] createEXIFUserComment(String content) {
-        byte[] contentBytes = content.getBytes(StandardCharsets.UTF_8);
-        return contentBytes;
-    }
+    private static boolean rewriteExif(FileChannel in, ImageSegmentScanner segments, Path output,
+                                       AIGCMetadata metadata) throws IOException {
+        if (segments.format() != ImageSegmentScanner.Format.JPEG) {
+            throw new IOException("不是有效的JPEG文件");
+        }
 
-    private static TiffOutputSet getOrCreateOutputSet(ImageMetadata metadata) throws Exception {
-        JpegImageMetadata jpegMetadata = (metadata instanceof JpegImageMetadata) ? (JpegImageMetadata) metadata : null;
+        ImageSegmentScanner.Segment exif = null;
+        long insertOffset = 2;
+        boolean first = true;
+        while (segments.hasNext()) {
+            ImageSegmentScanner.Segment segment = segments.next();
+            if (segment.type() == ImageSegmentScanner.JPEG_APP1 && segment.payloadStartsWith(ExifUserComment.EXIF_HEADER)) {
+                exif = segment;
+                break;
+            }
+            if (first && segment.type() == ImageSegmentScanner.JPEG_APP0) {
+                insertOffset = segment.end();
+            }
+            first = false;
+        }
 
-        if (jpegMetadata != null) {
-            TiffImageMetadata exif = jpegMetadata.getExif();
-            if (exif != null) {
-                return exif.getOutputSet();
+        byte[] tiff = null;
+        if (exif != null) {
+            int headerLength = ExifUserComment.EXIF_HEADER.length;
+            tiff = segments.bytes(exif.payloadOffset() + headerLength, exif.payloadLength() - headerLength);
+        }
+        byte[] value = ExifUserComment.encode(metadata.toJsonString(), metadata.toJsonBytes());
+        ByteBuffer segment = createExifSegment(ExifUserComment.patch(tiff, value));
+        int segmentLength = segment.remaining();
+
+        long replaceFrom = exif != null ? exif.offset() : insertOffset;
+        long replaceTo = exif != null ? exif.end() : insertOffset;
+        try (FileChannel out = FileChannel.open(output, StandardOpenOption.READ, StandardOpenOption.WRITE,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ImageFileRewriter.transfer(in, out, 0, replaceFrom);
+            ImageFileRewriter.writeFully(out, segment);
+            ImageFileRewriter.transfer(in, out, replaceTo, in.size());
+
+            ByteBuffer written = ByteBuffer.allocate(segmentLength);
+            if (!ImageFileRewriter.readFully(out, written, replaceFrom)) {
+                return false;
             }
+            written.position(4 + ExifUserComment.EXIF_HEADER.length);
+            return parseUserComment(written.slice()) != null;
         }
-        return new TiffOutputSet();
     }
 
     /**
-     * 从JPEG图片读取AIGC元数据
+     * 生成EXIF所在的APP1段：标记、长度字段、"Exif\0\0"和TIFF数据
+     *
+     * @throws IOException 超过单个APP1段的容量
      */
-    public static AIGCMetadata readAIGCMetadata(File jpegFile) {
-        try {
-            System.out.println("开始读取文件: " + jpegFile.getAbsolutePath());
-            Metadata metadata = ImageMetadataReader.readMetadata(jpegFile);
-
-            for (Directory directory : metadata.getDirectories()) {
-                System.out.println("检查目录: " + directory.getName());
-
-                if (directory.containsTag(ExifDirectoryBase.TAG_USER_COMMENT)) {
-                    System.out.println("找到UserComment标签");
-                    byte[] userCommentBytes = directory.getByteArray(ExifDirectoryBase.TAG_USER_COMMENT);
-
-                    if (userCommentBytes != null) {
-                        System.out.println("UserComment字节长度: " + userCommentBytes.length);
-
-                        String userComment = parseEXIFUserComment(userCommentBytes);
-                        System.out.println("读取到的UserComment内容: " + userComment);
-
-                        if (userComment != null && userComment.trim().startsWith("{\"AIGC\":")) {
-                            System.out.println("找到AIGC标识");
-                            return AIGCMetadata.fromJsonString(userComment);
-                        }
-                    }
-                }
-            }
-
-            System.out.println("未找到AIGC元数据");
-
-        } catch (Exception e) {
-            System.err.println("读取JPEG元数据失败: " + e.getMessage());
-            e.printStackTrace();
+    private static ByteBuffer createExifSegment(byte[] tiff) throws IOException {
+        int segmentLength = 2 + ExifUserComment.EXIF_HEADER.length + tiff.length;
+        if (segmentLength > MAX_SEGMENT_LENGTH) {
+            throw new IOException("EXIF数据超过单个APP1段的容量: " + segmentLength + " 字节");
         }
-        return null;
+        ByteBuffer segment = ByteBuffer.allocate(2 + segmentLength);
+        segment.put((byte) 0xFF).put((byte) ImageSegmentScanner.JPEG_APP1).putShort((short) segmentLength)
+                .put(ExifUserComment.EXIF_HEADER).put(tiff).flip();
+        return segment;
     }
 
     /**
-     * 解析EXIF UserComment字节数组
+     * 从JPEG图片读取AIGC元数据
      */
-    private static String parseEXIFUserComment(byte[] userCommentBytes) {
-        if (userCommentBytes == null || userCommentBytes.length < 8) {
+    public static AIGCMetadata readAIGCMetadata(File jpegFile) {
+        try (FileChannel channel = FileChannel.open(jpegFile.toPath(), StandardOpenOption.READ)) {
+            return readAIGCMetadata(channel);
+        } catch (IOException e) {
+            System.err.println("读取JPEG元数据失败: " + e.getMessage());
             return null;
         }
+    }
 
-        // 读取编码标识（前8字节）
-        String encoding = new String(userCommentBytes, 0, 8, StandardCharsets.US_ASCII).trim();
-
+    /**
+     * 从已打开的JPEG图片读取AIGC元数据
+     * 通过内存映射定位EXIF所在的APP1段，只在其中按IFD结构查找UserComment，不解析其他段和标签
+     *
+     * @param channel 可读的文件通道，由调用方关闭
+     */
+    public static AIGCMetadata readAIGCMetadata(FileChannel channel) {
         try {
-            // 根据编码标识解析内容
-            if (encoding.startsWith("ASCII")) {
-                return new String(userCommentBytes, 8, userCommentBytes.length - 8, StandardCharsets.US_ASCII);
-            } else if (encoding.startsWith("UNICODE")) {
-                return new String(userCommentBytes, 8, userCommentBytes.length - 8, StandardCharsets.UTF_16);
-            } else {
-                // 默认尝试UTF-8
-                return new String(userCommentBytes, 8, userCommentBytes.length - 8, StandardCharsets.UTF_8);
+            ImageSegmentScanner segments = ImageSegmentScanner.map(channel);
+            if (segments.format() != ImageSegmentScanner.Format.JPEG) {
+                throw new IOException("不是有效的JPEG文件");
+            }
+            while (segments.hasNext()) {
+                ImageSegmentScanner.Segment segment = segments.next();
+                if (segment.type() != ImageSegmentScanner.JPEG_APP1 || !segment.payloadStartsWith(ExifUserComment.EXIF_HEADER)) {
+                    continue;
+                }
+                ByteBuffer tiff = segment.payload();
+                tiff.position(ExifUserComment.EXIF_HEADER.length);
+                AIGCMetadata metadata = parseUserComment(tiff);
+                if (metadata != null) {
+                    return metadata;
+                }
             }
         } catch (Exception e) {
-            // 如果解析失败，尝试直接使用UTF-8
-            return new String(userCommentBytes, 8, userCommentBytes.length - 8, StandardCharsets.UTF_8);
+            System.err.println("读取JPEG元数据失败: " + e.getMessage());
+            e.printStackTrace();
         }
+        return null;
     }
 
     /**
-     * 验证AIGC元数据是否成功写入
+     * 从TIFF数据中读取UserComment并解析AIGC标识
+     *
+     * @param tiff position位于TIFF头
+     * @return 没有UserComment或不是AIGC标识时返回null
      */
-    private static boolean verifyAIGCMetadata(File jpegFile) {
-        try {
-            AIGCMetadata readMetadata = readAIGCMetadata(jpegFile);
-            return readMetadata != null;
-        } catch (Exception e) {
-            System.err.println("验证AIGC元数据失败: " + e.getMessage());
-            return false;
+    private static AIGCMetadata parseUserComment(ByteBuffer tiff) throws IOException {
+        String userComment = ExifUserComment.read(tiff);
+        if (userComment != null && userComment.startsWith("{\"AIGC\":")) {
+            return AIGCMetadata.fromJsonString(userComment);
         }
+        return null;
     }
 
     /**
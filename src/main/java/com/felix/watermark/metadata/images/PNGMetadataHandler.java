@@ -2,53 +2,63 @@ package com.felix.watermark.metadata.images;
 
 
 import com.felix.watermark.metadata.AIGCMetadata;
-import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
-
-import javax.imageio.*;
-import javax.imageio.metadata.IIOInvalidTreeException;
-import javax.imageio.metadata.IIOMetadata;
-import javax.imageio.metadata.IIOMetadataNode;
-import javax.imageio.stream.ImageInputStream;
-import javax.imageio.stream.ImageOutputStream;
-import java.awt.image.BufferedImage;
-import java.io.*;
-import java.util.Iterator;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
 
 /**
  * PNG格式AIGC标识添加器
  */
 public class PNGMetadataHandler {
 
+    /** 标准要求的文本块关键字，后接tEXt的关键字分隔符0 */
+    private static final byte[] AIGC_KEYWORD = {'A', 'I', 'G', 'C', 0};
+
     /**
      * 在PNG图片中添加符合GB 45438-2025标准的AIGC隐式标识
+     * 按数据块流式复制：除AIGC文本块外，其余数据块（包括IDAT像素数据）通过FileChannel.transferTo原样复制，
+     * 不解码像素，因此16位、调色板等格式不受影响，耗时只与文件大小有关。
+     * 输入和输出可以是同一个文件。
+     *
      * @param inputFile 输入图片文件
      * @param outputFile 输出图片文件
      * @param aigcMetadata AIGC元数据
      * @return 是否成功
      */
     public static boolean addAIGCMetadata(File inputFile, File outputFile, AIGCMetadata aigcMetadata) {
-        try {
-            // 读取原始图片
-            BufferedImage image = ImageIO.read(inputFile);
-            if (image == null) {
-                throw new IOException("无法读取图片文件");
-            }
-
-            // 获取PNG writer
-            ImageWriter writer = ImageIO.getImageWritersByFormatName("png").next();
-            ImageWriteParam writeParam = writer.getDefaultWriteParam();
-
-            // 创建包含AIGC元数据的metadata
-            IIOMetadata metadata = createAIGCMetadata(writer, writeParam, aigcMetadata);
+        try (FileChannel in = FileChannel.open(inputFile.toPath(), StandardOpenOption.READ)) {
+            return addAIGCMetadata(in, inputFile, outputFile, aigcMetadata);
+        } catch (IOException e) {
+            System.err.println("添加AIGC元数据失败: " + e.getMessage());
+            return false;
+        }
+    }
 
-            // 写入带元数据的图片
-            try (ImageOutputStream ios = ImageIO.createImageOutputStream(outputFile)) {
-                writer.setOutput(ios);
-                writer.write(new IIOImage(image, null, metadata));
-            }
+    /**
+     * 为已打开的PNG图片添加AIGC隐式标识
+     *
+     * @param in 输入图片的只读通道，输出为同一个文件时会在替换前关闭（见{@link ImageFileRewriter#rewrite}）
+     * @param inputFile 输入图片文件
+     */
+    static boolean addAIGCMetadata(FileChannel in, File inputFile, File outputFile, AIGCMetadata aigcMetadata) {
+        try {
+            // 生成符合标准的JSON字符串，构造关键字为"AIGC"的tEXt数据块
+            byte[] textChunk = createTextChunk(aigcMetadata.toJsonString());
+
+            ImageFileRewriter.rewrite(in, inputFile.toPath(), outputFile.toPath(), (target, sameFile) -> {
+                ImageSegmentScanner chunks = ImageFileRewriter.segments(in, sameFile);
+                try (FileChannel out = FileChannel.open(target, StandardOpenOption.WRITE,
+                        StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                    rewriteAIGCChunk(chunks, in, out, textChunk);
+                }
+                return null;
+            });
 
-            writer.dispose();
             System.out.println("成功添加AIGC元数据到PNG文件");
             return true;
 
@@ -60,136 +70,158 @@ public class PNGMetadataHandler {
     }
 
     /**
-     * 创建包含AIGC元数据的IIOMetadata
-     * 符合GB 45438-2025标准：元数据位于tEXt chunk，块类型标识符为"AIGC"
+     * 逐块扫描输入PNG，将新的AIGC文本块插入到IHDR之后，并丢弃已有的AIGC文本块
+     * 连续的原样数据块合并为一次transferTo，扫描时只访问每个数据块的头部；
+     * chunks没有覆盖到的部分（只读入了IDAT之前的数据块，或超过2GB的文件）以定位读取逐个读取数据块头
      */
-    private static IIOMetadata createAIGCMetadata(ImageWriter writer,
-                                                  ImageWriteParam writeParam,
-                                                  AIGCMetadata aigcMetadata) throws IIOInvalidTreeException {
-
-        IIOMetadata metadata = writer.getDefaultImageMetadata(new ImageTypeSpecifier(
-                new BufferedImage(1, 1, BufferedImage.TYPE_INT_RGB)), writeParam);
-
-        // PNG格式的元数据格式名称
-        String metaFormatName = metadata.getNativeMetadataFormatName();
-
-        // 创建元数据树
-        IIOMetadataNode root = new IIOMetadataNode(metaFormatName);
-
-        // 生成符合标准的JSON字符串
-        String aigcJson = aigcMetadata.toJsonString();
+    private static void rewriteAIGCChunk(ImageSegmentScanner chunks, FileChannel in, FileChannel out,
+                                         byte[] textChunk) throws IOException {
+        if (chunks.format() != ImageSegmentScanner.Format.PNG) {
+            throw new IOException("不是有效的PNG文件");
+        }
 
-        // 添加AIGC文本数据块 - 符合标准要求：块类型标识符为"AIGC"
-        addAIGCTextChunk(root, aigcJson);
+        long copyStart = 0;
+        long scanned = ImageSegmentScanner.PNG_SIGNATURE.length;
+        boolean ended = false;
+        boolean inserted = false;
+        while (chunks.hasNext()) {
+            ImageSegmentScanner.Segment chunk = chunks.next();
+            scanned = chunk.end();
+            ended = chunk.type() == ImageSegmentScanner.PNG_IEND;
+            if (!inserted) {
+                if (chunk.type() != ImageSegmentScanner.PNG_IHDR) {
+                    throw new IOException("PNG文件缺少IHDR数据块");
+                }
+                // IHDR必须是第一个数据块，AIGC文本块紧随其后，便于读取时尽早命中
+                ImageFileRewriter.transfer(in, out, copyStart, chunk.end());
+                ImageFileRewriter.writeFully(out, ByteBuffer.wrap(textChunk));
+                copyStart = chunk.end();
+                inserted = true;
+            } else if (isAIGCText(chunk)) {
+                // 替换原有的AIGC文本块
+                ImageFileRewriter.transfer(in, out, copyStart, chunk.offset());
+                copyStart = chunk.end();
+            }
+        }
+        if (!inserted) {
+            throw new IOException("PNG文件缺少IHDR数据块");
+        }
 
-        metadata.mergeTree(metaFormatName, root);
-        return metadata;
+        long size = in.size();
+        ByteBuffer header = ByteBuffer.allocate(8 + AIGC_KEYWORD.length);
+        long position = scanned;
+        while (!ended && position + 12 <= size) {
+            header.clear();
+            header.limit((int) Math.min(header.capacity(), size - position));
+            ImageFileRewriter.readFully(in, header, position);
+            long end = position + 12 + (header.getInt(0) & 0xFFFFFFFFL);
+            if (end > size) {
+                break;
+            }
+            int type = header.getInt(4);
+            if (type == ImageSegmentScanner.PNG_TEXT && end - position >= 12 + AIGC_KEYWORD.length
+                    && startsWithKeyword(header)) {
+                ImageFileRewriter.transfer(in, out, copyStart, position);
+                copyStart = end;
+            }
+            ended = type == ImageSegmentScanner.PNG_IEND;
+            position = end;
+        }
+        ImageFileRewriter.transfer(in, out, copyStart, size);
     }
 
     /**
-     * 添加AIGC文本数据块到元数据
-     * 符合GB 45438-2025标准：块类型标识符为"AIGC"
+     * 数据块头之后的数据是否以AIGC关键字开头
      */
-    private static void addAIGCTextChunk(IIOMetadataNode root, String aigcJson) {
-        if (aigcJson == null || aigcJson.isEmpty()) return;
-
-        IIOMetadataNode textEntry = new IIOMetadataNode("tEXtEntry");
-        textEntry.setAttribute("keyword", "AIGC");  // 标准要求的块类型标识符
-        textEntry.setAttribute("value", aigcJson);
-
-        // 查找或创建tEXt节点
-        IIOMetadataNode textNode = null;
-        NodeList nodes = root.getElementsByTagName("tEXt");
-        if (nodes.getLength() > 0) {
-            textNode = (IIOMetadataNode) nodes.item(0);
-        } else {
-            textNode = new IIOMetadataNode("tEXt");
-            root.appendChild(textNode);
+    private static boolean startsWithKeyword(ByteBuffer header) {
+        for (int i = 0; i < AIGC_KEYWORD.length; i++) {
+            if (header.get(8 + i) != AIGC_KEYWORD[i]) {
+                return false;
+            }
         }
+        return true;
+    }
 
-        textNode.appendChild(textEntry);
-
-        System.out.println("添加AIGC tEXt chunk: " + aigcJson);
+    /**
+     * 判断是否为关键字为AIGC的tEXt数据块
+     */
+    private static boolean isAIGCText(ImageSegmentScanner.Segment chunk) {
+        return chunk.type() == ImageSegmentScanner.PNG_TEXT && chunk.payloadStartsWith(AIGC_KEYWORD);
     }
 
     /**
-     * 从PNG文件读取AIGC元数据
-     * @param pngFile PNG文件
-     * @return AIGC元数据对象，如果不存在则返回null
+     * 构造关键字为"AIGC"的完整tEXt数据块（长度、类型、数据、CRC）
+     * tEXt只允许ISO-8859-1字符，超出范围的字符以JSON的\\uXXXX转义表示，JSON语义不变
      */
-    public static AIGCMetadata readAIGCMetadata(File pngFile) throws IOException {
-        try (ImageInputStream iis = ImageIO.createImageInputStream(pngFile)) {
-            Iterator<ImageReader> readers = ImageIO.getImageReaders(iis);
+    private static byte[] createTextChunk(String aigcJson) {
+        byte[] text = toLatin1Json(aigcJson).getBytes(StandardCharsets.ISO_8859_1);
+        int dataLength = AIGC_KEYWORD.length + text.length;
+
+        ByteBuffer chunk = ByteBuffer.allocate(12 + dataLength);
+        chunk.putInt(dataLength);
+        chunk.putInt(ImageSegmentScanner.PNG_TEXT);
+        chunk.put(AIGC_KEYWORD);
+        chunk.put(text);
+
+        // CRC覆盖类型和数据
+        CRC32 crc = new CRC32();
+        crc.update(chunk.array(), 4, 4 + dataLength);
+        chunk.putInt((int) crc.getValue());
+        return chunk.array();
+    }
 
-            if (!readers.hasNext()) {
-                throw new IOException("不支持的图片格式");
+    /**
+     * 将ISO-8859-1范围外的字符和控制字符转义为\\uXXXX
+     */
+    private static String toLatin1Json(String json) {
+        StringBuilder builder = null;
+        for (int i = 0; i < json.length(); i++) {
+            char c = json.charAt(i);
+            boolean escape = c > 0xFF || c < 0x20;
+            if (escape && builder == null) {
+                builder = new StringBuilder(json.length() + 32).append(json, 0, i);
             }
-
-            ImageReader reader = readers.next();
-            reader.setInput(iis);
-
-            IIOMetadata metadata = reader.getImageMetadata(0);
-            AIGCMetadata aigcMetadata = null;
-
-            if (metadata != null) {
-                aigcMetadata = parseAIGCMetadata(metadata);
+            if (escape) {
+                builder.append(String.format("\\u%04x", (int) c));
+            } else if (builder != null) {
+                builder.append(c);
             }
-
-            reader.dispose();
-            return aigcMetadata;
         }
+        return builder == null ? json : builder.toString();
     }
 
     /**
-     * 解析AIGC元数据
+     * 从PNG文件读取AIGC元数据
+     * @param pngFile PNG文件
+     * @return AIGC元数据对象，如果不存在则返回null
      */
-    private static AIGCMetadata parseAIGCMetadata(IIOMetadata metadata) {
-        try {
-            String[] formatNames = metadata.getMetadataFormatNames();
-            for (String formatName : formatNames) {
-                Node root = metadata.getAsTree(formatName);
-                AIGCMetadata result = findAIGCTextNode(root);
-                if (result != null) {
-                    return result;
-                }
-            }
-        } catch (Exception e) {
-            System.err.println("解析AIGC元数据时出错: " + e.getMessage());
+    public static AIGCMetadata readAIGCMetadata(File pngFile) throws IOException {
+        try (FileChannel channel = FileChannel.open(pngFile.toPath(), StandardOpenOption.READ)) {
+            return readAIGCMetadata(channel);
         }
-        return null;
     }
 
     /**
-     * 查找AIGC文本节点并解析
+     * 从已打开的PNG文件读取AIGC元数据
+     * 通过内存映射逐块查找关键字为AIGC的tEXt数据块，不解码像素，只复制该文本块的内容
+     * @param channel 可读的文件通道，由调用方关闭
+     * @return AIGC元数据对象，如果不存在则返回null
      */
-    private static AIGCMetadata findAIGCTextNode(Node node) {
-        if (node instanceof IIOMetadataNode) {
-            IIOMetadataNode metadataNode = (IIOMetadataNode) node;
-
-            // 处理tEXt条目
-            NodeList textEntries = metadataNode.getElementsByTagName("tEXtEntry");
-
-            for (int i = 0; i < textEntries.getLength(); i++) {
-                IIOMetadataNode textEntry = (IIOMetadataNode) textEntries.item(i);
-                String keyword = textEntry.getAttribute("keyword");
-                String value = textEntry.getAttribute("value");
-
-                // 查找关键字为"AIGC"的文本块
-                if ("AIGC".equals(keyword)) {
-                    return AIGCMetadata.fromJsonString(value);
-                }
-            }
+    public static AIGCMetadata readAIGCMetadata(FileChannel channel) throws IOException {
+        ImageSegmentScanner chunks = ImageSegmentScanner.map(channel);
+        if (chunks.format() != ImageSegmentScanner.Format.PNG) {
+            throw new IOException("不支持的图片格式");
         }
 
-        // 递归处理子节点
-        NodeList children = node.getChildNodes();
-        for (int i = 0; i < children.getLength(); i++) {
-            AIGCMetadata result = findAIGCTextNode(children.item(i));
-            if (result != null) {
-                return result;
+        while (chunks.hasNext()) {
+            ImageSegmentScanner.Segment chunk = chunks.next();
+            if (isAIGCText(chunk)) {
+                // tEXt内容为ISO-8859-1文本，超出范围的字符已按JSON的\\uXXXX转义
+                String value = new String(chunks.bytes(chunk.payloadOffset() + AIGC_KEYWORD.length,
+                        chunk.payloadLength() - AIGC_KEYWORD.length), StandardCharsets.ISO_8859_1);
+                return AIGCMetadata.fromJsonString(value);
             }
         }
-
         return null;
     }
 
@@ -0,0 +1,306 @@
+package com.felix.watermark.metadata.images;
+
+import com.felix.watermark.metadata.AIGCMetadata;
+import com.felix.watermark.metadata.images.XMP.AIGCMetadataReader;
+import com.felix.watermark.metadata.images.XMP.AIGCMetadataWriter;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * WebP格式AIGC标识添加器
+ * WebP为RIFF容器，AIGC标识写入"XMP "数据块中XMP包的TC260:AIGC属性，与JPEG/PNG的XMP方案一致。
+ * 按数据块流式处理：只读取各数据块的8字节块头，图像数据块通过FileChannel.transferTo原样复制，不解码像素。
+ * 简单格式（只有一个VP8/VP8L数据块）的文件写入时补上VP8X数据块，画布尺寸取自VP8/VP8L位流头。
+ */
+public class WebPMetadataHandler {
+
+    private static final int RIFF = fourCC("RIFF");
+    private static final int WEBP = fourCC("WEBP");
+    private static final int VP8X = fourCC("VP8X");
+    private static final int VP8 = fourCC("VP8 ");
+    private static final int VP8L = fourCC("VP8L");
+    private static final int XMP = fourCC("XMP ");
+
+    /** VP8X标志位 */
+    private static final int FLAG_ALPHA = 0x10;
+    private static final int FLAG_XMP = 0x04;
+
+    private static final int VP8X_PAYLOAD_LENGTH = 10;
+
+    /**
+     * RIFF数据块的位置
+     */
+    private static final class Chunk {
+        final int type;
+        final long offset;
+        final long payloadLength;
+
+        Chunk(int type, long offset, long payloadLength) {
+            this.type = type;
+            this.offset = offset;
+            this.payloadLength = payloadLength;
+        }
+
+        long payloadOffset() {
+            return offset + 8;
+        }
+
+        /** 数据块结束的位置，奇数长度的数据后有1字节填充 */
+        long end() {
+            return payloadOffset() + payloadLength + (payloadLength & 1);
+        }
+    }
+
+    /**
+     * 在WebP图片中添加AIGC隐式标识，已有XMP时按属性合并
+     * 输入和输出可以是同一个文件。
+     *
+     * @param inputFile 输入图片文件
+     * @param outputFile 输出图片文件
+     * @param metadata AIGC元数据
+     * @return 是否成功
+     */
+    public static boolean addAIGCMetadata(File inputFile, File outputFile, AIGCMetadata metadata) {
+        try (FileChannel in = FileChannel.open(inputFile.toPath(), StandardOpenOption.READ)) {
+            return addAIGCMetadata(in, inputFile, outputFile, metadata);
+        } catch (IOException e) {
+            System.err.println("添加AIGC元数据失败: " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * 为已打开的WebP图片添加AIGC隐式标识
+     *
+     * @param in 输入图片的只读通道，输出为同一个文件时会在替换前关闭（见{@link ImageFileRewriter#rewrite}）
+     * @param inputFile 输入图片文件
+     */
+    static boolean addAIGCMetadata(FileChannel in, File inputFile, File outputFile, AIGCMetadata metadata) {
+        try {
+            ImageFileRewriter.rewrite(in, inputFile.toPath(), outputFile.toPath(), (target, sameFile) -> {
+                try (FileChannel out = FileChannel.open(target, StandardOpenOption.WRITE,
+                        StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                    rewriteXMPChunk(in, out, metadata);
+                }
+                return null;
+            });
+
+            System.out.println("成功添加AIGC元数据到WebP文件");
+            return true;
+
+        } catch (Exception e) {
+            System.err.println("添加AIGC元数据失败: " + e.getMessage());
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    /**
+     * 从WebP图片读取AIGC元数据
+     */
+    public static AIGCMetadata readAIGCMetadata(File webpFile) {
+        try (FileChannel channel = FileChannel.open(webpFile.toPath(), StandardOpenOption.READ)) {
+            return readAIGCMetadata(channel);
+        } catch (IOException e) {
+            System.err.println("读取WebP元数据失败: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * 从已打开的WebP图片读取AIGC元数据
+     *
+     * @param channel 可读的文件通道，由调用方关闭
+     */
+    public static AIGCMetadata readAIGCMetadata(FileChannel channel) {
+        try {
+            for (Chunk chunk : scan(channel)) {
+                if (chunk.type == XMP) {
+                    return AIGCMetadataReader.parseXMPPacket(read(channel, chunk.payloadOffset(), chunk.payloadLength));
+                }
+            }
+        } catch (Exception e) {
+            System.err.println("读取WebP元数据失败: " + e.getMessage());
+            e.printStackTrace();
+        }
+        return null;
+    }
+
+    /**
+     * 按数据块复制输入WebP：VP8X置上XMP标志（没有时补上），第一个XMP数据块替换为合并后的XMP，
+     * 其余XMP数据块丢弃，没有XMP时追加在末尾。连续的原样数据块合并为一次transferTo。
+     */
+    private static void rewriteXMPChunk(FileChannel in, FileChannel out, AIGCMetadata metadata) throws IOException {
+        List<Chunk> chunks = scan(in);
+        if (chunks.isEmpty()) {
+            throw new IOException("WebP文件没有数据块");
+        }
+
+        Chunk existing = null;
+        for (Chunk chunk : chunks) {
+            if (chunk.type == XMP) {
+                existing = chunk;
+                break;
+            }
+        }
+        byte[] packet = AIGCMetadataWriter.createXMPPacket(
+                existing != null ? read(in, existing.payloadOffset(), existing.payloadLength) : null, metadata);
+        ByteBuffer xmpChunk = createChunk(XMP, packet);
+        ByteBuffer vp8xChunk = createChunk(VP8X, createVP8X(in, chunks.get(0)));
+
+        long riffLength = 4 + vp8xChunk.remaining() + (existing == null ? xmpChunk.remaining() : 0);
+        for (Chunk chunk : chunks) {
+            if (chunk == existing) {
+                riffLength += xmpChunk.remaining();
+            } else if (chunk.type != VP8X && chunk.type != XMP) {
+                riffLength += chunk.end() - chunk.offset;
+            }
+        }
+        if (riffLength > 0xFFFFFFFFL - 1) {
+            throw new IOException("WebP文件超过RIFF容量");
+        }
+
+        ByteBuffer header = ByteBuffer.allocate(12).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(Integer.reverseBytes(RIFF)).putInt((int) riffLength).putInt(Integer.reverseBytes(WEBP)).flip();
+        ImageFileRewriter.writeFully(out, header);
+        ImageFileRewriter.writeFully(out, vp8xChunk);
+
+        long copyStart = -1;
+        long copyEnd = -1;
+        for (Chunk chunk : chunks) {
+            boolean copy = chunk.type != VP8X && chunk.type != XMP;
+            if (copy && chunk.offset == copyEnd) {
+                copyEnd = chunk.end();
+                continue;
+            }
+            ImageFileRewriter.transfer(in, out, copyStart, copyEnd);
+            copyStart = copyEnd = -1;
+            if (copy) {
+                copyStart = chunk.offset;
+                copyEnd = chunk.end();
+            } else if (chunk == existing) {
+                ImageFileRewriter.writeFully(out, xmpChunk);
+            }
+        }
+        ImageFileRewriter.transfer(in, out, copyStart, copyEnd);
+        if (existing == null) {
+            ImageFileRewriter.writeFully(out, xmpChunk);
+        }
+    }
+
+    /**
+     * 生成VP8X数据块内容：已有时置上XMP标志，没有时由第一个图像数据块的位流头取得画布尺寸
+     */
+    private static byte[] createVP8X(FileChannel in, Chunk first) throws IOException {
+        if (first.type == VP8X) {
+            if (first.payloadLength < VP8X_PAYLOAD_LENGTH) {
+                throw new IOException("VP8X数据块长度无效");
+            }
+            byte[] vp8x = read(in, first.payloadOffset(), VP8X_PAYLOAD_LENGTH);
+            vp8x[0] |= FLAG_XMP;
+            return vp8x;
+        }
+
+        int flags = FLAG_XMP;
+        int width;
+        int height;
+        if (first.type == VP8 && first.payloadLength >= 10) {
+            // 帧标记3字节、起始码9D 01 2A，之后为14位宽度和14位高度（高2位为缩放）
+            ByteBuffer frame = ByteBuffer.wrap(read(in, first.payloadOffset(), 10)).order(ByteOrder.LITTLE_ENDIAN);
+            if ((frame.get(3) & 0xFF) != 0x9D || (frame.get(4) & 0xFF) != 0x01 || (frame.get(5) & 0xFF) != 0x2A) {
+                throw new IOException("VP8位流起始码无效");
+            }
+            width = frame.getShort(6) & 0x3FFF;
+            height = frame.getShort(8) & 0x3FFF;
+        } else if (first.type == VP8L && first.payloadLength >= 5) {
+            // 签名0x2F，之后依次为14位宽度-1、14位高度-1和1位alpha标志
+            ByteBuffer bits = ByteBuffer.wrap(read(in, first.payloadOffset(), 5)).order(ByteOrder.LITTLE_ENDIAN);
+            if ((bits.get(0) & 0xFF) != 0x2F) {
+                throw new IOException("VP8L位流签名无效");
+            }
+            int value = bits.getInt(1);
+            width = (value & 0x3FFF) + 1;
+            height = ((value >>> 14) & 0x3FFF) + 1;
+            if ((value & (1 << 28)) != 0) {
+                flags |= FLAG_ALPHA;
+            }
+        } else {
+            throw new IOException("WebP文件缺少VP8X/VP8/VP8L数据块");
+        }
+
+        ByteBuffer vp8x = ByteBuffer.allocate(VP8X_PAYLOAD_LENGTH).order(ByteOrder.LITTLE_ENDIAN);
+        vp8x.put((byte) flags).put(new byte[3]);
+        putUInt24(vp8x, width - 1);
+        putUInt24(vp8x, height - 1);
+        return vp8x.array();
+    }
+
+    /**
+     * 逐个读取RIFF数据块头，只读块头不读数据
+     *
+     * @throws IOException 不是WebP文件或数据块长度越界
+     */
+    private static List<Chunk> scan(FileChannel channel) throws IOException {
+        long size = channel.size();
+        ByteBuffer header = ByteBuffer.allocate(12).order(ByteOrder.LITTLE_ENDIAN);
+        if (size < 12 || !ImageFileRewriter.readFully(channel, header, 0)
+                || Integer.reverseBytes(header.getInt(0)) != RIFF || Integer.reverseBytes(header.getInt(8)) != WEBP) {
+            throw new IOException("不是有效的WebP文件");
+        }
+        long end = Math.min(size, 8 + (header.getInt(4) & 0xFFFFFFFFL));
+
+        List<Chunk> chunks = new ArrayList<>();
+        long position = 12;
+        while (position + 8 <= end) {
+            header.clear().limit(8);
+            ImageFileRewriter.readFully(channel, header, position);
+            Chunk chunk = new Chunk(Integer.reverseBytes(header.getInt(0)), position, header.getInt(4) & 0xFFFFFFFFL);
+            if (chunk.payloadOffset() + chunk.payloadLength > end) {
+                throw new IOException("WebP数据块长度越界");
+            }
+            chunks.add(chunk);
+            position = Math.min(chunk.end(), end);
+        }
+        return chunks;
+    }
+
+    /**
+     * 构造完整的RIFF数据块（类型、小端长度、数据和奇数长度时的填充）
+     */
+    private static ByteBuffer createChunk(int type, byte[] payload) {
+        ByteBuffer chunk = ByteBuffer.allocate(8 + payload.length + (payload.length & 1)).order(ByteOrder.LITTLE_ENDIAN);
+        chunk.putInt(Integer.reverseBytes(type)).putInt(payload.length).put(payload);
+        chunk.position(chunk.capacity()).flip();
+        return chunk;
+    }
+
+    private static void putUInt24(ByteBuffer buffer, int value) {
+        buffer.put((byte) value).put((byte) (value >> 8)).put((byte) (value >> 16));
+    }
+
+    /**
+     * 四字符码按大端读作int，与读取时的Integer.reverseBytes(小端int)对应
+     */
+    private static int fourCC(String code) {
+        return (code.charAt(0) << 24) | (code.charAt(1) << 16) | (code.charAt(2) << 8) | code.charAt(3);
+    }
+
+    private static byte[] read(FileChannel channel, long position, long length) throws IOException {
+        if (length > Integer.MAX_VALUE - 8) {
+            throw new IOException("WebP数据块过大: " + length);
+        }
+        ByteBuffer buffer = ByteBuffer.allocate((int) length);
+        if (!ImageFileRewriter.readFully(channel, buffer, position)) {
+            throw new EOFException("读取WebP数据块时文件意外结束");
+        }
+        return buffer.array();
+    }
+}
@@ -1,10 +1,25 @@
 package com.felix.watermark.metadata.images.XMP;
 
+import com.felix.watermark.metadata.AIGCMetadata;
+import com.felix.watermark.metadata.images.ImageFileRewriter;
+import com.felix.watermark.metadata.images.ImageSegmentScanner.Format;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.*;
+import javax.xml.stream.XMLStreamException;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
 import java.util.zip.CRC32;
 
 /**
@@ -23,188 +38,71 @@ public class AIGCMetadataWriter {
     private static final String RDF_NAMESPACE_URI = "http://www.w3.org/1999/02/22-rdf-syntax-ns#";
     private static final String DC_NAMESPACE_URI = "http://purl.org/dc/elements/1.1/";
 
-    /**
-     * AIGC元数据对象 - 严格按附录E格式
-     */
-    public static class AIGCMetadata {
-        private String label;
-        private String contentProducer;
-        private String produceID;
-        private String reservedCode1;
-        private String contentPropagator;
-        private String propagateID;
-        private String reservedCode2;
-
-        public AIGCMetadata(String label, String contentProducer, String produceID) {
-            this.label = label != null ? label : "";
-            this.contentProducer = contentProducer != null ? contentProducer : "";
-            this.produceID = produceID != null ? produceID : "";
-            this.reservedCode1 = "";
-            this.contentPropagator = "";
-            this.propagateID = "";
-            this.reservedCode2 = "";
-        }
+    /** XMP规范建议的填充大小，足够容纳多次传播信息更新 */
+    public static final int DEFAULT_XMP_PADDING = 2048;
 
-        // Getter和Setter方法
-        public String getLabel() { return label; }
-        public void setLabel(String label) { this.label = label != null ? label : ""; }
-
-        public String getContentProducer() { return contentProducer; }
-        public void setContentProducer(String contentProducer) { this.contentProducer = contentProducer != null ? contentProducer : ""; }
-
-        public String getProduceID() { return produceID; }
-        public void setProduceID(String produceID) { this.produceID = produceID != null ? produceID : ""; }
-
-        public String getReservedCode1() { return reservedCode1; }
-        public void setReservedCode1(String reservedCode1) { this.reservedCode1 = reservedCode1 != null ? reservedCode1 : ""; }
-
-        public String getContentPropagator() { return contentPropagator; }
-        public void setContentPropagator(String contentPropagator) { this.contentPropagator = contentPropagator != null ? contentPropagator : ""; }
-
-        public String getPropagateID() { return propagateID; }
-        public void setPropagateID(String propagateID) { this.propagateID = propagateID != null ? propagateID : ""; }
-
-        public String getReservedCode2() { return reservedCode2; }
-        public void setReservedCode2(String reservedCode2) { this.reservedCode2 = reservedCode2 != null ? reservedCode2 : ""; }
-
-        /**
-         * 生成符合附录E规定的JSON字符串
-         * 严格按照XMP方案要求，不添加外层包装
-         */
-        public String toJsonString() {
-            StringBuilder sb = new StringBuilder();
-            sb.append("{");
-            sb.append("\"Label\":").append(quoteJsonValue(label)).append(",");
-            sb.append("\"ContentProducer\":").append(quoteJsonValue(contentProducer)).append(",");
-            sb.append("\"ProduceID\":").append(quoteJsonValue(produceID)).append(",");
-            sb.append("\"ReservedCode1\":").append(quoteJsonValue(reservedCode1)).append(",");
-            sb.append("\"ContentPropagator\":").append(quoteJsonValue(contentPropagator)).append(",");
-            sb.append("\"PropagateID\":").append(quoteJsonValue(propagateID)).append(",");
-            sb.append("\"ReservedCode2\":").append(quoteJsonValue(reservedCode2));
-            sb.append("}");
-            return sb.toString();
-        }
+    private static final byte[] XPACKET_END = "<?xpacket end=".getBytes(StandardCharsets.US_ASCII);
 
-        private String quoteJsonValue(String value) {
-            if (value == null || value.isEmpty()) {
-                return "\"\"";
-            }
-            // JSON转义：引号、反斜杠、控制字符
-            return "\"" + value.replace("\\", "\\\\")
-                    .replace("\"", "\\\"")
-                    .replace("\b", "\\b")
-                    .replace("\f", "\\f")
-                    .replace("\n", "\\n")
-                    .replace("\r", "\\r")
-                    .replace("\t", "\\t") + "\"";
-        }
+    private static final String XMP_HEAD =
+            "<?xpacket begin=\"\" id=\"W5M0MpCehiHzreSzNTczkc9d\"?>\n" +
+                    "<x:xmpmeta xmlns:x=\"adobe:ns:meta/\" x:xmptk=\"Adobe XMP Core 5.6-c148 79.164036, 2019/08/13-01:06:57\">\n" +
+                    " <rdf:RDF xmlns:rdf=\"" + RDF_NAMESPACE_URI + "\">\n" +
+                    "  <rdf:Description rdf:about=\"\"\n";
+    private static final String XMP_TAIL =
+            "</TC260:AIGC>\n" +
+                    "  </rdf:Description>\n" +
+                    " </rdf:RDF>\n" +
+                    "</x:xmpmeta>\n";
+    private static final String XPACKET_TRAILER = "<?xpacket end=\"w\"?>";
 
-        @Override
-        public String toString() {
-            return "AIGCMetadata{" +
-                    "label='" + label + '\'' +
-                    ", contentProducer='" + contentProducer + '\'' +
-                    ", produceID='" + produceID + '\'' +
-                    ", reservedCode1='" + reservedCode1 + '\'' +
-                    ", contentPropagator='" + contentPropagator + '\'' +
-                    ", propagateID='" + propagateID + '\'' +
-                    ", reservedCode2='" + reservedCode2 + '\'' +
-                    '}';
-        }
-    }
+    /**
+     * 新建XMP包的模板，TC260:AIGC属性值是唯一的可变部分
+     * 严格遵循规范6.a)和6.b)要求
+     */
+    private static final XMPPacketTemplate STANDARD_XMP = new XMPPacketTemplate(new String[]{
+            XMP_HEAD +
+                    "    xmlns:dc=\"" + DC_NAMESPACE_URI + "\"\n" +
+                    "    xmlns:TC260=\"" + TC260_NAMESPACE_URI + "\">\n" +
+                    "   <dc:title>BoGuan AI Model</dc:title>\n" +
+                    "   <TC260:AIGC>",
+            XMP_TAIL}, XPACKET_TRAILER);
+
+    /**
+     * 原有XMP移入扩展XMP后，JPEG标准XMP包的模板，依次填入扩展XMP的GUID和TC260:AIGC属性值
+     */
+    private static final XMPPacketTemplate EXTENDED_STANDARD_XMP = new XMPPacketTemplate(new String[]{
+            XMP_HEAD +
+                    "    xmlns:xmpNote=\"" + ExtendedXMP.NOTE_NAMESPACE_URI + "\"\n" +
+                    "    xmlns:TC260=\"" + TC260_NAMESPACE_URI + "\">\n" +
+                    "   <xmpNote:HasExtendedXMP>",
+            "</xmpNote:HasExtendedXMP>\n" +
+                    "   <TC260:AIGC>",
+            XMP_TAIL}, XPACKET_TRAILER);
 
     /**
      * 为JPEG文件写入AIGC元数据 - 严格按规范写入APP1段XMP字段
      * 符合规范6.c)1)要求：将元数据写入APP1中标签名为XMP的字段
+     * 通过内存映射只访问SOS之前的段头和已有XMP包，其余字节通过FileChannel.transferTo原样复制
+     * 合并后超出单个APP1段容量时，原有XMP移入扩展XMP（见{@link ExtendedXMP}），标准XMP保留AIGC标识
      */
     public static boolean writeAIGCMetadataToJPEG(File inputFile, File outputFile, AIGCMetadata metadata){
+        return writeAIGCMetadataToJPEG(inputFile, outputFile, metadata, 0);
+    }
+
+    /**
+     * 为JPEG文件写入AIGC元数据，并在XMP包尾部预留空白填充
+     * 预留填充后，后续更新ContentPropagator/PropagateID等字段时可通过{@link #updateAIGCMetadataInPlace}原地完成。
+     * 输入和输出为同一文件时优先原地更新，空间不足时改为写入临时文件后替换。
+     *
+     * @param paddingBytes 预留的填充字节数，XMP规范建议2KB-4KB（见{@link #DEFAULT_XMP_PADDING}），0表示不预留
+     */
+    public static boolean writeAIGCMetadataToJPEG(File inputFile, File outputFile, AIGCMetadata metadata, int paddingBytes){
         try {
             if (!inputFile.exists()) {
                 throw new FileNotFoundException("输入文件不存在: " + inputFile.getAbsolutePath());
             }
 
-            if (inputFile.equals(outputFile)) {
-                throw new IllegalArgumentException("输入文件和输出文件不能相同");
-            }
-
-            byte[] fileData = readFileToByteArray(inputFile);
-
-            // 验证JPEG文件头
-            if (!isValidJPEG(fileData)) {
-                throw new IOException("不是有效的JPEG文件");
-            }
-
-            // 生成标准XMP数据
-            String xmpContent = createStandardXMPContent(metadata);
-            byte[] xmpBytes = xmpContent.getBytes(StandardCharsets.UTF_8);
-
-            // 创建新的JPEG数据
-            ByteArrayOutputStream output = new ByteArrayOutputStream();
-            output.write(fileData, 0, 2); // 写入SOI (FF D8)
-
-            int position = 2;
-            boolean xmpInserted = false;
-            boolean foundAppSegment = false;
-
-            // 遍历JPEG段，查找现有的XMP段或合适的插入位置
-            while (position < fileData.length - 1) {
-                if (fileData[position] == (byte)0xFF) {
-                    int marker = fileData[position + 1] & 0xFF;
-
-                    // 检查文件结束标记
-                    if (marker == 0xD9) { // EOI
-                        break;
-                    }
-
-                    // 检查APP1段 (XMP)
-                    if (marker == 0xE1) {
-                        if (isXMPSegment(fileData, position)) {
-                            // 找到现有XMP段，按规范要求更新它（按属性更新，不整体覆盖）
-                            byte[] updatedXMP = updateExistingXMP(fileData, position, metadata);
-                            output.write(updatedXMP);
-                            xmpInserted = true;
-                            position = skipSegment(fileData, position);
-                            continue;
-                        }
-                    }
-
-                    // 标记已找到APP段
-                    if (marker >= 0xE0 && marker <= 0xEF) {
-                        foundAppSegment = true;
-                    }
-
-                    // 在第一个APP段后插入XMP（如果没有找到现有XMP）
-                    if (foundAppSegment && !xmpInserted && marker >= 0xE0 && marker <= 0xEF) {
-                        // 写入当前APP段
-                        int segmentEnd = writeSegment(output, fileData, position);
-
-                        // 插入XMP APP1段
-                        writeXMPApp1Segment(output, xmpBytes);
-                        xmpInserted = true;
-
-                        position = segmentEnd;
-                        continue;
-                    }
-
-                    // 写入其他段
-                    int segmentEnd = writeSegment(output, fileData, position);
-                    position = segmentEnd;
-                } else {
-                    output.write(fileData[position]);
-                    position++;
-                }
-            }
-
-            // 如果没有找到合适的插入点，在SOI后直接插入
-            if (!xmpInserted) {
-                ByteArrayOutputStream temp = new ByteArrayOutputStream();
-                temp.write(fileData, 0, 2); // SOI
-                writeXMPApp1Segment(temp, xmpBytes);
-                temp.write(fileData, 2, fileData.length - 2);
-                writeByteArrayToFile(outputFile, temp.toByteArray());
-            } else {
-                writeByteArrayToFile(outputFile, output.toByteArray());
-            }
+            writeXMP(inputFile, outputFile, metadata, Format.JPEG, paddingBytes);
             return true;
         }catch (Exception e){
             logger.error("写入AIGC元数据失败", e);
@@ -215,409 +113,258 @@ public class AIGCMetadataWriter {
     /**
      * 为PNG文件写入AIGC元数据 - 严格按规范写入iTXt段XMP字段
      * 符合规范6.c)2)要求：将元数据写入类型为iTXt的XMP字段
+     * 通过内存映射只访问IDAT之前的数据块头和已有XMP包，其余字节通过FileChannel.transferTo原样复制
      */
     public static void writeAIGCMetadataToPNG(File inputFile, File outputFile, AIGCMetadata metadata) throws IOException {
+        writeAIGCMetadataToPNG(inputFile, outputFile, metadata, 0);
+    }
+
+    /**
+     * 为PNG文件写入AIGC元数据，并在XMP包尾部预留空白填充
+     * 输入和输出为同一文件时优先原地更新，空间不足时改为写入临时文件后替换。
+     *
+     * @param paddingBytes 预留的填充字节数，0表示不预留
+     */
+    public static void writeAIGCMetadataToPNG(File inputFile, File outputFile, AIGCMetadata metadata,
+                                              int paddingBytes) throws IOException {
         if (!inputFile.exists()) {
             throw new FileNotFoundException("输入文件不存在: " + inputFile.getAbsolutePath());
         }
 
-        if (inputFile.equals(outputFile)) {
-            throw new IllegalArgumentException("输入文件和输出文件不能相同");
-        }
-
-        byte[] fileData = readFileToByteArray(inputFile);
-
-        // 验证PNG文件头
-        if (!isValidPNG(fileData)) {
-            throw new IOException("不是有效的PNG文件");
-        }
-
-        String xmpContent = createStandardXMPContent(metadata);
-
-        ByteArrayOutputStream output = new ByteArrayOutputStream();
-        output.write(fileData, 0, 8); // PNG签名
-
-        int position = 8;
-        boolean xmpInserted = false;
-        boolean passedIHDR = false;
-
-        while (position < fileData.length) {
-            if (position + 8 > fileData.length) break;
-
-            int chunkLength = readIntBE(fileData, position);
-            String chunkType = new String(fileData, position + 4, 4, StandardCharsets.US_ASCII);
-
-            // 检查块长度有效性
-            if (chunkLength < 0 || position + 12 + chunkLength > fileData.length) {
-                break;
-            }
-
-            // 标记已通过IHDR块
-            if ("IHDR".equals(chunkType)) {
-                passedIHDR = true;
-            }
-
-            // 检查现有XMP块
-            if ("iTXt".equals(chunkType) && isXMPChunk(fileData, position)) {
-                // 更新现有XMP块 - 按属性更新，不整体覆盖
-                byte[] updatedChunk = updateXMPChunk(fileData, position, metadata);
-                output.write(updatedChunk);
-                xmpInserted = true;
-                position += 12 + chunkLength;
-                continue;
-            }
-
-            // 在IHDR后、IDAT前插入新XMP块
-            if (passedIHDR && !xmpInserted && !"IDAT".equals(chunkType) && !"IEND".equals(chunkType)) {
-                writeXMPITXtChunk(output, xmpContent);
-                xmpInserted = true;
-            }
-
-            // 写入当前块
-            int chunkEnd = position + 12 + chunkLength;
-            if (chunkEnd <= fileData.length) {
-                output.write(fileData, position, 12 + chunkLength);
-                position = chunkEnd;
-            } else {
-                break;
-            }
-        }
-
-        // 如果还没有插入XMP，在文件末尾前插入
-        if (!xmpInserted) {
-            // 回退到IEND前
-            output.reset();
-            output.write(fileData, 0, 8);
-            position = 8;
-
-            while (position < fileData.length - 12) {
-                if (position + 8 > fileData.length) break;
-
-                int chunkLength = readIntBE(fileData, position);
-                String chunkType = new String(fileData, position + 4, 4, StandardCharsets.US_ASCII);
-
-                if ("IEND".equals(chunkType)) {
-                    // 在IEND前插入XMP
-                    writeXMPITXtChunk(output, xmpContent);
-                }
-
-                int chunkEnd = position + 12 + chunkLength;
-                if (chunkEnd <= fileData.length) {
-                    output.write(fileData, position, 12 + chunkLength);
-                    position = chunkEnd;
-                } else {
-                    break;
-                }
-            }
-        }
-
-        writeByteArrayToFile(outputFile, output.toByteArray());
+        writeXMP(inputFile, outputFile, metadata, Format.PNG, paddingBytes);
     }
 
     /**
-     * 创建符合XMP标准的完整XMP内容
-     * 严格遵循规范6.a)和6.b)要求
+     * 在已有XMP包的空间内原地更新AIGC元数据
+     * 合并后的XMP包重新填充到与原包完全相同的字节数，只对该段做一次定位写入（PNG同时重算CRC），
+     * 耗时与图片大小无关，适合传播链路中反复更新传播者信息。
+     *
+     * @param imageFile JPEG或PNG文件
+     * @param metadata AIGC元数据
+     * @return 是否已原地更新；文件中没有XMP包或预留空间不足时返回false，文件保持不变
+     * @throws IOException 文件读写失败或格式不支持
      */
-    private static String createStandardXMPContent(AIGCMetadata metadata) {
-        return "<?xpacket begin=\"\" id=\"W5M0MpCehiHzreSzNTczkc9d\"?>\n" +
-                "<x:xmpmeta xmlns:x=\"adobe:ns:meta/\" x:xmptk=\"Adobe XMP Core 5.6-c148 79.164036, 2019/08/13-01:06:57\">\n" +
-                " <rdf:RDF xmlns:rdf=\"" + RDF_NAMESPACE_URI + "\">\n" +
-                "  <rdf:Description rdf:about=\"\"\n" +
-                "    xmlns:dc=\"" + DC_NAMESPACE_URI + "\"\n" +
-                "    xmlns:TC260=\"" + TC260_NAMESPACE_URI + "\">\n" +
-                "   <dc:title>BoGuan AI Model</dc:title>\n" +
-                "   <TC260:AIGC>" + metadata.toJsonString() + "</TC260:AIGC>\n" +
-                "  </rdf:Description>\n" +
-                " </rdf:RDF>\n" +
-                "</x:xmpmeta>\n" +
-                "<?xpacket end=\"w\"?>";
+    public static boolean updateAIGCMetadataInPlace(File imageFile, AIGCMetadata metadata) throws IOException {
+        try (FileChannel channel = FileChannel.open(imageFile.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            XMPSegmentScanner scanner = new XMPSegmentScanner(channel);
+            return updateInPlace(channel, scanner, scanner.scan(), metadata);
+        }
     }
 
     /**
-     * 更新现有的XMP段 - 严格按规范要求：按属性更新，不整体覆盖
+     * 在location处已有XMP包的空间内原地更新，只读取该XMP包并做一次定位写入
+     *
+     * @param channel 可读写的文件通道
+     * @return 是否已原地更新，没有XMP包或空间不足时返回false且不写入
      */
-    private static byte[] updateExistingXMP(byte[] fileData, int position, AIGCMetadata metadata) throws IOException {
-        // 提取现有XMP内容
-        String existingXMP = extractXMPContent(fileData, position);
-        if (existingXMP.isEmpty()) {
-            throw new IOException("无法提取现有XMP内容");
+    private static boolean updateInPlace(FileChannel channel, XMPSegmentScanner scanner,
+                                         XMPSegmentScanner.Location location, AIGCMetadata metadata)
+            throws IOException {
+        if (!location.found() || location.payloadLength <= 0) {
+            return false;
         }
 
-        // 解析并更新XMP - 按属性更新TC260命名空间
-        String updatedXMP = mergeAIGCIntoXMP(existingXMP, metadata);
-        byte[] updatedXMPBytes = updatedXMP.getBytes(StandardCharsets.UTF_8);
+        byte[] existingXMP = scanner.read(location.payloadOffset, location.payloadLength);
+        byte[] packet = fitPacket(mergeAIGCIntoXMP(existingXMP, metadata), location.payloadLength);
+        if (packet == null) {
+            return false;
+        }
 
-        // 创建新的APP1段
-        return createXMPApp1Segment(updatedXMPBytes);
+        ByteBuffer buffer;
+        if (location.format == Format.PNG) {
+            // CRC覆盖数据块类型、关键字及标志字段和新的XMP包，紧跟在XMP包之后一并写入
+            long typeOffset = location.segmentOffset + 4;
+            CRC32 crc = new CRC32();
+            crc.update(scanner.read(typeOffset, (int) (location.payloadOffset - typeOffset)));
+            crc.update(packet);
+            buffer = ByteBuffer.allocate(packet.length + 4);
+            buffer.put(packet).putInt((int) crc.getValue()).flip();
+        } else {
+            buffer = ByteBuffer.wrap(packet);
+        }
+
+        long position = location.payloadOffset;
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+        return true;
     }
 
     /**
-     * 将AIGC数据合并到现有XMP中 - 按属性更新TC260命名空间
+     * 生成写入容器的XMP包（不含JPEG段头、PNG块头）：没有已有XMP时由模板新建，否则按属性合并TC260:AIGC
+     * 供WebP、HEIF/AVIF、GIF等把XMP包作为独立数据块/数据项存放的格式使用
+     *
+     * @param existingXMP 文件中已有的XMP包，没有时为null
+     * @throws IOException 已有XMP包无法解析
      */
-    private static String mergeAIGCIntoXMP(String existingXMP, AIGCMetadata metadata) {
-        // 检查是否已有TC260命名空间声明
-        if (!existingXMP.contains("xmlns:TC260")) {
-            // 在rdf:Description中添加TC260命名空间声明
-            existingXMP = existingXMP.replaceFirst(
-                    "(<rdf:Description[^>]*)",
-                    "$1 xmlns:TC260=\"" + TC260_NAMESPACE_URI + "\""
-            );
+    public static byte[] createXMPPacket(byte[] existingXMP, AIGCMetadata metadata) throws IOException {
+        if (existingXMP == null || existingXMP.length == 0) {
+            return STANDARD_XMP.packet(0, metadata.toXMPJsonString());
         }
-
-        // 移除现有的AIGC元素（如果存在）- 实现按属性更新
-        existingXMP = existingXMP.replaceAll("<TC260:AIGC>.*?</TC260:AIGC>", "");
-
-        // 在rdf:Description内添加新的AIGC元素
-        String aigcElement = "<TC260:AIGC>" + metadata.toJsonString() + "</TC260:AIGC>";
-        existingXMP = existingXMP.replaceFirst(
-                "(</rdf:Description>)",
-                aigcElement + "\n   $1"
-        );
-
-        return existingXMP;
+        return mergeAIGCIntoXMP(existingXMP, metadata);
     }
 
     /**
-     * 创建XMP APP1段
+     * 定位已有XMP段：存在时按属性合并后替换该段，不存在时在插入位置写入新段，其余字节原样复制
+     * 输入输出为同一文件时先尝试原地更新，否则按{@link ImageFileRewriter#rewrite}写入临时文件后替换；
+     * 两种情况共用一次扫描，同一文件时只读入元数据区域，不映射文件
      */
-    private static byte[] createXMPApp1Segment(byte[] xmpData) throws IOException {
-        ByteArrayOutputStream segment = new ByteArrayOutputStream();
-
-        // APP1标记
-        segment.write(0xFF);
-        segment.write(0xE1);
-
-        // 段长度 (包括长度字段本身)
-        int segmentLength = 2 + 29 + xmpData.length;
-        segment.write((segmentLength >> 8) & 0xFF);
-        segment.write(segmentLength & 0xFF);
-
-        // XMP标识符 (29字节，包括null终止符)
-        byte[] identifier = "http://ns.adobe.com/xap/1.0/\0".getBytes(StandardCharsets.UTF_8);
-        if (identifier.length > 29) {
-            throw new IOException("XMP标识符长度超过29字节");
+    private static void writeXMP(File inputFile, File outputFile, AIGCMetadata metadata,
+                                 Format expected, int paddingBytes) throws IOException {
+        Path input = inputFile.toPath();
+        Path output = outputFile.toPath();
+        boolean sameFile = Files.exists(output) && Files.isSameFile(input, output);
+
+        try (FileChannel in = sameFile ? FileChannel.open(input, StandardOpenOption.READ, StandardOpenOption.WRITE)
+                : FileChannel.open(input, StandardOpenOption.READ)) {
+            XMPSegmentScanner scanner = new XMPSegmentScanner(in, sameFile);
+            if (scanner.detect() != expected) {
+                throw new IOException(expected == Format.JPEG ? "不是有效的JPEG文件" : "不是有效的PNG文件");
+            }
+            XMPSegmentScanner.Location location = scanner.scan();
+            if (sameFile && updateInPlace(in, scanner, location, metadata)) {
+                return;
+            }
+            ImageFileRewriter.rewrite(in, input, output, (target, replacing) -> {
+                rewriteXMP(in, scanner, location, target, metadata, expected, paddingBytes);
+                return null;
+            });
         }
+    }
 
-        byte[] paddedIdentifier = new byte[29];
-        System.arraycopy(identifier, 0, paddedIdentifier, 0, identifier.length);
-        segment.write(paddedIdentifier);
-
-        // XMP数据
-        segment.write(xmpData);
+    private static void rewriteXMP(FileChannel in, XMPSegmentScanner scanner, XMPSegmentScanner.Location location,
+                                   Path output, AIGCMetadata metadata, Format expected, int paddingBytes)
+            throws IOException {
+        long replaceFrom = location.found() ? location.segmentOffset : location.insertOffset;
+        long replaceTo = location.found() ? location.segmentOffset + location.segmentLength : location.insertOffset;
+
+        ByteBuffer segment;
+        byte[] extended = null;
+        String guid = null;
+        if (location.found() && location.payloadLength > 0) {
+            // 找到现有XMP段，按规范要求更新它（按属性更新，不整体覆盖）
+            byte[] existingXMP = scanner.read(location.payloadOffset, location.payloadLength);
+            byte[] xmpContent = mergeAIGCIntoXMP(existingXMP, metadata);
+            byte[] packet = paddingBytes > 0 ? padPacket(xmpContent, paddingBytes) : xmpContent;
+            if (expected == Format.JPEG && packet.length > ExtendedXMP.MAX_STANDARD_PACKET_LENGTH) {
+                // 超出单个APP1段：原有属性整体移入扩展XMP，标准XMP只保留AIGC标识和扩展XMP的GUID
+                if (readProperty(existingXMP, ExtendedXMP.NOTE_NAMESPACE_URI, ExtendedXMP.HAS_EXTENDED_XMP) != null) {
+                    throw new IOException("XMP超过单个APP1段的容量，且已带有扩展XMP，无法再拆分");
+                }
+                extended = mergeXMP(existingXMP, null);
+                guid = ExtendedXMP.guid(extended);
+                segment = EXTENDED_STANDARD_XMP.encode(expected, paddingBytes, guid, metadata.toXMPJsonString());
+            } else {
+                segment = XMPPacketTemplate.frame(expected, packet);
+            }
+        } else {
+            // 由模板生成标准XMP段
+            segment = STANDARD_XMP.encode(expected, paddingBytes, metadata.toXMPJsonString());
+        }
 
-        return segment.toByteArray();
+        try (FileChannel out = FileChannel.open(output, StandardOpenOption.WRITE,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ImageFileRewriter.transfer(in, out, 0, replaceFrom);
+            ImageFileRewriter.writeFully(out, segment);
+            if (extended != null) {
+                ExtendedXMP.write(out, extended, guid);
+            }
+            ImageFileRewriter.transfer(in, out, replaceTo, in.size());
+        }
     }
 
     /**
-     * 写入XMP APP1段到输出流
+     * 去掉原有填充后，在XMP包尾部追加指定字节数的填充
      */
-    private static void writeXMPApp1Segment(OutputStream output, byte[] xmpData) throws IOException {
-        byte[] segment = createXMPApp1Segment(xmpData);
-        output.write(segment);
+    private static byte[] padPacket(byte[] xmp, int padding) {
+        return joinPacket(splitPacket(xmp), padding);
     }
 
     /**
-     * 写入XMP iTXt块到PNG
+     * 将XMP包用空白填充到恰好length字节
+     *
+     * @return 填充后的XMP包，去掉原有填充后仍超过length时返回null
      */
-    private static void writeXMPITXtChunk(OutputStream output, String xmpContent) throws IOException {
-        byte[] keyword = "XML:com.adobe.xmp".getBytes(StandardCharsets.UTF_8);
-        byte[] content = xmpContent.getBytes(StandardCharsets.UTF_8);
-
-        ByteArrayOutputStream chunkData = new ByteArrayOutputStream();
-        chunkData.write(keyword);
-        chunkData.write(0x00); // 空终止符
-        chunkData.write(0); // 压缩标志 (0=未压缩)
-        chunkData.write(0); // 压缩方法
-        chunkData.write(0x00); // 语言标签空终止符
-        chunkData.write(0x00); // 转换关键字空终止符
-        chunkData.write(content);
-
-        byte[] dataBytes = chunkData.toByteArray();
-
-        // 写入块长度
-        writeIntBE(output, dataBytes.length);
-
-        // 写入块类型
-        output.write("iTXt".getBytes(StandardCharsets.US_ASCII));
-
-        // 写入块数据
-        output.write(dataBytes);
-
-        // 计算并写入CRC
-        CRC32 crc = new CRC32();
-        crc.update("iTXt".getBytes(StandardCharsets.US_ASCII));
-        crc.update(dataBytes);
-        writeIntBE(output, (int) crc.getValue());
+    private static byte[] fitPacket(byte[] xmp, int length) {
+        byte[][] parts = splitPacket(xmp);
+        int padding = length - parts[0].length - parts[1].length;
+        return padding < 0 ? null : joinPacket(parts, padding);
     }
 
     /**
-     * 更新PNG中的XMP块
+     * 拆分为[去掉尾部空白的正文（以换行结尾）, 末尾的xpacket包装指令]
      */
-    private static byte[] updateXMPChunk(byte[] data, int position, AIGCMetadata metadata) throws IOException {
-        String existingXMP = extractXMPContentFromChunk(data, position);
-        String updatedXMP = mergeAIGCIntoXMP(existingXMP, metadata);
-        return createXMPChunk(updatedXMP);
+    private static byte[][] splitPacket(byte[] xmp) {
+        int trailer = lastIndexOf(xmp, XPACKET_END);
+        int end = trailer >= 0 ? trailer : xmp.length;
+        while (end > 0 && isWhitespace(xmp[end - 1])) {
+            end--;
+        }
+        byte[] head = Arrays.copyOf(xmp, end + 1);
+        head[end] = '\n';
+        byte[] tail = trailer >= 0 ? Arrays.copyOfRange(xmp, trailer, xmp.length) : new byte[0];
+        return new byte[][]{head, tail};
     }
 
     /**
-     * 创建XMP iTXt块
+     * 按XMP规范，填充位于末尾的xpacket包装指令之前，由空格组成并每100字节换行
      */
-    private static byte[] createXMPChunk(String xmpContent) throws IOException {
-        ByteArrayOutputStream chunk = new ByteArrayOutputStream();
-        byte[] content = xmpContent.getBytes(StandardCharsets.UTF_8);
-        byte[] keyword = "XML:com.adobe.xmp".getBytes(StandardCharsets.UTF_8);
-
-        ByteArrayOutputStream chunkData = new ByteArrayOutputStream();
-        chunkData.write(keyword);
-        chunkData.write(0x00); // 空终止符
-        chunkData.write(0); // 压缩标志
-        chunkData.write(0); // 压缩方法
-        chunkData.write(0x00); // 语言标签空终止符
-        chunkData.write(0x00); // 转换关键字空终止符
-        chunkData.write(content);
-
-        byte[] dataBytes = chunkData.toByteArray();
-
-        writeIntBE(chunk, dataBytes.length);
-        chunk.write("iTXt".getBytes(StandardCharsets.US_ASCII));
-        chunk.write(dataBytes);
-
-        CRC32 crc = new CRC32();
-        crc.update("iTXt".getBytes(StandardCharsets.US_ASCII));
-        crc.update(dataBytes);
-        writeIntBE(chunk, (int) crc.getValue());
-
-        return chunk.toByteArray();
-    }
-
-    // ========== 辅助方法 ==========
-
-    private static boolean isValidJPEG(byte[] data) {
-        return data.length >= 2 && data[0] == (byte)0xFF && data[1] == (byte)0xD8;
-    }
-
-    private static boolean isValidPNG(byte[] data) {
-        byte[] signature = {(byte)0x89, 0x50, 0x4E, 0x47, 0x0D, 0x0A, 0x1A, 0x0A};
-        if (data.length < 8) return false;
-        for (int i = 0; i < 8; i++) {
-            if (data[i] != signature[i]) return false;
+    private static byte[] joinPacket(byte[][] parts, int padding) {
+        byte[] head = parts[0];
+        byte[] tail = parts[1];
+        byte[] packet = new byte[head.length + padding + tail.length];
+        System.arraycopy(head, 0, packet, 0, head.length);
+        for (int i = 0; i < padding; i++) {
+            packet[head.length + i] = (byte) ((i + 1) % 100 == 0 || i == padding - 1 ? '\n' : ' ');
         }
-        return true;
+        System.arraycopy(tail, 0, packet, head.length + padding, tail.length);
+        return packet;
     }
 
-    private static boolean isXMPSegment(byte[] data, int position) {
-        if (position + 35 >= data.length) return false;
-        byte[] xmpId = "http://ns.adobe.com/xap/1.0/".getBytes(StandardCharsets.UTF_8);
-        for (int i = 0; i < xmpId.length; i++) {
-            if (data[position + 4 + i] != xmpId[i]) {
-                return false;
+    private static int lastIndexOf(byte[] data, byte[] pattern) {
+        for (int i = data.length - pattern.length; i >= 0; i--) {
+            int j = 0;
+            while (j < pattern.length && data[i + j] == pattern[j]) {
+                j++;
+            }
+            if (j == pattern.length) {
+                return i;
             }
         }
-        return true;
-    }
-
-    private static boolean isXMPChunk(byte[] data, int position) {
-        try {
-            String keyword = extractNullTerminatedString(data, position + 8, 50);
-            return "XML:com.adobe.xmp".equals(keyword);
-        } catch (Exception e) {
-            return false;
-        }
-    }
-
-    private static String extractNullTerminatedString(byte[] data, int start, int maxLength) {
-        int end = start;
-        while (end < data.length && end - start < maxLength && data[end] != 0) {
-            end++;
-        }
-        return new String(data, start, end - start, StandardCharsets.UTF_8);
-    }
-
-    private static String extractXMPContent(byte[] data, int position) {
-        if (position + 4 >= data.length) return "";
-        int segmentLength = ((data[position + 2] & 0xFF) << 8) | (data[position + 3] & 0xFF);
-        if (segmentLength < 31) return "";
-
-        int xmpStart = position + 4 + 29; // 跳过标记和标识符
-        int xmpLength = segmentLength - 2 - 29;
-
-        if (xmpStart + xmpLength <= data.length && xmpLength > 0) {
-            return new String(data, xmpStart, xmpLength, StandardCharsets.UTF_8);
-        }
-        return "";
-    }
-
-    private static String extractXMPContentFromChunk(byte[] data, int position) {
-        int dataStart = position + 8;
-        // 跳过关键字和空终止符
-        int offset = 0;
-        while (dataStart + offset < data.length && data[dataStart + offset] != 0) {
-            offset++;
-        }
-        offset += 5; // 跳过空终止符和4个标志字节
-
-        int chunkLength = readIntBE(data, position);
-        int xmpLength = chunkLength - offset;
-
-        if (xmpLength > 0 && dataStart + offset + xmpLength <= data.length) {
-            return new String(data, dataStart + offset, xmpLength, StandardCharsets.UTF_8);
-        }
-        return "";
-    }
-
-    private static int writeSegment(OutputStream output, byte[] data, int position) throws IOException {
-        if (position + 4 > data.length) {
-            output.write(data, position, data.length - position);
-            return data.length;
-        }
-
-        int segmentLength = ((data[position + 2] & 0xFF) << 8) | (data[position + 3] & 0xFF);
-        int segmentEnd = position + 2 + segmentLength;
-
-        if (segmentEnd <= data.length) {
-            output.write(data, position, 2 + segmentLength);
-            return segmentEnd;
-        } else {
-            output.write(data, position, data.length - position);
-            return data.length;
-        }
-    }
-
-    private static int skipSegment(byte[] data, int position) {
-        if (position + 4 > data.length) return data.length;
-        int segmentLength = ((data[position + 2] & 0xFF) << 8) | (data[position + 3] & 0xFF);
-        return position + 2 + segmentLength;
+        return -1;
     }
 
-    private static int readIntBE(byte[] data, int offset) {
-        return ((data[offset] & 0xFF) << 24) |
-                ((data[offset + 1] & 0xFF) << 16) |
-                ((data[offset + 2] & 0xFF) << 8) |
-                (data[offset + 3] & 0xFF);
+    private static boolean isWhitespace(byte b) {
+        return b == ' ' || b == '\n' || b == '\r' || b == '\t';
     }
 
-    private static void writeIntBE(OutputStream output, int value) throws IOException {
-        output.write((value >> 24) & 0xFF);
-        output.write((value >> 16) & 0xFF);
-        output.write((value >> 8) & 0xFF);
-        output.write(value & 0xFF);
+    /**
+     * 将AIGC数据合并到现有XMP中 - 按属性更新TC260命名空间
+     * 由{@link TC260XMPStream}单次流式扫描完成，其余属性原样保留
+     */
+    private static byte[] mergeAIGCIntoXMP(byte[] existingXMP, AIGCMetadata metadata) throws IOException {
+        // 属性值为不含外层包装的JSON（严格按照XMP方案要求）
+        return mergeXMP(existingXMP, metadata.toXMPJsonString());
     }
 
-    private static byte[] readFileToByteArray(File file) throws IOException {
-        try (FileInputStream fis = new FileInputStream(file);
-             ByteArrayOutputStream baos = new ByteArrayOutputStream()) {
-            byte[] buffer = new byte[4096];
-            int bytesRead;
-            while ((bytesRead = fis.read(buffer)) != -1) {
-                baos.write(buffer, 0, bytesRead);
-            }
-            return baos.toByteArray();
+    /**
+     * @param value TC260:AIGC属性值，为null时只去掉已有的属性
+     */
+    private static byte[] mergeXMP(byte[] existingXMP, String value) throws IOException {
+        ByteArrayOutputStream merged = new ByteArrayOutputStream(existingXMP.length + 512);
+        try {
+            TC260XMPStream.mergeAIGC(new ByteArrayInputStream(existingXMP), merged, value);
+        } catch (XMLStreamException e) {
+            throw new IOException("已有XMP包无法解析: " + e.getMessage(), e);
         }
+        return merged.toByteArray();
     }
 
-    private static void writeByteArrayToFile(File file, byte[] data) throws IOException {
-        try (FileOutputStream fos = new FileOutputStream(file)) {
-            fos.write(data);
+    private static String readProperty(byte[] xmp, String namespaceURI, String localName) throws IOException {
+        try {
+            return TC260XMPStream.readProperty(new ByteArrayInputStream(xmp), namespaceURI, localName);
+        } catch (XMLStreamException e) {
+            throw new IOException("已有XMP包无法解析: " + e.getMessage(), e);
         }
     }
 
@@ -627,13 +374,10 @@ public class AIGCMetadataWriter {
     public static void main(String[] args) {
         try {
             // 创建符合规范的测试元数据
-            AIGCMetadata metadata = new AIGCMetadata("1", "001191610133596325171T12566", "BGIMGPD20250001");
-            metadata.setReservedCode1("BGAI001");
-            metadata.setContentPropagator("001191610133596325171T22588");
-            metadata.setPropagateID("BGIMGPPG20250001");
-            metadata.setReservedCode2("BGAI002");
+            AIGCMetadata metadata = new AIGCMetadata("1", "001191610133596325171T12566", "BGIMGPD20250001",
+                    "BGAI001", "001191610133596325171T22588", "BGIMGPPG20250001", "BGAI002");
 
-            System.out.println("AIGC JSON: " + metadata.toJsonString());
+            System.out.println("AIGC JSON: " + metadata.toXMPJsonString());
             System.out.println("TC260命名空间: " + TC260_NAMESPACE_URI);
 
             // 测试JPEG写入
@@ -0,0 +1,192 @@
+package com.felix.watermark.metadata.images.XMP;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * JPEG扩展XMP（XMP规范第3部分1.1.3.1节）
+ * 单个APP1段最多容纳约64KB的XMP包，超出部分作为独立的扩展XMP序列化，切分写入多个APP1段。
+ * 每段依次为标识符"http://ns.adobe.com/xmp/extension/\0"、32字节GUID（扩展XMP完整内容MD5的十六进制大写）、
+ * 4字节扩展XMP总长度、4字节本段数据在扩展XMP中的偏移，然后是数据。
+ * 标准XMP包通过xmpNote:HasExtendedXMP属性记录GUID，读取时只拼接GUID相同的段。
+ */
+final class ExtendedXMP {
+
+    static final String NOTE_NAMESPACE_URI = "http://ns.adobe.com/xmp/note/";
+    static final String HAS_EXTENDED_XMP = "HasExtendedXMP";
+
+    /** 扩展XMP段的标识符（35字节，含结尾的0） */
+    static final byte[] IDENTIFIER = "http://ns.adobe.com/xmp/extension/\0".getBytes(StandardCharsets.US_ASCII);
+
+    static final int GUID_LENGTH = 32;
+
+    /** 段数据之前的固定头：标识符、GUID、总长度和偏移 */
+    private static final int HEADER_LENGTH = IDENTIFIER.length + GUID_LENGTH + 4 + 4;
+
+    /** 每个扩展段最多容纳的数据字节数（段长度字段最大0xFFFF，包含长度字段本身） */
+    static final int MAX_CHUNK_LENGTH = 0xFFFF - 2 - HEADER_LENGTH;
+
+    /** 标准XMP包（单个APP1段）的最大字节数 */
+    static final int MAX_STANDARD_PACKET_LENGTH = 0xFFFF - 2 - XMPSegmentScanner.JPEG_XMP_IDENTIFIER.length;
+
+    private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+
+    private ExtendedXMP() {
+    }
+
+    /**
+     * 扩展XMP的一个段
+     */
+    static final class Chunk {
+        final String guid;
+        final int fullLength;
+        final int offset;
+        /** 本段数据，只读视图 */
+        final ByteBuffer data;
+
+        private Chunk(String guid, int fullLength, int offset, ByteBuffer data) {
+            this.guid = guid;
+            this.fullLength = fullLength;
+            this.offset = offset;
+            this.data = data;
+        }
+
+        /**
+         * 解析APP1段数据（以扩展XMP标识符开头）
+         *
+         * @return 段头不完整时返回null
+         */
+        static Chunk parse(ByteBuffer payload) {
+            if (payload.remaining() < HEADER_LENGTH) {
+                return null;
+            }
+            ByteBuffer buffer = payload.duplicate();
+            buffer.position(buffer.position() + IDENTIFIER.length);
+            byte[] guid = new byte[GUID_LENGTH];
+            buffer.get(guid);
+            int fullLength = buffer.getInt();
+            int offset = buffer.getInt();
+            return new Chunk(new String(guid, StandardCharsets.US_ASCII), fullLength, offset, buffer.slice());
+        }
+    }
+
+    /**
+     * 按偏移顺序拼接GUID匹配的段，以流的形式读取，不复制段数据
+     *
+     * @return 扩展XMP的输入流；没有匹配的段，或段不完整（有空缺、长度不一致）时返回null
+     */
+    static InputStream open(List<Chunk> chunks, String guid) {
+        List<Chunk> matched = new ArrayList<>();
+        for (Chunk chunk : chunks) {
+            if (chunk.guid.equals(guid)) {
+                matched.add(chunk);
+            }
+        }
+        if (matched.isEmpty()) {
+            return null;
+        }
+        matched.sort(Comparator.comparingInt(chunk -> chunk.offset));
+
+        int fullLength = matched.get(0).fullLength;
+        long expected = 0;
+        for (Chunk chunk : matched) {
+            if (chunk.fullLength != fullLength || chunk.offset != expected) {
+                return null;
+            }
+            expected += chunk.data.remaining();
+        }
+        return expected == fullLength ? new ChunkInputStream(matched) : null;
+    }
+
+    /**
+     * 扩展XMP的GUID：完整内容MD5的十六进制大写
+     */
+    static String guid(byte[] extended) {
+        byte[] digest;
+        try {
+            digest = MessageDigest.getInstance("MD5").digest(extended);
+        } catch (NoSuchAlgorithmException e) {
+            // 每个Java平台实现都必须支持MD5
+            throw new IllegalStateException(e);
+        }
+        char[] hex = new char[GUID_LENGTH];
+        for (int i = 0; i < digest.length; i++) {
+            hex[i * 2] = HEX[(digest[i] >> 4) & 0x0F];
+            hex[i * 2 + 1] = HEX[digest[i] & 0x0F];
+        }
+        return new String(hex);
+    }
+
+    /**
+     * 将扩展XMP切分为APP1段写出，每段的段头与数据通过聚集写入一次提交，数据直接取自extended，不另行复制
+     */
+    static void write(GatheringByteChannel out, byte[] extended, String guid) throws IOException {
+        byte[] guidBytes = guid.getBytes(StandardCharsets.US_ASCII);
+        ByteBuffer header = ByteBuffer.allocate(4 + HEADER_LENGTH);
+        for (int offset = 0; offset < extended.length; offset += MAX_CHUNK_LENGTH) {
+            int length = Math.min(MAX_CHUNK_LENGTH, extended.length - offset);
+            header.clear();
+            header.put((byte) 0xFF).put((byte) 0xE1)
+                    .putShort((short) (2 + HEADER_LENGTH + length))
+                    .put(IDENTIFIER)
+                    .put(guidBytes)
+                    .putInt(extended.length)
+                    .putInt(offset)
+                    .flip();
+            ByteBuffer[] buffers = {header, ByteBuffer.wrap(extended, offset, length)};
+            while (buffers[1].hasRemaining()) {
+                out.write(buffers);
+            }
+        }
+    }
+
+    /**
+     * 依次读取多个段数据的输入流
+     */
+    private static final class ChunkInputStream extends InputStream {
+        private final List<Chunk> chunks;
+        private int index;
+        private ByteBuffer current;
+
+        ChunkInputStream(List<Chunk> chunks) {
+            this.chunks = chunks;
+            this.current = chunks.get(0).data.duplicate();
+        }
+
+        private boolean advance() {
+            while (!current.hasRemaining()) {
+                if (++index >= chunks.size()) {
+                    return false;
+                }
+                current = chunks.get(index).data.duplicate();
+            }
+            return true;
+        }
+
+        @Override
+        public int read() {
+            return advance() ? current.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (len == 0) {
+                return 0;
+            }
+            if (!advance()) {
+                return -1;
+            }
+            int count = Math.min(len, current.remaining());
+            current.get(b, off, count);
+            return count;
+        }
+    }
+}
@@ -0,0 +1,412 @@
+package com.felix.watermark.metadata.images.XMP;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 基于StAX的XMP包中TC260:AIGC属性读取与合并
+ * 单次顺序扫描XMP包，不构建DOM、不做正则匹配，内存占用与XMP包大小无关，适合Photoshop等带有数百KB XMP的文件。
+ *
+ * 读取时遇到TC260命名空间下的AIGC属性（元素或rdf:Description上的属性两种写法）即停止；
+ * 合并时逐个事件复制到输出，只去掉已有的TC260:AIGC属性，并在第一个rdf:Description末尾写入新值，其余内容保持不变。
+ * 解析使用StAX，输出由本类按XML规则直接转义写出（JDK的XMLStreamWriter逐字符编码，写出速度只有解析的几分之一）。
+ * 按XML语义复制，属性顺序、标签内换行和字符引用等字面形式可能与原文不同，空元素保持为空元素。
+ */
+public final class TC260XMPStream {
+
+    public static final String TC260_NAMESPACE_URI = "http://www.tc260.org.cn/ns/AIGC/1.0/";
+    private static final String TC260_PREFIX = "TC260";
+    private static final String AIGC = "AIGC";
+
+    private static final String RDF_NAMESPACE_URI = "http://www.w3.org/1999/02/22-rdf-syntax-ns#";
+    private static final String RDF = "RDF";
+    private static final String DESCRIPTION = "Description";
+
+    /** rdf:Description中没有其他子属性时新属性使用的缩进，与新建XMP包的格式一致 */
+    private static final String DEFAULT_INDENT = "\n   ";
+
+    private static final XMLInputFactory INPUT_FACTORY = createInputFactory();
+
+    private TC260XMPStream() {
+    }
+
+    private static XMLInputFactory createInputFactory() {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        // XMP包来自不可信的图片文件，禁止DTD和外部实体
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, true);
+        factory.setProperty(XMLInputFactory.IS_COALESCING, true);
+        return factory;
+    }
+
+    /**
+     * 读取TC260:AIGC属性值
+     *
+     * @return 属性值（已去掉首尾空白），没有该属性时返回null
+     * @throws XMLStreamException XMP包不是合法的XML
+     */
+    public static String readAIGC(InputStream xmp) throws XMLStreamException {
+        return readProperty(xmp, TC260_NAMESPACE_URI, AIGC);
+    }
+
+    /**
+     * 读取第一个指定的简单属性值，元素和属性两种写法都识别
+     *
+     * @return 属性值（已去掉首尾空白），没有该属性时返回null
+     * @throws XMLStreamException XMP包不是合法的XML
+     */
+    public static String readProperty(InputStream xmp, String namespaceURI, String localName) throws XMLStreamException {
+        XMLStreamReader reader = INPUT_FACTORY.createXMLStreamReader(xmp);
+        try {
+            while (reader.hasNext()) {
+                if (reader.next() != XMLStreamConstants.START_ELEMENT) {
+                    continue;
+                }
+                if (localName.equals(reader.getLocalName()) && namespaceURI.equals(reader.getNamespaceURI())) {
+                    return reader.getElementText().trim();
+                }
+                for (int i = 0; i < reader.getAttributeCount(); i++) {
+                    if (localName.equals(reader.getAttributeLocalName(i))
+                            && namespaceURI.equals(reader.getAttributeNamespace(i))) {
+                        return reader.getAttributeValue(i).trim();
+                    }
+                }
+            }
+            return null;
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * 将TC260:AIGC属性合并到已有XMP包，输出为UTF-8
+     * 已有的TC260:AIGC属性连同其前面的缩进一起去掉，新值写在第一个rdf:Description的最后一个子属性之后；
+     * 没有rdf:Description时在rdf:RDF末尾新建一个。
+     *
+     * @param value 属性值，写入时按XML转义；为null时只去掉已有的TC260:AIGC属性
+     * @throws XMLStreamException XMP包不是合法的XML，或者需要写入时没有rdf:RDF
+     * @throws IOException 写入输出流失败
+     */
+    public static void mergeAIGC(InputStream xmp, OutputStream out, String value) throws XMLStreamException, IOException {
+        XMLStreamReader reader = INPUT_FACTORY.createXMLStreamReader(xmp);
+        try {
+            Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+            new Merge(reader, writer, value).run();
+            writer.flush();
+        } finally {
+            reader.close();
+        }
+    }
+
+    private static boolean isAIGC(String namespaceURI, String localName) {
+        return AIGC.equals(localName) && TC260_NAMESPACE_URI.equals(namespaceURI);
+    }
+
+    private static boolean isRdf(XMLStreamReader reader, String localName) {
+        return localName.equals(reader.getLocalName()) && RDF_NAMESPACE_URI.equals(reader.getNamespaceURI());
+    }
+
+    /**
+     * 一次合并的事件复制状态
+     */
+    private static final class Merge {
+        private final XMLStreamReader reader;
+        private final Writer out;
+        private final String value;
+
+        /** 当前元素深度，根元素为1 */
+        private int depth;
+        /** 写入新属性的rdf:Description的深度，-1表示尚未遇到 */
+        private int descriptionDepth = -1;
+        /** 正在跳过的已有TC260:AIGC元素的深度，-1表示没有跳过 */
+        private int skipDepth = -1;
+        /** 新值已写入，或者只做删除（value为null） */
+        private boolean inserted;
+        /** 目标rdf:Description作用域内TC260命名空间的前缀 */
+        private String prefix = TC260_PREFIX;
+        /** 目标rdf:Description子属性前的缩进 */
+        private String indent = DEFAULT_INDENT;
+        /** 暂缓写出的空白，后面紧跟被去掉的元素时一起丢弃 */
+        private final StringBuilder pendingSpace = new StringBuilder();
+        /** 根元素之外是否已写出内容 */
+        private boolean topLevelWritten;
+        /** 开始标签已写出但尚未闭合，紧接着结束时写为空元素 */
+        private boolean tagOpen;
+
+        Merge(XMLStreamReader reader, Writer out, String value) {
+            this.reader = reader;
+            this.out = out;
+            this.value = value;
+            this.inserted = value == null;
+        }
+
+        void run() throws XMLStreamException, IOException {
+            if (reader.getVersion() != null) {
+                out.write("<?xml version=\"" + reader.getVersion() + "\" encoding=\"UTF-8\"?>");
+                topLevelWritten = true;
+            }
+            while (reader.hasNext()) {
+                int event = reader.next();
+                if (skipDepth >= 0) {
+                    skip(event);
+                    continue;
+                }
+                switch (event) {
+                    case XMLStreamConstants.START_ELEMENT:
+                        startElement();
+                        break;
+                    case XMLStreamConstants.END_ELEMENT:
+                        endElement();
+                        break;
+                    case XMLStreamConstants.CHARACTERS:
+                    case XMLStreamConstants.SPACE:
+                    case XMLStreamConstants.CDATA:
+                        if (reader.isWhiteSpace()) {
+                            pendingSpace.append(reader.getTextCharacters(), reader.getTextStart(), reader.getTextLength());
+                        } else {
+                            flushSpace();
+                            writeText(reader.getTextCharacters(), reader.getTextStart(), reader.getTextLength());
+                        }
+                        break;
+                    case XMLStreamConstants.COMMENT:
+                        flushSpace();
+                        separateTopLevel();
+                        out.write("<!--");
+                        out.write(reader.getText());
+                        out.write("-->");
+                        break;
+                    case XMLStreamConstants.PROCESSING_INSTRUCTION:
+                        flushSpace();
+                        separateTopLevel();
+                        out.write("<?");
+                        out.write(reader.getPITarget());
+                        String data = reader.getPIData();
+                        if (data != null && !data.isEmpty()) {
+                            out.write(' ');
+                            out.write(data);
+                        }
+                        out.write("?>");
+                        break;
+                    default:
+                        // DTD、实体引用等XMP包中不应出现，已禁用DTD，直接忽略
+                        break;
+                }
+            }
+            if (!inserted) {
+                throw new XMLStreamException("XMP包中没有rdf:RDF，无法写入TC260:AIGC属性");
+            }
+        }
+
+        private void skip(int event) {
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                depth++;
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                if (depth-- == skipDepth) {
+                    skipDepth = -1;
+                }
+            }
+        }
+
+        private void startElement() throws IOException {
+            depth++;
+            if (isAIGC(reader.getNamespaceURI(), reader.getLocalName())) {
+                // 去掉已有属性及其前面的缩进
+                pendingSpace.setLength(0);
+                skipDepth = depth;
+                return;
+            }
+            if (depth == descriptionDepth + 1 && pendingSpace.length() > 0) {
+                indent = pendingSpace.toString();
+            }
+            flushSpace();
+            separateTopLevel();
+
+            boolean target = !inserted && descriptionDepth < 0 && isRdf(reader, DESCRIPTION);
+            copyStartElement();
+            if (target) {
+                descriptionDepth = depth;
+                declareNamespace();
+            }
+        }
+
+        private void endElement() throws IOException {
+            if (!inserted && depth == descriptionDepth) {
+                // 新属性写在最后一个子属性之后，结束标签前原有的空白保留在其后
+                writeText(indent);
+                writeAIGC();
+                inserted = true;
+            } else if (!inserted && isRdf(reader, RDF)) {
+                writeDescription();
+                inserted = true;
+            }
+            flushSpace();
+            endTag(reader.getPrefix(), reader.getLocalName());
+            depth--;
+        }
+
+        private void copyStartElement() throws IOException {
+            startTag(reader.getPrefix(), reader.getLocalName());
+            for (int i = 0; i < reader.getNamespaceCount(); i++) {
+                String namespacePrefix = reader.getNamespacePrefix(i);
+                attribute(namespacePrefix == null || namespacePrefix.isEmpty() ? null : "xmlns",
+                        namespacePrefix == null || namespacePrefix.isEmpty() ? "xmlns" : namespacePrefix,
+                        reader.getNamespaceURI(i));
+            }
+            for (int i = 0; i < reader.getAttributeCount(); i++) {
+                if (isAIGC(reader.getAttributeNamespace(i), reader.getAttributeLocalName(i))) {
+                    continue; // 属性写法的旧值，新值统一写为子元素
+                }
+                attribute(reader.getAttributePrefix(i), reader.getAttributeLocalName(i), reader.getAttributeValue(i));
+            }
+        }
+
+        /**
+         * 目标rdf:Description作用域内已绑定TC260命名空间时沿用其前缀，否则在该元素上声明
+         */
+        private void declareNamespace() throws IOException {
+            String existing = reader.getNamespaceContext().getPrefix(TC260_NAMESPACE_URI);
+            if (existing != null && !existing.isEmpty()) {
+                prefix = existing;
+                return;
+            }
+            String bound = reader.getNamespaceContext().getNamespaceURI(TC260_PREFIX);
+            // TC260前缀已被其他命名空间占用时换用其他前缀
+            prefix = bound == null || bound.isEmpty() ? TC260_PREFIX : TC260_PREFIX + AIGC;
+            attribute("xmlns", prefix, TC260_NAMESPACE_URI);
+        }
+
+        private void writeAIGC() throws IOException {
+            startTag(prefix, AIGC);
+            writeText(value);
+            endTag(prefix, AIGC);
+        }
+
+        /**
+         * rdf:RDF中没有rdf:Description时新建一个，只包含TC260:AIGC属性
+         */
+        private void writeDescription() throws IOException {
+            String rdfPrefix = reader.getPrefix();
+            writeText("\n  ");
+            startTag(rdfPrefix, DESCRIPTION);
+            attribute(rdfPrefix, "about", "");
+            attribute("xmlns", TC260_PREFIX, TC260_NAMESPACE_URI);
+            writeText(DEFAULT_INDENT);
+            writeAIGC();
+            writeText("\n  ");
+            endTag(rdfPrefix, DESCRIPTION);
+        }
+
+        /**
+         * 解析器不报告根元素之外的空白，xpacket指令、注释和根元素之间各自换行
+         */
+        private void separateTopLevel() throws IOException {
+            int level = reader.getEventType() == XMLStreamConstants.START_ELEMENT ? depth - 1 : depth;
+            if (level != 0) {
+                return;
+            }
+            if (topLevelWritten) {
+                out.write('\n');
+            }
+            topLevelWritten = true;
+        }
+
+        private void flushSpace() throws IOException {
+            if (pendingSpace.length() > 0) {
+                closeTag();
+                out.append(pendingSpace);
+                pendingSpace.setLength(0);
+            }
+        }
+
+        // ========== 输出 ==========
+
+        private void startTag(String prefix, String localName) throws IOException {
+            closeTag();
+            out.write('<');
+            writeName(prefix, localName);
+            tagOpen = true;
+        }
+
+        private void attribute(String prefix, String localName, String attributeValue) throws IOException {
+            out.write(' ');
+            writeName(prefix, localName);
+            out.write("=\"");
+            char[] chars = attributeValue.toCharArray();
+            writeEscaped(chars, 0, chars.length, true);
+            out.write('"');
+        }
+
+        private void endTag(String prefix, String localName) throws IOException {
+            if (tagOpen) {
+                out.write("/>");
+                tagOpen = false;
+                return;
+            }
+            out.write("</");
+            writeName(prefix, localName);
+            out.write('>');
+        }
+
+        private void closeTag() throws IOException {
+            if (tagOpen) {
+                out.write('>');
+                tagOpen = false;
+            }
+        }
+
+        private void writeName(String prefix, String localName) throws IOException {
+            if (prefix != null && !prefix.isEmpty()) {
+                out.write(prefix);
+                out.write(':');
+            }
+            out.write(localName);
+        }
+
+        private void writeText(String text) throws IOException {
+            char[] chars = text.toCharArray();
+            writeText(chars, 0, chars.length);
+        }
+
+        private void writeText(char[] chars, int start, int length) throws IOException {
+            closeTag();
+            writeEscaped(chars, start, length, false);
+        }
+
+        /**
+         * 按段写出不需要转义的字符；属性值中的引号和空白控制字符写为字符引用，以免解析时被规范化
+         */
+        private void writeEscaped(char[] chars, int start, int length, boolean attribute) throws IOException {
+            int end = start + length;
+            int run = start;
+            for (int i = start; i < end; i++) {
+                String escaped;
+                switch (chars[i]) {
+                    case '&': escaped = "&amp;"; break;
+                    case '<': escaped = "&lt;"; break;
+                    case '>': escaped = attribute ? null : "&gt;"; break;
+                    case '"': escaped = attribute ? "&quot;" : null; break;
+                    case '\r': escaped = "&#xD;"; break;
+                    case '\n': escaped = attribute ? "&#xA;" : null; break;
+                    case '\t': escaped = attribute ? "&#x9;" : null; break;
+                    default: escaped = null;
+                }
+                if (escaped != null) {
+                    out.write(chars, run, i - run);
+                    out.write(escaped);
+                    run = i + 1;
+                }
+            }
+            out.write(chars, run, end - run);
+        }
+    }
+}
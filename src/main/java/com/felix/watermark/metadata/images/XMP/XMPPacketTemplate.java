@@ -0,0 +1,233 @@
+package com.felix.watermark.metadata.images.XMP;
+
+import com.felix.watermark.metadata.images.ImageSegmentScanner.Format;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+/**
+ * 预编译的XMP包模板
+ * 创建时把XML骨架（各属性值之间的部分和末尾的xpacket包装指令）编码为UTF-8字节，生成时只将属性值按XML转义后
+ * 写入线程内复用的缓冲区，再补上填充、APP1段头或iTXt块头及CRC，直接得到可写入文件的完整XMP段。
+ * 每个文件不再拼接XML字符串，也不再经过String.getBytes和ByteArrayOutputStream的多次复制。
+ *
+ * {@link #encode}和{@link #frame}返回的ByteBuffer引用线程内缓冲区，在当前线程下一次生成之前有效；
+ * {@link #packet}返回独立的字节数组。
+ */
+final class XMPPacketTemplate {
+
+    /** iTXt数据块类型、XMP关键字，及其后的压缩标志、压缩方法、空语言标签和空转换关键字 */
+    private static final byte[] PNG_CHUNK_HEADER = concat("iTXt".getBytes(StandardCharsets.US_ASCII),
+            XMPSegmentScanner.PNG_XMP_KEYWORD, new byte[]{0, 0, 0, 0});
+
+    /** JPEG段头：APP1标记、长度字段和XMP标识符 */
+    private static final int JPEG_HEADER_LENGTH = 4 + XMPSegmentScanner.JPEG_XMP_IDENTIFIER.length;
+    /** PNG块头：长度字段、类型和关键字等 */
+    private static final int PNG_HEADER_LENGTH = 4 + PNG_CHUNK_HEADER.length;
+
+    private static final ThreadLocal<Buffers> BUFFERS = ThreadLocal.withInitial(Buffers::new);
+
+    /** 属性值之间的XML片段，比属性值多一个 */
+    private final byte[][] fragments;
+    private final int fragmentsLength;
+    private final byte[] trailer;
+
+    /**
+     * @param fragments 依次为第一个属性值之前、各属性值之间、最后一个属性值之后到填充之前的XML
+     * @param trailer 填充之后的xpacket包装指令
+     */
+    XMPPacketTemplate(String[] fragments, String trailer) {
+        this.fragments = new byte[fragments.length][];
+        int length = 0;
+        for (int i = 0; i < fragments.length; i++) {
+            this.fragments[i] = fragments[i].getBytes(StandardCharsets.UTF_8);
+            length += this.fragments[i].length;
+        }
+        this.fragmentsLength = length;
+        this.trailer = trailer.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 填入属性值，生成完整的APP1段（从0xFFE1标记开始）或iTXt块（从长度字段开始，含CRC）
+     *
+     * @param padding XMP包尾部预留的填充字节数
+     * @param values 按模板顺序的属性值，写入时按XML文本转义
+     * @throws IOException JPEG的XMP包超过单个APP1段的容量
+     */
+    ByteBuffer encode(Format format, int padding, String... values) throws IOException {
+        Buffers buffers = BUFFERS.get();
+        return finish(format, buffers, fill(buffers, headerLength(format), padding, values));
+    }
+
+    /**
+     * 填入属性值，只生成XMP包本身，供把XMP包作为独立数据块/数据项存放的格式（WebP、HEIF、GIF）使用
+     *
+     * @param padding XMP包尾部预留的填充字节数
+     * @param values 按模板顺序的属性值，写入时按XML文本转义
+     */
+    byte[] packet(int padding, String... values) {
+        Buffers buffers = BUFFERS.get();
+        return Arrays.copyOf(buffers.buffer, fill(buffers, 0, padding, values));
+    }
+
+    /**
+     * 从position开始依次写入XML片段、转义后的属性值、填充和xpacket包装指令
+     *
+     * @return 写入结束的位置
+     */
+    private int fill(Buffers buffers, int position, int padding, String[] values) {
+        if (values.length != fragments.length - 1) {
+            throw new IllegalArgumentException("模板需要" + (fragments.length - 1) + "个属性值");
+        }
+        int valuesLength = 0;
+        for (String value : values) {
+            valuesLength += value.length();
+        }
+        // XML转义后每个字符最多5字节（&amp;）
+        byte[] buffer = buffers.ensure(position + fragmentsLength + valuesLength * 5
+                + padding + trailer.length + 4);
+
+        position = put(buffer, position, fragments[0]);
+        for (int i = 0; i < values.length; i++) {
+            position = putEscaped(buffer, position, values[i]);
+            position = put(buffer, position, fragments[i + 1]);
+        }
+        // 与AIGCMetadataWriter.joinPacket一致：空格填充，每100字节换行，最后一个字节为换行
+        for (int i = 0; i < padding; i++) {
+            buffer[position++] = (byte) ((i + 1) % 100 == 0 || i == padding - 1 ? '\n' : ' ');
+        }
+        return put(buffer, position, trailer);
+    }
+
+    /**
+     * 为已生成的XMP包加上APP1段头或iTXt块头及CRC
+     *
+     * @throws IOException JPEG的XMP包超过单个APP1段的容量
+     */
+    static ByteBuffer frame(Format format, byte[] packet) throws IOException {
+        Buffers buffers = BUFFERS.get();
+        int position = headerLength(format);
+        byte[] buffer = buffers.ensure(position + packet.length + 4);
+        position = put(buffer, position, packet);
+        return finish(format, buffers, position);
+    }
+
+    private static int headerLength(Format format) {
+        return format == Format.JPEG ? JPEG_HEADER_LENGTH : PNG_HEADER_LENGTH;
+    }
+
+    /**
+     * 回填段头：JPEG为长度字段（不含标记，含长度字段本身），PNG为数据长度，并在末尾追加覆盖类型和数据的CRC
+     */
+    private static ByteBuffer finish(Format format, Buffers buffers, int end) throws IOException {
+        byte[] buffer = buffers.buffer;
+        if (format == Format.JPEG) {
+            int segmentLength = end - 2;
+            if (segmentLength > 0xFFFF) {
+                throw new IOException("XMP数据超过单个APP1段的容量: " + (end - JPEG_HEADER_LENGTH) + " 字节");
+            }
+            buffer[0] = (byte) 0xFF;
+            buffer[1] = (byte) 0xE1;
+            buffer[2] = (byte) (segmentLength >> 8);
+            buffer[3] = (byte) segmentLength;
+            put(buffer, 4, XMPSegmentScanner.JPEG_XMP_IDENTIFIER);
+            return ByteBuffer.wrap(buffer, 0, end);
+        }
+
+        putInt(buffer, 0, end - 8);
+        put(buffer, 4, PNG_CHUNK_HEADER);
+        CRC32 crc = buffers.crc;
+        crc.reset();
+        crc.update(buffer, 4, end - 4);
+        putInt(buffer, end, (int) crc.getValue());
+        return ByteBuffer.wrap(buffer, 0, end + 4);
+    }
+
+    private static int put(byte[] buffer, int position, byte[] bytes) {
+        System.arraycopy(bytes, 0, buffer, position, bytes.length);
+        return position + bytes.length;
+    }
+
+    private static void putInt(byte[] buffer, int position, int value) {
+        buffer[position] = (byte) (value >> 24);
+        buffer[position + 1] = (byte) (value >> 16);
+        buffer[position + 2] = (byte) (value >> 8);
+        buffer[position + 3] = (byte) value;
+    }
+
+    /**
+     * 按UTF-8编码写入，同时转义&amp;、&lt;、&gt;；不成对的代理字符按String.getBytes的行为写为'?'
+     */
+    private static int putEscaped(byte[] buffer, int position, String value) {
+        for (int i = 0, n = value.length(); i < n; i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                if (c == '&') {
+                    position = putAscii(buffer, position, "&amp;");
+                } else if (c == '<') {
+                    position = putAscii(buffer, position, "&lt;");
+                } else if (c == '>') {
+                    position = putAscii(buffer, position, "&gt;");
+                } else {
+                    buffer[position++] = (byte) c;
+                }
+            } else if (c < 0x800) {
+                buffer[position++] = (byte) (0xC0 | (c >> 6));
+                buffer[position++] = (byte) (0x80 | (c & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                if (Character.isHighSurrogate(c) && i + 1 < n && Character.isLowSurrogate(value.charAt(i + 1))) {
+                    int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                    buffer[position++] = (byte) (0xF0 | (codePoint >> 18));
+                    buffer[position++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+                    buffer[position++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+                    buffer[position++] = (byte) (0x80 | (codePoint & 0x3F));
+                } else {
+                    buffer[position++] = '?';
+                }
+            } else {
+                buffer[position++] = (byte) (0xE0 | (c >> 12));
+                buffer[position++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                buffer[position++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+        return position;
+    }
+
+    private static int putAscii(byte[] buffer, int position, String text) {
+        for (int i = 0; i < text.length(); i++) {
+            buffer[position++] = (byte) text.charAt(i);
+        }
+        return position;
+    }
+
+    private static byte[] concat(byte[]... parts) {
+        int length = 0;
+        for (byte[] part : parts) {
+            length += part.length;
+        }
+        byte[] result = new byte[length];
+        int position = 0;
+        for (byte[] part : parts) {
+            position = put(result, position, part);
+        }
+        return result;
+    }
+
+    /**
+     * 线程内复用的输出缓冲区和CRC计算器
+     */
+    private static final class Buffers {
+        byte[] buffer = new byte[4096];
+        final CRC32 crc = new CRC32();
+
+        byte[] ensure(int capacity) {
+            if (buffer.length < capacity) {
+                buffer = new byte[Math.max(capacity, buffer.length * 2)];
+            }
+            return buffer;
+        }
+    }
+}
@@ -0,0 +1,194 @@
+package com.felix.watermark.metadata.images.XMP;
+
+import com.felix.watermark.metadata.images.ImageFileRewriter;
+import com.felix.watermark.metadata.images.ImageSegmentScanner;
+import com.felix.watermark.metadata.images.ImageSegmentScanner.Format;
+import com.felix.watermark.metadata.images.ImageSegmentScanner.Segment;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 基于{@link ImageSegmentScanner}的XMP段定位
+ * 文件被只读映射到内存（之后要替换该文件时只把SOS/IDAT之前的元数据区域读入堆内存），只访问JPEG段头和PNG数据块头，
+ * 遇到SOS（JPEG熵编码数据开始）或IDAT（PNG像素数据）即停止，XMP包本身在调用{@link #read}时才复制出来。
+ *
+ * JPEG会一直扫描到SOS，同时收集扩展XMP段（见{@link ExtendedXMP}）。
+ * PNG中位于IDAT之后的XMP不会被识别；本工具和常见编码器都把XMP写在IDAT之前。
+ */
+final class XMPSegmentScanner {
+
+    /** JPEG APP1中XMP的标识符（29字节，含结尾的0） */
+    static final byte[] JPEG_XMP_IDENTIFIER = "http://ns.adobe.com/xap/1.0/\0".getBytes(StandardCharsets.US_ASCII);
+
+    /** PNG iTXt中XMP的关键字（含结尾的0） */
+    static final byte[] PNG_XMP_KEYWORD = "XML:com.adobe.xmp\0".getBytes(StandardCharsets.US_ASCII);
+
+    /**
+     * 扫描结果：已有XMP段的位置，或者新XMP段应插入的位置
+     */
+    static final class Location {
+        final Format format;
+        /** XMP段（JPEG为从0xFF标记开始，PNG为从长度字段开始）的起始位置，-1表示没有XMP */
+        final long segmentOffset;
+        /** XMP段的总长度（JPEG含标记和长度字段，PNG含长度、类型和CRC） */
+        final long segmentLength;
+        /** XMP包的起始位置 */
+        final long payloadOffset;
+        /** XMP包的字节数 */
+        final int payloadLength;
+        /** 没有XMP时新段的插入位置 */
+        final long insertOffset;
+        /** JPEG中SOS之前的全部扩展XMP段（不区分GUID），PNG为空 */
+        final List<ExtendedXMP.Chunk> extendedChunks;
+
+        private Location(Format format, long segmentOffset, long segmentLength,
+                         long payloadOffset, int payloadLength, long insertOffset,
+                         List<ExtendedXMP.Chunk> extendedChunks) {
+            this.format = format;
+            this.segmentOffset = segmentOffset;
+            this.segmentLength = segmentLength;
+            this.payloadOffset = payloadOffset;
+            this.payloadLength = payloadLength;
+            this.insertOffset = insertOffset;
+            this.extendedChunks = extendedChunks;
+        }
+
+        boolean found() {
+            return segmentOffset >= 0;
+        }
+    }
+
+    private final ImageSegmentScanner segments;
+
+    XMPSegmentScanner(FileChannel channel) throws IOException {
+        this(channel, false);
+    }
+
+    /**
+     * @param sameFile 之后是否要替换这个文件，为true时不映射，只读入元数据区域（见{@link ImageFileRewriter#segments}）
+     */
+    XMPSegmentScanner(FileChannel channel, boolean sameFile) throws IOException {
+        this.segments = ImageFileRewriter.segments(channel, sameFile);
+    }
+
+    /**
+     * 根据文件头识别格式
+     *
+     * @return 图片格式，不是JPEG/PNG时返回null
+     */
+    Format detect() {
+        return segments.format();
+    }
+
+    /**
+     * 扫描文件头部，定位XMP段
+     *
+     * @throws IOException 不是JPEG/PNG或文件结构无效
+     */
+    Location scan() throws IOException {
+        Format format = detect();
+        if (format == null) {
+            throw new IOException("不支持的图片格式，仅支持JPEG和PNG");
+        }
+        return format == Format.JPEG ? scanJPEG() : scanPNG();
+    }
+
+    /**
+     * 复制指定范围的字节（用于读取XMP包本身）
+     */
+    byte[] read(long position, int length) {
+        return segments.bytes((int) position, length);
+    }
+
+    /**
+     * 遍历JPEG段直到SOS，记录标准XMP段和扩展XMP段
+     * 新XMP段的插入位置为第一个APPn段之后（保持JFIF/EXIF在最前），没有APPn时为SOI之后
+     */
+    private Location scanJPEG() {
+        long insertOffset = 2;
+        boolean appSeen = false;
+        Segment standard = null;
+        List<ExtendedXMP.Chunk> extendedChunks = new ArrayList<>();
+
+        while (segments.hasNext()) {
+            Segment segment = segments.next();
+            int marker = segment.type();
+            if (marker == ImageSegmentScanner.JPEG_SOS) {
+                break;
+            }
+            if (marker == ImageSegmentScanner.JPEG_APP1) {
+                if (standard == null && segment.payloadStartsWith(JPEG_XMP_IDENTIFIER)) {
+                    standard = segment;
+                } else if (segment.payloadStartsWith(ExtendedXMP.IDENTIFIER)) {
+                    ExtendedXMP.Chunk chunk = ExtendedXMP.Chunk.parse(segment.payload());
+                    if (chunk != null) {
+                        extendedChunks.add(chunk);
+                    }
+                }
+            }
+            if (!appSeen && marker >= ImageSegmentScanner.JPEG_APP0 && marker <= ImageSegmentScanner.JPEG_APP15) {
+                appSeen = true;
+                insertOffset = segment.end();
+            }
+        }
+
+        if (standard == null) {
+            return new Location(Format.JPEG, -1, 0, -1, 0, insertOffset, extendedChunks);
+        }
+        long payloadOffset = standard.payloadOffset() + JPEG_XMP_IDENTIFIER.length;
+        return new Location(Format.JPEG, standard.offset(), standard.length(),
+                payloadOffset, (int) (standard.end() - payloadOffset), insertOffset, extendedChunks);
+    }
+
+    /**
+     * 遍历PNG数据块直到IDAT，新XMP数据块的插入位置为IHDR之后
+     */
+    private Location scanPNG() throws IOException {
+        long insertOffset = -1;
+
+        while (segments.hasNext()) {
+            Segment chunk = segments.next();
+            int type = chunk.type();
+            if (type == ImageSegmentScanner.PNG_IHDR) {
+                insertOffset = chunk.end();
+            } else if (type == ImageSegmentScanner.PNG_IDAT || type == ImageSegmentScanner.PNG_IEND) {
+                break;
+            } else if (type == ImageSegmentScanner.PNG_ITXT && chunk.payloadStartsWith(PNG_XMP_KEYWORD)) {
+                // 关键字之后依次为压缩标志、压缩方法、语言标签\0、翻译关键字\0，然后是文本
+                int dataEnd = chunk.payloadOffset() + chunk.payloadLength();
+                int flags = chunk.payloadOffset() + PNG_XMP_KEYWORD.length;
+                int text = flags + 2 <= dataEnd ? skipNul(skipNul(flags + 2, dataEnd), dataEnd) : -1;
+                if (text >= 0 && segments.slice(flags, 1).get() == 0) { // 只识别未压缩的XMP
+                    return new Location(Format.PNG, chunk.offset(), chunk.length(),
+                            text, dataEnd - text, insertOffset, Collections.emptyList());
+                }
+            }
+        }
+        if (insertOffset < 0) {
+            throw new IOException("PNG文件缺少IHDR数据块");
+        }
+        return new Location(Format.PNG, -1, 0, -1, 0, insertOffset, Collections.emptyList());
+    }
+
+    /**
+     * 跳过以0结尾的字符串，返回0之后的位置；超出end时返回-1
+     */
+    private int skipNul(int position, int end) {
+        if (position < 0) {
+            return -1;
+        }
+        ByteBuffer text = segments.slice(position, end - position);
+        while (text.hasRemaining()) {
+            if (text.get() == 0) {
+                return position + text.position();
+            }
+        }
+        return -1;
+    }
+}
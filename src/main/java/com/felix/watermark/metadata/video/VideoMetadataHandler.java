@@ -1,9 +1,9 @@
 package com.felix.watermark.metadata.video;
 
-import com.alibaba.fastjson.JSON;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.felix.utils.OperatingSystem;
+import com.felix.watermark.metadata.AIGCMetadata;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -367,7 +367,7 @@ public class VideoMetadataHandler {
             // 首先尝试从标准字段读取
             if (tagsNode.has("AIGC")) {
                 String data = tagsNode.get("AIGC").asText();
-                metadata = JSON.parseObject(data, AIGCMetadata.class);
+                metadata = AIGCMetadata.fromJsonString(data);
             }
         } catch (Exception e) {
             System.err.println("解析元数据JSON时发生错误: " + e.getMessage());
@@ -406,98 +406,6 @@ public class VideoMetadataHandler {
         }
     }
 
-    /**
-     * AIGC元数据信息实体类
-     * 符合GB 45438-2025附录E规范
-     */
-    public static class AIGCMetadata {
-        private String label;           // value1
-        private String contentProducer; // value2
-        private String produceID;       // value3
-        private String reservedCode1;   // value4
-        private String contentPropagator; // value5
-        private String propagateID;     // value6
-        private String reservedCode2;   // value7
-
-        // 构造器
-        public AIGCMetadata(String label, String contentProducer, String produceID,
-                            String reservedCode1, String contentPropagator,
-                            String propagateID, String reservedCode2) {
-            this.label = label;
-            this.contentProducer = contentProducer;
-            this.produceID = produceID;
-            this.reservedCode1 = reservedCode1;
-            this.contentPropagator = contentPropagator;
-            this.propagateID = propagateID;
-            this.reservedCode2 = reservedCode2;
-        }
-
-        public AIGCMetadata() {
-
-        }
-
-        // Getters and Setters
-        public String getLabel() { return label; }
-        public void setLabel(String label) { this.label = label; }
-
-        public String getContentProducer() { return contentProducer; }
-        public void setContentProducer(String contentProducer) { this.contentProducer = contentProducer; }
-
-        public String getProduceID() { return produceID; }
-        public void setProduceID(String produceID) { this.produceID = produceID; }
-
-        public String getReservedCode1() { return reservedCode1; }
-        public void setReservedCode1(String reservedCode1) { this.reservedCode1 = reservedCode1; }
-
-        public String getContentPropagator() { return contentPropagator; }
-        public void setContentPropagator(String contentPropagator) { this.contentPropagator = contentPropagator; }
-
-        public String getPropagateID() { return propagateID; }
-        public void setPropagateID(String propagateID) { this.propagateID = propagateID; }
-
-        public String getReservedCode2() { return reservedCode2; }
-        public void setReservedCode2(String reservedCode2) { this.reservedCode2 = reservedCode2; }
-
-        public String toVideoJsonString() {
-            return String.format(
-                    "{\"Label\":\"%s\",\"ContentProducer\":\"%s\",\"ProduceID\":\"%s\"," +
-                            "\"ReservedCode1\":\"%s\",\"ContentPropagator\":\"%s\",\"PropagateID\":\"%s\"," +
-                            "\"ReservedCode2\":\"%s\"}",
-                    escapeJson(label), escapeJson(contentProducer), escapeJson(produceID),
-                    escapeJson(reservedCode1), escapeJson(contentPropagator), escapeJson(propagateID),
-                    escapeJson(reservedCode2)
-            );
-        }
-
-        /**
-         * JSON字符串转义处理
-         */
-        private String escapeJson(String str) {
-            if (str == null) return "";
-            return str.replace("\\", "\\\\")
-                    .replace("\"", "\\\"")
-                    .replace("\b", "\\b")
-                    .replace("\f", "\\f")
-                    .replace("\n", "\\n")
-                    .replace("\r", "\\r")
-                    .replace("\t", "\\t");
-        }
-
-        @Override
-        public String toString() {
-            return "AIGCMetadata{" +
-                    "Label='" + label + '\'' +
-                    ", ContentProducer='" + contentProducer + '\'' +
-                    ", ProduceID='" + produceID + '\'' +
-                    ", ReservedCode1='" + reservedCode1 + '\'' +
-                    ", ContentPropagator='" + contentPropagator + '\'' +
-                    ", PropagateID='" + propagateID + '\'' +
-                    ", ReservedCode2='" + reservedCode2 + '\'' +
-                    '}';
-        }
-    }
-
-
     public static void main(String[] args) {
         // 创建AIGC元数据
         AIGCMetadata metadata = new AIGCMetadata(
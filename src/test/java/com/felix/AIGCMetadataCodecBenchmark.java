@@ -0,0 +1,145 @@
+package com.felix;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.felix.watermark.metadata.AIGCMetadata;
+import com.felix.watermark.metadata.AIGCMetadataCodec;
+
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * AIGC元数据JSON编解码性能对比：Jackson流式编解码 vs 原实现（String.format+逐字符replace、按引号split解析）vs ObjectMapper
+ * 统计方式与WatermarkAllocationBenchmark一致：预热后计时，并用线程分配计数器统计每次操作分配的字节数。
+ * 同时校验带转义引号、反斜杠和换行的字段能否原样往返。
+ *
+ * 用法：AIGCMetadataCodecBenchmark [轮数]
+ */
+public class AIGCMetadataCodecBenchmark {
+
+    private static final int WARMUP = 200_000;
+
+    interface Operation {
+        Object run() throws Exception;
+    }
+
+    public static void main(String[] args) throws Exception {
+        int rounds = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        AIGCMetadata metadata = new AIGCMetadata("1", "Felix内容生成平台", "produce-20250901-0001",
+                "BGAI001", "Felix传播平台", "propagate-0001", "BGAI002");
+        String json = metadata.toJsonString();
+        ObjectMapper mapper = new ObjectMapper();
+
+        System.out.println("JSON: " + json);
+        measure("原实现 生成", rounds, () -> legacyToJson(metadata));
+        measure("流式 生成", rounds, () -> AIGCMetadataCodec.toJson(metadata, true));
+        measure("ObjectMapper 生成", rounds, () -> mapper.writeValueAsString(toMap(metadata)));
+        measure("原实现 解析", rounds, () -> legacyParse(json));
+        measure("流式 解析", rounds, () -> AIGCMetadataCodec.parse(json));
+        measure("ObjectMapper 解析", rounds, () -> fromTree(mapper.readTree(json)));
+
+        AIGCMetadata tricky = new AIGCMetadata("1", "生产者\"A\"", "C:\\AIGC\\P001",
+                "", "传播\n平台", "", "");
+        System.out.println("含转义字符往返 原实现: " + sameFields(tricky, legacyParse(legacyToJson(tricky)))
+                + ", 流式: " + sameFields(tricky, AIGCMetadataCodec.parse(AIGCMetadataCodec.toJson(tricky, true))));
+    }
+
+    private static void measure(String name, int rounds, Operation operation) throws Exception {
+        com.sun.management.ThreadMXBean threadBean =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+
+        Object sink = null;
+        for (int i = 0; i < WARMUP; i++) {
+            sink = operation.run();
+        }
+
+        long allocatedBefore = threadBean.getThreadAllocatedBytes(threadId);
+        long start = System.nanoTime();
+        for (int i = 0; i < rounds; i++) {
+            sink = operation.run();
+        }
+        long elapsed = System.nanoTime() - start;
+        long allocated = threadBean.getThreadAllocatedBytes(threadId) - allocatedBefore;
+
+        System.out.printf("%-18s %8.0f ns/op %8d B/op%s%n", name, (double) elapsed / rounds, allocated / rounds,
+                sink == null ? " (无结果)" : "");
+    }
+
+    private static boolean sameFields(AIGCMetadata expected, AIGCMetadata actual) {
+        return actual != null
+                && expected.getContentProducer().equals(actual.getContentProducer())
+                && expected.getProduceID().equals(actual.getProduceID())
+                && expected.getContentPropagator().equals(actual.getContentPropagator());
+    }
+
+    private static Map<String, Object> toMap(AIGCMetadata metadata) {
+        Map<String, String> fields = new LinkedHashMap<>();
+        fields.put("Label", metadata.getLabel());
+        fields.put("ContentProducer", metadata.getContentProducer());
+        fields.put("ProduceID", metadata.getProduceID());
+        fields.put("ReservedCode1", metadata.getReservedCode1());
+        fields.put("ContentPropagator", metadata.getContentPropagator());
+        fields.put("PropagateID", metadata.getPropagateID());
+        fields.put("ReservedCode2", metadata.getReservedCode2());
+        Map<String, Object> root = new LinkedHashMap<>();
+        root.put("AIGC", fields);
+        return root;
+    }
+
+    private static AIGCMetadata fromTree(JsonNode root) {
+        JsonNode node = root.path("AIGC");
+        return new AIGCMetadata(node.path("Label").asText(), node.path("ContentProducer").asText(),
+                node.path("ProduceID").asText(), node.path("ReservedCode1").asText(),
+                node.path("ContentPropagator").asText(), node.path("PropagateID").asText(),
+                node.path("ReservedCode2").asText());
+    }
+
+    // ========== 对照组：原实现 ==========
+
+    private static String legacyToJson(AIGCMetadata m) {
+        return String.format(
+                "{\"AIGC\":{\"Label\":\"%s\",\"ContentProducer\":\"%s\",\"ProduceID\":\"%s\"," +
+                        "\"ReservedCode1\":\"%s\",\"ContentPropagator\":\"%s\",\"PropagateID\":\"%s\"," +
+                        "\"ReservedCode2\":\"%s\"}}",
+                legacyEscape(m.getLabel()), legacyEscape(m.getContentProducer()), legacyEscape(m.getProduceID()),
+                legacyEscape(m.getReservedCode1()), legacyEscape(m.getContentPropagator()),
+                legacyEscape(m.getPropagateID()), legacyEscape(m.getReservedCode2()));
+    }
+
+    private static String legacyEscape(String str) {
+        if (str == null) return "";
+        return str.replace("\\", "\\\\")
+                .replace("\"", "\\\"")
+                .replace("\b", "\\b")
+                .replace("\f", "\\f")
+                .replace("\n", "\\n")
+                .replace("\r", "\\r")
+                .replace("\t", "\\t");
+    }
+
+    private static final String[] FIELDS = {"Label", "ContentProducer", "ProduceID", "ReservedCode1",
+            "ContentPropagator", "PropagateID", "ReservedCode2"};
+
+    private static AIGCMetadata legacyParse(String json) {
+        String[] values = new String[FIELDS.length];
+        String[] pairs = json.split("\"");
+        for (int i = 0; i < pairs.length - 2; i++) {
+            String key = pairs[i].trim();
+            for (int f = 0; f < FIELDS.length; f++) {
+                if (key.equals(FIELDS[f])) {
+                    values[f] = legacyUnescape(pairs[i + 2]);
+                    break;
+                }
+            }
+        }
+        return new AIGCMetadata(values[0], values[1], values[2], values[3], values[4], values[5], values[6]);
+    }
+
+    private static String legacyUnescape(String str) {
+        return str.replace("\\\"", "\"")
+                .replace("\\\\", "\\")
+                .replace("\\n", "\n");
+    }
+}
@@ -0,0 +1,174 @@
+package com.felix;
+
+import com.drew.imaging.ImageMetadataReader;
+import com.drew.metadata.Directory;
+import com.drew.metadata.Metadata;
+import com.drew.metadata.Tag;
+import com.drew.metadata.xmp.XmpDirectory;
+import com.felix.watermark.metadata.AIGCMetadata;
+import com.felix.watermark.metadata.images.AIGCMetadataUtils;
+import com.felix.watermark.metadata.images.JPEGMetadataHandler;
+import com.felix.watermark.metadata.images.PNGMetadataHandler;
+import com.felix.watermark.metadata.images.XMP.AIGCMetadataWriter;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * AIGC标识快速检查性能对比：文件头字节特征匹配 vs metadata-extractor完整解析
+ * 语料为JPEG/PNG混合，分别不带标识、带PNG tEXt标识、带XMP标识、带EXIF UserComment标识，
+ * 同时统计两种方式与语料真实标注的一致率。
+ *
+ * 用法：AIGCPresenceBenchmark [每类文件数] [边长]
+ */
+public class AIGCPresenceBenchmark {
+
+    private static final int ROUNDS = 5;
+
+    interface Check {
+        boolean test(File file) throws Exception;
+    }
+
+    public static void main(String[] args) throws Exception {
+        int perKind = args.length > 0 ? Integer.parseInt(args[0]) : 50;
+        int size = args.length > 1 ? Integer.parseInt(args[1]) : 1600;
+
+        Path dir = Files.createTempDirectory("aigc-presence-bench");
+        try {
+            List<File> files = new ArrayList<>();
+            List<Boolean> labels = new ArrayList<>();
+            createCorpus(dir, perKind, size, files, labels);
+            long bytes = 0;
+            for (File file : files) {
+                bytes += file.length();
+            }
+            System.out.printf("语料: %d 个文件, 共 %.1f MB, 其中带标识 %d 个%n",
+                    files.size(), bytes / 1024.0 / 1024.0, labels.stream().filter(b -> b).count());
+
+            measure("文件头特征匹配", files, labels, file -> AIGCMetadataUtils.hasAIGC(file.toPath()));
+            measure("完整元数据解析", files, labels, AIGCPresenceBenchmark::parseMetadata);
+        } finally {
+            File[] created = dir.toFile().listFiles();
+            if (created != null) {
+                for (File file : created) {
+                    Files.deleteIfExists(file.toPath());
+                }
+            }
+            Files.deleteIfExists(dir);
+        }
+    }
+
+    private static void measure(String name, List<File> files, List<Boolean> labels, Check check) throws Exception {
+        int agree = 0;
+        for (int i = 0; i < files.size(); i++) { // 预热，同时统计一致率
+            if (check.test(files.get(i)) == labels.get(i)) {
+                agree++;
+            }
+        }
+        long start = System.nanoTime();
+        for (int round = 0; round < ROUNDS; round++) {
+            for (File file : files) {
+                check.test(file);
+            }
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        int total = files.size() * ROUNDS;
+        System.out.printf("  %-10s %10.0f 文件/秒 %10.1f us/文件  一致率 %d/%d%n",
+                name, total / seconds, seconds * 1e6 / total, agree, files.size());
+    }
+
+    /**
+     * 对照组：metadata-extractor解析全部目录，在XMP属性和各标签描述中查找AIGC
+     */
+    private static boolean parseMetadata(File file) throws Exception {
+        Metadata metadata = ImageMetadataReader.readMetadata(file);
+        for (Directory directory : metadata.getDirectories()) {
+            if (directory instanceof XmpDirectory) {
+                for (String property : ((XmpDirectory) directory).getXmpProperties().keySet()) {
+                    if (property.contains("AIGC")) {
+                        return true;
+                    }
+                }
+            }
+            for (Tag tag : directory.getTags()) {
+                String description = tag.getDescription();
+                if (description != null && description.contains("AIGC")) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static void createCorpus(Path dir, int perKind, int size, List<File> files, List<Boolean> labels)
+            throws Exception {
+        AIGCMetadata metadata = new AIGCMetadata("1", "Felix内容生成平台", "produce-20250901-0001",
+                "", "Felix传播平台", "propagate-0001", "");
+        AIGCMetadata xmpMetadata = new AIGCMetadata("1", "Felix内容生成平台", "produce-20250901-0001");
+
+        // 各处理类会打印过程日志，生成语料时屏蔽
+        PrintStream stdout = System.out;
+        System.setOut(new PrintStream(new OutputStream() {
+            @Override
+            public void write(int b) {
+            }
+        }));
+        try {
+            Random random = new Random(2025);
+            for (int i = 0; i < perKind; i++) {
+                BufferedImage image = createImage(size, size * 3 / 4, random);
+                File jpeg = dir.resolve("plain-" + i + ".jpg").toFile();
+                File png = dir.resolve("plain-" + i + ".png").toFile();
+                ImageIO.write(image, "jpg", jpeg);
+                ImageIO.write(image, "png", png);
+                add(files, labels, jpeg, false);
+                add(files, labels, png, false);
+
+                File text = dir.resolve("text-" + i + ".png").toFile();
+                PNGMetadataHandler.addAIGCMetadata(png, text, metadata);
+                add(files, labels, text, true);
+
+                File xmpJpeg = dir.resolve("xmp-" + i + ".jpg").toFile();
+                File xmpPng = dir.resolve("xmp-" + i + ".png").toFile();
+                AIGCMetadataWriter.writeAIGCMetadataToJPEG(jpeg, xmpJpeg, xmpMetadata);
+                AIGCMetadataWriter.writeAIGCMetadataToPNG(png, xmpPng, xmpMetadata);
+                add(files, labels, xmpJpeg, true);
+                add(files, labels, xmpPng, true);
+
+                File exif = dir.resolve("exif-" + i + ".jpg").toFile();
+                JPEGMetadataHandler.addAIGCMetadata(jpeg, exif, metadata);
+                add(files, labels, exif, true);
+            }
+        } finally {
+            System.setOut(stdout);
+        }
+    }
+
+    private static void add(List<File> files, List<Boolean> labels, File file, boolean label) {
+        files.add(file);
+        labels.add(label);
+    }
+
+    private static BufferedImage createImage(int width, int height, Random random) {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        int[] row = new int[width];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int r = (x * 255 / width + random.nextInt(24)) & 0xFF;
+                int g = (y * 255 / height + random.nextInt(24)) & 0xFF;
+                int b = ((x + y) * 127 / (width + height) + random.nextInt(24)) & 0xFF;
+                row[x] = (r << 16) | (g << 8) | b;
+            }
+            image.setRGB(0, y, width, 1, row, 0, width);
+        }
+        return image;
+    }
+}
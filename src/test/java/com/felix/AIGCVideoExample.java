@@ -1,12 +1,13 @@
 package com.felix;
 
+import com.felix.watermark.metadata.AIGCMetadata;
 import com.felix.watermark.metadata.video.VideoMetadataHandler;
 
 public class AIGCVideoExample {
 
     public static void main(String[] args) {
         // 创建AIGC元数据
-        VideoMetadataHandler.AIGCMetadata metadata = new VideoMetadataHandler.AIGCMetadata(
+        AIGCMetadata metadata = new AIGCMetadata(
                 "1",                // Label
                 "001191610133596325171T12566",        // ContentProducer
                 "BGVIDEO20250001",        // ProduceID
@@ -20,7 +21,7 @@ public class AIGCVideoExample {
         String outputFile = "D:\\data\\watermark\\bg-aigc.mp4";
         boolean success = VideoMetadataHandler.addStealthMetadata(inputFile, outputFile, metadata);
         System.out.println("视频添加元数据水印处理结果: " + (success ? "成功" : "失败"));
-        VideoMetadataHandler.AIGCMetadata metadataRead = VideoMetadataHandler.readStealthMetadata(outputFile);
+        AIGCMetadata metadataRead = VideoMetadataHandler.readStealthMetadata(outputFile);
         if(metadataRead != null)
         {
             System.out.println("视频元数据水印解析结果: " + metadataRead.toVideoJsonString());
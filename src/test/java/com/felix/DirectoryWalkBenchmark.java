@@ -0,0 +1,119 @@
+package com.felix;
+
+import com.felix.file.DirectoryReader;
+import com.felix.file.FileTypeChecker;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * 目录遍历性能对比：Files.walk + 逐个readAttributes（原readDirectoryWithWalk）、Files.find、
+ * FileVisitor单线程遍历、streamDirectory流式遍历、ForkJoinPool并行遍历（不同并行度），以及带glob过滤的并行遍历。
+ * 测试目录为三层、每层fan-out个子目录、叶子目录中放空文件，首次运行时创建，之后复用。
+ * 每种方式先预热一轮，结果为页缓存已热时的耗时，不代表冷缓存下的磁盘寻道开销。
+ *
+ * 用法：DirectoryWalkBenchmark [测试目录] [文件数]
+ */
+public class DirectoryWalkBenchmark {
+
+    private static final int FAN_OUT = 10;
+
+    interface Walker {
+        long walk(Path root) throws IOException;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Path root = Paths.get(args.length > 0 ? args[0] : "target/walk-benchmark");
+        int count = args.length > 1 ? Integer.parseInt(args[1]) : 1_000_000;
+        createTree(root, count);
+
+        measure("Files.walk+readAttributes", root, DirectoryWalkBenchmark::walkWithReadAttributes);
+        measure("Files.find", root, DirectoryWalkBenchmark::find);
+        measure("FileVisitor", root, path ->
+                DirectoryReader.readDirectoryWithVisitor(path.toString(), DirectoryReader.TypeDetection.NONE).size());
+        measure("streamDirectory", root, DirectoryWalkBenchmark::stream);
+        int processors = Runtime.getRuntime().availableProcessors();
+        // 遍历以系统调用为主，并行度取到CPU核数的4倍
+        for (int p = 1; p <= Math.max(4, processors * 4); p *= 2) {
+            int parallelism = p;
+            measure("并行 x" + parallelism, root, path -> DirectoryReader.readDirectoryParallel(path.toString(),
+                    new DirectoryReader.WalkOptions().parallelism(parallelism)).size());
+        }
+        measure("并行 x" + processors * 2 + " *.png", root, path -> DirectoryReader.readDirectoryParallel(path.toString(),
+                new DirectoryReader.WalkOptions().parallelism(processors * 2).glob("*.png")).size());
+        measure("并行 x" + processors * 2 + " PNG类型", root, path -> DirectoryReader.readDirectoryParallel(path.toString(),
+                new DirectoryReader.WalkOptions().parallelism(processors * 2).types(FileTypeChecker.FileType.PNG)).size());
+    }
+
+    private static void measure(String name, Path root, Walker walker) throws IOException {
+        walker.walk(root); // 预热
+        long start = System.nanoTime();
+        long files = walker.walk(root);
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("%-28s %9d 个文件 %8.2f s %12.0f 文件/秒%n", name, files, seconds, files / seconds);
+    }
+
+    /**
+     * 原readDirectoryWithWalk的做法：walk已读过属性，每个路径再readAttributes一次
+     */
+    private static long walkWithReadAttributes(Path root) throws IOException {
+        AtomicLong files = new AtomicLong();
+        try (Stream<Path> paths = Files.walk(root)) {
+            paths.forEach(path -> {
+                try {
+                    if (Files.readAttributes(path, BasicFileAttributes.class).isRegularFile()) {
+                        files.incrementAndGet();
+                    }
+                } catch (IOException e) {
+                    System.err.println("无法读取文件属性: " + path);
+                }
+            });
+        }
+        return files.get();
+    }
+
+    private static long find(Path root) throws IOException {
+        try (Stream<Path> paths = Files.find(root, Integer.MAX_VALUE, (path, attrs) -> attrs.isRegularFile())) {
+            return paths.count();
+        }
+    }
+
+    private static long stream(Path root) throws IOException {
+        try (Stream<DirectoryReader.FileInfo> files = DirectoryReader.streamDirectory(root.toString(),
+                new DirectoryReader.WalkOptions())) {
+            return files.count();
+        }
+    }
+
+    /**
+     * 三层共fan-out^3个叶子目录，文件平均分到叶子目录中，扩展名轮流为.png/.jpg/.mp4/.txt
+     */
+    private static void createTree(Path root, int count) throws IOException {
+        Path marker = root.resolve(".complete-" + count);
+        if (Files.exists(marker)) {
+            return;
+        }
+        System.out.println("创建测试目录 " + root + "，" + count + " 个文件...");
+        String[] extensions = {".png", ".jpg", ".mp4", ".txt"};
+        int leaves = FAN_OUT * FAN_OUT * FAN_OUT;
+        for (int i = 0; i < count; i++) {
+            int leaf = i % leaves;
+            Path directory = root.resolve("d" + leaf / (FAN_OUT * FAN_OUT))
+                    .resolve("d" + leaf / FAN_OUT % FAN_OUT)
+                    .resolve("d" + leaf % FAN_OUT);
+            if (i < leaves) {
+                Files.createDirectories(directory);
+            }
+            Path file = directory.resolve("f" + i + extensions[i % extensions.length]);
+            if (!Files.exists(file)) {
+                Files.createFile(file);
+            }
+        }
+        Files.createFile(marker);
+    }
+}
@@ -0,0 +1,242 @@
+package com.felix;
+
+import com.drew.imaging.ImageMetadataReader;
+import com.drew.metadata.Metadata;
+import com.drew.metadata.exif.ExifDirectoryBase;
+import com.drew.metadata.exif.ExifSubIFDDirectory;
+import com.felix.watermark.metadata.AIGCMetadata;
+import com.felix.watermark.metadata.images.JPEGMetadataHandler;
+import org.apache.commons.imaging.Imaging;
+import org.apache.commons.imaging.common.ImageMetadata;
+import org.apache.commons.imaging.formats.jpeg.JpegImageMetadata;
+import org.apache.commons.imaging.formats.jpeg.exif.ExifRewriter;
+import org.apache.commons.imaging.formats.tiff.constants.ExifTagConstants;
+import org.apache.commons.imaging.formats.tiff.constants.TiffTagConstants;
+import org.apache.commons.imaging.formats.tiff.fieldtypes.FieldType;
+import org.apache.commons.imaging.formats.tiff.write.TiffOutputDirectory;
+import org.apache.commons.imaging.formats.tiff.write.TiffOutputField;
+import org.apache.commons.imaging.formats.tiff.write.TiffOutputSet;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * JPEG写入EXIF UserComment性能对比：直接修改EXIF所在APP1段 vs 原实现（Commons Imaging解析并重新序列化整个EXIF，
+ * 写入后用metadata-extractor读回校验）
+ * 语料一半不带EXIF，一半带相机常见的IFD0/Exif IFD标签（大小端各半）。两种方式都把结果写入新文件并读回校验，
+ * 同时统计写入后能读回AIGC标识、且原有标签保持不变的文件数。
+ *
+ * 用法：ExifUserCommentBenchmark [文件数] [边长]
+ */
+public class ExifUserCommentBenchmark {
+
+    private static final int ROUNDS = 3;
+
+    interface Write {
+        boolean write(File input, File output) throws Exception;
+    }
+
+    public static void main(String[] args) throws Exception {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        int size = args.length > 1 ? Integer.parseInt(args[1]) : 800;
+        AIGCMetadata metadata = new AIGCMetadata("1", "Felix内容生成平台", "produce-20250901-0001",
+                "", "Felix传播平台", "propagate-0001", "");
+
+        Path dir = Files.createTempDirectory("exif-user-comment-bench");
+        Path out = Files.createDirectory(dir.resolve("out"));
+        // 各处理类会打印过程日志，测试时屏蔽
+        PrintStream stdout = System.out;
+        try {
+            List<File> files = createCorpus(dir, count, size);
+            long bytes = 0;
+            for (File file : files) {
+                bytes += file.length();
+            }
+            System.out.printf("语料: %d 个JPEG, 共 %.1f MB%n", files.size(), bytes / 1024.0 / 1024.0);
+
+            System.setOut(new PrintStream(new OutputStream() {
+                @Override
+                public void write(int b) {
+                }
+            }));
+            measure(stdout, "原实现", files, out, metadata,
+                    (input, output) -> legacyWrite(input, output, metadata.toJsonString()));
+            measure(stdout, "APP1段修改", files, out, metadata,
+                    (input, output) -> JPEGMetadataHandler.addAIGCMetadata(input, output, metadata));
+        } finally {
+            System.setOut(stdout);
+            for (Path sub : new Path[]{out, dir}) {
+                File[] created = sub.toFile().listFiles();
+                if (created != null) {
+                    for (File file : created) {
+                        if (file.isFile()) {
+                            Files.deleteIfExists(file.toPath());
+                        }
+                    }
+                }
+            }
+            Files.deleteIfExists(out);
+            Files.deleteIfExists(dir);
+        }
+    }
+
+    private static void measure(PrintStream stdout, String name, List<File> files, Path out,
+                                AIGCMetadata metadata, Write write) throws Exception {
+        int valid = 0;
+        for (File file : files) { // 预热，同时校验结果
+            File output = out.resolve(file.getName()).toFile();
+            if (write.write(file, output) && isValid(file, output, metadata)) {
+                valid++;
+            }
+        }
+        long start = System.nanoTime();
+        for (int round = 0; round < ROUNDS; round++) {
+            for (File file : files) {
+                write.write(file, out.resolve(file.getName()).toFile());
+            }
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        int total = files.size() * ROUNDS;
+        stdout.printf("  %-10s %10.0f 文件/秒 %10.1f us/文件  结果正确 %d/%d%n",
+                name, total / seconds, seconds * 1e6 / total, valid, files.size());
+    }
+
+    /**
+     * 用metadata-extractor检查：UserComment与写入内容一致（ASCII编码时中文为\\uXXXX转义，按JSON解析后比较），
+     * 原有的Make和DateTimeOriginal不变
+     */
+    private static boolean isValid(File input, File output, AIGCMetadata metadata) throws Exception {
+        Metadata before = ImageMetadataReader.readMetadata(input);
+        Metadata after = ImageMetadataReader.readMetadata(output);
+        ExifSubIFDDirectory exif = after.getFirstDirectoryOfType(ExifSubIFDDirectory.class);
+        if (exif == null) {
+            return false;
+        }
+        String json = metadata.toJsonString();
+        byte[] comment = exif.getByteArray(ExifDirectoryBase.TAG_USER_COMMENT);
+        boolean commentMatches = comment != null && json.equals(decodeUnicode(comment))
+                || metadata.equals(AIGCMetadata.fromJsonString(exif.getDescription(ExifDirectoryBase.TAG_USER_COMMENT)));
+        AIGCMetadata read = JPEGMetadataHandler.readAIGCMetadata(output);
+        return commentMatches && read != null && json.equals(read.toJsonString())
+                && tag(before, ExifDirectoryBase.TAG_MAKE).equals(tag(after, ExifDirectoryBase.TAG_MAKE))
+                && tag(before, ExifDirectoryBase.TAG_DATETIME_ORIGINAL)
+                .equals(tag(after, ExifDirectoryBase.TAG_DATETIME_ORIGINAL));
+    }
+
+    /**
+     * metadata-extractor固定按小端解码UNICODE；大端EXIF中的UNICODE内容按TIFF字节序解码后再比较
+     */
+    private static String decodeUnicode(byte[] comment) {
+        if (comment.length < 8 || !new String(comment, 0, 7, StandardCharsets.US_ASCII).equals("UNICODE")) {
+            return null;
+        }
+        return new String(comment, 8, comment.length - 8, StandardCharsets.UTF_16BE);
+    }
+
+    private static String tag(Metadata metadata, int tag) {
+        for (com.drew.metadata.Directory directory : metadata.getDirectories()) {
+            if (directory instanceof ExifDirectoryBase && directory.containsTag(tag)) {
+                return directory.getString(tag);
+            }
+        }
+        return "";
+    }
+
+    private static List<File> createCorpus(Path dir, int count, int size) throws Exception {
+        List<File> files = new ArrayList<>(count);
+        Random random = new Random(2025);
+        BufferedImage image = createImage(size, size * 3 / 4, random);
+        File plain = dir.resolve("plain.jpg").toFile();
+        ImageIO.write(image, "jpg", plain);
+        byte[] plainBytes = Files.readAllBytes(plain.toPath());
+        Files.delete(plain.toPath());
+
+        for (int i = 0; i < count; i++) {
+            File file = dir.resolve("photo-" + i + ".jpg").toFile();
+            // 修改图像数据中的一个字节，使各文件内容不同
+            byte[] bytes = plainBytes.clone();
+            bytes[bytes.length - 3] = (byte) i;
+            if (i % 2 == 0) {
+                Files.write(file.toPath(), bytes);
+            } else {
+                File source = dir.resolve("source.jpg").toFile();
+                Files.write(source.toPath(), bytes);
+                ByteOrder order = i % 4 == 1 ? ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN;
+                TiffOutputSet outputSet = new TiffOutputSet(order);
+                TiffOutputDirectory root = outputSet.getOrCreateRootDirectory();
+                root.add(TiffTagConstants.TIFF_TAG_MAKE, "Felix");
+                root.add(TiffTagConstants.TIFF_TAG_MODEL, "Camera " + (i % 7));
+                root.add(TiffTagConstants.TIFF_TAG_SOFTWARE, "ExifUserCommentBenchmark");
+                TiffOutputDirectory exif = outputSet.getOrCreateExifDirectory();
+                exif.add(ExifTagConstants.EXIF_TAG_DATE_TIME_ORIGINAL, "2025:09:01 10:00:" + String.format("%02d", i % 60));
+                exif.add(ExifTagConstants.EXIF_TAG_ISO, (short) (100 + i % 8 * 100));
+                try (FileOutputStream output = new FileOutputStream(file)) {
+                    new ExifRewriter().updateExifMetadataLossless(source, output, outputSet);
+                }
+                Files.delete(source.toPath());
+            }
+            files.add(file);
+        }
+        return files;
+    }
+
+    private static BufferedImage createImage(int width, int height, Random random) {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        int[] row = new int[width];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int r = (x * 255 / width + random.nextInt(24)) & 0xFF;
+                int g = (y * 255 / height + random.nextInt(24)) & 0xFF;
+                int b = ((x + y) * 127 / (width + height) + random.nextInt(24)) & 0xFF;
+                row[x] = (r << 16) | (g << 8) | b;
+            }
+            image.setRGB(0, y, width, 1, row, 0, width);
+        }
+        return image;
+    }
+
+    // ========== 对照组：原实现 ==========
+
+    /**
+     * 与原JPEGMetadataHandler一致的流程：Commons Imaging读取全部元数据，替换UserComment后无损重写EXIF，
+     * 再用metadata-extractor解析写入的文件校验。UserComment补上了原实现缺少的8字节编码标识，使结果可以正确读回。
+     */
+    private static boolean legacyWrite(File input, File output, String json) throws Exception {
+        ImageMetadata metadata = Imaging.getMetadata(input);
+        TiffOutputSet outputSet = null;
+        if (metadata instanceof JpegImageMetadata && ((JpegImageMetadata) metadata).getExif() != null) {
+            outputSet = ((JpegImageMetadata) metadata).getExif().getOutputSet();
+        }
+        if (outputSet == null) {
+            outputSet = new TiffOutputSet(ByteOrder.LITTLE_ENDIAN);
+        }
+        byte[] content = json.getBytes(outputSet.byteOrder == ByteOrder.BIG_ENDIAN
+                ? StandardCharsets.UTF_16BE : StandardCharsets.UTF_16LE);
+        byte[] userComment = new byte[8 + content.length];
+        System.arraycopy("UNICODE\0".getBytes(StandardCharsets.US_ASCII), 0, userComment, 0, 8);
+        System.arraycopy(content, 0, userComment, 8, content.length);
+
+        TiffOutputDirectory exifDirectory = outputSet.getOrCreateExifDirectory();
+        exifDirectory.removeField(ExifTagConstants.EXIF_TAG_USER_COMMENT);
+        exifDirectory.add(new TiffOutputField(ExifTagConstants.EXIF_TAG_USER_COMMENT,
+                FieldType.UNDEFINED, userComment.length, userComment));
+        try (FileOutputStream fos = new FileOutputStream(output)) {
+            new ExifRewriter().updateExifMetadataLossless(input, fos, outputSet);
+        }
+
+        Metadata written = ImageMetadataReader.readMetadata(output);
+        ExifSubIFDDirectory exif = written.getFirstDirectoryOfType(ExifSubIFDDirectory.class);
+        return exif != null && exif.containsTag(ExifDirectoryBase.TAG_USER_COMMENT);
+    }
+}
@@ -0,0 +1,151 @@
+package com.felix;
+
+import com.felix.file.FileTypeChecker;
+import com.felix.file.SignatureRegistry;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * 文件头签名识别性能对比：编译后的字节trie vs 按注册顺序逐个比较签名
+ * 语料为随机字节，其中一半按签名表中随机选取的签名写入对应的字节（掩码外的位保持随机），模拟上传文件的文件头。
+ * 先用默认签名表测试，再额外注册随机生成的签名，观察签名数量增加时两种方式的吞吐量变化；
+ * 同时统计两种方式结果不一致的文件头数，应为0。
+ *
+ * 用法：FileSignatureBenchmark [文件头数] [额外签名数]
+ */
+public class FileSignatureBenchmark {
+
+    private static final int ROUNDS = 5;
+
+    interface Classifier {
+        SignatureRegistry.Signature classify(ByteBuffer header);
+    }
+
+    public static void main(String[] args) throws Exception {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        int extra = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+        Random random = new Random(2025);
+
+        SignatureRegistry registry = FileTypeChecker.getRegistry();
+        run("默认签名表", registry, count, random);
+
+        SignatureRegistry extended = new SignatureRegistry();
+        for (SignatureRegistry.Signature signature : registry.getSignatures()) {
+            extended.register(signature.getFormat(), signature.getMimeType(), signature.getOffset(), signature.getPattern());
+        }
+        for (int i = 0; i < extra; i++) {
+            // 与实际签名表相近：大多数签名从文件开头开始，少数位于容器头之后
+            int offset = random.nextInt(4) == 0 ? 4 + random.nextInt(2) * 4 : 0;
+            extended.register("SYNTHETIC" + i, "application/octet-stream", offset, randomPattern(random));
+        }
+        run("默认签名表+" + extra + "个随机签名", extended, count, random);
+    }
+
+    private static void run(String name, SignatureRegistry registry, int count, Random random) {
+        List<SignatureRegistry.Signature> signatures = registry.getSignatures();
+        ByteBuffer[] headers = createHeaders(signatures, registry.getMaxLength(), count, random);
+        System.out.printf("%s: %d 个签名, %d 个文件头%n", name, signatures.size(), headers.length);
+
+        long start = System.nanoTime();
+        registry.match(ByteBuffer.allocate(0));
+        System.out.printf("  编译trie %.1f ms%n", (System.nanoTime() - start) / 1e6);
+
+        int mismatches = 0;
+        for (ByteBuffer header : headers) {
+            if (registry.match(header) != linear(signatures, header)) {
+                mismatches++;
+            }
+        }
+
+        measure("字节trie", headers, registry::match);
+        measure("逐个比较", headers, header -> linear(signatures, header));
+        System.out.printf("  结果不一致 %d/%d%n", mismatches, headers.length);
+    }
+
+    private static void measure(String name, ByteBuffer[] headers, Classifier classifier) {
+        int matched = 0;
+        for (ByteBuffer header : headers) { // 预热
+            if (classifier.classify(header) != null) {
+                matched++;
+            }
+        }
+        long start = System.nanoTime();
+        for (int round = 0; round < ROUNDS; round++) {
+            for (ByteBuffer header : headers) {
+                if (classifier.classify(header) != null) {
+                    matched++;
+                }
+            }
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        long total = (long) headers.length * ROUNDS;
+        System.out.printf("  %-8s %12.0f 文件头/秒 %8.1f ns/文件头  命中 %d%n",
+                name, total / seconds, seconds * 1e9 / total, matched / (ROUNDS + 1));
+    }
+
+    /**
+     * 对照组：与SignatureRegistry相同的规则，取结束位置最靠后的签名，相同时取先注册的
+     */
+    private static SignatureRegistry.Signature linear(List<SignatureRegistry.Signature> signatures, ByteBuffer header) {
+        SignatureRegistry.Signature best = null;
+        for (SignatureRegistry.Signature signature : signatures) {
+            if (signature.matches(header) && (best == null || signature.end() > best.end())) {
+                best = signature;
+            }
+        }
+        return best;
+    }
+
+    private static ByteBuffer[] createHeaders(List<SignatureRegistry.Signature> signatures, int length,
+                                              int count, Random random) {
+        ByteBuffer[] headers = new ByteBuffer[count];
+        for (int i = 0; i < count; i++) {
+            byte[] header = new byte[length];
+            random.nextBytes(header);
+            int end = 0;
+            if (i % 2 == 0) {
+                SignatureRegistry.Signature signature = signatures.get(random.nextInt(signatures.size()));
+                plant(header, signature);
+                end = signature.end();
+            }
+            // 文件头长度随机，模拟小文件只能读到部分文件头
+            headers[i] = ByteBuffer.wrap(header, 0, end + random.nextInt(length - end + 1));
+        }
+        return headers;
+    }
+
+    /**
+     * 按签名写入字节，"??"和掩码外的位保持随机
+     */
+    private static void plant(byte[] header, SignatureRegistry.Signature signature) {
+        String[] tokens = signature.getPattern().split("\\s+");
+        for (int i = 0; i < tokens.length; i++) {
+            if (tokens[i].equals("??")) {
+                continue;
+            }
+            String[] parts = tokens[i].split("&");
+            int value = Integer.parseInt(parts[0], 16);
+            int mask = parts.length > 1 ? Integer.parseInt(parts[1], 16) : 0xFF;
+            int position = signature.getOffset() + i;
+            header[position] = (byte) ((header[position] & ~mask) | (value & mask));
+        }
+    }
+
+    private static String randomPattern(Random random) {
+        StringBuilder pattern = new StringBuilder();
+        int length = 4 + random.nextInt(9);
+        for (int i = 0; i < length; i++) {
+            if (i > 0) {
+                pattern.append(' ');
+            }
+            if (i > 1 && random.nextInt(8) == 0) {
+                pattern.append("??");
+            } else {
+                pattern.append(String.format("%02X", random.nextInt(256)));
+            }
+        }
+        return pattern.toString();
+    }
+}
@@ -0,0 +1,98 @@
+package com.felix;
+
+import com.felix.watermark.digital.images.ImgWatermarkTool;
+
+import java.awt.*;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+
+/**
+ * 平铺水印性能对比：像素数组预乘混合 vs 逐个Graphics2D.drawImage
+ */
+public class TiledWatermarkBenchmark {
+
+    private static final int WARMUP = 3;
+    private static final int ROUNDS = 10;
+
+    public static void main(String[] args) {
+        int width = args.length > 0 ? Integer.parseInt(args[0]) : 4000;
+        int height = args.length > 1 ? Integer.parseInt(args[1]) : 3000;
+        BufferedImage watermark = createTextImage("Felix Tool 2025 内部资料");
+
+        System.out.println("图片尺寸: " + width + "x" + height);
+        double rasterMs = run("Raster", width, height, watermark, true);
+        double graphicsMs = run("Graphics2D", width, height, watermark, false);
+        System.out.printf("加速比: %.2fx%n", graphicsMs / rasterMs);
+    }
+
+    private static double run(String name, int width, int height, BufferedImage watermark, boolean raster) {
+        long total = 0;
+        for (int i = 0; i < WARMUP + ROUNDS; i++) {
+            BufferedImage image = createSourceImage(width, height);
+            long start = System.nanoTime();
+            if (raster) {
+                ImgWatermarkTool.applyTiledWatermark(image, watermark, -30, 80, 0.3f);
+            } else {
+                drawTiledWithGraphics(image, watermark, -30, 80, 0.3f);
+            }
+            long cost = System.nanoTime() - start;
+            if (i >= WARMUP) {
+                total += cost;
+            }
+        }
+        double avgMs = total / 1_000_000.0 / ROUNDS;
+        System.out.printf("%-12s 平均耗时: %8.2f ms, %.2f ms/MP%n", name, avgMs, avgMs * 1_000_000 / ((double) width * height));
+        return avgMs;
+    }
+
+    /**
+     * 对照组：按平铺网格逐个旋转绘制水印
+     */
+    private static void drawTiledWithGraphics(BufferedImage image, BufferedImage watermark, double angle, int spacing, float alpha) {
+        double radians = Math.toRadians(angle);
+        double sin = Math.abs(Math.sin(radians));
+        double cos = Math.abs(Math.cos(radians));
+        int tileWidth = (int) Math.ceil(watermark.getWidth() * cos + watermark.getHeight() * sin) + spacing;
+        int tileHeight = (int) Math.ceil(watermark.getWidth() * sin + watermark.getHeight() * cos) + spacing;
+
+        Graphics2D g2d = image.createGraphics();
+        g2d.setComposite(AlphaComposite.getInstance(AlphaComposite.SRC_OVER, alpha));
+        g2d.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        for (int row = 0, y = 0; y < image.getHeight(); row++, y += tileHeight) {
+            int shift = (row & 1) == 1 ? -tileWidth / 2 : 0;
+            for (int x = shift; x < image.getWidth(); x += tileWidth) {
+                AffineTransform transform = new AffineTransform();
+                transform.translate(x + tileWidth / 2.0, y + tileHeight / 2.0);
+                transform.rotate(radians);
+                transform.translate(-watermark.getWidth() / 2.0, -watermark.getHeight() / 2.0);
+                g2d.drawImage(watermark, transform, null);
+            }
+        }
+        g2d.dispose();
+    }
+
+    private static BufferedImage createSourceImage(int width, int height) {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g2d = image.createGraphics();
+        g2d.setPaint(new GradientPaint(0, 0, new Color(30, 90, 160), width, height, new Color(220, 180, 60)));
+        g2d.fillRect(0, 0, width, height);
+        g2d.dispose();
+        return image;
+    }
+
+    private static BufferedImage createTextImage(String text) {
+        Font font = new Font("Arial", Font.BOLD, 36);
+        BufferedImage temp = new BufferedImage(1, 1, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g2dTemp = temp.createGraphics();
+        FontMetrics metrics = g2dTemp.getFontMetrics(font);
+        g2dTemp.dispose();
+
+        BufferedImage image = new BufferedImage(metrics.stringWidth(text), metrics.getHeight(), BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g2d = image.createGraphics();
+        g2d.setColor(Color.GRAY);
+        g2d.setFont(font);
+        g2d.drawString(text, 0, metrics.getAscent());
+        g2d.dispose();
+        return image;
+    }
+}
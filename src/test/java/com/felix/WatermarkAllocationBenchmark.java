@@ -0,0 +1,87 @@
+package com.felix;
+
+import com.felix.watermark.digital.images.DCTWatermark;
+import com.felix.watermark.digital.images.DWTWatermark;
+import com.felix.watermark.digital.images.LSBWatermark;
+import com.felix.watermark.digital.images.PerceptualMask;
+import com.felix.watermark.digital.images.WatermarkWorkspace;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+
+/**
+ * 数字水印稳定状态下的内存分配统计
+ * 使用HotSpot的线程分配计数器统计每次嵌入/提取在当前线程上分配的字节数（与JMH -prof gc的gc.alloc.rate.norm口径一致），
+ * 预热后工作区已扩容到图像尺寸，理想情况下每次操作只分配与水印位数相关的少量对象。
+ *
+ * 用法：WatermarkAllocationBenchmark [宽] [高] [位串长度]
+ */
+public class WatermarkAllocationBenchmark {
+
+    private static final int WARMUP = 20;
+    private static final int ROUNDS = 20;
+
+    interface Operation {
+        void run();
+    }
+
+    public static void main(String[] args) {
+        int width = args.length > 0 ? Integer.parseInt(args[0]) : 1920;
+        int height = args.length > 1 ? Integer.parseInt(args[1]) : 1080;
+        int bitCount = args.length > 2 ? Integer.parseInt(args[2]) : 512;
+
+        BufferedImage image = createImage(width, height);
+        String bits = randomBits(bitCount);
+        WatermarkWorkspace workspace = new WatermarkWorkspace();
+
+        System.out.printf("图片尺寸: %dx%d, 位串长度: %d%n", width, height, bitCount);
+        measure("LSB 嵌入", () -> LSBWatermark.embedBinary(image, bits));
+        measure("LSB 提取", () -> LSBWatermark.extractBinary(image, bitCount));
+        measure("DCT 嵌入", () -> DCTWatermark.embedBinary(image, bits, workspace));
+        measure("DCT 自适应嵌入", () -> DCTWatermark.embedBinary(image, bits, workspace, PerceptualMask.DEFAULT));
+        measure("DCT 提取", () -> DCTWatermark.extractBinary(image, bitCount, workspace));
+        measure("DWT 嵌入", () -> DWTWatermark.embedBinary(image, bits, workspace));
+        measure("DWT 自适应嵌入", () -> DWTWatermark.embedBinary(image, bits, workspace, PerceptualMask.DEFAULT));
+        measure("DWT 提取", () -> DWTWatermark.extractBinary(image, bitCount, workspace));
+    }
+
+    private static void measure(String name, Operation operation) {
+        com.sun.management.ThreadMXBean threadBean =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+
+        for (int i = 0; i < WARMUP; i++) {
+            operation.run();
+        }
+
+        long allocatedBefore = threadBean.getThreadAllocatedBytes(threadId);
+        long start = System.nanoTime();
+        for (int i = 0; i < ROUNDS; i++) {
+            operation.run();
+        }
+        long elapsed = System.nanoTime() - start;
+        long allocated = threadBean.getThreadAllocatedBytes(threadId) - allocatedBefore;
+
+        System.out.printf("%-12s %10.2f ms/op %12d B/op%n", name, elapsed / 1_000_000.0 / ROUNDS, allocated / ROUNDS);
+    }
+
+    private static BufferedImage createImage(int width, int height) {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g2d = image.createGraphics();
+        g2d.setPaint(new GradientPaint(0, 0, new Color(40, 120, 200), width, height, new Color(230, 200, 90)));
+        g2d.fillRect(0, 0, width, height);
+        g2d.dispose();
+        return image;
+    }
+
+    private static String randomBits(int count) {
+        Random random = new Random(2025);
+        StringBuilder bits = new StringBuilder(count);
+        for (int i = 0; i < count; i++) {
+            bits.append(random.nextBoolean() ? '1' : '0');
+        }
+        return bits.toString();
+    }
+}
@@ -0,0 +1,393 @@
+package com.felix;
+
+import com.felix.watermark.digital.images.DCTWatermark;
+import com.felix.watermark.digital.images.DWTWatermark;
+import com.felix.watermark.digital.images.LSBWatermark;
+import com.felix.watermark.digital.images.PerceptualMask;
+import com.felix.watermark.digital.images.WatermarkWorkspace;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+import javax.imageio.stream.MemoryCacheImageOutputStream;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.DoubleAdder;
+
+/**
+ * LSB/DCT/DWT数字水印鲁棒性与吞吐量基准测试
+ * 对语料中的每张图片嵌入随机位串，在内存中生成JPEG重压缩、缩放、裁剪、噪声等攻击版本，
+ * 提取后统计误码率(BER)，同时统计嵌入/提取的每百万像素耗时和嵌入后的PSNR。语料按图片并行处理。
+ * 带"-自适应"后缀的算法使用感知掩蔽调整嵌入强度，报告末尾给出其相对固定强度的嵌入耗时开销。
+ *
+ * 用法：WatermarkRobustnessBenchmark [语料目录] [位串长度]
+ * 未指定语料目录时使用合成图片
+ */
+public class WatermarkRobustnessBenchmark {
+
+    private static final String ADAPTIVE_SUFFIX = "-自适应";
+
+    /**
+     * 被测水印算法
+     */
+    interface Algorithm {
+        String name();
+
+        BufferedImage embed(BufferedImage image, String bits);
+
+        String extract(BufferedImage image, int bitCount);
+    }
+
+    /**
+     * 攻击方式
+     */
+    interface Attack {
+        BufferedImage apply(BufferedImage image) throws IOException;
+    }
+
+    /**
+     * 单个算法的累计统计
+     */
+    static class Stats {
+        final AtomicLong embedNanos = new AtomicLong();
+        final AtomicLong extractNanos = new AtomicLong();
+        final DoubleAdder megapixels = new DoubleAdder();
+        final Map<String, DoubleAdder> errorBits = new LinkedHashMap<>();
+        final AtomicLong totalBits = new AtomicLong();
+        final DoubleAdder psnr = new DoubleAdder();
+        final AtomicLong images = new AtomicLong();
+    }
+
+    public static void main(String[] args) throws Exception {
+        List<BufferedImage> corpus = args.length > 0 ? loadCorpus(new File(args[0])) : syntheticCorpus(8, 1024, 768);
+        int bitCount = args.length > 1 ? Integer.parseInt(args[1]) : 512;
+        String bits = randomBits(bitCount, 2025);
+
+        List<Algorithm> algorithms = algorithms();
+        Map<String, Attack> attacks = attacks();
+
+        Map<String, Stats> statsByAlgorithm = new LinkedHashMap<>();
+        for (Algorithm algorithm : algorithms) {
+            Stats stats = new Stats();
+            for (String attack : attacks.keySet()) {
+                stats.errorBits.put(attack, new DoubleAdder());
+            }
+            statsByAlgorithm.put(algorithm.name(), stats);
+        }
+
+        // 预热，避免首轮JIT影响耗时统计
+        BufferedImage warmup = corpus.get(0);
+        for (Algorithm algorithm : algorithms) {
+            algorithm.extract(algorithm.embed(copy(warmup), bits), bitCount);
+        }
+
+        long wallStart = System.nanoTime();
+        corpus.parallelStream().forEach(image -> {
+            for (Algorithm algorithm : algorithms) {
+                Stats stats = statsByAlgorithm.get(algorithm.name());
+                double mp = image.getWidth() * (double) image.getHeight() / 1_000_000.0;
+
+                BufferedImage source = copy(image);
+                long start = System.nanoTime();
+                BufferedImage watermarked = algorithm.embed(source, bits);
+                stats.embedNanos.addAndGet(System.nanoTime() - start);
+
+                start = System.nanoTime();
+                algorithm.extract(watermarked, bitCount);
+                stats.extractNanos.addAndGet(System.nanoTime() - start);
+                stats.megapixels.add(mp);
+                stats.psnr.add(psnr(image, watermarked));
+                stats.images.incrementAndGet();
+                stats.totalBits.addAndGet(bitCount);
+
+                for (Map.Entry<String, Attack> attack : attacks.entrySet()) {
+                    try {
+                        BufferedImage attacked = attack.getValue().apply(watermarked);
+                        String extracted = algorithm.extract(attacked, bitCount);
+                        stats.errorBits.get(attack.getKey()).add(countErrors(bits, extracted));
+                    } catch (IOException e) {
+                        System.err.println("攻击处理失败: " + attack.getKey() + ", 错误: " + e.getMessage());
+                    }
+                }
+            }
+        });
+        double wallMs = (System.nanoTime() - wallStart) / 1_000_000.0;
+
+        printReport(statsByAlgorithm, attacks.keySet(), corpus.size(), bitCount, wallMs);
+    }
+
+    private static List<Algorithm> algorithms() {
+        List<Algorithm> algorithms = new ArrayList<>();
+        algorithms.add(new Algorithm() {
+            public String name() { return "LSB"; }
+            public BufferedImage embed(BufferedImage image, String bits) {
+                LSBWatermark.embedBinary(image, bits);
+                return image;
+            }
+            public String extract(BufferedImage image, int bitCount) {
+                return LSBWatermark.extractBinary(image, bitCount);
+            }
+        });
+        algorithms.add(new Algorithm() {
+            public String name() { return "DCT"; }
+            public BufferedImage embed(BufferedImage image, String bits) {
+                DCTWatermark.embedBinary(image, bits);
+                return image;
+            }
+            public String extract(BufferedImage image, int bitCount) {
+                return DCTWatermark.extractBinary(image, bitCount);
+            }
+        });
+        algorithms.add(new Algorithm() {
+            public String name() { return "DWT"; }
+            public BufferedImage embed(BufferedImage image, String bits) {
+                return DWTWatermark.embedBinary(image, bits);
+            }
+            public String extract(BufferedImage image, int bitCount) {
+                return DWTWatermark.extractBinary(image, bitCount);
+            }
+        });
+        algorithms.add(new Algorithm() {
+            public String name() { return "DCT" + ADAPTIVE_SUFFIX; }
+            public BufferedImage embed(BufferedImage image, String bits) {
+                DCTWatermark.embedBinary(image, bits, WatermarkWorkspace.current(), PerceptualMask.DEFAULT);
+                return image;
+            }
+            public String extract(BufferedImage image, int bitCount) {
+                return DCTWatermark.extractBinary(image, bitCount);
+            }
+        });
+        algorithms.add(new Algorithm() {
+            public String name() { return "DWT" + ADAPTIVE_SUFFIX; }
+            public BufferedImage embed(BufferedImage image, String bits) {
+                return DWTWatermark.embedBinary(image, bits, WatermarkWorkspace.current(), PerceptualMask.DEFAULT);
+            }
+            public String extract(BufferedImage image, int bitCount) {
+                return DWTWatermark.extractBinary(image, bitCount);
+            }
+        });
+        return algorithms;
+    }
+
+    private static Map<String, Attack> attacks() {
+        Map<String, Attack> attacks = new LinkedHashMap<>();
+        attacks.put("无攻击", image -> image);
+        attacks.put("JPEG-90", image -> jpegRecompress(image, 0.90f));
+        attacks.put("JPEG-75", image -> jpegRecompress(image, 0.75f));
+        attacks.put("JPEG-50", image -> jpegRecompress(image, 0.50f));
+        attacks.put("缩放50%", image -> rescale(image, 0.5));
+        attacks.put("缩放90%", image -> rescale(image, 0.9));
+        attacks.put("裁剪10%", image -> cropBottomRight(image, 0.10));
+        attacks.put("噪声σ=2", image -> gaussianNoise(image, 2.0, 7));
+        attacks.put("噪声σ=8", image -> gaussianNoise(image, 8.0, 7));
+        return attacks;
+    }
+
+    /**
+     * JPEG重压缩（全程在内存中完成）
+     */
+    private static BufferedImage jpegRecompress(BufferedImage image, float quality) throws IOException {
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpg").next();
+        ImageWriteParam param = writer.getDefaultWriteParam();
+        param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+        param.setCompressionQuality(quality);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ImageOutputStream ios = new MemoryCacheImageOutputStream(bytes)) {
+            writer.setOutput(ios);
+            writer.write(null, new IIOImage(toRgb(image), null, null), param);
+        } finally {
+            writer.dispose();
+        }
+        return ImageIO.read(new ByteArrayInputStream(bytes.toByteArray()));
+    }
+
+    /**
+     * 缩小后再放大回原尺寸，模拟转发链路中的尺寸变换
+     */
+    private static BufferedImage rescale(BufferedImage image, double factor) {
+        int w = Math.max(1, (int) (image.getWidth() * factor));
+        int h = Math.max(1, (int) (image.getHeight() * factor));
+        return resize(resize(image, w, h), image.getWidth(), image.getHeight());
+    }
+
+    /**
+     * 裁掉右侧和底部，保持左上角对齐；被裁掉区域承载的位按错误计
+     */
+    private static BufferedImage cropBottomRight(BufferedImage image, double ratio) {
+        int w = (int) (image.getWidth() * (1 - ratio));
+        int h = (int) (image.getHeight() * (1 - ratio));
+        return copy(image.getSubimage(0, 0, w, h));
+    }
+
+    private static BufferedImage gaussianNoise(BufferedImage image, double sigma, long seed) {
+        Random random = new Random(seed);
+        BufferedImage noisy = copy(image);
+        for (int y = 0; y < noisy.getHeight(); y++) {
+            for (int x = 0; x < noisy.getWidth(); x++) {
+                int rgb = noisy.getRGB(x, y);
+                int r = clamp(((rgb >> 16) & 0xFF) + (int) Math.round(random.nextGaussian() * sigma));
+                int g = clamp(((rgb >> 8) & 0xFF) + (int) Math.round(random.nextGaussian() * sigma));
+                int b = clamp((rgb & 0xFF) + (int) Math.round(random.nextGaussian() * sigma));
+                noisy.setRGB(x, y, (r << 16) | (g << 8) | b);
+            }
+        }
+        return noisy;
+    }
+
+    /**
+     * 计算RGB三通道的峰值信噪比
+     */
+    private static double psnr(BufferedImage original, BufferedImage watermarked) {
+        int width = original.getWidth();
+        int height = original.getHeight();
+        int[] a = original.getRGB(0, 0, width, height, null, 0, width);
+        int[] b = watermarked.getRGB(0, 0, width, height, null, 0, width);
+        double sum = 0;
+        for (int i = 0; i < a.length; i++) {
+            for (int shift = 0; shift <= 16; shift += 8) {
+                int diff = ((a[i] >> shift) & 0xFF) - ((b[i] >> shift) & 0xFF);
+                sum += diff * diff;
+            }
+        }
+        double mse = sum / (3.0 * a.length);
+        return mse == 0 ? 99.0 : 10 * Math.log10(255.0 * 255.0 / mse);
+    }
+
+    private static BufferedImage resize(BufferedImage image, int width, int height) {
+        BufferedImage resized = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g2d = resized.createGraphics();
+        g2d.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        g2d.drawImage(image, 0, 0, width, height, null);
+        g2d.dispose();
+        return resized;
+    }
+
+    private static BufferedImage toRgb(BufferedImage image) {
+        return image.getType() == BufferedImage.TYPE_INT_RGB ? image : copy(image);
+    }
+
+    private static BufferedImage copy(BufferedImage image) {
+        BufferedImage copy = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_INT_RGB);
+        Graphics2D g2d = copy.createGraphics();
+        g2d.drawImage(image, 0, 0, null);
+        g2d.dispose();
+        return copy;
+    }
+
+    /**
+     * 统计错误位数，提取不足的位（如裁剪后容量下降）按错误计
+     */
+    private static int countErrors(String expected, String actual) {
+        int errors = Math.max(0, expected.length() - actual.length());
+        int n = Math.min(expected.length(), actual.length());
+        for (int i = 0; i < n; i++) {
+            if (expected.charAt(i) != actual.charAt(i)) {
+                errors++;
+            }
+        }
+        return errors;
+    }
+
+    private static String randomBits(int count, long seed) {
+        Random random = new Random(seed);
+        StringBuilder bits = new StringBuilder(count);
+        for (int i = 0; i < count; i++) {
+            bits.append(random.nextBoolean() ? '1' : '0');
+        }
+        return bits.toString();
+    }
+
+    private static int clamp(int value) {
+        return Math.max(0, Math.min(255, value));
+    }
+
+    private static List<BufferedImage> loadCorpus(File dir) throws IOException {
+        List<BufferedImage> corpus = new ArrayList<>();
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                BufferedImage image = file.isFile() ? ImageIO.read(file) : null;
+                if (image != null) {
+                    corpus.add(image);
+                }
+            }
+        }
+        if (corpus.isEmpty()) {
+            throw new IOException("语料目录中没有可读取的图片: " + dir.getAbsolutePath());
+        }
+        return corpus;
+    }
+
+    /**
+     * 生成带渐变、纹理和文字的合成图片，兼顾平坦区域与纹理区域
+     */
+    private static List<BufferedImage> syntheticCorpus(int count, int width, int height) {
+        List<BufferedImage> corpus = new ArrayList<>();
+        Random random = new Random(42);
+        for (int i = 0; i < count; i++) {
+            BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+            Graphics2D g2d = image.createGraphics();
+            g2d.setPaint(new GradientPaint(0, 0, new Color(random.nextInt(256), random.nextInt(256), random.nextInt(256)),
+                    width, height, new Color(random.nextInt(256), random.nextInt(256), random.nextInt(256))));
+            g2d.fillRect(0, 0, width, height);
+            for (int j = 0; j < 200; j++) {
+                g2d.setColor(new Color(random.nextInt(256), random.nextInt(256), random.nextInt(256), 120));
+                g2d.fillOval(random.nextInt(width), random.nextInt(height), 10 + random.nextInt(80), 10 + random.nextInt(80));
+            }
+            g2d.setColor(Color.WHITE);
+            g2d.setFont(new Font("Arial", Font.BOLD, 48));
+            g2d.drawString("Felix Corpus #" + i, 40, height / 2);
+            g2d.dispose();
+            corpus.add(image);
+        }
+        return corpus;
+    }
+
+    private static void printReport(Map<String, Stats> statsByAlgorithm, Iterable<String> attackNames,
+                                    int images, int bitCount, double wallMs) {
+        System.out.printf("语料: %d 张图片, 每张嵌入 %d 位, 总耗时 %.1f ms%n%n", images, bitCount, wallMs);
+
+        StringBuilder header = new StringBuilder(String.format("%-10s %12s %12s %9s", "算法", "嵌入ms/MP", "提取ms/MP", "PSNR"));
+        for (String attack : attackNames) {
+            header.append(String.format(" %10s", attack));
+        }
+        System.out.println(header);
+
+        for (Map.Entry<String, Stats> entry : statsByAlgorithm.entrySet()) {
+            Stats stats = entry.getValue();
+            double mp = stats.megapixels.sum();
+            StringBuilder line = new StringBuilder(String.format("%-10s %12.2f %12.2f %7.2fdB", entry.getKey(),
+                    stats.embedNanos.get() / 1_000_000.0 / mp, stats.extractNanos.get() / 1_000_000.0 / mp,
+                    stats.psnr.sum() / stats.images.get()));
+            for (String attack : attackNames) {
+                double ber = stats.errorBits.get(attack).sum() / stats.totalBits.get();
+                line.append(String.format(" %9.2f%%", ber * 100));
+            }
+            System.out.println(line);
+        }
+
+        System.out.println();
+        for (Map.Entry<String, Stats> entry : statsByAlgorithm.entrySet()) {
+            if (!entry.getKey().endsWith(ADAPTIVE_SUFFIX)) {
+                continue;
+            }
+            Stats fixed = statsByAlgorithm.get(entry.getKey().substring(0, entry.getKey().length() - ADAPTIVE_SUFFIX.length()));
+            if (fixed != null) {
+                double overhead = (double) entry.getValue().embedNanos.get() / fixed.embedNanos.get() - 1;
+                System.out.printf("%s 嵌入耗时相对固定强度开销: %+.1f%%%n", entry.getKey(), overhead * 100);
+            }
+        }
+    }
+}
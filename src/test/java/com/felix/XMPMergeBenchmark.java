@@ -0,0 +1,134 @@
+package com.felix;
+
+import com.felix.watermark.metadata.AIGCMetadata;
+import com.felix.watermark.metadata.images.XMP.TC260XMPStream;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * XMP中TC260:AIGC属性合并与读取性能对比：StAX流式扫描 vs 原实现（解码为字符串后正则替换/匹配）
+ * XMP包模拟Photoshop输出：rdf:Description中带有大量photoshop:DocumentAncestors条目，TC260:AIGC位于末尾，
+ * 两种实现都必须扫描整个XMP包。分别测试约1KB、100KB和1MB的XMP包，统计方式与AIGCMetadataCodecBenchmark一致。
+ *
+ * 用法：XMPMergeBenchmark [1KB包的轮数]
+ */
+public class XMPMergeBenchmark {
+
+    private static final int[] PACKET_SIZES = {1024, 100 * 1024, 1024 * 1024};
+
+    private static final String TC260_NAMESPACE_URI = "http://www.tc260.org.cn/ns/AIGC/1.0/";
+
+    interface Operation {
+        Object run() throws Exception;
+    }
+
+    public static void main(String[] args) throws Exception {
+        int baseRounds = args.length > 0 ? Integer.parseInt(args[0]) : 20_000;
+        AIGCMetadata metadata = new AIGCMetadata("1", "Felix内容生成平台", "produce-20250901-0001",
+                "", "Felix传播平台", "propagate-0001", "");
+        String value = metadata.toXMPJsonString();
+
+        for (int size : PACKET_SIZES) {
+            byte[] packet = createPacket(size, metadata.withPropagateID("old"));
+            // 轮数与包大小成反比，各组总耗时相近
+            int rounds = Math.max(20, (int) ((long) baseRounds * 1024 / size));
+            System.out.printf("XMP包 %d 字节, %d 轮%n", packet.length, rounds);
+
+            measure("  原实现 合并", rounds, () -> legacyMerge(packet, value));
+            measure("  StAX 合并", rounds, () -> staxMerge(packet, value));
+            measure("  原实现 读取", rounds, () -> legacyRead(packet));
+            measure("  StAX 读取", rounds, () -> TC260XMPStream.readAIGC(new ByteArrayInputStream(packet)));
+
+            System.out.println("  合并结果可读回 原实现: " + value.equals(TC260XMPStream.readAIGC(
+                    new ByteArrayInputStream(legacyMerge(packet, value))))
+                    + ", StAX: " + value.equals(TC260XMPStream.readAIGC(new ByteArrayInputStream(staxMerge(packet, value)))));
+        }
+    }
+
+    private static void measure(String name, int rounds, Operation operation) throws Exception {
+        com.sun.management.ThreadMXBean threadBean =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+
+        Object sink = null;
+        for (int i = 0; i < Math.max(rounds, 50); i++) {
+            sink = operation.run();
+        }
+
+        long allocatedBefore = threadBean.getThreadAllocatedBytes(threadId);
+        long start = System.nanoTime();
+        for (int i = 0; i < rounds; i++) {
+            sink = operation.run();
+        }
+        long elapsed = System.nanoTime() - start;
+        long allocated = threadBean.getThreadAllocatedBytes(threadId) - allocatedBefore;
+
+        System.out.printf("%-14s %10.1f us/op %10d B/op%s%n", name, elapsed / 1000.0 / rounds, allocated / rounds,
+                sink == null ? " (无结果)" : "");
+    }
+
+    private static byte[] staxMerge(byte[] packet, String value) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(packet.length + 512);
+        TC260XMPStream.mergeAIGC(new ByteArrayInputStream(packet), out, value);
+        return out.toByteArray();
+    }
+
+    /**
+     * 构造约size字节的XMP包
+     */
+    private static byte[] createPacket(int size, AIGCMetadata metadata) {
+        StringBuilder xmp = new StringBuilder(size + 1024);
+        xmp.append("<?xpacket begin=\"﻿\" id=\"W5M0MpCehiHzreSzNTczkc9d\"?>\n")
+                .append("<x:xmpmeta xmlns:x=\"adobe:ns:meta/\" x:xmptk=\"Adobe XMP Core 5.6-c148\">\n")
+                .append(" <rdf:RDF xmlns:rdf=\"http://www.w3.org/1999/02/22-rdf-syntax-ns#\">\n")
+                .append("  <rdf:Description rdf:about=\"\"\n")
+                .append("    xmlns:xmp=\"http://ns.adobe.com/xap/1.0/\"\n")
+                .append("    xmlns:photoshop=\"http://ns.adobe.com/photoshop/1.0/\"\n")
+                .append("    xmlns:TC260=\"").append(TC260_NAMESPACE_URI).append("\"\n")
+                .append("   xmp:CreatorTool=\"Adobe Photoshop 21.0 (Windows)\">\n")
+                .append("   <photoshop:DocumentAncestors>\n    <rdf:Bag>\n");
+        int footer = 512;
+        for (int i = 0; xmp.length() < size - footer; i++) {
+            xmp.append("     <rdf:li>xmp.did:").append(String.format("%08x-%04x-4c1d-9f2e-%012x", i * 2654435761L, i & 0xFFFF, i))
+                    .append("</rdf:li>\n");
+        }
+        xmp.append("    </rdf:Bag>\n   </photoshop:DocumentAncestors>\n")
+                .append("   <TC260:AIGC>").append(legacyEscape(metadata.toXMPJsonString())).append("</TC260:AIGC>\n")
+                .append("  </rdf:Description>\n </rdf:RDF>\n</x:xmpmeta>\n<?xpacket end=\"w\"?>");
+        return xmp.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    // ========== 对照组：原实现 ==========
+
+    private static final Pattern LEGACY_ELEMENT = Pattern.compile("<TC260:AIGC>(.*?)</TC260:AIGC>", Pattern.DOTALL);
+
+    private static byte[] legacyMerge(byte[] packet, String value) {
+        String existingXMP = new String(packet, StandardCharsets.UTF_8);
+        if (!existingXMP.contains("xmlns:TC260")) {
+            existingXMP = existingXMP.replaceFirst("(<rdf:Description[^>]*)",
+                    "$1 xmlns:TC260=\"" + TC260_NAMESPACE_URI + "\"");
+        }
+        existingXMP = existingXMP.replaceAll("<TC260:AIGC>.*?</TC260:AIGC>", "");
+        String aigcElement = "<TC260:AIGC>" + legacyEscape(value) + "</TC260:AIGC>";
+        existingXMP = existingXMP.replaceFirst("(</rdf:Description>)", Matcher.quoteReplacement(aigcElement) + "\n   $1");
+        return existingXMP.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String legacyRead(byte[] packet) {
+        Matcher matcher = LEGACY_ELEMENT.matcher(new String(packet, StandardCharsets.UTF_8));
+        if (!matcher.find()) {
+            return null;
+        }
+        return matcher.group(1).trim().replace("&lt;", "<").replace("&gt;", ">")
+                .replace("&quot;", "\"").replace("&apos;", "'").replace("&amp;", "&");
+    }
+
+    private static String legacyEscape(String value) {
+        return value.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;");
+    }
+}